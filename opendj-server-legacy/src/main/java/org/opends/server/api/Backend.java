@@ -582,6 +582,13 @@ public abstract class Backend<C extends Configuration>
     LDIF_EXPORT,
     /** Indicates whether this backend supports importing its data from an LDIF file. */
     LDIF_IMPORT,
+    /**
+     * Indicates whether this backend supports exporting only one of the partitions of similar
+     * sizes its data can be split into, so that the partitions can be exported in parallel.
+     *
+     * @see #getLDIFExportPartitionBounds(DN, int)
+     */
+    PARTITIONED_LDIF_EXPORT,
     /**
      * Indicates whether this backend provides a backup mechanism of any kind. This method is used
      * by the backup process when backing up all backends to determine whether this backend is one
@@ -618,6 +625,29 @@ public abstract class Backend<C extends Configuration>
    */
   public abstract void exportLDIF(LDIFExportConfig exportConfig) throws DirectoryException;
 
+  /**
+   * Splits the entries of a base DN into partitions of similar sizes, which can then be exported
+   * in parallel by passing the bounds of each partition to
+   * {@link LDIFExportConfig#setPartitionBounds(long, long)}. The bounds must be computed once for
+   * all the partitions of an export, so that no entry is missed or exported twice while the backend
+   * is updated. This method should only be called if {@link #supports(BackendOperation)} with
+   * {@link BackendOperation#PARTITIONED_LDIF_EXPORT} returns {@code true}.
+   *
+   * @param baseDN
+   *          The base DN whose entries are exported.
+   * @param nbPartitions
+   *          The number of partitions.
+   * @return The {@code nbPartitions + 1} increasing bounds of the partitions, partition {@code i}
+   *         being exported with the bounds {@code bounds[i]} and {@code bounds[i + 1]}.
+   * @throws DirectoryException
+   *           If a problem occurs while computing the bounds.
+   */
+  public long[] getLDIFExportPartitionBounds(DN baseDN, int nbPartitions) throws DirectoryException
+  {
+    throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+        ERR_PARTITIONED_LDIF_EXPORT_NOT_SUPPORTED.get(getBackendID()));
+  }
+
   /**
    * Imports information from an LDIF file into this backend. This method should only be called if
    * {@link #supports(BackendOperation)} with {@link BackendOperation#LDIF_IMPORT} returns
@@ -23,6 +23,7 @@ import java.util.Set;
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DN.CompactDn;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.forgerock.opendj.server.config.server.GroupImplementationCfg;
 import org.opends.server.core.ServerContext;
@@ -461,6 +462,66 @@ public abstract class Group<T extends GroupImplementationCfg>
   public abstract void removeMember(DN userDN)
          throws UnsupportedOperationException, DirectoryException;
 
+  /**
+   * Retrieves the DNs of the members explicitly listed in this group,
+   * including the DNs of the nested groups, so that the group manager
+   * can index them. A group returning a non-null set must notify the
+   * group manager of each member added or removed afterwards through
+   * {@link org.opends.server.core.GroupManager#addToMemberIndex} and
+   * {@link org.opends.server.core.GroupManager#removeFromMemberIndex}.
+   * The returned set must not be altered by the caller.
+   *
+   * @return  The DNs of the members explicitly listed in this group, or
+   *          {@code null} if the membership of this group must be
+   *          evaluated through the {@code isMember} methods.
+   */
+  public Set<CompactDn> getExplicitMemberDNs()
+  {
+    return null;
+  }
+
+  /**
+   * Indicates whether the membership of this group depends on the content
+   * of the member entries, and this group needs to be notified through
+   * {@link #memberEntryChanged(Entry, Entry)} of the changes made to the
+   * entries of the server. The group manager must be told through
+   * {@link org.opends.server.core.GroupManager#memberDependenciesChanged()}
+   * when the value returned by this method changes.
+   *
+   * @return  {@code true} if this group needs to be notified of the
+   *          changes made to the entries, or {@code false} if not.
+   */
+  public boolean dependsOnMemberEntries()
+  {
+    return false;
+  }
+
+  /**
+   * Notifies this group that an entry was added, deleted, modified or
+   * renamed. This is only called if {@link #dependsOnMemberEntries()}
+   * returns {@code true}, after the change was successfully applied.
+   *
+   * @param  oldEntry  The entry before the change, or {@code null} if
+   *                   the entry was added.
+   * @param  newEntry  The entry after the change, or {@code null} if
+   *                   the entry was deleted.
+   */
+  public void memberEntryChanged(Entry oldEntry, Entry newEntry)
+  {
+    // Nothing to do by default
+  }
+
+  /**
+   * Notifies this group that entries may have changed without the
+   * changes being notified, for instance because a backend was
+   * initialized or finalized. This is only called if
+   * {@link #dependsOnMemberEntries()} returns {@code true}.
+   */
+  public void memberEntriesInvalidated()
+  {
+    // Nothing to do by default
+  }
+
   /**
    * Retrieves a string representation of this group.
    *
@@ -25,6 +25,7 @@ import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.DN;
@@ -663,6 +664,12 @@ abstract class AciContainer implements AciTargetMatchContext, AciEvalContext {
         }
     }
 
+    @Override
+    public Map<BindRule, EnumEvalResult> getBindRuleResults() {
+        return BindRuleResultCache.getInstance(operation).getResults(
+            getClientDN(), getClientEntry(), authInfo);
+    }
+
   /**
    * {@inheritDoc}
    * <p>
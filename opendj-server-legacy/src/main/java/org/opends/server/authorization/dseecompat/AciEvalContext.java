@@ -23,6 +23,7 @@ import org.opends.server.api.Group;
 
 import java.net.InetAddress;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface that provides a view of the AciContainer that is
@@ -296,4 +297,14 @@ public interface AciEvalContext
      * @return The current SSF of the connection.
      */
     int getCurrentSSF();
+
+    /**
+     * Returns the results of the bind rules which do not depend on the target
+     * entry, already evaluated for the authorization identity of this context
+     * by the current operation. Such bind rules look up their result and add
+     * it once evaluated.
+     *
+     * @return The results of the bind rules, keyed by bind rule.
+     */
+    Map<BindRule, EnumEvalResult> getBindRuleResults();
 }
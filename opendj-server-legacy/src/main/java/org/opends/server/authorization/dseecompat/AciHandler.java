@@ -93,6 +93,12 @@ public final class AciHandler extends
    */
   static final String ORIG_AUTH_ENTRY = "origAuthorizationEntry";
 
+  /**
+   * String used to save the results of the bind rules which do not depend
+   * on the target entry in an operation attachment.
+   */
+  static final String BIND_RULE_RESULTS = "bindRuleResults";
+
   /** Attribute type corresponding to "aci" attribute. */
   static AttributeType aciType;
 
@@ -26,6 +26,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -58,6 +60,17 @@ public class AciList {
   private final ReentrantReadWriteLock lock =
           new ReentrantReadWriteLock();
 
+  /**
+   * The ACIs inherited by the children of a DN, i.e. the non global ACIs of the
+   * DN and of its ancestors, keyed by that DN. Filled while holding the read
+   * lock, and cleared while holding the write lock whenever the ACIs change.
+   */
+  private final ConcurrentMap<DN, List<Aci>> inheritedAcis =
+          new ConcurrentHashMap<>();
+
+  /** The maximum number of DNs for which the inherited ACIs are cached. */
+  private static final int MAX_INHERITED_ACIS_DNS = 10000;
+
   /** The configuration DN used to compare against the global ACI entry DN. */
   private final DN configDN;
 
@@ -75,13 +88,14 @@ public class AciList {
    * DIT gathering ACIs on parents. Global ACIs use the NULL DN as the key
    * and are included in the candidate set only if they have no
    * "target" keyword rules, or if the target keyword rule matches for
-   * the specified base DN.
+   * the specified base DN. The ACIs gathered on the parents are cached
+   * until the ACI list changes.
    *
    * @param baseDN  The DN to check.
    * @return A list of candidate ACIs that might be applicable.
    */
   public List<Aci> getCandidateAcis(DN baseDN) {
-    List<Aci> candidates = new LinkedList<>();
+    List<Aci> candidates = new ArrayList<>();
     if(baseDN == null)
     {
       return candidates;
@@ -90,35 +104,28 @@ public class AciList {
     lock.readLock().lock();
     try
     {
-      //Save the baseDN in case we need to evaluate a global ACI.
-      DN entryDN=baseDN;
-      while (baseDN != null) {
+      if (!baseDN.isRootDN()) {
         List<Aci> acis = aciList.get(baseDN);
         if (acis != null) {
-          //Check if there are global ACIs. Global ACI has a NULL DN.
-          if (baseDN.isRootDN()) {
-            for (Aci aci : acis) {
-              AciTargets targets = aci.getTargets();
-              //If there is a target, evaluate it to see if this ACI should
-              //be included in the candidate set.
-              if (targets != null
-                  && AciTargets.isTargetApplicable(aci, targets, entryDN))
-              {
-                  candidates.add(aci);  //Add this ACI to the candidates.
-              }
-            }
-          } else {
-            candidates.addAll(acis);
-          }
+          candidates.addAll(acis);
         }
-        if(baseDN.isRootDN()) {
-          break;
+        DN parentDN = baseDN.parent();
+        if (parentDN != null && !parentDN.isRootDN()) {
+          candidates.addAll(getInheritedAcis(parentDN));
         }
-        DN parentDN=baseDN.parent();
-        if(parentDN == null) {
-          baseDN=DN.rootDN();
-        } else {
-          baseDN=parentDN;
+      }
+      //Check if there are global ACIs. Global ACI has a NULL DN.
+      List<Aci> globalAcis = aciList.get(DN.rootDN());
+      if (globalAcis != null) {
+        for (Aci aci : globalAcis) {
+          AciTargets targets = aci.getTargets();
+          //If there is a target, evaluate it to see if this ACI should
+          //be included in the candidate set.
+          if (targets != null
+              && AciTargets.isTargetApplicable(aci, targets, baseDN))
+          {
+              candidates.add(aci);  //Add this ACI to the candidates.
+          }
         }
       }
       return candidates;
@@ -129,6 +136,33 @@ public class AciList {
     }
   }
 
+  /**
+   * Returns the non global ACIs of a DN and of its ancestors, computing them
+   * if they are not cached yet. Must be called while holding the read lock.
+   *
+   * @param dn  The DN, which must not be the root DN.
+   * @return The ACIs inherited by the children of the DN, which must not be
+   *         modified.
+   */
+  private List<Aci> getInheritedAcis(DN dn) {
+    List<Aci> inherited = inheritedAcis.get(dn);
+    if (inherited == null) {
+      inherited = new ArrayList<>();
+      for (DN ancestorDN = dn; ancestorDN != null && !ancestorDN.isRootDN();
+           ancestorDN = ancestorDN.parent()) {
+        List<Aci> acis = aciList.get(ancestorDN);
+        if (acis != null) {
+          inherited.addAll(acis);
+        }
+      }
+      if (inheritedAcis.size() >= MAX_INHERITED_ACIS_DNS) {
+        inheritedAcis.clear();
+      }
+      inheritedAcis.put(dn, inherited);
+    }
+    return inherited;
+  }
+
   /**
    * Add all the ACI from a set of entries to the ACI list. There is no need
    * to check for global ACIs since they are processe by the AciHandler at
@@ -144,6 +178,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       int validAcis = 0;
       for (Entry entry : entries) {
         DN dn=entry.getName();
@@ -173,6 +208,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       aciList.put(dn, new LinkedList<>(acis));
     }
     finally
@@ -198,6 +234,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       int validAcis = 0;
       //Process global "ds-cfg-global-aci" attribute type. The oldentry
       //DN is checked to verify it is equal to the config DN. If not those
@@ -285,6 +322,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       List<LocalizableMessage> failedACIMsgs=new LinkedList<>();
       //Process "aci" attribute types.
       if(hasAci) {
@@ -346,6 +384,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       DN entryDN = entry.getName();
       if (hasGlobalAci && entryDN.equals(configDN) &&
           aciList.remove(DN.rootDN()) == null)
@@ -374,6 +413,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       Iterator<Map.Entry<DN,List<Aci>>> iterator =
               aciList.entrySet().iterator();
       while (iterator.hasNext())
@@ -402,6 +442,7 @@ public class AciList {
     lock.writeLock().lock();
     try
     {
+      inheritedAcis.clear();
       Map<DN,List<Aci>> tempAciList = new HashMap<>();
       Iterator<Map.Entry<DN,List<Aci>>> iterator =
               aciList.entrySet().iterator();
@@ -43,6 +43,12 @@ public class BindRule {
     /** The keyword of a simple bind rule. */
     private final EnumBindRuleKeyword keyword;
 
+    /**
+     * True if the evaluation does not depend on the resource entry nor on the
+     * current time, so that its result can be reused by the operation.
+     */
+    private final boolean targetIndependent;
+
     /** Regular expression group position of a bind rule keyword. */
     private static final int keywordPos = 1;
     /** Regular expression group position of a bind rule operation. */
@@ -90,6 +96,31 @@ public class BindRule {
         this.booleanType = null;
         this.left = null;
         this.right = null;
+        this.targetIndependent = isTargetIndependent(keyword, rule);
+    }
+
+    /**
+     * Determines whether a simple bind rule only depends on the client. The
+     * timeofday and dayofweek bind rules are evaluated against the current
+     * time and the userattr bind rules against the resource entry, so they
+     * are always evaluated.
+     * @param keyword The keyword enumeration.
+     * @param rule The rule corresponding to this keyword.
+     * @return True if the result of the bind rule only depends on the client.
+     */
+    private static boolean isTargetIndependent(EnumBindRuleKeyword keyword, KeywordBindRule rule) {
+        switch (keyword) {
+        case USERDN:
+            return rule instanceof UserDN && !((UserDN) rule).dependsOnResource();
+        case GROUPDN:
+        case IP:
+        case DNS:
+        case AUTHMETHOD:
+        case SSF:
+            return true;
+        default:
+            return false;
+        }
     }
 
     /*
@@ -130,6 +161,7 @@ public class BindRule {
         this.booleanType = booleanType;
         this.left = left;
         this.right = right;
+        this.targetIndependent = left.targetIndependent && right.targetIndependent;
     }
 
     /*
@@ -454,12 +486,22 @@ public class BindRule {
      * Evaluate an bind rule against an evaluation context. If it is a simple
      * bind rule (no boolean type) then grab the keyword rule from the map
      * table and call the corresponding evaluate function. If it is a
-     * complex rule call the routine above "evalComplex()".
+     * complex rule call the routine above "evalComplex()". The result of a
+     * bind rule which does not depend on the resource entry is reused by the
+     * following evaluations of the operation.
      * @param evalCtx The evaluation context to pass to the keyword
      * evaluation function.
      * @return An result enumeration containing the result of the evaluation.
      */
     public EnumEvalResult evaluate(AciEvalContext evalCtx) {
+        Map<BindRule, EnumEvalResult> results = null;
+        if (targetIndependent) {
+            results = evalCtx.getBindRuleResults();
+            EnumEvalResult cached = results.get(this);
+            if (cached != null) {
+                return cached;
+            }
+        }
         EnumEvalResult ret;
         //Simple bind rules have a null booleanType enumeration.
         if(this.booleanType == null) {
@@ -468,7 +510,12 @@ public class BindRule {
         } else {
             ret = evalComplex(left.evaluate(evalCtx),right.evaluate(evalCtx));
         }
-        return EnumEvalResult.negateIfNeeded(ret, negate);
+        ret = EnumEvalResult.negateIfNeeded(ret, negate);
+        if (results != null
+            && (ret == EnumEvalResult.TRUE || ret == EnumEvalResult.FALSE)) {
+            results.put(this, ret);
+        }
+        return ret;
     }
 
     @Override
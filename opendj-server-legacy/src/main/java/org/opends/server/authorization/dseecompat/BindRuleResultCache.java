@@ -0,0 +1,162 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.authorization.dseecompat;
+
+import static org.opends.server.authorization.dseecompat.AciHandler.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.AuthenticationInfo;
+import org.opends.server.types.Entry;
+import org.opends.server.types.Operation;
+
+/**
+ * Caches the results of the bind rules which do not depend on the target
+ * entry, so that they are evaluated once per operation rather than once per
+ * target entry and attribute. The cache is held by an operation attachment.
+ * <p>
+ * The results are kept per authorization identity, since the proxied
+ * authorization and geteffectiverights evaluations of an operation use other
+ * identities than the client's. They are discarded whenever the membership of
+ * a group may have changed, group membership being the only input of these
+ * bind rules which may change during an operation. The bind rules themselves
+ * are keyed by identity, so that a changed ACI never reuses the results of
+ * the ACI it replaced.
+ */
+final class BindRuleResultCache
+{
+  /** The maximum number of authorization identities for which results are cached. */
+  private static final int MAX_IDENTITIES = 8;
+  /** The maximum number of results cached for an authorization identity. */
+  private static final int MAX_RESULTS = 1000;
+
+  /** The results of the bind rules evaluated for an authorization identity. */
+  private static final class IdentityResults
+  {
+    private final DN clientDN;
+    private final Entry clientEntry;
+    private final AuthenticationInfo authInfo;
+    private final long membershipToken;
+    private final ConcurrentMap<BindRule, EnumEvalResult> results = new ConcurrentHashMap<>();
+
+    private IdentityResults(DN clientDN, Entry clientEntry, AuthenticationInfo authInfo, long membershipToken)
+    {
+      this.clientDN = clientDN;
+      this.clientEntry = clientEntry;
+      this.authInfo = authInfo;
+      this.membershipToken = membershipToken;
+    }
+
+    private boolean isFor(DN clientDN, Entry clientEntry, AuthenticationInfo authInfo, long membershipToken)
+    {
+      // The entry and authentication info are compared by reference, they are replaced rather than modified
+      return this.clientEntry == clientEntry
+          && this.authInfo == authInfo
+          && this.membershipToken == membershipToken
+          && this.clientDN.equals(clientDN);
+    }
+  }
+
+  /** The results per authorization identity, guarded by itself. */
+  private final List<IdentityResults> identities = new ArrayList<>();
+
+  private BindRuleResultCache()
+  {
+    // Use getInstance()
+  }
+
+  /**
+   * Returns the cache of bind rule results of an operation, creating it if
+   * needed.
+   *
+   * @param operation
+   *          The operation being evaluated.
+   * @return The cache of bind rule results of the operation.
+   */
+  static BindRuleResultCache getInstance(Operation operation)
+  {
+    // Persistent searches evaluate the entries from the threads of the updates
+    synchronized (operation)
+    {
+      BindRuleResultCache cache = operation.getAttachment(BIND_RULE_RESULTS);
+      if (cache == null)
+      {
+        cache = new BindRuleResultCache();
+        operation.setAttachment(BIND_RULE_RESULTS, cache);
+      }
+      return cache;
+    }
+  }
+
+  /**
+   * Returns the results of the bind rules evaluated for an authorization
+   * identity. The results must only be looked up and added for the bind rules
+   * which do not depend on the target entry. The results added before the
+   * membership of a group changed are not returned by the following calls.
+   *
+   * @param clientDN
+   *          The DN of the authorization identity.
+   * @param clientEntry
+   *          The entry of the authorization identity, may be {@code null}.
+   * @param authInfo
+   *          The authentication information of the client.
+   * @return The results of the bind rules, keyed by bind rule.
+   */
+  Map<BindRule, EnumEvalResult> getResults(DN clientDN, Entry clientEntry, AuthenticationInfo authInfo)
+  {
+    final long membershipToken = DirectoryServer.getGroupManager().membershipToken();
+    synchronized (identities)
+    {
+      for (IdentityResults results : identities)
+      {
+        if (results.isFor(clientDN, clientEntry, authInfo, membershipToken))
+        {
+          if (results.results.size() >= MAX_RESULTS)
+          {
+            results.results.clear();
+          }
+          return results.results;
+        }
+      }
+      if (identities.size() >= MAX_IDENTITIES)
+      {
+        identities.clear();
+      }
+      // The results computed before a membership change are obsolete
+      removeObsoleteResults(membershipToken);
+      final IdentityResults results = new IdentityResults(clientDN, clientEntry, authInfo, membershipToken);
+      identities.add(results);
+      return results.results;
+    }
+  }
+
+  private void removeObsoleteResults(long membershipToken)
+  {
+    for (int i = identities.size() - 1; i >= 0; i--)
+    {
+      if (identities.get(i).membershipToken != membershipToken)
+      {
+        identities.remove(i);
+      }
+    }
+  }
+}
@@ -149,6 +149,21 @@ public class UserDN implements KeywordBindRule {
         }
     }
 
+    /**
+     * Indicates whether this userdn bind rule depends on the resource entry,
+     * which is the case of the "ldap:///self" and "ldap:///parent" URLs.
+     * @return True if the evaluation depends on the resource entry.
+     */
+    boolean dependsOnResource() {
+        for (UserDNTypeURL url : urlList) {
+            EnumUserDNType urlType = url.getUserDNType();
+            if (urlType == EnumUserDNType.SELF || urlType == EnumUserDNType.PARENT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Performs the evaluation of a userdn bind rule based on the
      * evaluation context passed to it. The evaluation stops when there
@@ -42,6 +42,7 @@ public class RebuildConfig
   private final List<String> rebuildList = new ArrayList<>();
   private String tmpDirectory;
   private boolean isClearDegradedState;
+  private boolean online;
 
   /**
    * Get the base DN to rebuild.
@@ -228,4 +229,27 @@ public class RebuildConfig
     this.isClearDegradedState = isClearDegradedState;
   }
 
+  /**
+   * Returns {@code true} if the indexes should be rebuilt while the backend
+   * remains online, processing the updates made concurrently.
+   *
+   * @return {@code true} if the indexes should be rebuilt online.
+   */
+  public boolean isOnline()
+  {
+    return online;
+  }
+
+  /**
+   * Sets whether the indexes should be rebuilt while the backend remains
+   * online.
+   *
+   * @param online
+   *          {@code true} if the indexes should be rebuilt online.
+   */
+  public void setOnline(boolean online)
+  {
+    this.online = online;
+  }
+
 }
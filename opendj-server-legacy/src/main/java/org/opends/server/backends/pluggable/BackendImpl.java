@@ -284,7 +284,7 @@ public abstract class BackendImpl<C extends PluggableBackendCfg> extends Backend
     case RESTORE:
       // Responsibility of the underlying storage.
       return storage.supportsBackupAndRestore();
-    default: // INDEXING, LDIF_EXPORT, LDIF_IMPORT
+    default: // INDEXING, LDIF_EXPORT, LDIF_IMPORT, PARTITIONED_LDIF_EXPORT
       // Responsibility of this pluggable backend.
       return true;
     }
@@ -585,6 +585,28 @@ public abstract class BackendImpl<C extends PluggableBackendCfg> extends Backend
     }
   }
 
+  @Override
+  public long[] getLDIFExportPartitionBounds(DN baseDN, int nbPartitions) throws DirectoryException
+  {
+    checkNotNull(baseDN, "baseDN must not be null");
+
+    final EntryContainer ec = accessBegin(null, baseDN);
+    ec.sharedLock.lock();
+    try
+    {
+      return ec.getExportPartitionBounds(nbPartitions);
+    }
+    catch (StorageRuntimeException e)
+    {
+      throw createDirectoryException(e);
+    }
+    finally
+    {
+      ec.sharedLock.unlock();
+      accessEnd();
+    }
+  }
+
   @Override
   public void exportLDIF(LDIFExportConfig exportConfig)
       throws DirectoryException
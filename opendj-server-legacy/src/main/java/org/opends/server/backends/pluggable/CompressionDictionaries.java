@@ -0,0 +1,262 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.forgerock.util.Utils.*;
+import static org.opends.messages.BackendMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.spi.AccessMode;
+import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Storage;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteOperation;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+
+/**
+ * The dictionaries used for compressing the entries of a backend, persisted in
+ * a tree next to the compressed schema.
+ * <p>
+ * The first entries written with dictionary compression enabled are sampled
+ * and compressed without a dictionary. Once enough content has been sampled, a
+ * dictionary is trained from the samples and stored by a separate thread, then
+ * used for compressing all the following entries. The dictionary is stored in
+ * its own transaction rather than in the transaction of the entry which
+ * completed the samples, so that the dictionary is only used once it is
+ * committed. Dictionaries are never removed, because entries compressed with
+ * them may still be stored.
+ */
+final class CompressionDictionaries
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The tree used to store the dictionaries, keyed by their version number. */
+  private static final TreeName dictionariesTreeName = new TreeName("compressed_schema", "compression_dictionaries");
+
+  /** The amount of entry content sampled for training a dictionary. */
+  private static final int SAMPLE_SIZE = 1024 * 1024;
+  /** The maximum size of a dictionary, Deflate only using the last 32 KB anyway. */
+  private static final int DICTIONARY_SIZE = 16 * 1024;
+  private static final String TRAINER_THREAD_NAME = "COMPRESSION-DICTIONARY-TRAINER-%d";
+
+  private final String backendId;
+  private final Storage storage;
+  private final boolean writeable;
+  private final ConcurrentMap<Integer, CompressionDictionary> dictionaries = new ConcurrentHashMap<>();
+  /** The dictionary used for compressing new entries, {@code null} until one is trained. */
+  private volatile CompressionDictionary latest;
+
+  /** Trains and stores the dictionaries, {@code null} if the storage is read only. */
+  private final ExecutorService trainer;
+
+  /** The entries sampled for training a dictionary, guarded by itself. */
+  private final List<ByteString> samples = new ArrayList<>();
+  /** The size of the samples, which stays above the sample size while a dictionary is trained. */
+  private int samplesSize;
+
+  /**
+   * Creates the dictionaries of a backend, loading the stored ones.
+   *
+   * @param backendId
+   *          the identifier of the backend
+   * @param storage
+   *          the storage in which the tree is held
+   * @param txn
+   *          a non null transaction
+   * @param accessMode
+   *          specifies how the storage has been opened (read only or read/write)
+   * @throws StorageRuntimeException
+   *           If a problem occurs while loading the dictionaries
+   */
+  CompressionDictionaries(String backendId, Storage storage, WriteableTransaction txn, AccessMode accessMode)
+      throws StorageRuntimeException
+  {
+    this.backendId = backendId;
+    this.storage = storage;
+    this.writeable = accessMode.isWriteable();
+    load(txn);
+    this.trainer = writeable
+        ? Executors.newSingleThreadExecutor(newThreadFactory(null, TRAINER_THREAD_NAME, true))
+        : null;
+  }
+
+  private void load(WriteableTransaction txn) throws StorageRuntimeException
+  {
+    if (!writeable && !storage.listTrees().contains(dictionariesTreeName))
+    {
+      // The backend was written before dictionaries were introduced
+      return;
+    }
+    txn.openTree(dictionariesTreeName, writeable);
+    try (Cursor<ByteString, ByteString> cursor = txn.openCursor(dictionariesTreeName))
+    {
+      while (cursor.next())
+      {
+        final CompressionDictionary dictionary =
+            new CompressionDictionary(cursor.getKey().toInt(), cursor.getValue().toByteArray());
+        dictionaries.put(dictionary.getId(), dictionary);
+        if (latest == null || latest.getId() < dictionary.getId())
+        {
+          latest = dictionary;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the dictionary having the provided version number.
+   *
+   * @param id
+   *          the version number of the dictionary
+   * @return the dictionary, or {@code null} if there is none with this version
+   *         number
+   */
+  CompressionDictionary get(int id)
+  {
+    return dictionaries.get(id);
+  }
+
+  /**
+   * Returns the dictionary to use for compressing an entry. While no dictionary
+   * is available, the entry is sampled for training one.
+   *
+   * @param encodedEntry
+   *          the encoded entry to compress
+   * @return the dictionary to use, or {@code null} if the entry must be
+   *         compressed without a dictionary
+   */
+  CompressionDictionary getDictionaryForCompression(ByteSequence encodedEntry)
+  {
+    final CompressionDictionary dictionary = latest;
+    if (dictionary != null || !writeable)
+    {
+      return dictionary;
+    }
+
+    synchronized (samples)
+    {
+      if (latest != null || samplesSize >= SAMPLE_SIZE)
+      {
+        // Trained concurrently, being trained, or a dictionary could not be stored
+        return latest;
+      }
+      samples.add(encodedEntry.toByteString());
+      samplesSize += encodedEntry.length();
+      if (samplesSize >= SAMPLE_SIZE)
+      {
+        final List<ByteString> trainingSamples = new ArrayList<>(samples);
+        samples.clear();
+        startTraining(trainingSamples);
+      }
+      // This entry is compressed without a dictionary, the dictionary is not stored yet
+      return null;
+    }
+  }
+
+  private void startTraining(final List<ByteString> trainingSamples)
+  {
+    try
+    {
+      trainer.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          train(trainingSamples);
+        }
+      });
+    }
+    catch (RejectedExecutionException e)
+    {
+      // The backend is being closed
+      logger.traceException(e);
+    }
+  }
+
+  private void train(List<ByteString> trainingSamples)
+  {
+    final byte[] bytes = CompressionDictionary.train(trainingSamples, DICTIONARY_SIZE);
+    if (bytes.length == 0)
+    {
+      // The entries share nothing: sample again, they may differ later on
+      synchronized (samples)
+      {
+        samplesSize = 0;
+      }
+      return;
+    }
+
+    final CompressionDictionary previous = latest;
+    final int id = previous != null ? previous.getId() + 1 : 1;
+    final CompressionDictionary dictionary = new CompressionDictionary(id, bytes);
+    try
+    {
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          txn.put(dictionariesTreeName, ByteString.valueOfInt(id), ByteString.wrap(bytes));
+        }
+      });
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.warn(WARN_CANNOT_STORE_COMPRESSION_DICTIONARY, stackTraceToSingleLineString(e));
+      return;
+    }
+    // Only published once committed, so that the entries compressed with it can always be read
+    dictionaries.put(id, dictionary);
+    latest = dictionary;
+    logger.info(NOTE_COMPRESSION_DICTIONARY_TRAINED, bytes.length, trainingSamples.size(), backendId);
+  }
+
+  /**
+   * Waits for the dictionary being trained, if any, to be stored. The
+   * dictionaries must be closed before the storage.
+   */
+  void close()
+  {
+    if (trainer == null)
+    {
+      return;
+    }
+    trainer.shutdown();
+    try
+    {
+      trainer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e)
+    {
+      logger.traceException(e);
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+
+/**
+ * A preset dictionary used for compressing entries with the Deflate algorithm.
+ * Deflate finds the strings repeated within the data being compressed, which
+ * a small entry has few of. A dictionary holding the content shared by the
+ * entries provides such strings, so that small entries are effectively
+ * compressed.
+ * <p>
+ * Dictionaries are identified by a version number stored with each compressed
+ * entry, so that an entry is always decompressed with the dictionary it was
+ * compressed with.
+ */
+final class CompressionDictionary
+{
+  /** The length of the strings counted for finding the content shared by the samples. */
+  private static final int DMER_LENGTH = 8;
+  /** The length of the pieces of samples copied into a dictionary. */
+  private static final int SEGMENT_LENGTH = 64;
+
+  /** A piece of sample which may be copied into a dictionary. */
+  private static final class Segment implements Comparable<Segment>
+  {
+    private final ByteSequence sample;
+    private final int offset;
+    private final int length;
+    private int score;
+
+    private Segment(ByteSequence sample, int offset, int length)
+    {
+      this.sample = sample;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int compareTo(Segment other)
+    {
+      // highest score first
+      return Integer.compare(other.score, score);
+    }
+  }
+
+  private final int id;
+  private final byte[] dictionary;
+
+  /**
+   * Creates a dictionary.
+   *
+   * @param id
+   *          the version number of the dictionary
+   * @param dictionary
+   *          the content of the dictionary
+   */
+  CompressionDictionary(int id, byte[] dictionary)
+  {
+    this.id = id;
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Returns the version number of this dictionary.
+   *
+   * @return the version number of this dictionary
+   */
+  int getId()
+  {
+    return id;
+  }
+
+  /**
+   * Returns the content of this dictionary, which must not be modified.
+   *
+   * @return the content of this dictionary
+   */
+  byte[] getBytes()
+  {
+    return dictionary;
+  }
+
+  /**
+   * Trains the content of a dictionary from samples of the data to compress.
+   * <p>
+   * The strings of {@value #DMER_LENGTH} bytes found in the most samples are
+   * the ones worth having in the dictionary. The samples are cut into segments
+   * of {@value #SEGMENT_LENGTH} bytes, and the segments holding most of such
+   * strings are greedily copied into the dictionary. Once a segment is copied,
+   * its strings no longer count for the other segments, so that the dictionary
+   * does not repeat itself. The best segments are copied last, because Deflate
+   * encodes the closest strings with fewer bits.
+   *
+   * @param samples
+   *          the samples of the data to compress
+   * @param maxSize
+   *          the maximum size of the dictionary
+   * @return the content of the dictionary, which may be empty if the samples
+   *         do not share any content
+   */
+  static byte[] train(List<? extends ByteSequence> samples, int maxSize)
+  {
+    // Count in how many samples each string appears
+    final Map<Long, Integer> frequencies = new HashMap<>();
+    for (ByteSequence sample : samples)
+    {
+      for (Long dmer : getDmers(sample, 0, sample.length()))
+      {
+        final Integer frequency = frequencies.get(dmer);
+        frequencies.put(dmer, frequency != null ? frequency + 1 : 1);
+      }
+    }
+
+    final PriorityQueue<Segment> candidates = new PriorityQueue<>();
+    for (ByteSequence sample : samples)
+    {
+      for (int offset = 0; offset + DMER_LENGTH <= sample.length(); offset += SEGMENT_LENGTH)
+      {
+        final Segment segment = new Segment(sample, offset, Math.min(SEGMENT_LENGTH, sample.length() - offset));
+        segment.score = getScore(segment, frequencies);
+        if (segment.score > 0)
+        {
+          candidates.add(segment);
+        }
+      }
+    }
+
+    final List<Segment> selected = new ArrayList<>();
+    int size = 0;
+    Segment segment;
+    while (size < maxSize && (segment = candidates.poll()) != null)
+    {
+      // Scores only decrease, so a segment still scoring at least as much as
+      // the next candidate is the best one
+      final int score = getScore(segment, frequencies);
+      if (score <= 0)
+      {
+        continue;
+      }
+      else if (!candidates.isEmpty() && score < candidates.peek().score)
+      {
+        segment.score = score;
+        candidates.add(segment);
+        continue;
+      }
+      selected.add(segment);
+      size += segment.length;
+      for (Long dmer : getDmers(segment.sample, segment.offset, segment.length))
+      {
+        frequencies.remove(dmer);
+      }
+    }
+
+    final ByteStringBuilder builder = new ByteStringBuilder(size);
+    for (int i = selected.size() - 1; i >= 0; i--)
+    {
+      final Segment s = selected.get(i);
+      builder.appendBytes(s.sample.subSequence(s.offset, s.offset + s.length));
+    }
+    // Keep the end, which holds the best segments
+    final int start = Math.max(0, builder.length() - maxSize);
+    return builder.subSequence(start, builder.length()).toByteArray();
+  }
+
+  /** Only the strings shared by several samples count. */
+  private static int getScore(Segment segment, Map<Long, Integer> frequencies)
+  {
+    int score = 0;
+    for (Long dmer : getDmers(segment.sample, segment.offset, segment.length))
+    {
+      final Integer frequency = frequencies.get(dmer);
+      if (frequency != null && frequency > 1)
+      {
+        score += frequency;
+      }
+    }
+    return score;
+  }
+
+  private static Set<Long> getDmers(ByteSequence bytes, int offset, int length)
+  {
+    final Set<Long> dmers = new HashSet<>();
+    for (int i = offset; i + DMER_LENGTH <= offset + length; i++)
+    {
+      long dmer = 0;
+      for (int j = 0; j < DMER_LENGTH; j++)
+      {
+        dmer = (dmer << 8) | (bytes.byteAt(i + j) & 0xff);
+      }
+      dmers.add(dmer);
+    }
+    return dmers;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "(id=" + id + ", size=" + dictionary.length + ")";
+  }
+}
@@ -37,6 +37,8 @@ final class DataConfig
     private boolean compactEncoding;
     private CompressedSchema compressedSchema;
     private CryptoSuite cryptoSuite;
+    private CompressionDictionaries compressionDictionaries;
+    private boolean compressedWithDictionary;
 
     Builder()
     {
@@ -73,6 +75,18 @@ final class DataConfig
       return this;
     }
 
+    public Builder compressionDictionaries(CompressionDictionaries dictionaries)
+    {
+      this.compressionDictionaries = dictionaries;
+      return this;
+    }
+
+    public Builder compressWithDictionary(boolean enabled)
+    {
+      this.compressedWithDictionary = enabled;
+      return this;
+    }
+
     public DataConfig build()
     {
       return new DataConfig(this);
@@ -87,6 +101,12 @@ final class DataConfig
   private final boolean encrypted;
 
   private final CryptoSuite cryptoSuite;
+
+  /** The dictionaries used for compressing entries, also needed for decompressing them. */
+  private final CompressionDictionaries compressionDictionaries;
+
+  /** Indicates whether data should be compressed with a trained dictionary. */
+  private final boolean compressedWithDictionary;
   /**
    * Construct a new DataConfig object with the specified settings.
    *
@@ -97,6 +117,9 @@ final class DataConfig
     this.compressed = builder.compressed;
     this.encrypted = builder.encrypted;
     this.cryptoSuite = builder.cryptoSuite;
+    this.compressionDictionaries = builder.compressionDictionaries;
+    this.compressedWithDictionary = builder.compressed && builder.compressedWithDictionary
+        && builder.compressionDictionaries != null;
 
     if (builder.compressedSchema == null)
     {
@@ -115,6 +138,16 @@ final class DataConfig
     return compressed;
   }
 
+  boolean isCompressedWithDictionary()
+  {
+    return compressedWithDictionary;
+  }
+
+  CompressionDictionaries getCompressionDictionaries()
+  {
+    return compressionDictionaries;
+  }
+
   boolean isEncrypted()
   {
     return encrypted;
@@ -136,6 +169,8 @@ final class DataConfig
     final StringBuilder builder = new StringBuilder();
     builder.append("DataConfig(compressed=");
     builder.append(compressed);
+    builder.append(", dictionary=");
+    builder.append(compressedWithDictionary);
     builder.append(", encrypted=");
     builder.append(encrypted);
     builder.append(", ");
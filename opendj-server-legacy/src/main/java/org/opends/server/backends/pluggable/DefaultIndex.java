@@ -67,6 +67,12 @@ class DefaultIndex extends AbstractTree implements Index
    */
   private volatile boolean trusted;
 
+  /**
+   * A flag to indicate that this index is being rebuilt while the backend is online. The index is not trusted, but
+   * entryIDs are added to non-existing keys so that the updates made during the rebuild are not lost.
+   */
+  private volatile boolean rebuilding;
+
   /**
    * Create a new index object.
    *
@@ -96,11 +102,7 @@ class DefaultIndex extends AbstractTree implements Index
   final void afterOpen(WriteableTransaction txn, boolean createOnDemand)
   {
     final EnumSet<IndexFlag> flags = state.getIndexFlags(txn, getName());
-    codec = flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
-    if (cryptoSuite.isEncrypted())
-    {
-      codec = new EntryIDSet.EntryIDSetCodecV3(codec, cryptoSuite);
-    }
+    codec = newCodec(flags);
     trusted = flags.contains(TRUSTED);
     if (!trusted && entryContainer.getHighestEntryID(txn).longValue() == 0)
     {
@@ -110,6 +112,33 @@ class DefaultIndex extends AbstractTree implements Index
     }
   }
 
+  /**
+   * The index is about to be emptied, for example before being rebuilt or imported: this is the opportunity to migrate
+   * indexes created by previous versions to the current ID storage encoding.
+   */
+  @Override
+  void beforeDelete(WriteableTransaction txn) throws StorageRuntimeException
+  {
+    if (state.addFlagsToIndex(txn, getName(), COMPACTED, BITMAP))
+    {
+      codec = newCodec(state.getIndexFlags(txn, getName()));
+    }
+  }
+
+  private EntryIDSetCodec newCodec(EnumSet<IndexFlag> flags)
+  {
+    final EntryIDSetCodec newCodec;
+    if (flags.contains(BITMAP))
+    {
+      newCodec = CODEC_V4;
+    }
+    else
+    {
+      newCodec = flags.contains(COMPACTED) ? CODEC_V2 : CODEC_V1;
+    }
+    return cryptoSuite.isEncrypted() ? new EntryIDSet.EntryIDSetCodecV3(newCodec, cryptoSuite) : newCodec;
+  }
+
   @Override
   public String valueToString(ByteString value)
   {
@@ -179,7 +208,7 @@ class DefaultIndex extends AbstractTree implements Index
      * Avoid taking a write lock on a record which has hit all IDs because it is likely to be a
      * point of contention.
      */
-    if (!get(txn, key).isDefined())
+    if (!rebuilding && !get(txn, key).isDefined())
     {
       return;
     }
@@ -200,9 +229,9 @@ class DefaultIndex extends AbstractTree implements Index
            */
           return entryIDSet.size() == 0 ? null : toValue(entryIDSet);
         }
-        else if (trusted)
+        else if (trusted || rebuilding)
         {
-          if (deletedIDs != null)
+          if (deletedIDs != null && trusted)
           {
             logIndexCorruptError(txn, key);
           }
@@ -325,6 +354,27 @@ class DefaultIndex extends AbstractTree implements Index
     return trusted;
   }
 
+  /**
+   * Sets whether this index is being rebuilt while the backend is online.
+   *
+   * @param rebuilding
+   *          {@code true} if the updates must add entryIDs to non-existing keys of this untrusted index
+   */
+  final void setRebuilding(boolean rebuilding)
+  {
+    this.rebuilding = rebuilding;
+  }
+
+  /**
+   * Returns whether this index is being rebuilt while the backend is online.
+   *
+   * @return {@code true} if this index is being rebuilt while the backend is online
+   */
+  final boolean isRebuilding()
+  {
+    return rebuilding;
+  }
+
   final boolean isEncrypted()
   {
     return cryptoSuite.isEncrypted();
@@ -36,7 +36,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -56,6 +58,7 @@ import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.forgerock.opendj.ldap.SortKey;
 import org.forgerock.opendj.ldap.schema.AttributeType;
+import org.forgerock.opendj.server.config.meta.PluggableBackendCfgDefn.EntriesCompressionAlgorithm;
 import org.forgerock.opendj.server.config.server.BackendIndexCfg;
 import org.forgerock.opendj.server.config.server.BackendVLVIndexCfg;
 import org.forgerock.opendj.server.config.server.PluggableBackendCfg;
@@ -81,7 +84,6 @@ import org.opends.server.controls.ServerSideSortRequestControl;
 import org.opends.server.controls.ServerSideSortResponseControl;
 import org.opends.server.controls.SubtreeDeleteControl;
 import org.opends.server.controls.VLVRequestControl;
-import org.opends.server.controls.VLVResponseControl;
 import org.opends.server.core.AddOperation;
 import org.opends.server.core.DeleteOperation;
 import org.opends.server.core.DirectoryServer;
@@ -125,6 +127,11 @@ public class EntryContainer
   /** The name of the state tree. */
   private static final String STATE_TREE_NAME = STATE_INDEX_NAME;
 
+  /** Minimum number of candidates for evaluating an indexed search in parallel. */
+  private static final int PARALLEL_SEARCH_MIN_CANDIDATES = 1024;
+  /** Number of candidates evaluated by each parallel search task. */
+  private static final int PARALLEL_SEARCH_CHUNK_SIZE = 128;
+
   /** The attribute index configuration manager. */
   private final AttributeIndexCfgManager attributeIndexCfgManager;
   /** The vlv index configuration manager. */
@@ -388,6 +395,9 @@ public class EntryContainer
   {
     return new DataConfig.Builder()
         .compress(config.isEntriesCompressed())
+        .compressWithDictionary(
+            config.getEntriesCompressionAlgorithm() == EntriesCompressionAlgorithm.DEFLATE_DICTIONARY)
+        .compressionDictionaries(rootContainer.getCompressionDictionaries())
         .encode(config.isCompactEncoding())
         .encrypt(config.isConfidentialityEnabled())
         .cryptoSuite(serverContext.getCryptoManager().newCryptoSuite(config.getCipherTransformation(),
@@ -596,6 +606,44 @@ public class EntryContainer
     }
   }
 
+  /**
+   * Splits the entry IDs of this entry container into ranges of similar sizes, so that the entries
+   * can be exported in parallel. The last range is unbounded, hence it holds the entries added
+   * after the split.
+   *
+   * @param nbPartitions the number of ranges
+   * @return the {@code nbPartitions + 1} bounds of the ranges
+   * @throws StorageRuntimeException If an error occurs in the storage.
+   */
+  long[] getExportPartitionBounds(final int nbPartitions) throws StorageRuntimeException
+  {
+    final long highestID;
+    try
+    {
+      highestID = storage.read(new ReadOperation<Long>()
+      {
+        @Override
+        public Long run(ReadableTransaction txn) throws Exception
+        {
+          return getHighestEntryID(txn).longValue();
+        }
+      });
+    }
+    catch (Exception e)
+    {
+      throw new StorageRuntimeException(e);
+    }
+
+    final long rangeSize = highestID / nbPartitions + 1;
+    final long[] bounds = new long[nbPartitions + 1];
+    for (int i = 0; i < nbPartitions; i++)
+    {
+      bounds[i] = i * rangeSize;
+    }
+    bounds[nbPartitions] = Long.MAX_VALUE;
+    return bounds;
+  }
+
   boolean hasSubordinates(final DN dn)
   {
     try
@@ -1313,25 +1361,35 @@ public class EntryContainer
     if (continueSearch)
     {
       final SearchFilter filter = searchOperation.getFilter();
-      for (int i = findStartIndex(beginEntryID, entryIDReorderedSet); i < entryIDReorderedSet.length; i++)
+      final int startIndex = findStartIndex(beginEntryID, entryIDReorderedSet);
+      final ForkJoinPool searchPool = rootContainer.getSearchPool();
+      if (searchPool != null && entryIDReorderedSet.length - startIndex >= PARALLEL_SEARCH_MIN_CANDIDATES)
       {
-        EntryID entryID = new EntryID(entryIDReorderedSet[i]);
-        Entry entry;
-        try
+        if (searchIndexedInParallel(searchPool, entryIDReorderedSet, startIndex, candidatesAreInScope,
+            searchOperation, pageRequest))
         {
-          entry = getEntry(txn, entryID);
+          return;
         }
-        catch (Exception e)
+      }
+      else
+      {
+        for (int i = startIndex; i < entryIDReorderedSet.length; i++)
         {
-          logger.traceException(e);
-          continue;
-        }
+          EntryID entryID = new EntryID(entryIDReorderedSet[i]);
+          Entry entry;
+          try
+          {
+            entry = getEntry(txn, entryID);
+          }
+          catch (Exception e)
+          {
+            logger.traceException(e);
+            continue;
+          }
 
-        // Process the candidate entry.
-        if (entry != null
-              && isInScope(candidatesAreInScope, searchScope, aBaseDN, entry)
-              && (manageDsaIT || entry.getReferralURLs() == null)
-              && filter.matchesEntry(entry))
+          // Process the candidate entry.
+          if (entry != null && isCandidateMatching(entry, candidatesAreInScope, searchScope, aBaseDN, manageDsaIT,
+              filter))
           {
             if (isPageFull(searchOperation, pageRequest))
             {
@@ -1347,6 +1405,7 @@ public class EntryContainer
               break;
             }
           }
+        }
       }
       searchOperation.checkIfCanceled(false);
     }
@@ -1368,6 +1427,230 @@ public class EntryContainer
     addPagedResultsControl(searchOperation, pageRequest, null);
   }
 
+  /**
+   * Evaluates the candidate entries of an indexed search with the provided fork-join pool and
+   * returns the matching entries from the current thread, in candidate order.
+   * <p>
+   * Candidates are evaluated in batches: while the entries of one batch are being returned to the
+   * client, the pool is already fetching and filtering the next one. Size limits, abandon requests
+   * and paged results cookies are therefore handled exactly as in the sequential case.
+   *
+   * @param searchPool
+   *          The pool used for evaluating the candidates.
+   * @param entryIDs
+   *          The candidate entry IDs.
+   * @param startIndex
+   *          The index of the first candidate to evaluate.
+   * @param candidatesAreInScope
+   *          true if it is certain that every candidate entry is in the search scope.
+   * @param searchOperation
+   *          The search operation.
+   * @param pageRequest
+   *          A Paged Results control, or null if none.
+   * @return {@code true} if the page is full and the paged results cookie has been set
+   * @throws DirectoryException
+   *           If an error prevented the search from being processed.
+   * @throws CanceledOperationException
+   *           If the search operation has been abandoned.
+   */
+  private boolean searchIndexedInParallel(ForkJoinPool searchPool, long[] entryIDs, int startIndex,
+      boolean candidatesAreInScope, SearchOperation searchOperation, PagedResultsControl pageRequest)
+      throws DirectoryException, CanceledOperationException
+  {
+    final int batchSize = PARALLEL_SEARCH_CHUNK_SIZE * searchPool.getParallelism();
+    CandidatesEvaluation next = new CandidatesEvaluation(
+        entryIDs, startIndex, Math.min(startIndex + batchSize, entryIDs.length), candidatesAreInScope, searchOperation);
+    submit(searchPool, next);
+    try
+    {
+      while (next != null)
+      {
+        final CandidatesEvaluation current = next;
+        current.join();
+
+        // Start evaluating the following candidates while returning the current ones.
+        next = null;
+        if (current.to < entryIDs.length)
+        {
+          next = new CandidatesEvaluation(entryIDs, current.to, Math.min(current.to + batchSize, entryIDs.length),
+              candidatesAreInScope, searchOperation);
+          submit(searchPool, next);
+        }
+
+        for (int i = current.from; i < current.to; i++)
+        {
+          final Object result = current.results[i - current.from];
+          if (result instanceof DirectoryException)
+          {
+            throw (DirectoryException) result;
+          }
+          else if (result instanceof StorageRuntimeException)
+          {
+            throw (StorageRuntimeException) result;
+          }
+          else if (result != null)
+          {
+            if (isPageFull(searchOperation, pageRequest))
+            {
+              // Set the cookie to remember where we were.
+              addPagedResultsControl(searchOperation, pageRequest, new EntryID(entryIDs[i]).toByteString());
+              return true;
+            }
+            if (!searchOperation.returnEntry((Entry) result, null))
+            {
+              // We have been told to discontinue processing of the search.
+              // This could be due to size limit exceeded or operation cancelled
+              return false;
+            }
+          }
+        }
+        searchOperation.checkIfCanceled(false);
+      }
+      return false;
+    }
+    finally
+    {
+      if (next != null)
+      {
+        next.cancel(false);
+      }
+    }
+  }
+
+  private static void submit(ForkJoinPool searchPool, CandidatesEvaluation evaluation)
+  {
+    try
+    {
+      searchPool.execute(evaluation);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // The pool has been shut down by a configuration change: evaluate from the current thread.
+      logger.traceException(e);
+      evaluation.evaluate(evaluation.from, evaluation.to);
+      evaluation.complete(null);
+    }
+  }
+
+  private boolean isCandidateMatching(Entry entry, boolean candidatesAreInScope, SearchScope searchScope,
+      DN aBaseDN, boolean manageDsaIT, SearchFilter filter) throws DirectoryException
+  {
+    return isInScope(candidatesAreInScope, searchScope, aBaseDN, entry)
+        && (manageDsaIT || entry.getReferralURLs() == null)
+        && filter.matchesEntry(entry);
+  }
+
+  /**
+   * Fetches and filters a range of search candidates. Each result slot receives either the matching
+   * entry, {@code null} if the candidate must not be returned, or the {@link DirectoryException}
+   * raised while evaluating the filter against it. If the storage cannot be read, every slot of the
+   * range receives the {@link StorageRuntimeException}, so that the search fails as a sequential
+   * search would.
+   */
+  private final class CandidatesEvaluation extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] entryIDs;
+    private final int from;
+    private final int to;
+    private final Object[] results;
+    private final int resultsOffset;
+    private final boolean candidatesAreInScope;
+    private final SearchOperation searchOperation;
+
+    private CandidatesEvaluation(long[] entryIDs, int from, int to, boolean candidatesAreInScope,
+        SearchOperation searchOperation)
+    {
+      this(entryIDs, from, to, new Object[to - from], from, candidatesAreInScope, searchOperation);
+    }
+
+    private CandidatesEvaluation(long[] entryIDs, int from, int to, Object[] results, int resultsOffset,
+        boolean candidatesAreInScope, SearchOperation searchOperation)
+    {
+      this.entryIDs = entryIDs;
+      this.from = from;
+      this.to = to;
+      this.results = results;
+      this.resultsOffset = resultsOffset;
+      this.candidatesAreInScope = candidatesAreInScope;
+      this.searchOperation = searchOperation;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (to - from <= PARALLEL_SEARCH_CHUNK_SIZE)
+      {
+        evaluate(from, to);
+        return;
+      }
+      final int middle = (from + to) >>> 1;
+      invokeAll(
+          new CandidatesEvaluation(entryIDs, from, middle, results, resultsOffset, candidatesAreInScope,
+              searchOperation),
+          new CandidatesEvaluation(entryIDs, middle, to, results, resultsOffset, candidatesAreInScope,
+              searchOperation));
+    }
+
+    private void evaluate(final int start, final int end)
+    {
+      try
+      {
+        // Transactions are bound to the thread which opened them.
+        storage.read(new ReadOperation<Void>()
+        {
+          @Override
+          public Void run(ReadableTransaction txn) throws Exception
+          {
+            final SearchScope searchScope = searchOperation.getScope();
+            final DN aBaseDN = searchOperation.getBaseDN();
+            final boolean manageDsaIT = isManageDsaITOperation(searchOperation);
+            final SearchFilter filter = searchOperation.getFilter();
+            for (int i = start; i < end && !isCancelled(); i++)
+            {
+              results[i - resultsOffset] =
+                  evaluateCandidate(txn, entryIDs[i], searchScope, aBaseDN, manageDsaIT, filter);
+            }
+            return null;
+          }
+        });
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        final StorageRuntimeException failure =
+            e instanceof StorageRuntimeException ? (StorageRuntimeException) e : new StorageRuntimeException(e);
+        Arrays.fill(results, start - resultsOffset, end - resultsOffset, failure);
+      }
+    }
+
+    private Object evaluateCandidate(ReadableTransaction txn, long entryID, SearchScope searchScope, DN aBaseDN,
+        boolean manageDsaIT, SearchFilter filter)
+    {
+      final Entry entry;
+      try
+      {
+        entry = getEntry(txn, new EntryID(entryID));
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        return null;
+      }
+
+      try
+      {
+        return entry != null && isCandidateMatching(entry, candidatesAreInScope, searchScope, aBaseDN, manageDsaIT,
+            filter) ? entry : null;
+      }
+      catch (DirectoryException e)
+      {
+        return e;
+      }
+    }
+  }
+
   private int findStartIndex(Long beginEntryID, long[] entryIDReorderedSet)
   {
     if (beginEntryID == null)
@@ -2300,8 +2583,13 @@ public class EntryContainer
   {
     for (Tree tree : listTrees())
     {
-      tree.delete(txn);
+      if (tree != state)
+      {
+        tree.delete(txn);
+      }
     }
+    // Indexes may update their state while being deleted, so remove it last.
+    state.delete(txn);
   }
 
   /**
@@ -2542,178 +2830,33 @@ public class EntryContainer
     final SearchScope scope = searchOperation.getScope();
     final SearchFilter filter = searchOperation.getFilter();
 
-    final TreeMap<ByteString, EntryID> sortMap = new TreeMap<>();
-    for (EntryID id : entryIDSet)
-    {
-      try
-      {
-        Entry e = getEntry(txn, id);
-        if (e.matchesBaseAndScope(baseDN, scope) && filter.matchesEntry(e))
-        {
-          sortMap.put(encodeVLVKey(sortKeys, e, id.longValue()), id);
-        }
-      }
-      catch (Exception e)
-      {
-        LocalizableMessage message = ERR_ENTRYIDSORTER_CANNOT_EXAMINE_ENTRY.get(id, getExceptionMessage(e));
-        throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
-      }
-    }
-
-    // See if there is a VLV request to further pare down the set of results, and if there is where it should be
-    // processed by offset or assertion value.
-    if (vlvRequest == null)
-    {
-      return toArray(sortMap.values());
-    }
-
-    if (vlvRequest.getTargetType() == VLVRequestControl.TYPE_TARGET_BYOFFSET)
-    {
-      return sortByOffset(searchOperation, vlvRequest, sortMap);
-    }
-    return sortByGreaterThanOrEqualAssertion(searchOperation, vlvRequest, sortKeys, sortMap);
-  }
-
-  private static final long[] toArray(Collection<EntryID> entryIDs)
-  {
-    final long[] array = new long[entryIDs.size()];
-    int i = 0;
-    for (EntryID entryID : entryIDs)
-    {
-      array[i++] = entryID.longValue();
-    }
-    return array;
-  }
-
-  private static final long[] sortByGreaterThanOrEqualAssertion(SearchOperation searchOperation,
-      VLVRequestControl vlvRequest, List<SortKey> sortKeys, final TreeMap<ByteString, EntryID> sortMap)
-      throws DirectoryException
-  {
-    ByteString assertionValue = vlvRequest.getGreaterThanOrEqualAssertion();
-    ByteSequence encodedTargetAssertion =
-        encodeTargetAssertion(sortKeys, assertionValue, searchOperation, sortMap.size());
-
-    boolean targetFound = false;
-    int index = 0;
-    int targetIndex = 0;
-    int startIndex = 0;
-    int includedAfterCount = 0;
-    long[] idSet = new long[sortMap.size()];
-    for (Map.Entry<ByteString, EntryID> entry : sortMap.entrySet())
+    try (EntryIDSorter sorter = EntryIDSorter.newInstance(
+        searchOperation, sortKeys, vlvRequest, entryIDSet.size(), EntryIDSorter.getTempDir(backendID)))
     {
-      ByteString vlvKey = entry.getKey();
-      EntryID id = entry.getValue();
-      idSet[index++] = id.longValue();
-
-      if (targetFound)
+      for (EntryID id : entryIDSet)
       {
-        includedAfterCount++;
-        if (includedAfterCount >= vlvRequest.getAfterCount())
+        final ByteString vlvKey;
+        try
         {
-          break;
+          Entry e = getEntry(txn, id);
+          if (!e.matchesBaseAndScope(baseDN, scope) || !filter.matchesEntry(e))
+          {
+            continue;
+          }
+          vlvKey = encodeVLVKey(sortKeys, e, id.longValue());
         }
-      }
-      else
-      {
-        targetFound = vlvKey.compareTo(encodedTargetAssertion) >= 0;
-        if (targetFound)
+        catch (Exception e)
         {
-          startIndex = Math.max(0, targetIndex - vlvRequest.getBeforeCount());
+          LocalizableMessage message = ERR_ENTRYIDSORTER_CANNOT_EXAMINE_ENTRY.get(id, getExceptionMessage(e));
+          throw new DirectoryException(DirectoryServer.getServerErrorResultCode(), message, e);
         }
-        targetIndex++;
+        sorter.add(vlvKey);
       }
-    }
 
-    final long[] result;
-    if (targetFound)
-    {
-      final long[] array = new long[index - startIndex];
-      System.arraycopy(idSet, startIndex, array, 0, array.length);
-      result = array;
-    }
-    else
-    {
-      /*
-       * No entry was found to be greater than or equal to the sort key, so the target offset will
-       * be one greater than the content count.
-       */
-      targetIndex = sortMap.size() + 1;
-      result = new long[0];
+      // See if there is a VLV request to further pare down the set of results, and if there is where it should be
+      // processed by offset or assertion value.
+      return sorter.sort(searchOperation);
     }
-    addVLVResponseControl(searchOperation, targetIndex, sortMap.size(), SUCCESS);
-    return result;
-  }
-
-  private static final long[] sortByOffset(SearchOperation searchOperation, VLVRequestControl vlvRequest,
-      TreeMap<ByteString, EntryID> sortMap) throws DirectoryException
-  {
-    int targetOffset = vlvRequest.getOffset();
-    if (targetOffset < 0)
-    {
-      // The client specified a negative target offset. This should never be allowed.
-      addVLVResponseControl(searchOperation, targetOffset, sortMap.size(), OFFSET_RANGE_ERROR);
-
-      LocalizableMessage message = ERR_ENTRYIDSORTER_NEGATIVE_START_POS.get();
-      throw new DirectoryException(ResultCode.VIRTUAL_LIST_VIEW_ERROR, message);
-    }
-
-    // This is an easy mistake to make, since VLV offsets start at 1 instead of 0. We'll assume the client meant
-    // to use 1.
-    targetOffset = (targetOffset == 0) ? 1 : targetOffset;
-
-    int beforeCount = vlvRequest.getBeforeCount();
-    int afterCount = vlvRequest.getAfterCount();
-    int listOffset = targetOffset - 1; // VLV offsets start at 1, not 0.
-    int startPos = listOffset - beforeCount;
-    if (startPos < 0)
-    {
-      // This can happen if beforeCount >= offset, and in this case we'll just adjust the start position to ignore
-      // the range of beforeCount that doesn't exist.
-      startPos = 0;
-      beforeCount = listOffset;
-    }
-    else if (startPos >= sortMap.size())
-    {
-      // The start position is beyond the end of the list. In this case, we'll assume that the start position was
-      // one greater than the size of the list and will only return the beforeCount entries.
-      targetOffset = sortMap.size() + 1;
-      listOffset = sortMap.size();
-      startPos = listOffset - beforeCount;
-      afterCount = 0;
-    }
-
-    int count = 1 + beforeCount + afterCount;
-    long[] sortedIDs = new long[count];
-    int treePos = 0;
-    int arrayPos = 0;
-    for (EntryID id : sortMap.values())
-    {
-      if (treePos++ < startPos)
-      {
-        continue;
-      }
-
-      sortedIDs[arrayPos++] = id.longValue();
-      if (arrayPos >= count)
-      {
-        break;
-      }
-    }
-
-    if (arrayPos < count)
-    {
-      // We don't have enough entries in the set to meet the requested page size, so we'll need to shorten the array.
-      sortedIDs = Arrays.copyOf(sortedIDs, arrayPos);
-    }
-
-    addVLVResponseControl(searchOperation, targetOffset, sortMap.size(), SUCCESS);
-    return sortedIDs;
-  }
-
-  private static void addVLVResponseControl(SearchOperation searchOp, int targetPosition, int contentCount,
-      int vlvResultCode)
-  {
-    searchOp.addResponseControl(new VLVResponseControl(targetPosition, contentCount, vlvResultCode));
   }
 
   /** Get the exclusive lock. */
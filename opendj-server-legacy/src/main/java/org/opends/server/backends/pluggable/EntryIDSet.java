@@ -43,10 +43,13 @@ final class EntryIDSet implements Iterable<EntryID>
 {
   public static final EntryIDSetCodec CODEC_V1 = new EntryIDSetCodecV1();
   public static final EntryIDSetCodec CODEC_V2 = new EntryIDSetCodecV2();
+  public static final EntryIDSetCodec CODEC_V4 = new EntryIDSetCodecV4();
 
   private static final ByteSequence NO_KEY = ByteString.valueOfUtf8("<none>");
   private static final long[] EMPTY_LONG_ARRAY = new long[0];
   private static final long[] NO_ENTRY_IDS_RANGE = new long[] { 0, 0 };
+  /** Sets smaller than this are always stored as an array, whatever their density. */
+  private static final int BITMAP_MIN_SIZE = 512;
 
   /** Interface for EntryIDSet concrete implementations. */
   private interface EntryIDSetImplementor extends Iterable<EntryID>
@@ -272,6 +275,936 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Concrete implementation representing a set of EntryIDs as a compressed bitmap.
+   * <p>
+   * IDs are split into chunks of 65536 consecutive values sharing the same high bits. Each chunk only stores the low 16
+   * bits of its IDs, either as a sorted array when the chunk is sparse or as a plain bitmap when it is dense. Unions,
+   * intersections and differences are performed chunk by chunk and in place, so that combining large sets does not
+   * allocate a new array of IDs for each filter component.
+   */
+  private static final class BitmapImpl implements EntryIDSetImplementor
+  {
+    /** The high bits of the IDs held by each chunk, in ascending order. */
+    private long[] highs;
+    private Chunk[] chunks;
+    private int nbChunks;
+    private long size;
+
+    BitmapImpl()
+    {
+      this(4);
+    }
+
+    private BitmapImpl(int capacity)
+    {
+      highs = new long[capacity];
+      chunks = new Chunk[capacity];
+    }
+
+    BitmapImpl(BitmapImpl other)
+    {
+      this(Math.max(other.nbChunks, 4));
+      for (int i = 0; i < other.nbChunks; i++)
+      {
+        highs[i] = other.highs[i];
+        chunks[i] = other.chunks[i].copy();
+      }
+      nbChunks = other.nbChunks;
+      size = other.size;
+    }
+
+    /**
+     * Creates a bitmap containing the provided IDs.
+     *
+     * @param entryIDs
+     *          IDs sorted in ascending order
+     * @return a new bitmap containing the provided IDs
+     */
+    static BitmapImpl valueOf(long[] entryIDs)
+    {
+      final BitmapImpl bitmap = new BitmapImpl();
+      int start = 0;
+      while (start < entryIDs.length)
+      {
+        final long high = highBits(entryIDs[start]);
+        int end = start + 1;
+        while (end < entryIDs.length && highBits(entryIDs[end]) == high)
+        {
+          end++;
+        }
+        bitmap.appendChunk(high, Chunk.valueOf(entryIDs, start, end));
+        start = end;
+      }
+      return bitmap;
+    }
+
+    @Override
+    public long size()
+    {
+      return size;
+    }
+
+    @Override
+    public void toString(StringBuilder buffer)
+    {
+      buffer.append("[COUNT:").append(size()).append("]");
+    }
+
+    @Override
+    public boolean isDefined()
+    {
+      return true;
+    }
+
+    @Override
+    public boolean add(EntryID entryID)
+    {
+      final long id = entryID.longValue();
+      final long high = highBits(id);
+      final int pos = indexOfChunk(high);
+      if (pos < 0)
+      {
+        insertChunk(-(pos + 1), high, new ArrayChunk().add(lowBits(id)));
+        size++;
+        return true;
+      }
+      final Chunk chunk = chunks[pos];
+      final int cardinality = chunk.cardinality();
+      chunks[pos] = chunk.add(lowBits(id));
+      if (chunks[pos].cardinality() != cardinality)
+      {
+        size++;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean remove(EntryID entryID)
+    {
+      final long id = entryID.longValue();
+      final int pos = indexOfChunk(highBits(id));
+      if (pos < 0)
+      {
+        return false;
+      }
+      final Chunk chunk = chunks[pos];
+      final int cardinality = chunk.cardinality();
+      chunks[pos] = chunk.remove(lowBits(id));
+      if (chunks[pos].cardinality() == cardinality)
+      {
+        return false;
+      }
+      size--;
+      if (chunks[pos].cardinality() == 0)
+      {
+        removeChunk(pos);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean contains(EntryID entryID)
+    {
+      final long id = entryID.longValue();
+      final int pos = indexOfChunk(highBits(id));
+      return pos >= 0 && chunks[pos].contains(lowBits(id));
+    }
+
+    @Override
+    public void addAll(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        or((BitmapImpl) that.concreteImpl);
+      }
+      else if (that.size() < BITMAP_MIN_SIZE)
+      {
+        for (long id : that.getIDs())
+        {
+          add(new EntryID(id));
+        }
+      }
+      else
+      {
+        or(valueOf(that.getIDs()));
+      }
+    }
+
+    @Override
+    public void removeAll(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        andNot((BitmapImpl) that.concreteImpl);
+      }
+      else
+      {
+        for (long id : that.getIDs())
+        {
+          remove(new EntryID(id));
+        }
+      }
+    }
+
+    /**
+     * Retains only the IDs of this bitmap which are contained in the provided set.
+     *
+     * @param that
+     *          a defined set of IDs
+     * @return the implementation holding the result, which is this bitmap or an array if it is denser.
+     */
+    EntryIDSetImplementor retainAll(EntryIDSet that)
+    {
+      if (that.concreteImpl instanceof BitmapImpl)
+      {
+        and((BitmapImpl) that.concreteImpl);
+        return isDenserThanArray() ? this : new DefinedImpl(getIDs());
+      }
+      return newDefinedImpl(retainContained(that.getIDs()));
+    }
+
+    /**
+     * Returns the IDs of the provided array which are contained in this bitmap.
+     *
+     * @param entryIDs
+     *          IDs sorted in ascending order
+     * @return the IDs contained in this bitmap, sorted in ascending order.
+     */
+    long[] retainContained(long[] entryIDs)
+    {
+      final long[] retained = new long[entryIDs.length];
+      int nbRetained = 0;
+      int pos = -1;
+      long high = -1;
+      for (long id : entryIDs)
+      {
+        if (highBits(id) != high)
+        {
+          high = highBits(id);
+          pos = indexOfChunk(high);
+        }
+        if (pos >= 0 && chunks[pos].contains(lowBits(id)))
+        {
+          retained[nbRetained++] = id;
+        }
+      }
+      return nbRetained < retained.length ? Arrays.copyOf(retained, nbRetained) : retained;
+    }
+
+    @Override
+    public Iterator<EntryID> iterator()
+    {
+      return new BitmapIterator(this);
+    }
+
+    @Override
+    public long[] getRange()
+    {
+      if (nbChunks != 0)
+      {
+        final int last = nbChunks - 1;
+        return new long[] { toID(highs[0], chunks[0].first()), toID(highs[last], chunks[last].last()) };
+      }
+      return NO_ENTRY_IDS_RANGE;
+    }
+
+    @Override
+    public long[] getIDs()
+    {
+      final long[] entryIDs = new long[(int) size];
+      int offset = 0;
+      for (int i = 0; i < nbChunks; i++)
+      {
+        offset = chunks[i].copyTo(entryIDs, offset, highs[i] << 16);
+      }
+      return entryIDs;
+    }
+
+    /**
+     * Returns whether this bitmap has a smaller memory footprint than the equivalent array of IDs.
+     *
+     * @return true if this bitmap is denser than an array of IDs
+     */
+    boolean isDenserThanArray()
+    {
+      if (size < BITMAP_MIN_SIZE)
+      {
+        return false;
+      }
+      long footprint = 0;
+      for (int i = 0; i < nbChunks; i++)
+      {
+        footprint += Chunk.footprint(chunks[i].cardinality());
+      }
+      return footprint < size * LONG_SIZE;
+    }
+
+    private void or(BitmapImpl that)
+    {
+      final long[] newHighs = new long[nbChunks + that.nbChunks];
+      final Chunk[] newChunks = new Chunk[newHighs.length];
+      int i = 0, j = 0, k = 0;
+      while (i < nbChunks || j < that.nbChunks)
+      {
+        if (j == that.nbChunks || (i < nbChunks && highs[i] < that.highs[j]))
+        {
+          newHighs[k] = highs[i];
+          newChunks[k++] = chunks[i++];
+        }
+        else if (i == nbChunks || that.highs[j] < highs[i])
+        {
+          newHighs[k] = that.highs[j];
+          newChunks[k++] = that.chunks[j++].copy();
+        }
+        else
+        {
+          newHighs[k] = highs[i];
+          newChunks[k++] = chunks[i++].or(that.chunks[j++]);
+        }
+      }
+      highs = newHighs;
+      chunks = newChunks;
+      nbChunks = k;
+      updateSize();
+    }
+
+    private void and(BitmapImpl that)
+    {
+      int i = 0, j = 0, k = 0;
+      while (i < nbChunks && j < that.nbChunks)
+      {
+        if (highs[i] < that.highs[j])
+        {
+          i++;
+        }
+        else if (that.highs[j] < highs[i])
+        {
+          j++;
+        }
+        else
+        {
+          final Chunk chunk = chunks[i].and(that.chunks[j++]);
+          if (chunk.cardinality() != 0)
+          {
+            highs[k] = highs[i];
+            chunks[k++] = chunk;
+          }
+          i++;
+        }
+      }
+      Arrays.fill(chunks, k, nbChunks, null);
+      nbChunks = k;
+      updateSize();
+    }
+
+    private void andNot(BitmapImpl that)
+    {
+      int i = 0, j = 0, k = 0;
+      while (i < nbChunks)
+      {
+        while (j < that.nbChunks && that.highs[j] < highs[i])
+        {
+          j++;
+        }
+        Chunk chunk = chunks[i];
+        if (j < that.nbChunks && that.highs[j] == highs[i])
+        {
+          chunk = chunk.andNot(that.chunks[j++]);
+        }
+        if (chunk.cardinality() != 0)
+        {
+          highs[k] = highs[i];
+          chunks[k++] = chunk;
+        }
+        i++;
+      }
+      Arrays.fill(chunks, k, nbChunks, null);
+      nbChunks = k;
+      updateSize();
+    }
+
+    private void updateSize()
+    {
+      size = 0;
+      for (int i = 0; i < nbChunks; i++)
+      {
+        size += chunks[i].cardinality();
+      }
+    }
+
+    private int indexOfChunk(long high)
+    {
+      if (nbChunks > 0 && highs[nbChunks - 1] == high)
+      {
+        // Fast path for IDs added in ascending order
+        return nbChunks - 1;
+      }
+      return Arrays.binarySearch(highs, 0, nbChunks, high);
+    }
+
+    private void appendChunk(long high, Chunk chunk)
+    {
+      insertChunk(nbChunks, high, chunk);
+      size += chunk.cardinality();
+    }
+
+    private void insertChunk(int pos, long high, Chunk chunk)
+    {
+      if (nbChunks == highs.length)
+      {
+        highs = Arrays.copyOf(highs, Math.max(nbChunks * 2, 4));
+        chunks = Arrays.copyOf(chunks, Math.max(nbChunks * 2, 4));
+      }
+      System.arraycopy(highs, pos, highs, pos + 1, nbChunks - pos);
+      System.arraycopy(chunks, pos, chunks, pos + 1, nbChunks - pos);
+      highs[pos] = high;
+      chunks[pos] = chunk;
+      nbChunks++;
+    }
+
+    private void removeChunk(int pos)
+    {
+      System.arraycopy(highs, pos + 1, highs, pos, nbChunks - pos - 1);
+      System.arraycopy(chunks, pos + 1, chunks, pos, nbChunks - pos - 1);
+      chunks[--nbChunks] = null;
+    }
+
+    private static long highBits(long id)
+    {
+      return id >>> 16;
+    }
+
+    private static int lowBits(long id)
+    {
+      return (int) (id & 0xFFFF);
+    }
+
+    private static long toID(long high, int low)
+    {
+      return (high << 16) | low;
+    }
+  }
+
+  /** Iterator for a bitmap of Entry IDs. It returns values in order of ID. */
+  private static final class BitmapIterator implements Iterator<EntryID>
+  {
+    private final BitmapImpl bitmap;
+    private int chunkIndex;
+    /** Position of the next value in the current chunk: an array index or a bit index. */
+    private int position;
+    private long remaining;
+
+    BitmapIterator(BitmapImpl bitmap)
+    {
+      this.bitmap = bitmap;
+      this.remaining = bitmap.size;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return remaining > 0;
+    }
+
+    @Override
+    public EntryID next()
+    {
+      if (!hasNext())
+      {
+        throw new NoSuchElementException();
+      }
+      Chunk chunk = bitmap.chunks[chunkIndex];
+      int low = chunk.valueAtOrAfter(position);
+      while (low < 0)
+      {
+        chunk = bitmap.chunks[++chunkIndex];
+        position = 0;
+        low = chunk.valueAtOrAfter(position);
+      }
+      position = chunk.positionAfter(position, low);
+      remaining--;
+      return new EntryID(BitmapImpl.toID(bitmap.highs[chunkIndex], low));
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /** The low 16 bits of the IDs of a bitmap sharing the same high bits. */
+  private abstract static class Chunk
+  {
+    /** Beyond this cardinality, a plain bitmap is smaller than a sorted array of values. */
+    static final int MAX_ARRAY_CARDINALITY = 4096;
+    static final int NB_WORDS = 1024;
+    /** Approximate memory used by the references, object header and high bits of a chunk. */
+    static final int CHUNK_OVERHEAD = 40;
+
+    static long footprint(int cardinality)
+    {
+      return CHUNK_OVERHEAD + (cardinality <= MAX_ARRAY_CARDINALITY ? cardinality * 2 : NB_WORDS * LONG_SIZE);
+    }
+
+    static Chunk valueOf(long[] entryIDs, int start, int end)
+    {
+      final int cardinality = end - start;
+      if (cardinality > MAX_ARRAY_CARDINALITY)
+      {
+        final BitsChunk chunk = new BitsChunk();
+        for (int i = start; i < end; i++)
+        {
+          chunk.set((int) (entryIDs[i] & 0xFFFF));
+        }
+        chunk.cardinality = cardinality;
+        return chunk;
+      }
+      final char[] values = new char[cardinality];
+      for (int i = 0; i < cardinality; i++)
+      {
+        values[i] = (char) entryIDs[start + i];
+      }
+      return new ArrayChunk(values, cardinality);
+    }
+
+    abstract int cardinality();
+
+    abstract boolean contains(int low);
+
+    /** Returns the chunk holding the values of this chunk plus the provided value. */
+    abstract Chunk add(int low);
+
+    /** Returns the chunk holding the values of this chunk minus the provided value. */
+    abstract Chunk remove(int low);
+
+    /** Returns the intersection of this chunk and the provided one. This chunk may be modified. */
+    abstract Chunk and(Chunk other);
+
+    /** Returns the union of this chunk and the provided one. This chunk may be modified. */
+    abstract Chunk or(Chunk other);
+
+    /** Returns the values of this chunk which are not in the provided one. This chunk may be modified. */
+    abstract Chunk andNot(Chunk other);
+
+    abstract Chunk copy();
+
+    abstract int first();
+
+    abstract int last();
+
+    /**
+     * Returns the value found at the provided position or after it, or -1 if there are no more values. The position
+     * is an array index for sparse chunks and a value for dense chunks.
+     */
+    abstract int valueAtOrAfter(int position);
+
+    /** Returns the position following the provided one, where the provided value was found. */
+    abstract int positionAfter(int position, int value);
+
+    /** Copies the IDs of this chunk into the provided array and returns the offset following the last copied ID. */
+    abstract int copyTo(long[] entryIDs, int offset, long base);
+  }
+
+  /** A sparse chunk where values are stored in a sorted array. */
+  private static final class ArrayChunk extends Chunk
+  {
+    private char[] values;
+    private int cardinality;
+
+    ArrayChunk()
+    {
+      this(new char[4], 0);
+    }
+
+    ArrayChunk(char[] values, int cardinality)
+    {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return Arrays.binarySearch(values, 0, cardinality, (char) low) >= 0;
+    }
+
+    @Override
+    Chunk add(int low)
+    {
+      int pos = Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos >= 0)
+      {
+        return this;
+      }
+      if (cardinality == MAX_ARRAY_CARDINALITY)
+      {
+        return toBits().add(low);
+      }
+      pos = -(pos + 1);
+      if (cardinality == values.length)
+      {
+        values = Arrays.copyOf(values, Math.min(cardinality * 2, MAX_ARRAY_CARDINALITY));
+      }
+      System.arraycopy(values, pos, values, pos + 1, cardinality - pos);
+      values[pos] = (char) low;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    Chunk remove(int low)
+    {
+      final int pos = Arrays.binarySearch(values, 0, cardinality, (char) low);
+      if (pos >= 0)
+      {
+        System.arraycopy(values, pos + 1, values, pos, cardinality - pos - 1);
+        cardinality--;
+      }
+      return this;
+    }
+
+    @Override
+    Chunk and(Chunk other)
+    {
+      int k = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        if (other.contains(values[i]))
+        {
+          values[k++] = values[i];
+        }
+      }
+      cardinality = k;
+      return this;
+    }
+
+    @Override
+    Chunk or(Chunk other)
+    {
+      if (other instanceof BitsChunk)
+      {
+        return other.copy().or(this);
+      }
+      final ArrayChunk that = (ArrayChunk) other;
+      final char[] merged = new char[cardinality + that.cardinality];
+      int i = 0, j = 0, k = 0;
+      while (i < cardinality && j < that.cardinality)
+      {
+        if (values[i] < that.values[j])
+        {
+          merged[k++] = values[i++];
+        }
+        else if (that.values[j] < values[i])
+        {
+          merged[k++] = that.values[j++];
+        }
+        else
+        {
+          merged[k++] = values[i++];
+          j++;
+        }
+      }
+      while (i < cardinality)
+      {
+        merged[k++] = values[i++];
+      }
+      while (j < that.cardinality)
+      {
+        merged[k++] = that.values[j++];
+      }
+      if (k > MAX_ARRAY_CARDINALITY)
+      {
+        return new ArrayChunk(merged, k).toBits();
+      }
+      values = merged;
+      cardinality = k;
+      return this;
+    }
+
+    @Override
+    Chunk andNot(Chunk other)
+    {
+      int k = 0;
+      for (int i = 0; i < cardinality; i++)
+      {
+        if (!other.contains(values[i]))
+        {
+          values[k++] = values[i];
+        }
+      }
+      cardinality = k;
+      return this;
+    }
+
+    @Override
+    Chunk copy()
+    {
+      return new ArrayChunk(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+    }
+
+    @Override
+    int first()
+    {
+      return values[0];
+    }
+
+    @Override
+    int last()
+    {
+      return values[cardinality - 1];
+    }
+
+    @Override
+    int valueAtOrAfter(int position)
+    {
+      return position < cardinality ? values[position] : -1;
+    }
+
+    @Override
+    int positionAfter(int position, int value)
+    {
+      return position + 1;
+    }
+
+    @Override
+    int copyTo(long[] entryIDs, int offset, long base)
+    {
+      for (int i = 0; i < cardinality; i++)
+      {
+        entryIDs[offset++] = base | values[i];
+      }
+      return offset;
+    }
+
+    private BitsChunk toBits()
+    {
+      final BitsChunk chunk = new BitsChunk();
+      for (int i = 0; i < cardinality; i++)
+      {
+        chunk.set(values[i]);
+      }
+      chunk.cardinality = cardinality;
+      return chunk;
+    }
+  }
+
+  /** A dense chunk where values are stored as a plain bitmap. */
+  private static final class BitsChunk extends Chunk
+  {
+    private final long[] words;
+    private int cardinality;
+
+    BitsChunk()
+    {
+      this(new long[NB_WORDS], 0);
+    }
+
+    private BitsChunk(long[] words, int cardinality)
+    {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    void set(int low)
+    {
+      words[low >>> 6] |= 1L << low;
+    }
+
+    @Override
+    int cardinality()
+    {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(int low)
+    {
+      return (words[low >>> 6] & (1L << low)) != 0;
+    }
+
+    @Override
+    Chunk add(int low)
+    {
+      if (!contains(low))
+      {
+        set(low);
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    Chunk remove(int low)
+    {
+      if (contains(low))
+      {
+        words[low >>> 6] &= ~(1L << low);
+        cardinality--;
+      }
+      return cardinality <= MAX_ARRAY_CARDINALITY ? toArray() : this;
+    }
+
+    @Override
+    Chunk and(Chunk other)
+    {
+      if (other instanceof ArrayChunk)
+      {
+        return other.copy().and(this);
+      }
+      final long[] otherWords = ((BitsChunk) other).words;
+      for (int i = 0; i < NB_WORDS; i++)
+      {
+        words[i] &= otherWords[i];
+      }
+      return afterUpdate();
+    }
+
+    @Override
+    Chunk or(Chunk other)
+    {
+      if (other instanceof ArrayChunk)
+      {
+        final ArrayChunk that = (ArrayChunk) other;
+        for (int i = 0; i < that.cardinality; i++)
+        {
+          set(that.values[i]);
+        }
+      }
+      else
+      {
+        final long[] otherWords = ((BitsChunk) other).words;
+        for (int i = 0; i < NB_WORDS; i++)
+        {
+          words[i] |= otherWords[i];
+        }
+      }
+      return afterUpdate();
+    }
+
+    @Override
+    Chunk andNot(Chunk other)
+    {
+      if (other instanceof ArrayChunk)
+      {
+        final ArrayChunk that = (ArrayChunk) other;
+        for (int i = 0; i < that.cardinality; i++)
+        {
+          words[that.values[i] >>> 6] &= ~(1L << that.values[i]);
+        }
+      }
+      else
+      {
+        final long[] otherWords = ((BitsChunk) other).words;
+        for (int i = 0; i < NB_WORDS; i++)
+        {
+          words[i] &= ~otherWords[i];
+        }
+      }
+      return afterUpdate();
+    }
+
+    @Override
+    Chunk copy()
+    {
+      return new BitsChunk(words.clone(), cardinality);
+    }
+
+    @Override
+    int first()
+    {
+      return valueAtOrAfter(0);
+    }
+
+    @Override
+    int last()
+    {
+      for (int i = NB_WORDS - 1; i >= 0; i--)
+      {
+        if (words[i] != 0)
+        {
+          return i * 64 + 63 - Long.numberOfLeadingZeros(words[i]);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int valueAtOrAfter(int position)
+    {
+      int i = position >>> 6;
+      if (i >= NB_WORDS)
+      {
+        return -1;
+      }
+      long word = words[i] & (-1L << position);
+      while (word == 0)
+      {
+        if (++i == NB_WORDS)
+        {
+          return -1;
+        }
+        word = words[i];
+      }
+      return i * 64 + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    int positionAfter(int position, int value)
+    {
+      return value + 1;
+    }
+
+    @Override
+    int copyTo(long[] entryIDs, int offset, long base)
+    {
+      for (int i = 0; i < NB_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          entryIDs[offset++] = base | (i * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    private Chunk afterUpdate()
+    {
+      cardinality = 0;
+      for (long word : words)
+      {
+        cardinality += Long.bitCount(word);
+      }
+      return cardinality <= MAX_ARRAY_CARDINALITY ? toArray() : this;
+    }
+
+    private ArrayChunk toArray()
+    {
+      final char[] values = new char[Math.max(cardinality, 1)];
+      int k = 0;
+      for (int i = 0; i < NB_WORDS; i++)
+      {
+        long word = words[i];
+        while (word != 0)
+        {
+          values[k++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayChunk(values, cardinality);
+    }
+  }
+
   /**
    * Concrete implementation where the EntryIDs are not defined, for example when the index entry
    * limit has been exceeded.
@@ -596,6 +1529,155 @@ final class EntryIDSet implements Iterable<EntryID>
     }
   }
 
+  /**
+   * Compressed bitmap EntryIDSet codec implementation. Sets which are denser as a compressed bitmap than as an array of
+   * IDs are written chunk by chunk, prepended with the two bytes {0, 2}: tag zero (only used by empty sets in the V2
+   * encoding), followed by a byte indicating the bitmap encoding (version 1 being used by encryption). All the other
+   * sets are written using the V2 encoding, which allows this codec to read indexes written by {@link #CODEC_V2}.
+   * <p>
+   * Each chunk is written as the difference of its high bits with the ones of the previous chunk, followed by its
+   * cardinality and values: either the words of a plain bitmap or the differences between consecutive values.
+   */
+  private static final class EntryIDSetCodecV4 implements EntryIDSetCodec
+  {
+    private static final byte BITMAP_TAG = 0x00;
+    private static final byte BITMAP_VERSION = 0x02;
+    /** Beyond this cardinality, the words of a plain bitmap are smaller than the differences between values. */
+    private static final int PLAIN_BITMAP_MIN_CARDINALITY = Chunk.NB_WORDS * LONG_SIZE;
+
+    @Override
+    public ByteString encode(EntryIDSet idSet)
+    {
+      checkNotNull(idSet, "idSet must not be null");
+      final BitmapImpl bitmap = asBitmapIfDenser(idSet);
+      if (bitmap == null)
+      {
+        return CODEC_V2.encode(idSet);
+      }
+      final ByteStringBuilder builder = new ByteStringBuilder(getEstimatedSize(bitmap));
+      return ByteString.wrap(append(builder, bitmap).getBackingArray(), 0, builder.length());
+    }
+
+    @Override
+    public EntryIDSet decode(ByteSequence key, ByteString value)
+    {
+      checkNotNull(key, "key must not be null");
+      checkNotNull(value, "value must not be null");
+      if (value.length() > 2 && value.byteAt(0) == BITMAP_TAG && value.byteAt(1) == BITMAP_VERSION)
+      {
+        return new EntryIDSet(decodeRaw(value.subSequence(2, value.length()).asReader()));
+      }
+      return CODEC_V2.decode(key, value);
+    }
+
+    private static BitmapImpl asBitmapIfDenser(EntryIDSet idSet)
+    {
+      if (idSet.concreteImpl instanceof BitmapImpl)
+      {
+        final BitmapImpl bitmap = (BitmapImpl) idSet.concreteImpl;
+        return bitmap.isDenserThanArray() ? bitmap : null;
+      }
+      if (idSet.isDefined() && isBitmapDenser(idSet.getIDs()))
+      {
+        return BitmapImpl.valueOf(idSet.getIDs());
+      }
+      return null;
+    }
+
+    private static int getEstimatedSize(BitmapImpl bitmap)
+    {
+      long estimatedSize = 2 + INT_SIZE;
+      for (int i = 0; i < bitmap.nbChunks; i++)
+      {
+        estimatedSize += 2 * ByteStringBuilder.MAX_COMPACT_SIZE + Chunk.footprint(bitmap.chunks[i].cardinality());
+      }
+      return (int) Math.min(estimatedSize, Integer.MAX_VALUE);
+    }
+
+    private static ByteStringBuilder append(ByteStringBuilder builder, BitmapImpl bitmap)
+    {
+      builder.appendByte(BITMAP_TAG);
+      builder.appendByte(BITMAP_VERSION);
+      builder.appendCompactUnsigned(bitmap.nbChunks);
+      long previousHigh = 0;
+      for (int i = 0; i < bitmap.nbChunks; i++)
+      {
+        builder.appendCompactUnsigned(bitmap.highs[i] - previousHigh);
+        previousHigh = bitmap.highs[i];
+        appendChunk(builder, bitmap.chunks[i]);
+      }
+      return builder;
+    }
+
+    private static void appendChunk(ByteStringBuilder builder, Chunk chunk)
+    {
+      final int cardinality = chunk.cardinality();
+      final boolean isPlainBitmap = cardinality >= PLAIN_BITMAP_MIN_CARDINALITY;
+      builder.appendCompactUnsigned(((cardinality - 1L) << 1) | (isPlainBitmap ? 1 : 0));
+      if (isPlainBitmap)
+      {
+        for (long word : ((BitsChunk) chunk).words)
+        {
+          builder.appendLong(word);
+        }
+        return;
+      }
+      int previousValue = 0;
+      for (int position = 0, value; (value = chunk.valueAtOrAfter(position)) >= 0;)
+      {
+        builder.appendCompactUnsigned(value - previousValue);
+        previousValue = value;
+        position = chunk.positionAfter(position, value);
+      }
+    }
+
+    private static BitmapImpl decodeRaw(ByteSequenceReader reader)
+    {
+      final int nbChunks = reader.readCompactUnsignedInt();
+      final BitmapImpl bitmap = new BitmapImpl(Math.max(nbChunks, 1));
+      long high = 0;
+      for (int i = 0; i < nbChunks; i++)
+      {
+        high += reader.readCompactUnsignedLong();
+        bitmap.appendChunk(high, decodeChunk(reader));
+      }
+      return bitmap;
+    }
+
+    private static Chunk decodeChunk(ByteSequenceReader reader)
+    {
+      final long header = reader.readCompactUnsignedLong();
+      final int cardinality = (int) (header >>> 1) + 1;
+      if ((header & 1) != 0)
+      {
+        final long[] words = new long[Chunk.NB_WORDS];
+        for (int i = 0; i < words.length; i++)
+        {
+          words[i] = reader.readLong();
+        }
+        return new BitsChunk(words, cardinality);
+      }
+      if (cardinality > Chunk.MAX_ARRAY_CARDINALITY)
+      {
+        final BitsChunk chunk = new BitsChunk();
+        for (int i = 0, value = 0; i < cardinality; i++)
+        {
+          value += reader.readCompactUnsignedInt();
+          chunk.set(value);
+        }
+        chunk.cardinality = cardinality;
+        return chunk;
+      }
+      final char[] values = new char[cardinality];
+      for (int i = 0, value = 0; i < cardinality; i++)
+      {
+        value += reader.readCompactUnsignedInt();
+        values[i] = (char) value;
+      }
+      return new ArrayChunk(values, cardinality);
+    }
+  }
+
   static EntryIDSetCodec newEntryIDSetCodecV3(EntryIDSetCodec codec, CryptoSuite cs)
   {
     return new EntryIDSetCodecV3(codec, cs);
@@ -628,6 +1710,52 @@ final class EntryIDSet implements Iterable<EntryID>
     return new EntryIDSet(new DefinedImpl(entryIDs));
   }
 
+  /**
+   * Creates a new defined entry ID set with the specified sorted entryIDs, stored as a compressed bitmap.
+   * <p>
+   * If the provided array is not sorted, then the resulting EntryIDSet will misbehave.
+   *
+   * @param entryIDs
+   *          Sorted Entry IDs contained in the set.
+   * @return A new defined {@link EntryIDSet} containing the provided entryIDs
+   * @throws NullPointerException
+   *           if entryIDs is null
+   */
+  static EntryIDSet newBitmapSet(long... entryIDs)
+  {
+    checkNotNull(entryIDs, "ids must not be null");
+    return new EntryIDSet(BitmapImpl.valueOf(entryIDs));
+  }
+
+  /** Returns the densest implementation for the provided sorted entryIDs. */
+  private static EntryIDSetImplementor newDefinedImpl(long[] entryIDs)
+  {
+    return isBitmapDenser(entryIDs) ? BitmapImpl.valueOf(entryIDs) : new DefinedImpl(entryIDs);
+  }
+
+  private static boolean isBitmapDenser(long[] entryIDs)
+  {
+    if (entryIDs.length < BITMAP_MIN_SIZE)
+    {
+      return false;
+    }
+    final long arrayFootprint = (long) entryIDs.length * LONG_SIZE;
+    long bitmapFootprint = 0;
+    int start = 0;
+    while (start < entryIDs.length && bitmapFootprint < arrayFootprint)
+    {
+      final long high = BitmapImpl.highBits(entryIDs[start]);
+      int end = start + 1;
+      while (end < entryIDs.length && BitmapImpl.highBits(entryIDs[end]) == high)
+      {
+        end++;
+      }
+      bitmapFootprint += Chunk.footprint(end - start);
+      start = end;
+    }
+    return bitmapFootprint < arrayFootprint;
+  }
+
   private static long[] intersection(long[] set1, long[] set2)
   {
     long[] target = new long[Math.min(set1.length, set2.length)];
@@ -689,6 +1817,16 @@ final class EntryIDSet implements Iterable<EntryID>
       return newUndefinedSet();
     }
 
+    if (count >= BITMAP_MIN_SIZE)
+    {
+      final BitmapImpl union = new BitmapImpl();
+      for (EntryIDSet l : sets)
+      {
+        union.addAll(l);
+      }
+      return new EntryIDSet(union.isDenserThanArray() ? union : new DefinedImpl(union.getIDs()));
+    }
+
     boolean needSort = false;
     long[] n = new long[count];
     int pos = 0;
@@ -873,6 +2011,14 @@ final class EntryIDSet implements Iterable<EntryID>
   {
     checkNotNull(that, "that must not be null");
     Reject.ifFalse(that.isDefined(), "that must be defined");
+    if (concreteImpl instanceof DefinedImpl && that.concreteImpl instanceof BitmapImpl)
+    {
+      // Merge in place rather than materializing the IDs of the bitmap
+      final BitmapImpl bitmap = new BitmapImpl((BitmapImpl) that.concreteImpl);
+      bitmap.addAll(this);
+      concreteImpl = bitmap;
+      return;
+    }
     concreteImpl.addAll(that);
   }
 
@@ -889,7 +2035,9 @@ final class EntryIDSet implements Iterable<EntryID>
     checkNotNull(that, "that must not be null");
     if (!concreteImpl.isDefined())
     {
-      if ( that.isDefined() ) {
+      if (that.concreteImpl instanceof BitmapImpl) {
+        concreteImpl = new BitmapImpl((BitmapImpl) that.concreteImpl);
+      } else if ( that.isDefined() ) {
         // NOTE: It's ok to share the same array instance here thanks to the copy-on-write
         // performed by the implementation.
         concreteImpl = new DefinedImpl(that.getIDs());
@@ -903,6 +2051,17 @@ final class EntryIDSet implements Iterable<EntryID>
       return;
     }
 
+    if (concreteImpl instanceof BitmapImpl)
+    {
+      concreteImpl = ((BitmapImpl) concreteImpl).retainAll(that);
+      return;
+    }
+    if (that.concreteImpl instanceof BitmapImpl)
+    {
+      concreteImpl = new DefinedImpl(((BitmapImpl) that.concreteImpl).retainContained(getIDs()));
+      return;
+    }
+
     final boolean thatSetOverlap = compareForOverlap(getRange(), that.getRange()) == 0;
     if (thatSetOverlap)
     {
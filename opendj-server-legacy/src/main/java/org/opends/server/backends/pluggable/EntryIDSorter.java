@@ -0,0 +1,553 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.forgerock.util.Utils.*;
+import static org.opends.messages.BackendMessages.*;
+import static org.opends.server.backends.pluggable.VLVIndex.*;
+import static org.opends.server.protocols.ldap.LDAPResultCode.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.ldap.SortKey;
+import org.opends.server.backends.pluggable.OnDiskMergeImporter.BufferPool;
+import org.opends.server.backends.pluggable.OnDiskMergeImporter.ExternalSortChunk;
+import org.opends.server.backends.pluggable.OnDiskMergeImporter.MeteredCursor;
+import org.opends.server.backends.pluggable.OnDiskMergeImporter.UniqueValueCollector;
+import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
+import org.opends.server.controls.VLVRequestControl;
+import org.opends.server.controls.VLVResponseControl;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.SearchOperation;
+import org.opends.server.types.DirectoryException;
+
+/**
+ * Sorts the candidate entries of a search which cannot be served by a VLV index. Entries are
+ * identified by their encoded VLV keys, which end with the entry ID and are therefore unique.
+ * <p>
+ * When a VLV request asks for a small page of results, only the keys which may be part of this
+ * page are kept in memory. Otherwise every key has to be sorted: keys are sorted in memory up to
+ * {@link #IN_MEMORY_SORT_SIZE} bytes, beyond which they are spilled as sorted runs in a temporary
+ * file using the {@link ExternalSortChunk} of the importer, and streamed back by merging the runs.
+ */
+abstract class EntryIDSorter implements Closeable
+{
+  /** Maximum number of keys kept in memory for computing a VLV page without sorting every key. */
+  static final int MAX_PAGE_SIZE = 10000;
+  /** Amount of memory used for sorting keys before spilling them to disk. */
+  static final int IN_MEMORY_SORT_SIZE = 8 * 1024 * 1024;
+  /** Estimation of the heap used by each key sorted in memory, in addition to its bytes. */
+  private static final int KEY_OVERHEAD = 64;
+  /** Natural order of the keys. */
+  private static final Comparator<ByteString> ASCENDING_ORDER = new Comparator<ByteString>()
+  {
+    @Override
+    public int compare(ByteString key1, ByteString key2)
+    {
+      return key1.compareTo(key2);
+    }
+  };
+  /** Reverse order of the keys. */
+  private static final Comparator<ByteString> DESCENDING_ORDER = Collections.reverseOrder(ASCENDING_ORDER);
+  /** Runs the sort of the spilled runs from the thread adding the keys. */
+  private static final Executor CALLER_THREAD = new Executor()
+  {
+    @Override
+    public void execute(Runnable command)
+    {
+      command.run();
+    }
+  };
+
+  /** Number of keys added to this sorter. */
+  int size;
+
+  /**
+   * Returns a sorter suitable for the provided sort and VLV request.
+   *
+   * @param searchOperation
+   *          the search operation
+   * @param sortKeys
+   *          the sort keys used for encoding the VLV keys
+   * @param vlvRequest
+   *          the VLV request, or {@code null} if all the entries must be sorted
+   * @param candidatesCount
+   *          the number of candidate entries, used as content count if the VLV assertion is invalid
+   * @param tempDir
+   *          the directory where keys are spilled when they cannot be sorted in memory
+   * @return a new sorter
+   * @throws DirectoryException
+   *           if the VLV assertion cannot be normalized
+   */
+  static EntryIDSorter newInstance(SearchOperation searchOperation, List<SortKey> sortKeys,
+      VLVRequestControl vlvRequest, long candidatesCount, File tempDir) throws DirectoryException
+  {
+    if (vlvRequest == null)
+    {
+      return new AllKeys(tempDir, null, null);
+    }
+
+    if (vlvRequest.getTargetType() == VLVRequestControl.TYPE_TARGET_BYOFFSET)
+    {
+      final long pageEnd = (long) Math.max(vlvRequest.getOffset(), 1) + vlvRequest.getAfterCount();
+      if (vlvRequest.getOffset() < 0 || pageEnd <= MAX_PAGE_SIZE)
+      {
+        return new SmallestKeys(vlvRequest, vlvRequest.getOffset() < 0 ? 0 : (int) pageEnd);
+      }
+      return new AllKeys(tempDir, vlvRequest, null);
+    }
+
+    final int contentCount = (int) Math.min(candidatesCount, Integer.MAX_VALUE);
+    final ByteSequence encodedTargetAssertion =
+        encodeTargetAssertion(sortKeys, vlvRequest.getGreaterThanOrEqualAssertion(), searchOperation, contentCount);
+    if ((long) vlvRequest.getBeforeCount() + vlvRequest.getAfterCount() < MAX_PAGE_SIZE)
+    {
+      return new KeysAroundAssertion(vlvRequest, encodedTargetAssertion);
+    }
+    return new AllKeys(tempDir, vlvRequest, encodedTargetAssertion);
+  }
+
+  /**
+   * Returns the directory where the keys of the provided backend are spilled.
+   *
+   * @param backendID
+   *          the backend identifier
+   * @return the directory where the keys of the backend are spilled
+   */
+  static File getTempDir(String backendID)
+  {
+    return new File(getFileForPath(OnDiskMergeImporter.DEFAULT_TMP_DIR), backendID + "-sort");
+  }
+
+  /**
+   * Adds the VLV key of a candidate entry matching the search.
+   *
+   * @param vlvKey
+   *          the encoded VLV key of the entry
+   * @throws DirectoryException
+   *           if the key cannot be spilled to disk
+   */
+  void add(ByteString vlvKey) throws DirectoryException
+  {
+    size++;
+    add0(vlvKey);
+  }
+
+  abstract void add0(ByteString vlvKey) throws DirectoryException;
+
+  /**
+   * Returns the sorted IDs of the entries to return, adding the VLV response control to the search
+   * operation if needed.
+   *
+   * @param searchOperation
+   *          the search operation
+   * @return the sorted IDs of the entries to return
+   * @throws DirectoryException
+   *           if the VLV request cannot be processed or the keys cannot be read back from disk
+   */
+  abstract long[] sort(SearchOperation searchOperation) throws DirectoryException;
+
+  @Override
+  public void close()
+  {
+    // Nothing to do by default.
+  }
+
+  /** Keeps the smallest keys in order to return a VLV page located by offset. */
+  private static final class SmallestKeys extends EntryIDSorter
+  {
+    private final VLVRequestControl vlvRequest;
+    private final int limit;
+    /** Max-heap of the smallest keys. */
+    private final PriorityQueue<ByteString> keys;
+
+    private SmallestKeys(VLVRequestControl vlvRequest, int limit)
+    {
+      this.vlvRequest = vlvRequest;
+      this.limit = limit;
+      this.keys = new PriorityQueue<>(Math.max(Math.min(limit, 1024), 1), DESCENDING_ORDER);
+    }
+
+    @Override
+    void add0(ByteString vlvKey)
+    {
+      addBounded(keys, vlvKey, limit);
+    }
+
+    @Override
+    long[] sort(SearchOperation searchOperation) throws DirectoryException
+    {
+      final List<ByteString> sortedKeys = new ArrayList<>(keys);
+      Collections.sort(sortedKeys);
+      return selectByOffset(searchOperation, vlvRequest, size, sortedKeys.iterator());
+    }
+  }
+
+  /** Keeps the keys surrounding the target assertion in order to return a VLV page located by assertion. */
+  private static final class KeysAroundAssertion extends EntryIDSorter
+  {
+    private final VLVRequestControl vlvRequest;
+    private final ByteSequence encodedTargetAssertion;
+    /** Min-heap of the greatest keys before the target. */
+    private final PriorityQueue<ByteString> keysBefore;
+    /** Max-heap of the target and the smallest keys following it. */
+    private final PriorityQueue<ByteString> keysAfter;
+    private int nbKeysBefore;
+
+    private KeysAroundAssertion(VLVRequestControl vlvRequest, ByteSequence encodedTargetAssertion)
+    {
+      this.vlvRequest = vlvRequest;
+      this.encodedTargetAssertion = encodedTargetAssertion;
+      this.keysBefore = new PriorityQueue<>(vlvRequest.getBeforeCount() + 1, ASCENDING_ORDER);
+      this.keysAfter = new PriorityQueue<>(vlvRequest.getAfterCount() + 1, DESCENDING_ORDER);
+    }
+
+    @Override
+    void add0(ByteString vlvKey)
+    {
+      if (vlvKey.compareTo(encodedTargetAssertion) < 0)
+      {
+        nbKeysBefore++;
+        addBounded(keysBefore, vlvKey, vlvRequest.getBeforeCount());
+      }
+      else
+      {
+        addBounded(keysAfter, vlvKey, vlvRequest.getAfterCount() + 1);
+      }
+    }
+
+    @Override
+    long[] sort(SearchOperation searchOperation)
+    {
+      if (keysAfter.isEmpty())
+      {
+        /*
+         * No entry was found to be greater than or equal to the sort key, so the target offset will
+         * be one greater than the content count.
+         */
+        addVLVResponseControl(searchOperation, size + 1, size, SUCCESS);
+        return new long[0];
+      }
+
+      final List<ByteString> sortedKeys = new ArrayList<>(keysBefore.size() + keysAfter.size());
+      sortedKeys.addAll(keysBefore);
+      sortedKeys.addAll(keysAfter);
+      Collections.sort(sortedKeys);
+      addVLVResponseControl(searchOperation, nbKeysBefore + 1, size, SUCCESS);
+      return toEntryIDs(sortedKeys.iterator(), sortedKeys.size());
+    }
+  }
+
+  /** Sorts every key, spilling them to disk when they do not fit in memory. */
+  private static final class AllKeys extends EntryIDSorter
+  {
+    private final File tempDir;
+    private final VLVRequestControl vlvRequest;
+    private final ByteSequence encodedTargetAssertion;
+    private List<ByteString> keys = new ArrayList<>();
+    private long keysSize;
+    private File runsDir;
+    private BufferPool bufferPool;
+    private ExternalSortChunk runs;
+    private MeteredCursor<ByteString, ByteString> cursor;
+
+    private AllKeys(File tempDir, VLVRequestControl vlvRequest, ByteSequence encodedTargetAssertion)
+    {
+      this.tempDir = tempDir;
+      this.vlvRequest = vlvRequest;
+      this.encodedTargetAssertion = encodedTargetAssertion;
+    }
+
+    @Override
+    void add0(ByteString vlvKey) throws DirectoryException
+    {
+      if (runs != null)
+      {
+        runs.put(vlvKey, ByteString.empty());
+        return;
+      }
+      keys.add(vlvKey);
+      keysSize += vlvKey.length() + KEY_OVERHEAD;
+      if (keysSize >= IN_MEMORY_SORT_SIZE)
+      {
+        spill();
+      }
+    }
+
+    private void spill() throws DirectoryException
+    {
+      try
+      {
+        runsDir = new File(tempDir, UUID.randomUUID().toString());
+        if (!runsDir.mkdirs())
+        {
+          throw new IOException(ERR_IMPORT_CREATE_TMPDIR_ERROR.get(runsDir).toString());
+        }
+        bufferPool = new BufferPool(1, IN_MEMORY_SORT_SIZE);
+        runs = new ExternalSortChunk(runsDir, "sort", bufferPool, UniqueValueCollector.<ByteString> getInstance(),
+            UniqueValueCollector.<ByteString> getInstance(), CALLER_THREAD);
+      }
+      catch (IOException | StorageRuntimeException e)
+      {
+        throw cannotSort(e);
+      }
+      for (ByteString key : keys)
+      {
+        runs.put(key, ByteString.empty());
+      }
+      keys = null;
+    }
+
+    @Override
+    long[] sort(SearchOperation searchOperation) throws DirectoryException
+    {
+      final Iterator<ByteString> sortedKeys;
+      if (runs == null)
+      {
+        Collections.sort(keys);
+        sortedKeys = keys.iterator();
+      }
+      else
+      {
+        try
+        {
+          cursor = runs.flip();
+        }
+        catch (StorageRuntimeException e)
+        {
+          throw cannotSort(e);
+        }
+        sortedKeys = new CursorIterator(cursor);
+      }
+
+      try
+      {
+        if (vlvRequest == null)
+        {
+          return toEntryIDs(sortedKeys, size);
+        }
+        else if (encodedTargetAssertion == null)
+        {
+          return selectByOffset(searchOperation, vlvRequest, size, sortedKeys);
+        }
+        return selectByAssertion(searchOperation, vlvRequest, encodedTargetAssertion, size, sortedKeys);
+      }
+      catch (StorageRuntimeException e)
+      {
+        throw cannotSort(e);
+      }
+    }
+
+    @Override
+    public void close()
+    {
+      if (runs != null && cursor == null)
+      {
+        try
+        {
+          cursor = runs.flip();
+        }
+        catch (StorageRuntimeException e)
+        {
+          // This is best effort, the temporary directory is deleted anyway.
+        }
+      }
+      closeSilently(cursor, bufferPool);
+      if (runsDir != null)
+      {
+        recursiveDelete(runsDir);
+      }
+    }
+
+    private static DirectoryException cannotSort(Exception e)
+    {
+      return new DirectoryException(
+          DirectoryServer.getServerErrorResultCode(), ERR_ENTRYIDSORTER_CANNOT_SORT.get(getExceptionMessage(e)), e);
+    }
+  }
+
+  /** Exposes the keys of a merged cursor as an iterator. */
+  private static final class CursorIterator implements Iterator<ByteString>
+  {
+    private final MeteredCursor<ByteString, ByteString> cursor;
+    private boolean hasNext;
+
+    private CursorIterator(MeteredCursor<ByteString, ByteString> cursor)
+    {
+      this.cursor = cursor;
+      this.hasNext = cursor.next();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return hasNext;
+    }
+
+    @Override
+    public ByteString next()
+    {
+      if (!hasNext)
+      {
+        throw new NoSuchElementException();
+      }
+      final ByteString key = cursor.getKey();
+      hasNext = cursor.next();
+      return key;
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Adds a key to a heap holding at most {@code limit} keys, evicting the head of the heap if the key
+   * comes after it in the heap order.
+   */
+  private static void addBounded(PriorityQueue<ByteString> heap, ByteString key, int limit)
+  {
+    if (heap.size() < limit)
+    {
+      heap.add(key);
+    }
+    else if (limit > 0 && heap.comparator().compare(key, heap.peek()) > 0)
+    {
+      heap.poll();
+      heap.add(key);
+    }
+  }
+
+  private static long[] toEntryIDs(Iterator<ByteString> sortedKeys, int count)
+  {
+    final long[] entryIDs = new long[count];
+    int i = 0;
+    while (i < count && sortedKeys.hasNext())
+    {
+      entryIDs[i++] = decodeEntryIDFromVLVKey(sortedKeys.next());
+    }
+    return i < count ? Arrays.copyOf(entryIDs, i) : entryIDs;
+  }
+
+  private static long[] selectByOffset(SearchOperation searchOperation, VLVRequestControl vlvRequest, int size,
+      Iterator<ByteString> sortedKeys) throws DirectoryException
+  {
+    int targetOffset = vlvRequest.getOffset();
+    if (targetOffset < 0)
+    {
+      // The client specified a negative target offset. This should never be allowed.
+      addVLVResponseControl(searchOperation, targetOffset, size, OFFSET_RANGE_ERROR);
+      throw new DirectoryException(ResultCode.VIRTUAL_LIST_VIEW_ERROR, ERR_ENTRYIDSORTER_NEGATIVE_START_POS.get());
+    }
+
+    // This is an easy mistake to make, since VLV offsets start at 1 instead of 0. We'll assume the client meant
+    // to use 1.
+    targetOffset = (targetOffset == 0) ? 1 : targetOffset;
+
+    int beforeCount = vlvRequest.getBeforeCount();
+    int afterCount = vlvRequest.getAfterCount();
+    int listOffset = targetOffset - 1; // VLV offsets start at 1, not 0.
+    int startPos = listOffset - beforeCount;
+    if (startPos < 0)
+    {
+      // This can happen if beforeCount >= offset, and in this case we'll just adjust the start position to ignore
+      // the range of beforeCount that doesn't exist.
+      startPos = 0;
+      beforeCount = listOffset;
+    }
+    else if (startPos >= size)
+    {
+      // The start position is beyond the end of the list. In this case, we'll assume that the start position was
+      // one greater than the size of the list and will only return the beforeCount entries.
+      targetOffset = size + 1;
+      listOffset = size;
+      startPos = listOffset - beforeCount;
+      afterCount = 0;
+    }
+
+    for (int i = 0; i < startPos && sortedKeys.hasNext(); i++)
+    {
+      sortedKeys.next();
+    }
+    final long[] sortedIDs = toEntryIDs(sortedKeys, (int) Math.min(1L + beforeCount + afterCount, size - startPos));
+    addVLVResponseControl(searchOperation, targetOffset, size, SUCCESS);
+    return sortedIDs;
+  }
+
+  private static long[] selectByAssertion(SearchOperation searchOperation, VLVRequestControl vlvRequest,
+      ByteSequence encodedTargetAssertion, int size, Iterator<ByteString> sortedKeys)
+  {
+    final int beforeCount = vlvRequest.getBeforeCount();
+    final Deque<ByteString> selectedKeys = new ArrayDeque<>();
+    int targetIndex = 0;
+    while (sortedKeys.hasNext())
+    {
+      final ByteString key = sortedKeys.next();
+      if (key.compareTo(encodedTargetAssertion) >= 0)
+      {
+        selectedKeys.addLast(key);
+        for (int i = 0; i < vlvRequest.getAfterCount() && sortedKeys.hasNext(); i++)
+        {
+          selectedKeys.addLast(sortedKeys.next());
+        }
+        addVLVResponseControl(searchOperation, targetIndex + 1, size, SUCCESS);
+        return toEntryIDs(selectedKeys.iterator(), selectedKeys.size());
+      }
+      if (beforeCount > 0)
+      {
+        if (selectedKeys.size() == beforeCount)
+        {
+          selectedKeys.removeFirst();
+        }
+        selectedKeys.addLast(key);
+      }
+      targetIndex++;
+    }
+
+    /*
+     * No entry was found to be greater than or equal to the sort key, so the target offset will be
+     * one greater than the content count.
+     */
+    addVLVResponseControl(searchOperation, size + 1, size, SUCCESS);
+    return new long[0];
+  }
+
+  private static void addVLVResponseControl(SearchOperation searchOp, int targetPosition, int contentCount,
+      int vlvResultCode)
+  {
+    searchOp.addResponseControl(new VLVResponseControl(targetPosition, contentCount, vlvResultCode));
+  }
+}
@@ -21,12 +21,20 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.forgerock.opendj.ldap.ByteString;
 import org.opends.server.backends.pluggable.spi.Cursor;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
 import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.Storage;
 import org.opends.server.backends.pluggable.spi.StorageRuntimeException;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.Entry;
@@ -34,6 +42,7 @@ import org.opends.server.types.LDIFExportConfig;
 import org.opends.server.util.LDIFException;
 import org.opends.server.util.StaticUtils;
 
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.BackendMessages.*;
 
 /** Export a backend to LDIF. */
@@ -41,6 +50,8 @@ class ExportJob
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  private static final String PART_THREAD_NAME = "LDIF-EXPORT-PART-%d";
+
   /** The requested LDIF export configuration. */
   private final LDIFExportConfig exportConfig;
 
@@ -48,10 +59,10 @@ class ExportJob
   private final long progressInterval = 10000;
 
   /** The current number of entries exported. */
-  private long exportedCount;
+  private final AtomicLong exportedCount = new AtomicLong();
 
   /** The current number of entries skipped. */
-  private long skippedCount;
+  private final AtomicLong skippedCount = new AtomicLong();
 
   /**
    * Create a new export job.
@@ -111,31 +122,38 @@ class ExportJob
     // Iterate through the containers.
     try
     {
-      rootContainer.getStorage().read(new ReadOperation<Void>()
+      if (exportConfig.getNbParts() > 1)
+      {
+        exportParts(rootContainer.getStorage(), exportContainers);
+      }
+      else
       {
-        @Override
-        public Void run(ReadableTransaction txn) throws Exception
+        rootContainer.getStorage().read(new ReadOperation<Void>()
         {
-          for (EntryContainer exportContainer : exportContainers)
+          @Override
+          public Void run(ReadableTransaction txn) throws Exception
           {
-            if (exportConfig.isCancelled())
-            {
-              break;
-            }
-
-            exportContainer.sharedLock.lock();
-            try
+            for (EntryContainer exportContainer : exportContainers)
             {
-              exportContainer(txn, exportContainer);
-            }
-            finally
-            {
-              exportContainer.sharedLock.unlock();
+              if (exportConfig.isCancelled())
+              {
+                break;
+              }
+
+              exportContainer.sharedLock.lock();
+              try
+              {
+                exportContainer(txn, exportContainer);
+              }
+              finally
+              {
+                exportContainer.sharedLock.unlock();
+              }
             }
+            return null;
           }
-          return null;
-        }
-      });
+        });
+      }
     }
     catch (Exception e)
     {
@@ -152,10 +170,117 @@ class ExportJob
     float rate = 0;
     if (totalTime > 0)
     {
-      rate = 1000f*exportedCount / totalTime;
+      rate = 1000f*exportedCount.get() / totalTime;
+    }
+
+    logger.info(NOTE_EXPORT_FINAL_STATUS, exportedCount.get(), skippedCount.get(), totalTime/1000, rate);
+  }
+
+  /**
+   * Export the entries in parallel, the entry IDs being split into ranges of
+   * similar sizes. Each range is exported to its own part file by its own
+   * thread, reading with its own transaction. The entry IDs are allocated by
+   * the root container, so the ranges are the same for all the containers.
+   */
+  private void exportParts(final Storage storage, final List<EntryContainer> exportContainers) throws Exception
+  {
+    final int nbParts = exportConfig.getNbParts();
+    final long rangeSize = storage.read(new ReadOperation<Long>()
+    {
+      @Override
+      public Long run(ReadableTransaction txn) throws Exception
+      {
+        long highestID = 0;
+        for (EntryContainer exportContainer : exportContainers)
+        {
+          highestID = Math.max(highestID, exportContainer.getHighestEntryID(txn).longValue());
+        }
+        return highestID / nbParts + 1;
+      }
+    });
+
+    // Fail before writing any part file when the target files cannot be written
+    exportConfig.prepareParallelExport();
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(nbParts, newThreadFactory(null, PART_THREAD_NAME, true));
+    try
+    {
+      final List<Future<Void>> futures = new ArrayList<>(nbParts);
+      for (int part = 0; part < nbParts; part++)
+      {
+        final long lowestID = part * rangeSize;
+        final long highestID = part < nbParts - 1 ? lowestID + rangeSize : Long.MAX_VALUE;
+        final LDIFExportConfig partConfig = exportConfig.newPartConfig(part);
+        futures.add(executor.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call() throws Exception
+          {
+            try
+            {
+              // Create the part file even if the range has no entries to export
+              partConfig.getWriter();
+              return storage.read(new ReadOperation<Void>()
+              {
+                @Override
+                public Void run(ReadableTransaction txn) throws Exception
+                {
+                  for (EntryContainer exportContainer : exportContainers)
+                  {
+                    if (exportConfig.isCancelled())
+                    {
+                      break;
+                    }
+
+                    exportContainer.sharedLock.lock();
+                    try
+                    {
+                      exportRange(txn, exportContainer, lowestID, highestID, partConfig);
+                    }
+                    finally
+                    {
+                      exportContainer.sharedLock.unlock();
+                    }
+                  }
+                  return null;
+                }
+              });
+            }
+            finally
+            {
+              partConfig.close();
+            }
+          }
+        }));
+      }
+      for (Future<Void> future : futures)
+      {
+        try
+        {
+          future.get();
+        }
+        catch (ExecutionException e)
+        {
+          throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+      }
+    }
+    catch (Exception e)
+    {
+      executor.shutdownNow();
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+      exportConfig.deletePartFiles();
+      throw e;
+    }
+    finally
+    {
+      executor.shutdown();
     }
 
-    logger.info(NOTE_EXPORT_FINAL_STATUS, exportedCount, skippedCount, totalTime/1000, rate);
+    if (!exportConfig.writePartFiles())
+    {
+      exportConfig.mergePartFiles();
+    }
   }
 
   /**
@@ -170,11 +295,27 @@ class ExportJob
    */
   private void exportContainer(ReadableTransaction txn, EntryContainer entryContainer)
        throws StorageRuntimeException, IOException, LDIFException
+  {
+    // When a partition is exported, its bounds are the entry IDs computed by EntryContainer.getExportPartitionBounds()
+    exportRange(txn, entryContainer, exportConfig.getPartitionLowerBound(), exportConfig.getPartitionUpperBound(),
+        exportConfig);
+  }
+
+  /**
+   * Export the entries of an entry container whose IDs are in a range.
+   * @param lowestID The lowest entry ID of the range, included.
+   * @param highestID The highest entry ID of the range, excluded.
+   * @param outputConfig The export configuration to which the entries are
+   *                     written.
+   */
+  private void exportRange(ReadableTransaction txn, EntryContainer entryContainer, long lowestID, long highestID,
+      LDIFExportConfig outputConfig) throws StorageRuntimeException, IOException, LDIFException
   {
     ID2Entry id2entry = entryContainer.getID2Entry();
     try (final Cursor<ByteString, ByteString> cursor = txn.openCursor(id2entry.getName()))
     {
-      while (cursor.next())
+      boolean found = lowestID > 0 ? cursor.positionToKeyOrNext(new EntryID(lowestID).toByteString()) : cursor.next();
+      for (; found; found = cursor.next())
       {
         if (exportConfig.isCancelled())
         {
@@ -195,10 +336,15 @@ class ExportJob
 
             logger.trace("Malformed id2entry ID %s.%n", StaticUtils.bytesToHex(key));
           }
-          skippedCount++;
+          skippedCount.incrementAndGet();
           continue;
         }
 
+        if (entryID.longValue() >= highestID)
+        {
+          // The end of the exported partition
+          break;
+        }
         if (entryID.longValue() == 0)
         {
           // This is the stored entry count.
@@ -220,17 +366,17 @@ class ExportJob
             logger.trace("Malformed id2entry record for ID %d:%n%s%n",
                        entryID, StaticUtils.bytesToHex(value));
           }
-          skippedCount++;
+          skippedCount.incrementAndGet();
           continue;
         }
 
-        if (entry.toLDIF(exportConfig))
+        if (entry.toLDIF(outputConfig))
         {
-          exportedCount++;
+          exportedCount.incrementAndGet();
         }
         else
         {
-          skippedCount++;
+          skippedCount.incrementAndGet();
         }
       }
     }
@@ -255,7 +401,7 @@ class ExportJob
     @Override
     public void run()
     {
-      long latestCount = exportedCount;
+      long latestCount = exportedCount.get();
       long deltaCount = latestCount - previousCount;
       long latestTime = System.currentTimeMillis();
       long deltaTime = latestTime - previousTime;
@@ -267,7 +413,7 @@ class ExportJob
 
       float rate = 1000f*deltaCount / deltaTime;
 
-      logger.info(NOTE_EXPORT_PROGRESS_REPORT, latestCount, skippedCount, rate);
+      logger.info(NOTE_EXPORT_PROGRESS_REPORT, latestCount, skippedCount.get(), rate);
 
       previousCount = latestCount;
       previousTime = latestTime;
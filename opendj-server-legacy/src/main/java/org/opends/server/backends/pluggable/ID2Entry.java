@@ -27,7 +27,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 import java.util.zip.InflaterOutputStream;
 
@@ -119,13 +121,19 @@ class ID2Entry extends AbstractTree
     private static final byte PLAIN_ENTRY = 0x00;
     private static final byte COMPRESS_ENTRY = 0x01;
     private static final byte ENCRYPT_ENTRY = 0x02;
+    private static final byte DICTIONARY_COMPRESS_ENTRY = 0x04;
 
     /** The format version for entry encoding. */
     static final byte FORMAT_VERSION_V2 = 0x02;
+    /** The format version for entries compressed with a trained dictionary. */
+    static final byte FORMAT_VERSION_V3 = 0x03;
 
     private final ByteStringBuilder encodedBuffer = new ByteStringBuilder();
     private final ByteStringBuilder entryBuffer = new ByteStringBuilder();
     private final ByteStringBuilder compressedEntryBuffer = new ByteStringBuilder();
+    /** Reused for compressing with a dictionary, since setting a dictionary on a new one is costly. */
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
     private final int maxBufferSize;
 
     private EntryCodec()
@@ -137,9 +145,10 @@ class ID2Entry extends AbstractTree
     {
       encodedBuffer.clearAndTruncate(maxBufferSize, BUFFER_INIT_SIZE);
       entryBuffer.clearAndTruncate(maxBufferSize, BUFFER_INIT_SIZE);
+      compressedEntryBuffer.clearAndTruncate(maxBufferSize, BUFFER_INIT_SIZE);
     }
 
-    private Entry decode(ByteString bytes, CompressedSchema compressedSchema)
+    private Entry decode(ByteString bytes, CompressedSchema compressedSchema, CompressionDictionaries dictionaries)
         throws DirectoryException, DecodeException, IOException
     {
       final byte formatVersion = bytes.byteAt(0);
@@ -149,6 +158,8 @@ class ID2Entry extends AbstractTree
         return decodeV1(bytes, compressedSchema);
       case FORMAT_VERSION_V2:
         return decodeV2(bytes, compressedSchema);
+      case FORMAT_VERSION_V3:
+        return decodeV3(bytes, compressedSchema, dictionaries);
       default:
         throw DecodeException.error(ERR_INCOMPATIBLE_ENTRY_VERSION.get(formatVersion));
       }
@@ -290,6 +301,91 @@ class ID2Entry extends AbstractTree
       }
     }
 
+    /**
+     * Decodes an entry compressed with a trained dictionary.
+     * Entries are encoded according to the sequence
+     *   {VERSION_BYTE, FLAG_BYTE, COMPACT_INTEGER_LENGTH, COMPACT_INTEGER_DICTIONARY, ID2ENTRY_VALUE}
+     * where
+     *
+     * VERSION_BYTE = 0x3
+     * FLAG_BYTE = DICTIONARY_COMPRESS_ENTRY, OR'ed with ENCRYPT_ENTRY if encrypted.
+     * COMPACT_INTEGER_LENGTH = length of the uncompressed ID2ENTRY_VALUE
+     * COMPACT_INTEGER_DICTIONARY = version number of the dictionary used for compression
+     * ID2ENTRY_VALUE = encoding of Entry as in decodeV1(), deflated with the dictionary,
+     *     then optionally encrypted
+     *
+     * @param bytes A byte array containing the encoded tree value.
+     * @param compressedSchema The compressed schema manager to use when decoding.
+     * @param dictionaries The dictionaries used for compressing entries.
+     * @return The decoded entry.
+     * @throws DecodeException If the data is not in the expected encoding
+     * format, its dictionary is unknown or a decryption error occurs.
+     * @throws DirectoryException If a Directory Server error occurs.
+     * @throws IOException if an error occurs while reading the data.
+     */
+    private Entry decodeV3(ByteString bytes, CompressedSchema compressedSchema, CompressionDictionaries dictionaries)
+        throws DirectoryException, DecodeException, IOException
+    {
+      ByteSequenceReader reader = bytes.asReader();
+      // skip version byte
+      reader.position(1);
+      int format = reader.readByte();
+      int encodedEntryLen = reader.readCompactUnsignedInt();
+      int dictionaryId = reader.readCompactUnsignedInt();
+      CompressionDictionary dictionary = dictionaries != null ? dictionaries.get(dictionaryId) : null;
+      if (dictionary == null)
+      {
+        throw DecodeException.error(ERR_UNKNOWN_COMPRESSION_DICTIONARY.get(dictionaryId));
+      }
+      try
+      {
+        compressedEntryBuffer.clear();
+        if ((format & ENCRYPT_ENTRY) == ENCRYPT_ENTRY)
+        {
+          InputStream is = getCryptoManager().getCipherInputStream(reader.asInputStream());
+          while (compressedEntryBuffer.appendBytes(is, BUFFER_INIT_SIZE) != -1)
+          {
+            // read until the end of the stream
+          }
+        }
+        else
+        {
+          compressedEntryBuffer.appendBytes(reader, reader.remaining());
+        }
+
+        // InflaterInputStream stops when a dictionary is needed, so inflate directly
+        byte[] data = new byte[encodedEntryLen];
+        inflater.reset();
+        inflater.setInput(compressedEntryBuffer.getBackingArray(), 0, compressedEntryBuffer.length());
+        int position = 0;
+        while (position < encodedEntryLen)
+        {
+          int inflated = inflater.inflate(data, position, encodedEntryLen - position);
+          if (inflated == 0)
+          {
+            if (!inflater.needsDictionary())
+            {
+              throw DecodeException.error(ERR_CANNOT_DECODE_ENTRY.get());
+            }
+            inflater.setDictionary(dictionary.getBytes());
+          }
+          position += inflated;
+        }
+        return Entry.decode(ByteString.wrap(data).asReader(), compressedSchema);
+      }
+      catch (CryptoManagerException cme)
+      {
+        logger.traceException(cme);
+        throw DecodeException.error(cme.getMessageObject());
+      }
+      catch (DataFormatException | IllegalArgumentException e)
+      {
+        // IllegalArgumentException is thrown when the dictionary does not match
+        logger.traceException(e);
+        throw DecodeException.error(ERR_CANNOT_DECODE_ENTRY.get(), e);
+      }
+    }
+
     private ByteString encode(Entry entry, DataConfig dataConfig) throws DirectoryException
     {
       encodeVolatile(entry, dataConfig);
@@ -299,6 +395,10 @@ class ID2Entry extends AbstractTree
     private void encodeVolatile(Entry entry, DataConfig dataConfig) throws DirectoryException
     {
       entry.encode(entryBuffer, dataConfig.getEntryEncodeConfig());
+      if (dataConfig.isCompressedWithDictionary() && encodeWithDictionary(dataConfig))
+      {
+        return;
+      }
 
       OutputStream os = encodedBuffer.asOutputStream();
       try
@@ -338,6 +438,55 @@ class ID2Entry extends AbstractTree
         }
       }
     }
+
+    /**
+     * Encodes the entry in the format decoded by {@link #decodeV3}, if a
+     * dictionary is available.
+     *
+     * @return {@code true} if the entry was encoded, {@code false} if no
+     *         dictionary is available yet
+     */
+    private boolean encodeWithDictionary(DataConfig dataConfig) throws DirectoryException
+    {
+      final CompressionDictionary dictionary =
+          dataConfig.getCompressionDictionaries().getDictionaryForCompression(entryBuffer);
+      if (dictionary == null)
+      {
+        return false;
+      }
+
+      byte formatFlags = DICTIONARY_COMPRESS_ENTRY;
+      if (dataConfig.isEncrypted())
+      {
+        formatFlags |= ENCRYPT_ENTRY;
+      }
+      encodedBuffer.appendByte(FORMAT_VERSION_V3);
+      encodedBuffer.appendByte(formatFlags);
+      encodedBuffer.appendCompactUnsigned(entryBuffer.length());
+      encodedBuffer.appendCompactUnsigned(dictionary.getId());
+
+      deflater.reset();
+      deflater.setDictionary(dictionary.getBytes());
+      try
+      {
+        OutputStream os = encodedBuffer.asOutputStream();
+        if (dataConfig.isEncrypted())
+        {
+          os = dataConfig.getCryptoSuite().getCipherOutputStream(os);
+        }
+        // Closing does not end the reused deflater
+        try (OutputStream dos = new DeflaterOutputStream(os, deflater))
+        {
+          entryBuffer.copyTo(dos);
+        }
+        return true;
+      }
+      catch (CryptoManagerException | IOException e)
+      {
+        logger.traceException(e);
+        throw new DirectoryException(UNWILLING_TO_PERFORM, ERR_CANNOT_ENCODE_ENTRY.get(e.getLocalizedMessage()));
+      }
+    }
   }
 
   /**
@@ -387,7 +536,7 @@ class ID2Entry extends AbstractTree
     EntryCodec codec = acquireEntryCodec();
     try
     {
-      return codec.decode(bytes, compressedSchema);
+      return codec.decode(bytes, compressedSchema, dataConfig.getCompressionDictionaries());
     }
     finally
     {
@@ -15,16 +15,23 @@
  */
 package org.opends.server.backends.pluggable;
 
+import static org.forgerock.util.Utils.*;
 import static org.opends.messages.UtilityMessages.*;
-import static org.opends.server.util.StaticUtils.*;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.LocalizableMessageBuilder;
@@ -40,10 +47,23 @@ import org.opends.server.types.LDIFImportConfig;
 import org.forgerock.opendj.ldap.schema.ObjectClass;
 import org.opends.server.util.LDIFException;
 import org.opends.server.util.LDIFReader;
+import org.opends.server.util.StaticUtils;
 
-/** This class specializes the LDIFReader for imports. */
+/**
+ * This class specializes the LDIFReader for imports.
+ * <p>
+ * When the LDIF files can be split, each part of the LDIF files is read and
+ * parsed by its own thread, ahead of the entries being imported. The parsed
+ * entries are then handed out part after part, in the order of the LDIF files:
+ * entry IDs are assigned in this order, and a parent entry is still handed out
+ * before its children.
+ */
 final class ImportLDIFReader extends LDIFReader
 {
+  /** The maximum number of parsed entries waiting in each part, bounding the memory used for reading ahead. */
+  private static final int PART_QUEUE_SIZE = 256;
+  private static final String PART_READER_THREAD_NAME = "PHASE1-LDIF-READER-%d";
+
   private final ConcurrentHashMap<DN, CountDownLatch> pendingMap = new ConcurrentHashMap<>();
 
   /**
@@ -79,9 +99,116 @@ final class ImportLDIFReader extends LDIFReader
     }
   }
 
+  /** The lines of an entry to import, then the entry once parsed, or an error met while reading a part. */
+  private static final class ParsedEntry
+  {
+    /** Marks the end of a part. */
+    private static final ParsedEntry END_OF_PART = new ParsedEntry(null, null, null);
+
+    private final LinkedList<StringBuilder> lines;
+    private final DN entryDN;
+    private final EntryContainer entryContainer;
+    private final Throwable error;
+    private Entry entry;
+
+    private ParsedEntry(LinkedList<StringBuilder> lines, DN entryDN, EntryContainer entryContainer)
+    {
+      this.lines = lines;
+      this.entryDN = entryDN;
+      this.entryContainer = entryContainer;
+      this.error = null;
+    }
+
+    private ParsedEntry(Throwable error)
+    {
+      this.lines = null;
+      this.entryDN = null;
+      this.entryContainer = null;
+      this.error = error;
+    }
+  }
+
+  /** A part of the LDIF files, read and parsed by its own thread. */
+  private static final class Part implements Runnable
+  {
+    private final ImportLDIFReader reader;
+    private final BlockingQueue<ParsedEntry> parsedEntries = new ArrayBlockingQueue<>(PART_QUEUE_SIZE);
+    private final Map<DN, EntryContainer> suffixesMap;
+
+    private Part(ImportLDIFReader reader, Map<DN, EntryContainer> suffixesMap)
+    {
+      this.reader = reader;
+      this.suffixesMap = suffixesMap;
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        final boolean checkSchema = reader.importConfig.validateSchema();
+        ParsedEntry parsedEntry;
+        do
+        {
+          try
+          {
+            parsedEntry = reader.parseEntry(suffixesMap, checkSchema);
+            if (parsedEntry == null)
+            {
+              parsedEntry = ParsedEntry.END_OF_PART;
+            }
+          }
+          catch (LDIFException e)
+          {
+            // Reading goes on with the next entry, like when reading sequentially
+            parsedEntry = new ParsedEntry(e);
+          }
+          catch (IOException e)
+          {
+            parsedEntries.put(new ParsedEntry(e));
+            parsedEntry = ParsedEntry.END_OF_PART;
+          }
+          parsedEntries.put(parsedEntry);
+        }
+        while (parsedEntry != ParsedEntry.END_OF_PART && !reader.importConfig.isCancelled());
+      }
+      catch (InterruptedException e)
+      {
+        // The import is over
+      }
+      catch (Throwable t)
+      {
+        // Handed to the import rather than lost with this thread, which would leave the import waiting forever
+        logger.traceException(t);
+        try
+        {
+          parsedEntries.put(new ParsedEntry(t));
+        }
+        catch (InterruptedException e)
+        {
+          // The import is over
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+  }
+
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
   private final RootContainer rootContainer;
+  /** The readers of the parts of the LDIF files, empty if the LDIF files are read sequentially. */
+  private final List<ImportLDIFReader> partReaders;
+  /** Guards the parts below, while handing out the parsed entries in order. */
+  private final Object partsLock = new Object();
+  private List<Part> parts;
+  private int currentPart;
+  /** The unexpected error which stopped reading a part, rethrown by all the following reads. */
+  private Throwable partFailure;
+  private volatile ExecutorService partExecutor;
+  private volatile boolean partsStopped;
 
   /**
    * Creates a new LDIF reader that will read information from the specified file.
@@ -90,14 +217,39 @@ final class ImportLDIFReader extends LDIFReader
    *          The import configuration for this LDIF reader. It must not be <CODE>null</CODE>.
    * @param rootContainer
    *          The root container needed to get the next entry ID.
+   * @param nbThreads
+   *          The number of threads importing the entries, which is the maximum number of parts
+   *          of the LDIF files read in parallel.
    * @throws IOException
    *           If a problem occurs while opening the LDIF file for reading.
    */
-  public ImportLDIFReader(LDIFImportConfig importConfig, RootContainer rootContainer) throws IOException
+  public ImportLDIFReader(LDIFImportConfig importConfig, RootContainer rootContainer, int nbThreads)
+      throws IOException
   {
     super(importConfig);
     Reject.ifNull(importConfig, rootContainer);
     this.rootContainer = rootContainer;
+    final List<LDIFImportConfig.PartReader> readers = importConfig.getPartReaders(nbThreads);
+    if (readers != null)
+    {
+      this.partReaders = new ArrayList<>(readers.size());
+      for (LDIFImportConfig.PartReader reader : readers)
+      {
+        this.partReaders.add(new ImportLDIFReader(importConfig, reader));
+      }
+    }
+    else
+    {
+      this.partReaders = Collections.emptyList();
+    }
+  }
+
+  /** Creates a reader of a part of the LDIF files. */
+  private ImportLDIFReader(LDIFImportConfig importConfig, LDIFImportConfig.PartReader partReader)
+  {
+    super(importConfig, partReader);
+    this.rootContainer = null;
+    this.partReaders = Collections.emptyList();
   }
 
   /**
@@ -114,83 +266,279 @@ final class ImportLDIFReader extends LDIFReader
    */
   public final EntryInformation readEntry(Map<DN, EntryContainer> suffixesMap) throws IOException, LDIFException
   {
+    if (!partReaders.isEmpty())
+    {
+      return readParsedEntry(suffixesMap);
+    }
+
     final boolean checkSchema = importConfig.validateSchema();
     while (true)
     {
-      LinkedList<StringBuilder> lines;
-      DN entryDN;
+      ParsedEntry parsedEntry;
       EntryID entryID;
-      final EntryContainer entryContainer;
       synchronized (this)
       {
-        // Read the set of lines that make up the next entry.
-        lines = readEntryLines();
-        if (lines == null)
+        parsedEntry = readNextEntryLines(suffixesMap);
+        if (parsedEntry == null)
         {
           return null;
         }
-        lastEntryBodyLines = lines;
-        lastEntryHeaderLines = new LinkedList<>();
+        entryID = rootContainer.getNextEntryID();
 
-        // Read the DN of the entry and see if it is one that should be included
-        // in the import.
+        if (!addPending(parsedEntry.entryDN))
+        {
+          logger.trace("Skipping entry %s because the DN already exists.", parsedEntry.entryDN);
+          logToSkipWriter(parsedEntry.lines, ERR_LDIF_SKIP.get(parsedEntry.entryDN));
+          continue;
+        }
+      }
+
+      // Create the entry and see if it is one that should be included in the import
+      final Entry entry = createEntryToImport(parsedEntry.lines, parsedEntry.entryDN, checkSchema);
+      if (entry == null)
+      {
+        removePending(parsedEntry.entryDN);
+        continue;
+      }
+      return new EntryInformation(entry, entryID, parsedEntry.entryContainer);
+    }
+  }
+
+  /** Hands out the entries parsed by the parts, part after part. */
+  private EntryInformation readParsedEntry(Map<DN, EntryContainer> suffixesMap) throws IOException, LDIFException
+  {
+    synchronized (partsLock)
+    {
+      if (parts == null && !partsStopped)
+      {
+        startParts(suffixesMap);
+      }
+      if (partFailure != null)
+      {
+        throwPartFailure();
+      }
+      while (!partsStopped && currentPart < parts.size() && !importConfig.isCancelled())
+      {
+        final ParsedEntry parsedEntry;
         try
         {
-          entryDN = readDN(lines);
+          // Not waiting forever: the parts may be stopped or the import cancelled meanwhile
+          parsedEntry = parts.get(currentPart).parsedEntries.poll(1, TimeUnit.SECONDS);
         }
-        catch (LDIFException e)
+        catch (InterruptedException e)
         {
-          logger.traceException(e);
-          continue;
+          Thread.currentThread().interrupt();
+          return null;
         }
 
-        if (entryDN == null)
+        if (parsedEntry == null)
         {
-          // This should only happen if the LDIF starts with the "version:" line
-          // and has a blank line immediately after that. In that case, simply
-          // read and return the next entry.
           continue;
         }
-        if (!importConfig.includeEntry(entryDN))
+        else if (parsedEntry == ParsedEntry.END_OF_PART)
         {
-          logger.trace("Skipping entry %s because the DN is not one that "
-              + "should be included based on the include and exclude branches.", entryDN);
-          entriesRead.incrementAndGet();
-          logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+          currentPart++;
           continue;
         }
-        entryContainer = getEntryContainer(entryDN, suffixesMap);
-        if (entryContainer == null)
+        else if (parsedEntry.error instanceof LDIFException)
         {
-          logger.trace("Skipping entry %s because the DN is not one that "
-              + "should be included based on a suffix match check.", entryDN);
-          entriesRead.incrementAndGet();
-          logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
-          continue;
+          throw (LDIFException) parsedEntry.error;
+        }
+        else if (parsedEntry.error != null)
+        {
+          // The part was not read until its end
+          partFailure = parsedEntry.error;
+          throwPartFailure();
         }
-        entriesRead.incrementAndGet();
-        entryID = rootContainer.getNextEntryID();
 
-        if (!addPending(entryDN))
+        final EntryID entryID = rootContainer.getNextEntryID();
+        if (!addPending(parsedEntry.entryDN))
         {
-          logger.trace("Skipping entry %s because the DN already exists.", entryDN);
-          logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+          logger.trace("Skipping entry %s because the DN already exists.", parsedEntry.entryDN);
+          logToSkipWriter(parsedEntry.lines, ERR_LDIF_SKIP.get(parsedEntry.entryDN));
           continue;
         }
+        return new EntryInformation(parsedEntry.entry, entryID, parsedEntry.entryContainer);
       }
+      return null;
+    }
+  }
 
-      // Create the entry and see if it is one that should be included in the import
-      final Entry entry = createEntry(lines, entryDN, checkSchema);
-      if (entry == null
-          || !isIncludedInImport(entry, lines)
-          || !invokeImportPlugins(entry, lines)
-          || (checkSchema && !isValidAgainstSchema(entry, lines)))
+  private void throwPartFailure() throws IOException
+  {
+    if (partFailure instanceof IOException)
+    {
+      throw (IOException) partFailure;
+    }
+    else if (partFailure instanceof RuntimeException)
+    {
+      throw (RuntimeException) partFailure;
+    }
+    else if (partFailure instanceof Error)
+    {
+      throw (Error) partFailure;
+    }
+    throw new IOException(partFailure);
+  }
+
+  private void startParts(Map<DN, EntryContainer> suffixesMap)
+  {
+    parts = new ArrayList<>(partReaders.size());
+    partExecutor =
+        Executors.newFixedThreadPool(partReaders.size(), newThreadFactory(null, PART_READER_THREAD_NAME, true));
+    for (ImportLDIFReader partReader : partReaders)
+    {
+      final Part part = new Part(partReader, suffixesMap);
+      parts.add(part);
+      partExecutor.execute(part);
+    }
+  }
+
+  /** Stops reading the parts of the LDIF files ahead, once the import is over or has failed. */
+  void stopReadingParts()
+  {
+    partsStopped = true;
+    final ExecutorService executor = partExecutor;
+    if (executor != null)
+    {
+      // The parts close their reader
+      executor.shutdownNow();
+    }
+    else
+    {
+      StaticUtils.close(partReaders);
+    }
+  }
+
+  /**
+   * Parses the next entry of a part of the LDIF files.
+   *
+   * @return the parsed entry, or {@code null} at the end of the part
+   */
+  private ParsedEntry parseEntry(Map<DN, EntryContainer> suffixesMap, boolean checkSchema)
+      throws IOException, LDIFException
+  {
+    ParsedEntry parsedEntry;
+    while ((parsedEntry = readNextEntryLines(suffixesMap)) != null)
+    {
+      parsedEntry.entry = createEntryToImport(parsedEntry.lines, parsedEntry.entryDN, checkSchema);
+      if (parsedEntry.entry != null)
+      {
+        return parsedEntry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads the lines of the next entry to import, skipping the entries excluded by their DN.
+   *
+   * @return the lines of the entry, or {@code null} at the end of the LDIF data
+   */
+  private ParsedEntry readNextEntryLines(Map<DN, EntryContainer> suffixesMap) throws IOException, LDIFException
+  {
+    while (true)
+    {
+      // Read the set of lines that make up the next entry.
+      final LinkedList<StringBuilder> lines = readEntryLines();
+      if (lines == null)
       {
-        removePending(entryDN);
+        return null;
+      }
+      lastEntryBodyLines = lines;
+      lastEntryHeaderLines = new LinkedList<>();
+
+      // Read the DN of the entry and see if it is one that should be included
+      // in the import.
+      final DN entryDN;
+      try
+      {
+        entryDN = readDN(lines);
+      }
+      catch (LDIFException e)
+      {
+        logger.traceException(e);
+        continue;
+      }
+
+      if (entryDN == null)
+      {
+        // This should only happen if the LDIF starts with the "version:" line
+        // and has a blank line immediately after that. In that case, simply
+        // read and return the next entry.
+        continue;
+      }
+      if (!importConfig.includeEntry(entryDN))
+      {
+        logger.trace("Skipping entry %s because the DN is not one that "
+            + "should be included based on the include and exclude branches.", entryDN);
+        entriesRead.incrementAndGet();
+        logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
         continue;
       }
-      return new EntryInformation(entry, entryID, entryContainer);
+      final EntryContainer entryContainer = getEntryContainer(entryDN, suffixesMap);
+      if (entryContainer == null)
+      {
+        logger.trace("Skipping entry %s because the DN is not one that "
+            + "should be included based on a suffix match check.", entryDN);
+        entriesRead.incrementAndGet();
+        logToSkipWriter(lines, ERR_LDIF_SKIP.get(entryDN));
+        continue;
+      }
+      entriesRead.incrementAndGet();
+      return new ParsedEntry(lines, entryDN, entryContainer);
+    }
+  }
+
+  /**
+   * Creates the entry and sees if it is one that should be included in the import.
+   *
+   * @return the entry, or {@code null} if it was skipped or rejected
+   */
+  private Entry createEntryToImport(LinkedList<StringBuilder> lines, DN entryDN, boolean checkSchema)
+  {
+    final Entry entry = createEntry(lines, entryDN, checkSchema);
+    if (entry == null
+        || !isIncludedInImport(entry, lines)
+        || !invokeImportPlugins(entry, lines)
+        || (checkSchema && !isValidAgainstSchema(entry, lines)))
+    {
+      return null;
+    }
+    return entry;
+  }
+
+  @Override
+  public long getEntriesRead()
+  {
+    long entriesRead = super.getEntriesRead();
+    for (ImportLDIFReader partReader : partReaders)
+    {
+      entriesRead += partReader.getEntriesRead();
+    }
+    return entriesRead;
+  }
+
+  @Override
+  public long getEntriesIgnored()
+  {
+    long entriesIgnored = super.getEntriesIgnored();
+    for (ImportLDIFReader partReader : partReaders)
+    {
+      entriesIgnored += partReader.getEntriesIgnored();
+    }
+    return entriesIgnored;
+  }
+
+  @Override
+  public long getEntriesRejected()
+  {
+    long entriesRejected = super.getEntriesRejected();
+    for (ImportLDIFReader partReader : partReaders)
+    {
+      entriesRejected += partReader.getEntriesRejected();
     }
+    return entriesRejected;
   }
 
   private Entry createEntry(List<StringBuilder> lines, DN entryDN, boolean checkSchema)
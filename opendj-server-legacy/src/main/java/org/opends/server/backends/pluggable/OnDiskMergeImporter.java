@@ -132,7 +132,7 @@ import sun.misc.Unsafe;
  */
 final class OnDiskMergeImporter
 {
-  private static final String DEFAULT_TMP_DIR = "import-tmp";
+  static final String DEFAULT_TMP_DIR = "import-tmp";
 
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
@@ -280,6 +280,10 @@ final class OnDiskMergeImporter
         clearDegradedState(entryContainer, indexesToRebuild);
         logger.info(NOTE_REBUILD_CLEARDEGRADEDSTATE_FINAL_STATUS, rebuildConfig.getRebuildList());
       }
+      else if (rebuildConfig.isOnline())
+      {
+        rebuildIndexOnline(entryContainer, indexesToRebuild, totalEntries);
+      }
       else
       {
         rebuildIndex(entryContainer, rebuildConfig.getTmpDirectory(), indexesToRebuild, totalEntries);
@@ -298,6 +302,18 @@ final class OnDiskMergeImporter
       });
     }
 
+    private void rebuildIndexOnline(EntryContainer entryContainer, Set<String> indexesToRebuild, long totalEntries)
+        throws Exception
+    {
+      if (indexesToRebuild.isEmpty())
+      {
+        logger.info(NOTE_REBUILD_NOTHING_TO_REBUILD);
+        return;
+      }
+      // The storage is not closed: the updates keep being processed while rebuilding
+      new OnlineIndexRebuilder(entryContainer, indexesToRebuild, totalEntries).rebuild();
+    }
+
     private void rebuildIndex(EntryContainer entryContainer, String tmpDirectory, Set<String> indexesToRebuild,
         long totalEntries) throws Exception
     {
@@ -558,7 +574,7 @@ final class OnDiskMergeImporter
         int nbThreads) throws IOException
     {
       this.importConfig = importConfig;
-      this.reader = new ImportLDIFReader(importConfig, rootContainer);
+      this.reader = new ImportLDIFReader(importConfig, rootContainer, nbThreads);
       this.entryContainers = new HashMap<>();
       for (EntryContainer container : rootContainer.getEntryContainers())
       {
@@ -625,6 +641,7 @@ final class OnDiskMergeImporter
       {
         scheduler.shutdown();
         executor.shutdown();
+        reader.stopReadingParts();
       }
     }
 
@@ -0,0 +1,265 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.opends.messages.BackendMessages.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.backends.pluggable.AttributeIndex.MatchingRuleIndex;
+import org.opends.server.backends.pluggable.spi.Cursor;
+import org.opends.server.backends.pluggable.spi.Storage;
+import org.opends.server.backends.pluggable.spi.WriteOperation;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+import org.opends.server.types.Entry;
+import org.opends.server.types.InitializationException;
+
+/**
+ * Rebuilds attribute indexes while the backend remains online.
+ * <p>
+ * The indexes are emptied and marked as rebuilding, so that the concurrent updates keep indexing the entries they
+ * modify, and are not used by searches. The entries are then read from id2entry in batches, each batch being indexed
+ * in its own write transaction while holding the exclusive lock of the entry container, so that a batch never
+ * interleaves with an update. The lock is released between batches, letting the operations proceed. Once all the
+ * entries have been indexed, the indexes are trusted again.
+ * <p>
+ * System and VLV indexes cannot be rebuilt online.
+ */
+final class OnlineIndexRebuilder
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The number of entries indexed by each write transaction. */
+  private static final int BATCH_SIZE = 1000;
+  /** The interval in milliseconds between two progress reports. */
+  private static final long PROGRESS_INTERVAL = 10000;
+
+  private final EntryContainer entryContainer;
+  private final Storage storage;
+  private final List<MatchingRuleIndex> indexes = new ArrayList<>();
+  private final long totalEntries;
+
+  /** The number of entries indexed so far. */
+  private long processedCount;
+  /** The key of the first entry of the next batch, {@code null} once all the entries have been indexed. */
+  private ByteString nextKey;
+  /** The number of entries indexed by the last batch. */
+  private int batchCount;
+
+  /**
+   * Creates a rebuilder of attribute indexes.
+   *
+   * @param entryContainer
+   *          the entry container holding the indexes
+   * @param indexNames
+   *          the names of the indexes to rebuild
+   * @param totalEntries
+   *          the number of entries to index, for reporting progress
+   * @throws InitializationException
+   *           If one of the indexes is not an attribute index
+   */
+  OnlineIndexRebuilder(EntryContainer entryContainer, Collection<String> indexNames, long totalEntries)
+      throws InitializationException
+  {
+    this.entryContainer = entryContainer;
+    this.storage = entryContainer.getRootContainer().getStorage();
+    this.totalEntries = totalEntries;
+
+    final Set<String> remainingNames = new HashSet<>();
+    for (String indexName : indexNames)
+    {
+      remainingNames.add(indexName.toLowerCase());
+    }
+    for (AttributeIndex attributeIndex : entryContainer.getAttributeIndexes())
+    {
+      for (MatchingRuleIndex index : attributeIndex.getNameToIndexes().values())
+      {
+        if (remainingNames.remove(index.getName().getIndexId().toLowerCase()))
+        {
+          indexes.add(index);
+        }
+      }
+    }
+    if (!remainingNames.isEmpty())
+    {
+      throw new InitializationException(ERR_REBUILD_ONLINE_UNSUPPORTED_INDEX.get(remainingNames.iterator().next()));
+    }
+  }
+
+  /**
+   * Rebuilds the indexes. If the rebuild fails, the indexes are left degraded.
+   *
+   * @throws Exception
+   *           If an error occurs while rebuilding the indexes
+   */
+  void rebuild() throws Exception
+  {
+    final long startTime = System.currentTimeMillis();
+    startRebuilding();
+    boolean success = false;
+    try
+    {
+      indexEntries();
+      success = true;
+    }
+    finally
+    {
+      stopRebuilding(success);
+    }
+
+    final long totalTime = System.currentTimeMillis() - startTime;
+    final float rate = totalTime > 0 ? 1000f * processedCount / totalTime : 0;
+    logger.info(NOTE_REBUILD_FINAL_STATUS, processedCount, totalTime / 1000, rate);
+  }
+
+  private void startRebuilding() throws Exception
+  {
+    entryContainer.exclusiveLock.lock();
+    try
+    {
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          for (MatchingRuleIndex index : indexes)
+          {
+            index.setTrusted(txn, false);
+            index.delete(txn);
+            index.open(txn, true);
+          }
+        }
+      });
+      for (MatchingRuleIndex index : indexes)
+      {
+        index.setRebuilding(true);
+      }
+    }
+    finally
+    {
+      entryContainer.exclusiveLock.unlock();
+    }
+  }
+
+  private void indexEntries() throws Exception
+  {
+    long previousTime = System.currentTimeMillis();
+    long previousCount = 0;
+    nextKey = new EntryID(1).toByteString();
+    while (nextKey != null)
+    {
+      entryContainer.exclusiveLock.lock();
+      try
+      {
+        indexBatch(nextKey);
+        processedCount += batchCount;
+      }
+      finally
+      {
+        entryContainer.exclusiveLock.unlock();
+      }
+
+      final long currentTime = System.currentTimeMillis();
+      final long deltaTime = currentTime - previousTime;
+      if (deltaTime >= PROGRESS_INTERVAL)
+      {
+        final float completed = totalEntries > 0 ? Math.min(100f, 100f * processedCount / totalEntries) : 0;
+        final float rate = 1000f * (processedCount - previousCount) / deltaTime;
+        logger.info(NOTE_REBUILD_PROGRESS_REPORT, completed, processedCount, totalEntries, rate);
+        previousTime = currentTime;
+        previousCount = processedCount;
+      }
+    }
+  }
+
+  private void indexBatch(final ByteString firstKey) throws Exception
+  {
+    final ID2Entry id2entry = entryContainer.getID2Entry();
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        // The transaction may be retried, so the state of the batch is only set at the end
+        final IndexBuffer buffer = new IndexBuffer();
+        int count = 0;
+        ByteString keyAfterBatch = null;
+        try (Cursor<ByteString, ByteString> cursor = txn.openCursor(id2entry.getName()))
+        {
+          boolean found = cursor.positionToKeyOrNext(firstKey);
+          while (found && count < BATCH_SIZE)
+          {
+            final EntryID entryID = new EntryID(cursor.getKey());
+            final Entry entry = id2entry.entryFromDatabase(
+                cursor.getValue(), entryContainer.getRootContainer().getCompressedSchema());
+            for (MatchingRuleIndex index : indexes)
+            {
+              for (ByteString key : index.indexEntry(entry))
+              {
+                buffer.put(index, key, entryID);
+              }
+            }
+            count++;
+            found = cursor.next();
+          }
+          if (found)
+          {
+            keyAfterBatch = cursor.getKey();
+          }
+        }
+        buffer.flush(txn);
+        batchCount = count;
+        nextKey = keyAfterBatch;
+      }
+    });
+  }
+
+  private void stopRebuilding(boolean success) throws Exception
+  {
+    entryContainer.exclusiveLock.lock();
+    try
+    {
+      if (success)
+      {
+        storage.write(new WriteOperation()
+        {
+          @Override
+          public void run(WriteableTransaction txn) throws Exception
+          {
+            for (MatchingRuleIndex index : indexes)
+            {
+              index.setTrusted(txn, true);
+            }
+          }
+        });
+      }
+    }
+    finally
+    {
+      for (MatchingRuleIndex index : indexes)
+      {
+        index.setRebuilding(false);
+      }
+      entryContainer.exclusiveLock.unlock();
+    }
+  }
+}
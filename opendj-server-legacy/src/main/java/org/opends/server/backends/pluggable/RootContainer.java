@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -80,9 +83,14 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
   /** The compressed schema manager for this backend. */
   private PersistentCompressedSchema compressedSchema;
+  /** The dictionaries used for compressing the entries of this backend. */
+  private CompressionDictionaries compressionDictionaries;
 
   private final ServerContext serverContext;
 
+  /** The pool evaluating the candidates of indexed searches, or null if searches are sequential. */
+  private volatile ForkJoinPool searchPool;
+
   /**
    * Creates a new RootContainer object representing a storage.
    *
@@ -103,6 +111,7 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
 
     getMonitorProvider().enableFilterUseStats(config.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(config.getIndexFilterAnalyzerMaxFilters());
+    updateSearchPool(config.getSearchParallelism());
 
     config.addPluggableChangeListener(this);
   }
@@ -138,6 +147,7 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
         public void run(WriteableTransaction txn) throws Exception
         {
           compressedSchema = new PersistentCompressedSchema(serverContext, storage, txn, accessMode);
+          compressionDictionaries = new CompressionDictionaries(backendId, storage, txn, accessMode);
           openAndRegisterEntryContainers(txn, config.getBaseDN(), accessMode);
         }
       });
@@ -256,6 +266,16 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     return compressedSchema;
   }
 
+  /**
+   * Retrieves the dictionaries used for compressing the entries of this backend.
+   *
+   * @return The dictionaries used for compressing the entries of this backend.
+   */
+  CompressionDictionaries getCompressionDictionaries()
+  {
+    return compressionDictionaries;
+  }
+
   /**
    * Get the BackendMonitor object used by this root container.
    *
@@ -334,6 +354,11 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
       }
     }
     config.removePluggableChangeListener(this);
+    updateSearchPool(1);
+    if (compressionDictionaries != null)
+    {
+      compressionDictionaries.close();
+    }
     if (storage != null)
     {
       storage.close();
@@ -453,10 +478,48 @@ public class RootContainer implements ConfigurationChangeListener<PluggableBacke
     config = configuration;
     getMonitorProvider().enableFilterUseStats(config.isIndexFilterAnalyzerEnabled());
     getMonitorProvider().setMaxEntries(config.getIndexFilterAnalyzerMaxFilters());
+    updateSearchPool(config.getSearchParallelism());
 
     return new ConfigChangeResult();
   }
 
+  /**
+   * Returns the pool used to evaluate the candidate entries of indexed searches in parallel.
+   *
+   * @return the search pool, or {@code null} if parallel searches are disabled
+   */
+  ForkJoinPool getSearchPool()
+  {
+    return searchPool;
+  }
+
+  /**
+   * Replaces the search pool if the requested parallelism has changed. Searches already using the
+   * previous pool are allowed to complete.
+   */
+  private synchronized void updateSearchPool(int parallelism)
+  {
+    final ForkJoinPool oldPool = searchPool;
+    if (oldPool != null ? oldPool.getParallelism() == parallelism : parallelism <= 1)
+    {
+      return;
+    }
+    searchPool = parallelism > 1 ? new ForkJoinPool(parallelism, new ForkJoinWorkerThreadFactory()
+    {
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+      {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Parallel search " + backendId + " " + thread.getPoolIndex());
+        return thread;
+      }
+    }, null, false) : null;
+    if (oldPool != null)
+    {
+      oldPool.shutdown();
+    }
+  }
+
   /**
    * Checks the storage has enough resources for an operation.
    *
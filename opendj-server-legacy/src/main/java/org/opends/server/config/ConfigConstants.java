@@ -4009,6 +4009,13 @@ public final class ConfigConstants
   public static final String ATTR_TASK_INITIALIZE_SOURCE =
        NAME_PREFIX_TASK + "initialize-replica-server-id";
 
+  /**
+   * The name of the attribute in an initialize task definition that specifies
+   * whether only the entries that differ from the source should be transferred.
+   */
+  public static final String ATTR_TASK_INITIALIZE_DELTA =
+       NAME_PREFIX_TASK + "initialize-delta";
+
   /**
    * The name of the objectclass that will be used for a Directory Server
    * initialize target task definition.
@@ -4144,6 +4151,21 @@ public final class ConfigConstants
   public static final String ATTR_TASK_EXPORT_WRAP_COLUMN =
        NAME_PREFIX_TASK + "export-wrap-column";
 
+  /**
+   * The name of the attribute in an export task definition that specifies
+   * the number of threads exporting ranges of entries in parallel.
+   */
+  public static final String ATTR_TASK_EXPORT_THREAD_COUNT =
+       NAME_PREFIX_TASK + "export-thread-count";
+
+  /**
+   * The name of the attribute in an export task definition that specifies
+   * whether the part files written in parallel should be kept rather than
+   * merged into the LDIF file.
+   */
+  public static final String ATTR_TASK_EXPORT_PART_FILES =
+       NAME_PREFIX_TASK + "export-part-files";
+
   /**
    * The name of the attribute in an export task definition that specifies
    * that operational attributes have to be included.
@@ -4329,6 +4351,13 @@ public final class ConfigConstants
   public static final String ATTR_REBUILD_INDEX_CLEARDEGRADEDSTATE =
       ATTR_REBUILD_INDEX + "-clear-degraded-state";
 
+  /**
+   * The name of the attribute in an rebuild task definition that specifies
+   * whether the indexes are rebuilt while the backend remains online.
+   */
+  public static final String ATTR_REBUILD_INDEX_ONLINE =
+      ATTR_REBUILD_INDEX + "-online";
+
 
   /**
    * The name of the attribute in an rebuild task definition that specifies the
@@ -641,8 +641,8 @@ public final class DirectoryServer
   /** The Disk Space Monitor. */
   private final DiskSpaceMonitor diskSpaceMonitor;
 
-  /** The lock manager which will be used for coordinating access to LDAP entries. */
-  private final LockManager lockManager = new LockManager();
+  /** The lock manager which will be used for coordinating access to LDAP entries, only replaced by tests. */
+  private volatile LockManager lockManager = newLockManager();
 
   /** The maximum size that internal buffers will be allowed to grow to until they are trimmed. */
   private int maxInternalBufferSize = DEFAULT_MAX_INTERNAL_BUFFER_SIZE;
@@ -6549,4 +6549,28 @@ public final class DirectoryServer
   {
     return directoryServer.lockManager;
   }
+
+  /**
+   * Replaces the lock manager, for unit tests only.
+   *
+   * @param lockManager
+   *          the lock manager which will be used for coordinating access to LDAP entries
+   * @return the replaced lock manager
+   */
+  static LockManager setLockManager(LockManager lockManager)
+  {
+    final LockManager oldLockManager = directoryServer.lockManager;
+    directoryServer.lockManager = lockManager;
+    return oldLockManager;
+  }
+
+  private static LockManager newLockManager()
+  {
+    final int numberOfStripes = Integer.getInteger(PROPERTY_LOCK_MANAGER_STRIPES, 0);
+    if (numberOfStripes > 0)
+    {
+      return LockManager.newStripedLockManager(numberOfStripes);
+    }
+    return new LockManager();
+  }
 }
@@ -23,15 +23,20 @@ import static org.opends.server.protocols.internal.Requests.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -63,6 +68,7 @@ import org.opends.server.protocols.internal.SearchRequest;
 import org.opends.server.protocols.ldap.LDAPControl;
 import org.opends.server.types.Control;
 import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DN.CompactDn;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
@@ -102,6 +108,9 @@ public class GroupManager extends InternalDirectoryServerPlugin
   /** Used by group instances to determine if new groups have been registered or groups deleted. */
   private volatile long refreshToken;
 
+  /** The number of changes to the members of the registered group instances. */
+  private final AtomicLong membershipChanges = new AtomicLong();
+
   /** A mapping between the DNs of the config entries and the associated group implementations. */
   private ConcurrentMap<DN, Group<?>> groupImplementations;
 
@@ -111,6 +120,30 @@ public class GroupManager extends InternalDirectoryServerPlugin
   /** Lock to protect internal data structures. */
   private final ReadWriteLock lock;
 
+  /**
+   * Reverse index from the DN of a member to the group instances explicitly listing it as a member,
+   * including the DNs of the nested groups. Only modified while holding its own monitor.
+   */
+  private final ConcurrentMap<CompactDn, Set<Group<?>>> memberIndex = new ConcurrentHashMap<>();
+
+  /** Lists of group instances computed from the group instances when the refresh token changes. */
+  private volatile CachedGroups cachedGroups;
+
+  /** Lists of group instances, and the refresh token they were computed for. */
+  private static final class CachedGroups
+  {
+    private final long refreshToken;
+    /** The group instances which depend on the member entries. */
+    private final List<Group<?>> memberDependentGroups = new ArrayList<>();
+    /** The group instances which members are not in the member index, and must be evaluated. */
+    private final List<Group<?>> unindexedGroups = new ArrayList<>();
+
+    private CachedGroups(long refreshToken)
+    {
+      this.refreshToken = refreshToken;
+    }
+  }
+
   /** Dummy configuration DN for Group Manager. */
   private static final String CONFIG_DN = "cn=Group Manager,cn=config";
 
@@ -270,6 +303,8 @@ public class GroupManager extends InternalDirectoryServerPlugin
           if (g.getClass().getName().equals(group.getClass().getName()))
           {
             iterator.remove();
+            deindexGroupInstance(g);
+            refreshToken++;
           }
         }
       }
@@ -331,6 +366,8 @@ public class GroupManager extends InternalDirectoryServerPlugin
               if (g.getClass().getName().equals(group.getClass().getName()))
               {
                 iterator.remove();
+                deindexGroupInstance(g);
+                refreshToken++;
               }
             }
           }
@@ -488,6 +525,142 @@ public class GroupManager extends InternalDirectoryServerPlugin
     }
   }
 
+  /**
+   * Retrieves the group instances which the provided user is a member of,
+   * either directly or through nested groups.
+   * <p>
+   * The groups explicitly listing their members are looked up in the member
+   * index, first from the DN of the user, then from the DNs of the groups found
+   * so far. Only the other groups, such as the dynamic groups, are evaluated
+   * against the user entry. Hence the cost depends on the number of groups of
+   * the user rather than on the total number of groups.
+   *
+   * @param  userEntry  The entry of the user.
+   *
+   * @return  The group instances which the provided user is a member of.
+   */
+  public Set<Group<?>> getGroupInstances(Entry userEntry)
+  {
+    Set<Group<?>> groups = new LinkedHashSet<>();
+    Deque<DN> memberDNs = new ArrayDeque<>();
+    memberDNs.add(userEntry.getName());
+    for (Group<?> group : getCachedGroups().unindexedGroups)
+    {
+      try
+      {
+        if (group.isMember(userEntry) && groups.add(group))
+        {
+          memberDNs.add(group.getGroupDN());
+        }
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+      }
+    }
+
+    // Follow the nested groups
+    DN memberDN;
+    while ((memberDN = memberDNs.poll()) != null)
+    {
+      Set<Group<?>> indexedGroups = memberIndex.get(memberDN.compact());
+      if (indexedGroups == null)
+      {
+        continue;
+      }
+      for (Group<?> group : indexedGroups)
+      {
+        // the index may briefly reference a group instance being replaced
+        if (getGroupInstance(group.getGroupDN()) == group && groups.add(group))
+        {
+          memberDNs.add(group.getGroupDN());
+        }
+      }
+    }
+    return groups;
+  }
+
+  /**
+   * Adds a member to the member index. This must be called by the group
+   * instances explicitly listing their members when a member is added.
+   *
+   * @param  group     The group instance.
+   * @param  memberDN  The DN of the added member.
+   */
+  public void addToMemberIndex(Group<?> group, CompactDn memberDN)
+  {
+    synchronized (memberIndex)
+    {
+      Set<Group<?>> groups = memberIndex.get(memberDN);
+      if (groups == null)
+      {
+        groups = Collections.newSetFromMap(new ConcurrentHashMap<Group<?>, Boolean>());
+        memberIndex.put(memberDN, groups);
+      }
+      groups.add(group);
+    }
+  }
+
+  /**
+   * Removes a member from the member index. This must be called by the group
+   * instances explicitly listing their members when a member is removed.
+   *
+   * @param  group     The group instance.
+   * @param  memberDN  The DN of the removed member.
+   */
+  public void removeFromMemberIndex(Group<?> group, CompactDn memberDN)
+  {
+    synchronized (memberIndex)
+    {
+      Set<Group<?>> groups = memberIndex.get(memberDN);
+      if (groups != null && groups.remove(group) && groups.isEmpty())
+      {
+        memberIndex.remove(memberDN);
+      }
+    }
+  }
+
+  /**
+   * Registers a group instance, replacing any group instance registered with
+   * the same DN. The caller must hold the write lock.
+   */
+  private void registerGroupInstance(DN groupDN, Group<?> group)
+  {
+    Group<?> previousGroup = groupInstances.put(groupDN, group);
+    if (previousGroup != null)
+    {
+      deindexGroupInstance(previousGroup);
+    }
+    Set<CompactDn> memberDNs = group.getExplicitMemberDNs();
+    if (memberDNs != null)
+    {
+      synchronized (memberIndex)
+      {
+        for (CompactDn memberDN : memberDNs)
+        {
+          addToMemberIndex(group, memberDN);
+        }
+      }
+    }
+    refreshToken++;
+  }
+
+  /** Removes the members of a deregistered group instance from the member index. */
+  private void deindexGroupInstance(Group<?> group)
+  {
+    Set<CompactDn> memberDNs = group.getExplicitMemberDNs();
+    if (memberDNs != null)
+    {
+      synchronized (memberIndex)
+      {
+        for (CompactDn memberDN : memberDNs)
+        {
+          removeFromMemberIndex(group, memberDN);
+        }
+      }
+    }
+  }
+
   /**
    * Retrieves the group instance defined in the entry with the specified DN.
    *
@@ -580,8 +753,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
             try
             {
               Group<?> groupInstance = groupImplementation.newInstance(null, entry);
-              groupInstances.put(entry.getName(), groupInstance);
-              refreshToken++;
+              registerGroupInstance(entry.getName(), groupInstance);
             }
             catch (DirectoryException e)
             {
@@ -616,6 +788,8 @@ public class GroupManager extends InternalDirectoryServerPlugin
         if (backend.handlesEntry(groupEntryDN))
         {
           iterator.remove();
+          deindexGroupInstance(mapEntry.getValue());
+          refreshToken++;
         }
       }
     }
@@ -623,11 +797,16 @@ public class GroupManager extends InternalDirectoryServerPlugin
     {
       lock.writeLock().unlock();
     }
+    invalidateMemberDependentGroups();
   }
 
+  /**
+   * {@inheritDoc}  In this case, the groups depending on the member entries
+   * are notified that the entries of the provided backend may have changed.
+   */
   @Override
   public void performBackendPostInitializationProcessing(Backend<?> backend) {
-    // Nothing to do.
+    invalidateMemberDependentGroups();
   }
 
   @Override
@@ -642,6 +821,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
    */
   private void doPostAdd(PluginOperation addOperation, Entry entry)
   {
+    notifyMemberDependentGroups(null, entry);
     if (hasGroupMembershipUpdateControl(addOperation))
     {
       return;
@@ -651,13 +831,18 @@ public class GroupManager extends InternalDirectoryServerPlugin
   }
 
   private static boolean hasGroupMembershipUpdateControl(PluginOperation operation)
+  {
+    return hasControl(operation, OID_INTERNAL_GROUP_MEMBERSHIP_UPDATE);
+  }
+
+  private static boolean hasControl(PluginOperation operation, String oid)
   {
     List<Control> requestControls = operation.getRequestControls();
     if (requestControls != null)
     {
       for (Control c : requestControls)
       {
-        if (OID_INTERNAL_GROUP_MEMBERSHIP_UPDATE.equals(c.getOID()))
+        if (oid.equals(c.getOID()))
         {
           return true;
         }
@@ -666,12 +851,97 @@ public class GroupManager extends InternalDirectoryServerPlugin
     return false;
   }
 
+  /**
+   * Returns the registered group instances which depend on the member entries.
+   *
+   * @return the registered group instances which depend on the member entries
+   */
+  private List<Group<?>> getMemberDependentGroups()
+  {
+    return getCachedGroups().memberDependentGroups;
+  }
+
+  private CachedGroups getCachedGroups()
+  {
+    CachedGroups cached = cachedGroups;
+    if (cached != null && cached.refreshToken == refreshToken)
+    {
+      return cached;
+    }
+
+    lock.readLock().lock();
+    try
+    {
+      // the refresh token only changes while holding the write lock
+      cached = new CachedGroups(refreshToken);
+      for (Group<?> group : groupInstances.values())
+      {
+        if (group.dependsOnMemberEntries())
+        {
+          cached.memberDependentGroups.add(group);
+        }
+        if (group.getExplicitMemberDNs() == null)
+        {
+          cached.unindexedGroups.add(group);
+        }
+      }
+      cachedGroups = cached;
+      return cached;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Notifies the groups depending on the member entries that an entry changed.
+   *
+   * @param oldEntry  The entry before the change, or {@code null} if the entry was added.
+   * @param newEntry  The entry after the change, or {@code null} if the entry was deleted.
+   */
+  private void notifyMemberDependentGroups(Entry oldEntry, Entry newEntry)
+  {
+    final List<Group<?>> groups = getMemberDependentGroups();
+    for (Group<?> group : groups)
+    {
+      group.memberEntryChanged(oldEntry, newEntry);
+    }
+    if (!groups.isEmpty())
+    {
+      membershipChanged();
+    }
+  }
+
+  /** Notifies the groups depending on the member entries that entries changed without notification. */
+  private void invalidateMemberDependentGroups()
+  {
+    final List<Group<?>> groups = getMemberDependentGroups();
+    for (Group<?> group : groups)
+    {
+      group.memberEntriesInvalidated();
+    }
+    if (!groups.isEmpty())
+    {
+      membershipChanged();
+    }
+  }
+
   /**
    * In this case, if the entry is associated with a registered
    * group instance, then that group instance will be deregistered.
    */
   private void doPostDelete(PluginOperation deleteOperation, Entry entry)
   {
+    if (hasControl(deleteOperation, OID_SUBTREE_DELETE_CONTROL))
+    {
+      // the subordinate entries were deleted without notification
+      invalidateMemberDependentGroups();
+    }
+    else
+    {
+      notifyMemberDependentGroups(entry, null);
+    }
     if (hasGroupMembershipUpdateControl(deleteOperation))
     {
       return;
@@ -680,8 +950,13 @@ public class GroupManager extends InternalDirectoryServerPlugin
     lock.writeLock().lock();
     try
     {
-      if (groupInstances.removeSubtree(entry.getName(), null))
+      Set<Group<?>> groupSet = new HashSet<>();
+      if (groupInstances.removeSubtree(entry.getName(), groupSet))
       {
+        for (Group<?> group : groupSet)
+        {
+          deindexGroupInstance(group);
+        }
         refreshToken++;
       }
     }
@@ -721,6 +996,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           Entry oldEntry, Entry newEntry,
           List<Modification> modifications)
   {
+    notifyMemberDependentGroups(oldEntry, newEntry);
     if (hasGroupMembershipUpdateControl(modifyOperation))
     {
       return;
@@ -751,13 +1027,14 @@ public class GroupManager extends InternalDirectoryServerPlugin
             || !group.mayAlterMemberList()
             || updatesObjectClass(modifications))
         {
-          groupInstances.remove(oldEntry.getName());
+          deindexGroupInstance(groupInstances.remove(oldEntry.getName()));
           // This updates the refreshToken
           createAndRegisterGroup(newEntry);
         }
         else
         {
           group.updateMembers(modifications);
+          membershipChanged();
         }
       }
     }
@@ -781,6 +1058,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
   private void doPostModifyDN(PluginOperation modifyDNOperation,
           Entry oldEntry, Entry newEntry)
   {
+    notifyMemberDependentGroups(oldEntry, newEntry);
     if (hasGroupMembershipUpdateControl(modifyDNOperation))
     {
       return;
@@ -942,8 +1220,7 @@ public class GroupManager extends InternalDirectoryServerPlugin
           lock.writeLock().lock();
           try
           {
-            groupInstances.put(entry.getName(), groupInstance);
-            refreshToken++;
+            registerGroupInstance(entry.getName(), groupInstance);
           }
           finally
           {
@@ -969,6 +1246,11 @@ public class GroupManager extends InternalDirectoryServerPlugin
     try
     {
       groupInstances.clear();
+      synchronized (memberIndex)
+      {
+        memberIndex.clear();
+      }
+      refreshToken++;
     }
     finally
     {
@@ -999,4 +1281,45 @@ public class GroupManager extends InternalDirectoryServerPlugin
   public long refreshToken() {
     return this.refreshToken;
   }
+
+  /**
+   * Return a token which changes whenever group instances are registered or
+   * deregistered, or whenever the members of a group instance may have changed.
+   * Can be used to discard the cached results of membership evaluations.
+   *
+   * @return The current membership token value.
+   */
+  public long membershipToken()
+  {
+    // Both values only increase, so their sum changes with any of them
+    return refreshToken + membershipChanges.get();
+  }
+
+  /**
+   * Notifies this group manager that group instances may have started or
+   * stopped depending on the member entries, for instance because the
+   * configuration of their group implementation changed.
+   */
+  public void memberDependenciesChanged()
+  {
+    lock.writeLock().lock();
+    try
+    {
+      // The cached lists of group instances are computed again
+      refreshToken++;
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Notifies this group manager that the members of a group instance have
+   * changed. Must be called once the group instance reflects the change.
+   */
+  public void membershipChanged()
+  {
+    membershipChanges.incrementAndGet();
+  }
 }
@@ -16,18 +16,24 @@
  */
 package org.opends.server.extensions;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.LocalizedIllegalArgumentException;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.config.server.ConfigurationChangeListener;
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.DN.CompactDn;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.forgerock.opendj.ldap.schema.AttributeType;
 import org.forgerock.opendj.server.config.server.DynamicGroupImplementationCfg;
@@ -41,6 +47,7 @@ import org.opends.server.types.Entry;
 import org.opends.server.types.InitializationException;
 import org.opends.server.types.LDAPURL;
 import org.opends.server.types.MemberList;
+import org.opends.server.types.MembershipException;
 import org.opends.server.types.Modification;
 import org.opends.server.types.SearchFilter;
 
@@ -55,24 +62,99 @@ import static org.opends.server.util.ServerConstants.*;
  * in the form of one or more LDAP URLs.  All dynamic groups should
  * contain the groupOfURLs object class, with the memberURL attribute
  * specifying the membership criteria.
+ * <p>
+ * When the materialized membership is enabled, the DNs of the members are
+ * searched the first time they are needed, and then kept up to date from the
+ * changes made to the entries, as notified by the group manager. Determining
+ * whether a user is a member then only needs a lookup in memory.
  */
 public class DynamicGroup
        extends Group<DynamicGroupImplementationCfg>
+       implements ConfigurationChangeListener<DynamicGroupImplementationCfg>
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** The number of times the members are searched when entries keep being invalidated during the search. */
+  private static final int MAX_MATERIALIZATION_ATTEMPTS = 3;
+  /** The delay before searching the members again after the first failure, doubled after each failure. */
+  private static final long MIN_MATERIALIZATION_RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+  /** The maximum delay before searching the members again after a failure. */
+  private static final long MAX_MATERIALIZATION_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
   /** The DN of the entry that holds the definition for this group. */
   private DN groupEntryDN;
 
   /** The set of the LDAP URLs that define the membership criteria. */
   private LinkedHashSet<LDAPURL> memberURLs;
 
+  /**
+   * The group implementation which created this group, holding the
+   * configuration, or {@code null} if this group is not backed by a group
+   * implementation.
+   */
+  private final DynamicGroup groupImplementation;
+
+  /** The current configuration, only set for a group implementation. */
+  private volatile DynamicGroupImplementationCfg currentConfig;
+
+  /**
+   * Whether the groups of a group implementation use their materialized
+   * members. Only enabled once the group manager notifies the groups of the
+   * changes made to the entries.
+   */
+  private volatile boolean materializedMembership;
+
+  /**
+   * The number of times the materialized membership of a group implementation
+   * was enabled: the members materialized before it was last disabled missed
+   * changes.
+   */
+  private volatile long materializationGeneration;
+
+  /** Serializes the searches of the members. */
+  private final Object materializationLock = new Object();
+
+  /** The time before which the members are not searched again after a failure, guarded by materializationLock. */
+  private long materializationRetryTime;
+
+  /** The delay before searching the members again after the last failure, guarded by materializationLock. */
+  private long materializationRetryDelay;
+
+  /** Guards the publication of the members and the changes notified while they are searched. */
+  private final Object memberChangesLock = new Object();
+
+  /**
+   * The changes notified while the members are searched, as pairs of the old
+   * and new entries, or {@code null} if the members are not being searched.
+   * Guarded by memberChangesLock.
+   */
+  private List<Entry[]> pendingMemberChanges;
+
+  /** Whether entries changed without notification while the members are searched, guarded by memberChangesLock. */
+  private boolean pendingMemberInvalidation;
+
+  /** The DNs of the members, or {@code null} if they need to be searched. */
+  private volatile MaterializedMembers materializedMembers;
+
+  /** The DNs of the members of a group, and the materialization generation they were searched for. */
+  private static final class MaterializedMembers
+  {
+    private final long generation;
+    private final Set<CompactDn> memberDNs;
+
+    private MaterializedMembers(long generation, Set<CompactDn> memberDNs)
+    {
+      this.generation = generation;
+      this.memberDNs = memberDNs;
+    }
+  }
+
   /** Creates a new, uninitialized dynamic group instance. This is intended for internal use only. */
   public DynamicGroup()
   {
     super();
 
-    // No initialization is required here.
+    this.groupImplementation = null;
   }
 
   /**
@@ -85,6 +167,11 @@ public class DynamicGroup
    *                       {@code null}.
    */
   public DynamicGroup(DN groupEntryDN, LinkedHashSet<LDAPURL> memberURLs)
+  {
+    this(groupEntryDN, memberURLs, null);
+  }
+
+  private DynamicGroup(DN groupEntryDN, LinkedHashSet<LDAPURL> memberURLs, DynamicGroup groupImplementation)
   {
     super();
 
@@ -92,6 +179,7 @@ public class DynamicGroup
 
     this.groupEntryDN = groupEntryDN;
     this.memberURLs   = memberURLs;
+    this.groupImplementation = groupImplementation;
   }
 
   @Override
@@ -99,7 +187,51 @@ public class DynamicGroup
                    DynamicGroupImplementationCfg configuration)
          throws ConfigException, InitializationException
   {
-    // No additional initialization is required.
+    currentConfig = configuration;
+    materializedMembership = configuration.isMaterializedMembership();
+    configuration.addDynamicChangeListener(this);
+  }
+
+  @Override
+  public void finalizeGroupImplementation()
+  {
+    currentConfig.removeDynamicChangeListener(this);
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+                      DynamicGroupImplementationCfg configuration,
+                      List<LocalizableMessage> unacceptableReasons)
+  {
+    // The new configuration should always be acceptable.
+    return true;
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(
+                                 DynamicGroupImplementationCfg configuration)
+  {
+    // The group instances read the configuration each time they are used.
+    final boolean wasMaterialized = currentConfig.isMaterializedMembership();
+    final boolean materialized = configuration.isMaterializedMembership();
+    if (!materialized)
+    {
+      // Stop using the members before they stop being updated
+      materializedMembership = false;
+    }
+    currentConfig = configuration;
+    if (materialized != wasMaterialized)
+    {
+      DirectoryServer.getGroupManager().memberDependenciesChanged();
+    }
+    if (materialized && !wasMaterialized)
+    {
+      // Only use the members once the group manager notifies the changes
+      materializationGeneration++;
+      materializedMembership = true;
+    }
+
+    return new ConfigChangeResult();
   }
 
   @Override
@@ -128,7 +260,7 @@ public class DynamicGroup
       }
     }
 
-    return new DynamicGroup(groupEntry.getName(), memberURLs);
+    return new DynamicGroup(groupEntry.getName(), memberURLs, this);
   }
 
   @Override
@@ -214,8 +346,14 @@ public class DynamicGroup
       return false;
     }
 
+    Set<CompactDn> members = getMaterializedMembers();
+    if (members != null)
+    {
+      return members.contains(userDN.compact());
+    }
+
     Entry entry = DirectoryConfig.getEntry(userDN);
-    return entry != null && isMember(entry);
+    return entry != null && matchesMemberURLs(entry);
   }
 
   @Override
@@ -227,9 +365,16 @@ public class DynamicGroup
       return false;
     }
 
+    // The provided entry may not be committed yet, hence the member URLs are
+    // always evaluated against it.
+    return matchesMemberURLs(userEntry);
+  }
+
+  private boolean matchesMemberURLs(Entry entry) throws DirectoryException
+  {
     for (LDAPURL memberURL : memberURLs)
     {
-      if (memberURL.matchesEntry(userEntry))
+      if (memberURL.matchesEntry(entry))
       {
         return true;
       }
@@ -242,7 +387,7 @@ public class DynamicGroup
   public MemberList getMembers()
          throws DirectoryException
   {
-    return new DynamicGroupMemberList(groupEntryDN, memberURLs);
+    return getMembers(null, null, null);
   }
 
   @Override
@@ -250,7 +395,18 @@ public class DynamicGroup
                                SearchFilter filter)
          throws DirectoryException
   {
-    if (baseDN == null && filter == null)
+    Set<CompactDn> members = getMaterializedMembers();
+    if (members != null)
+    {
+      // Iterate over a snapshot, as the members may change meanwhile
+      Set<CompactDn> memberDNs = new LinkedHashSet<>(members);
+      if (baseDN == null && filter == null)
+      {
+        return new SimpleStaticGroupMemberList(groupEntryDN, memberDNs);
+      }
+      return new FilteredStaticGroupMemberList(groupEntryDN, memberDNs, baseDN, scope, filter);
+    }
+    else if (baseDN == null && filter == null)
     {
       return new DynamicGroupMemberList(groupEntryDN, memberURLs);
     }
@@ -267,6 +423,257 @@ public class DynamicGroup
     return false;
   }
 
+  private boolean isMaterializedMembership()
+  {
+    return groupImplementation != null && groupImplementation.materializedMembership;
+  }
+
+  /**
+   * Returns the DNs of the members of this group, searching them if they are
+   * not in memory yet.
+   *
+   * @return the DNs of the members of this group, or {@code null} if the
+   *         materialized membership is disabled or if the members could not be
+   *         searched, in which case the member URLs must be evaluated instead
+   */
+  private Set<CompactDn> getMaterializedMembers()
+  {
+    if (!isMaterializedMembership())
+    {
+      // Free the memory if the materialized membership was disabled
+      materializedMembers = null;
+      return null;
+    }
+
+    final long generation = groupImplementation.materializationGeneration;
+    MaterializedMembers members = materializedMembers;
+    if (members != null && members.generation == generation)
+    {
+      return members.memberDNs;
+    }
+
+    synchronized (materializationLock)
+    {
+      members = materializedMembers;
+      if (members != null && members.generation == generation)
+      {
+        return members.memberDNs;
+      }
+      if (System.currentTimeMillis() < materializationRetryTime)
+      {
+        // Do not search the members on every membership check while they cannot be searched
+        return null;
+      }
+
+      for (int i = 0; i < MAX_MATERIALIZATION_ATTEMPTS; i++)
+      {
+        synchronized (memberChangesLock)
+        {
+          materializedMembers = null;
+          pendingMemberChanges = new ArrayList<>();
+          pendingMemberInvalidation = false;
+        }
+        final Set<CompactDn> memberDNs = searchMembers();
+        synchronized (memberChangesLock)
+        {
+          final List<Entry[]> changes = pendingMemberChanges;
+          pendingMemberChanges = null;
+          if (memberDNs == null)
+          {
+            break;
+          }
+          // The search may have missed the changes notified meanwhile, they are applied again
+          if (!pendingMemberInvalidation && applyMemberChanges(memberDNs, changes))
+          {
+            materializedMembers = new MaterializedMembers(generation, memberDNs);
+            materializationRetryDelay = 0;
+            return memberDNs;
+          }
+        }
+      }
+
+      materializationRetryDelay = materializationRetryDelay == 0
+          ? MIN_MATERIALIZATION_RETRY_DELAY
+          : Math.min(materializationRetryDelay * 2, MAX_MATERIALIZATION_RETRY_DELAY);
+      materializationRetryTime = System.currentTimeMillis() + materializationRetryDelay;
+    }
+    return null;
+  }
+
+  private boolean applyMemberChanges(Set<CompactDn> memberDNs, List<Entry[]> changes)
+  {
+    for (Entry[] change : changes)
+    {
+      if (!applyMemberChange(memberDNs, change[0], change[1]))
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Applies a change made to an entry to the DNs of the members.
+   *
+   * @return {@code false} if the members must be searched again
+   */
+  private boolean applyMemberChange(Set<CompactDn> memberDNs, Entry oldEntry, Entry newEntry)
+  {
+    if (newEntry == null)
+    {
+      memberDNs.remove(oldEntry.getName().compact());
+      return true;
+    }
+    else if (oldEntry != null && !oldEntry.getName().equals(newEntry.getName()))
+    {
+      // The subordinate entries were renamed too
+      return false;
+    }
+
+    try
+    {
+      if (matchesMemberURLs(newEntry))
+      {
+        memberDNs.add(newEntry.getName().compact());
+      }
+      else
+      {
+        memberDNs.remove(newEntry.getName().compact());
+      }
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      return false;
+    }
+  }
+
+  /**
+   * Indicates whether a change made to an entry may change the members, based
+   * on the base DN and scope of the member URLs.
+   */
+  private boolean mayChangeMembers(Entry oldEntry, Entry newEntry)
+  {
+    if (oldEntry != null && newEntry != null && !oldEntry.getName().equals(newEntry.getName()))
+    {
+      // The subordinate entries were renamed too
+      return mayContainMembers(oldEntry.getName(), true) || mayContainMembers(newEntry.getName(), true);
+    }
+    return mayContainMembers((newEntry != null ? newEntry : oldEntry).getName(), false);
+  }
+
+  private boolean mayContainMembers(DN entryDN, boolean withSubordinates)
+  {
+    for (LDAPURL memberURL : memberURLs)
+    {
+      try
+      {
+        final DN baseDN = memberURL.getBaseDN();
+        final SearchScope scope = memberURL.getScope() != null ? memberURL.getScope() : SearchScope.BASE_OBJECT;
+        if (entryDN.isInScopeOf(baseDN, scope)
+            || (withSubordinates && (entryDN.isSubordinateOrEqualTo(baseDN) || baseDN.isSubordinateOrEqualTo(entryDN))))
+        {
+          return true;
+        }
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Set<CompactDn> searchMembers()
+  {
+    final Set<CompactDn> members = Collections.newSetFromMap(new ConcurrentHashMap<CompactDn, Boolean>());
+    final MemberList memberList = new DynamicGroupMemberList(groupEntryDN, memberURLs);
+    try
+    {
+      while (memberList.hasMoreMembers())
+      {
+        try
+        {
+          DN memberDN = memberList.nextMemberDN();
+          if (memberDN != null)
+          {
+            members.add(memberDN.compact());
+          }
+        }
+        catch (MembershipException e)
+        {
+          logger.traceException(e);
+          if (!e.continueIterating())
+          {
+            logger.warn(WARN_DYNAMICGROUP_CANNOT_MATERIALIZE_MEMBERS, groupEntryDN, e.getMessageObject());
+            return null;
+          }
+        }
+      }
+      return members;
+    }
+    finally
+    {
+      memberList.close();
+    }
+  }
+
+  @Override
+  public boolean dependsOnMemberEntries()
+  {
+    // The group manager is told when the materialized membership is enabled or disabled
+    if (groupImplementation == null)
+    {
+      return false;
+    }
+    final DynamicGroupImplementationCfg config = groupImplementation.currentConfig;
+    return config != null && config.isMaterializedMembership();
+  }
+
+  @Override
+  public void memberEntryChanged(Entry oldEntry, Entry newEntry)
+  {
+    if (!mayChangeMembers(oldEntry, newEntry))
+    {
+      return;
+    }
+
+    final MaterializedMembers members;
+    synchronized (memberChangesLock)
+    {
+      if (pendingMemberChanges != null)
+      {
+        // Applied once the members are searched
+        pendingMemberChanges.add(new Entry[] { oldEntry, newEntry });
+        return;
+      }
+      members = materializedMembers;
+    }
+    // A search of the members starting now would find the change, as it was already applied
+    if (members != null && !applyMemberChange(members.memberDNs, oldEntry, newEntry))
+    {
+      synchronized (memberChangesLock)
+      {
+        if (materializedMembers == members)
+        {
+          materializedMembers = null;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void memberEntriesInvalidated()
+  {
+    synchronized (memberChangesLock)
+    {
+      pendingMemberInvalidation = pendingMemberChanges != null;
+      materializedMembers = null;
+    }
+  }
+
   @Override
   public void updateMembers(List<Modification> modifications)
          throws UnsupportedOperationException, DirectoryException
@@ -0,0 +1,573 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.config.server.ConfigurationChangeListener;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.server.config.server.ElasticWorkQueueCfg;
+import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.ElasticWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.DisconnectReason;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * This class defines a Directory Server work queue which runs each operation on
+ * its own thread, taken from a pool which creates threads on demand and
+ * discards them once they have been idle for some time.
+ * <p>
+ * The number of worker threads only bounds the number of operations running
+ * concurrently: since idle threads do not stay around, it can be set much
+ * higher than with the traditional work queue so that operations blocking on
+ * remote servers or on storage I/O do not prevent the other operations from
+ * being processed. Operations submitted when this limit is reached wait in a
+ * bounded queue, and trying to submit an operation when this queue is full
+ * fails so that the connection handlers can apply back-pressure.
+ */
+public class ElasticWorkQueue extends WorkQueue<ElasticWorkQueueCfg>
+    implements ConfigurationChangeListener<ElasticWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The time after which an idle worker thread exits, in seconds. */
+  private static final long IDLE_WORKER_THREAD_TIMEOUT_SECONDS = 60;
+
+  /** A semaphore whose number of permits can be reduced. */
+  private static final class ResizableSemaphore extends Semaphore
+  {
+    private static final long serialVersionUID = 1L;
+
+    private ResizableSemaphore(int permits)
+    {
+      super(permits);
+    }
+
+    @Override
+    protected void reducePermits(int reduction)
+    {
+      super.reducePermits(reduction);
+    }
+  }
+
+  /**
+   * Runs an operation, then the next pending operations if any, while holding
+   * a running operation slot.
+   */
+  private final class OperationRunner implements Runnable
+  {
+    private final Operation firstOperation;
+
+    private OperationRunner(Operation firstOperation)
+    {
+      this.firstOperation = firstOperation;
+    }
+
+    @Override
+    public void run()
+    {
+      Operation operation = firstOperation;
+      do
+      {
+        runOperation(operation);
+        operation = pollPendingOperation();
+      }
+      while (operation != null);
+
+      runningOperationSlots.release();
+      // An operation may have been submitted after the last poll.
+      dispatchPendingOperations();
+    }
+  }
+
+  /** The thread pool running the operations, creating threads on demand. */
+  private ThreadPoolExecutor executor;
+
+  /** The operations waiting for a running operation slot. */
+  private final ConcurrentLinkedQueue<Operation> pendingOperations = new ConcurrentLinkedQueue<>();
+
+  /** The slots available in the queue of operations waiting for a running operation slot. */
+  private final ResizableSemaphore pendingOperationSlots = new ResizableSemaphore(0);
+
+  /** The slots available for running operations, which limits the number of threads in use. */
+  private final ResizableSemaphore runningOperationSlots = new ResizableSemaphore(0);
+
+  /** The number of operations submitted which have not yet completed. */
+  private final AtomicInteger nbUncompletedOperations = new AtomicInteger();
+
+  /** The operations currently running, so that they can be canceled on shutdown. */
+  private final Set<Operation> runningOperations =
+      Collections.newSetFromMap(new ConcurrentHashMap<Operation, Boolean>());
+
+  /** The number of operations currently running. */
+  private final AtomicInteger nbRunningOperations = new AtomicInteger();
+
+  /** The maximum number of operations which have been running concurrently. */
+  private final AtomicInteger maxRunningOperations = new AtomicInteger();
+
+  /** The number of operations that have been submitted to the work queue for processing. */
+  private final AtomicLong opsSubmitted = new AtomicLong();
+
+  /**
+   * The number of times that an attempt to submit a new request has been
+   * rejected because the work queue is already at its maximum capacity.
+   */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /**
+   * The maximum number of pending requests that this work queue will allow
+   * before it will start rejecting them.
+   */
+  private int maxCapacity;
+
+  /** The maximum number of operations running concurrently. */
+  private int numWorkerThreads;
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public ElasticWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+  @Override
+  public synchronized void initializeWorkQueue(ElasticWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    shutdownRequested = false;
+
+    // Register to be notified of any configuration changes.
+    configuration.addElasticChangeListener(this);
+
+    // Get the necessary configuration from the provided entry.
+    numWorkerThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    maxCapacity = configuration.getMaxWorkQueueCapacity();
+    pendingOperationSlots.release(maxCapacity);
+    runningOperationSlots.release(numWorkerThreads);
+
+    // Idle threads are reused, and new threads are only created when all the
+    // existing ones are busy. The running operation slots bound their number.
+    executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+        IDLE_WORKER_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new DirectoryThread.Factory("Worker Thread"));
+
+    // Create and register a monitor provider for the work queue.
+    try
+    {
+      ElasticWorkQueueMonitor monitor = new ElasticWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, ElasticWorkQueueMonitor.class, e);
+    }
+  }
+
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // From now on no more operations can be enqueued or started.
+
+    // Send responses to any operations in the pending queue to indicate that
+    // they won't be processed because the server is shutting down.
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    Operation o;
+    while ((o = pendingOperations.poll()) != null)
+    {
+      nbUncompletedOperations.decrementAndGet();
+      try
+      {
+        // The operation has no chance of responding to the cancel
+        // request so avoid waiting for a cancel response.
+        if (o.getCancelResult() == null)
+        {
+          o.abort(cancelRequest);
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+      }
+    }
+
+    // Cancel the operations in progress and let the threads exit.
+    CancelRequest shutdownCancelRequest = new CancelRequest(true, INFO_CANCELED_BY_SHUTDOWN.get());
+    for (Operation running : runningOperations)
+    {
+      try
+      {
+        running.cancel(shutdownCancelRequest);
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+      }
+    }
+    executor.shutdown();
+  }
+
+  /**
+   * Indicates whether this work queue has received a request to shut down.
+   *
+   * @return <CODE>true</CODE> if the work queue has recieved a request to shut
+   *         down, or <CODE>false</CODE> if not.
+   */
+  public boolean shutdownRequested()
+  {
+    return shutdownRequested;
+  }
+
+  /**
+   * Submits an operation to be processed by a worker thread, blocking until
+   * the queue has available capacity if it is full.
+   *
+   * @param operation
+   *          The operation to be processed.
+   * @throws DirectoryException
+   *           If the provided operation is not accepted for some reason (e.g.,
+   *           if the server is shutting down).
+   */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    checkNotShutdown();
+    try
+    {
+      // Periodically check whether the server is shutting down.
+      while (!pendingOperationSlots.tryAcquire(1, TimeUnit.SECONDS))
+      {
+        checkNotShutdown();
+      }
+    }
+    catch (InterruptedException e)
+    {
+      // We cannot handle the interruption here. Reject the request and
+      // re-interrupt this thread.
+      Thread.currentThread().interrupt();
+
+      queueFullRejects.incrementAndGet();
+
+      LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get();
+      throw new DirectoryException(ResultCode.BUSY, message);
+    }
+    enqueue(operation);
+  }
+
+  @Override
+  public boolean trySubmitOperation(Operation operation)
+      throws DirectoryException
+  {
+    checkNotShutdown();
+    if (!pendingOperationSlots.tryAcquire())
+    {
+      queueFullRejects.incrementAndGet();
+      return false;
+    }
+    enqueue(operation);
+    return true;
+  }
+
+  private void enqueue(Operation operation)
+  {
+    nbUncompletedOperations.incrementAndGet();
+    pendingOperations.add(operation);
+    opsSubmitted.incrementAndGet();
+    dispatchPendingOperations();
+  }
+
+  /** Starts running pending operations as long as running operation slots are available. */
+  private void dispatchPendingOperations()
+  {
+    while (!pendingOperations.isEmpty() && runningOperationSlots.tryAcquire())
+    {
+      final Operation operation = pollPendingOperation();
+      if (operation == null)
+      {
+        // Another thread took it: check again.
+        runningOperationSlots.release();
+        continue;
+      }
+
+      try
+      {
+        executor.execute(new OperationRunner(operation));
+      }
+      catch (RejectedExecutionException e)
+      {
+        // The executor only rejects operations once shut down.
+        logger.traceException(e);
+        runningOperationSlots.release();
+        nbUncompletedOperations.decrementAndGet();
+        operation.abort(new CancelRequest(true, INFO_CANCELED_BY_SHUTDOWN.get()));
+        return;
+      }
+    }
+  }
+
+  private Operation pollPendingOperation()
+  {
+    final Operation operation = shutdownRequested ? null : pendingOperations.poll();
+    if (operation != null)
+    {
+      pendingOperationSlots.release();
+    }
+    return operation;
+  }
+
+  private void runOperation(Operation operation)
+  {
+    runningOperations.add(operation);
+    updateMaxRunningOperations(nbRunningOperations.incrementAndGet());
+    try
+    {
+      operation.run();
+      operation.operationCompleted();
+    }
+    catch (Throwable t)
+    {
+      handleUncaughtException(operation, t);
+    }
+    finally
+    {
+      nbRunningOperations.decrementAndGet();
+      runningOperations.remove(operation);
+      nbUncompletedOperations.decrementAndGet();
+    }
+  }
+
+  private void checkNotShutdown() throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+  }
+
+  private void updateMaxRunningOperations(int nbRunning)
+  {
+    int max;
+    while (nbRunning > (max = maxRunningOperations.get())
+        && !maxRunningOperations.compareAndSet(max, nbRunning))
+    {
+      // Retry.
+    }
+  }
+
+  /** Ensures that the client receives some kind of result so that it does not hang. */
+  private void handleUncaughtException(Operation operation, Throwable t)
+  {
+    final String threadName = Thread.currentThread().getName();
+    if (logger.isTraceEnabled())
+    {
+      logger.trace("Uncaught exception in worker thread while processing operation %s: %s", operation, t);
+      logger.traceException(t);
+    }
+
+    try
+    {
+      LocalizableMessage message =
+          ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(threadName, operation, stackTraceToSingleLineString(t));
+      logger.error(message);
+
+      operation.setResultCode(DirectoryServer.getServerErrorResultCode());
+      operation.appendErrorMessage(message);
+      operation.getClientConnection().sendResponse(operation);
+    }
+    catch (Throwable t2)
+    {
+      logger.traceException(t2);
+    }
+
+    try
+    {
+      LocalizableMessage message =
+          ERR_UNCAUGHT_WORKER_THREAD_EXCEPTION.get(threadName, operation, stackTraceToSingleLineString(t));
+      operation.disconnectClient(DisconnectReason.SERVER_ERROR, true, message);
+    }
+    catch (Throwable t2)
+    {
+      logger.traceException(t2);
+    }
+  }
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup. This does
+   * not include operations that have been rejected for some reason like the
+   * queue already at its maximum capacity.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    return opsSubmitted.get();
+  }
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.get();
+  }
+
+  /**
+   * Retrieves the number of pending operations in the queue that have not yet
+   * been picked up for processing.
+   *
+   * @return The number of pending operations in the queue that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    return pendingOperations.size();
+  }
+
+  /**
+   * Retrieves the number of operations currently running.
+   *
+   * @return The number of operations currently running.
+   */
+  public int getNbRunningOperations()
+  {
+    return nbRunningOperations.get();
+  }
+
+  /**
+   * Retrieves the maximum number of operations which have been running
+   * concurrently since server startup.
+   *
+   * @return The maximum number of operations which have been running
+   *         concurrently since server startup.
+   */
+  public int getMaxRunningOperations()
+  {
+    return maxRunningOperations.get();
+  }
+
+  /**
+   * Retrieves the number of worker threads currently alive, be they running an
+   * operation or idle.
+   *
+   * @return The number of worker threads currently alive.
+   */
+  public int getNbLiveWorkerThreads()
+  {
+    return executor.getPoolSize();
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      ElasticWorkQueueCfg configuration, List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+  @Override
+  public synchronized ConfigChangeResult applyConfigurationChange(
+      ElasticWorkQueueCfg configuration)
+  {
+    int newNumThreads =
+        computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    int newMaxCapacity = configuration.getMaxWorkQueueCapacity();
+
+    // Apply a change to the number of worker threads if appropriate. When
+    // reduced, the operations in progress complete normally.
+    if (newNumThreads > numWorkerThreads)
+    {
+      runningOperationSlots.release(newNumThreads - numWorkerThreads);
+      dispatchPendingOperations();
+    }
+    else if (newNumThreads < numWorkerThreads)
+    {
+      runningOperationSlots.reducePermits(numWorkerThreads - newNumThreads);
+    }
+    numWorkerThreads = newNumThreads;
+
+    // Apply a change to the maximum capacity if appropriate. Operations already
+    // queued beyond a reduced capacity are processed normally.
+    if (newMaxCapacity > maxCapacity)
+    {
+      pendingOperationSlots.release(newMaxCapacity - maxCapacity);
+    }
+    else if (newMaxCapacity < maxCapacity)
+    {
+      pendingOperationSlots.reducePermits(maxCapacity - newMaxCapacity);
+    }
+    maxCapacity = newMaxCapacity;
+
+    return new ConfigChangeResult();
+  }
+
+  @Override
+  public boolean isIdle()
+  {
+    return nbUncompletedOperations.get() == 0;
+  }
+
+  /**
+   * Return the maximum number of operations running concurrently in this
+   * WorkQueue.
+   *
+   * @return the maximum number of operations running concurrently in this
+   *         WorkQueue
+   */
+  @Override
+  public synchronized int getNumWorkerThreads()
+  {
+    return this.numWorkerThreads;
+  }
+}
@@ -0,0 +1,950 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static java.lang.invoke.MethodType.*;
+
+import static org.opends.messages.ExtensionMessages.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.config.server.ConfigurationChangeListener;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.server.config.server.EntryCacheCfg;
+import org.forgerock.opendj.server.config.server.OffHeapEntryCacheCfg;
+import org.forgerock.util.Utils;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.api.MonitorData;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache which stores entries in
+ * their encoded form in slabs of direct memory, outside of the JVM heap.
+ * <BR><BR>
+ * Only a compact index mapping DNs and backend/entry IDs to the location of
+ * the encoded entries is kept on the heap.  Entries are decoded each time they
+ * are read from the cache, so the cached data is never seen by the garbage
+ * collector.
+ * <BR><BR>
+ * The slabs form a ring which is filled in order, each new entry being
+ * appended after the previous one.  Once all the memory allowed for the cache
+ * has been used, the oldest slab is recycled and all the entries it holds are
+ * evicted at once.  Replaced or removed entries leave dead space in their slab
+ * until it is recycled.  Lookups never block: readers detect that a slab has
+ * been recycled while they were copying an entry thanks to its generation
+ * number, and treat the lookup as a cache miss.  This requires the memory
+ * fences of the JVM, only available since Java 8: on older JVMs, lookups
+ * instead briefly block while a slab is being recycled.
+ */
+public class OffHeapEntryCache
+       extends EntryCache<OffHeapEntryCacheCfg>
+       implements ConfigurationChangeListener<OffHeapEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * The memory fences of the seqlock formed by the generation of the slabs:
+   * volatile accesses alone do not prevent the plain accesses to the slabs
+   * from being reordered around them.  Both are {@code null} when the JVM does
+   * not provide them, in which case the slabs are recycled under a lock.
+   */
+  private static final MethodHandle LOAD_FENCE;
+  private static final MethodHandle STORE_FENCE;
+  static
+  {
+    MethodHandle loadFence = null;
+    MethodHandle storeFence = null;
+    try
+    {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafeField.setAccessible(true);
+      final Object unsafe = theUnsafeField.get(null);
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      loadFence = lookup.findVirtual(unsafeClass, "loadFence", methodType(void.class)).bindTo(unsafe);
+      storeFence = lookup.findVirtual(unsafeClass, "storeFence", methodType(void.class)).bindTo(unsafe);
+    }
+    catch (ReflectiveOperationException | RuntimeException e)
+    {
+      // Java 7 or no Unsafe: fall back to locking
+      logger.traceException(e);
+      loadFence = null;
+      storeFence = null;
+    }
+    LOAD_FENCE = loadFence;
+    STORE_FENCE = storeFence;
+  }
+
+  /** The mapping between entry backends/IDs and entry locations. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Location>> idMap = new ConcurrentHashMap<>();
+
+  /** The mapping between DNs and entry locations. */
+  private final ConcurrentMap<DN, Location> dnMap = new ConcurrentHashMap<>();
+
+  /** The lock serializing the writes to the slabs. */
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  /** The number of bytes of direct memory currently allocated by this cache. */
+  private final AtomicLong allocatedMemory = new AtomicLong();
+
+  /** The ring of slabs, fixed once the cache has been initialized. */
+  private Slab[] slabs;
+
+  /** The index of the slab new entries are appended to, guarded by the write lock. */
+  private int currentSlab;
+
+  /** Whether no more slabs can be allocated, guarded by the write lock. */
+  private boolean allocationFailed;
+
+  /** The maximum amount of direct memory used by the cache. */
+  private long maxMemorySize;
+
+  /** Currently registered configuration object. */
+  private OffHeapEntryCacheCfg registeredConfiguration;
+
+  /** Creates a new instance of this off heap entry cache. */
+  public OffHeapEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  @Override
+  public void initializeEntryCache(OffHeapEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addOffHeapChangeListener(this);
+
+    // Slabs are only allocated when they are first needed.
+    maxMemorySize = configuration.getMaxMemorySize();
+    int slabSize = (int) Math.min(configuration.getSlabSize(), maxMemorySize);
+    slabs = new Slab[(int) Math.max(maxMemorySize / slabSize, 1)];
+    for (int i = 0; i < slabs.length; i++)
+    {
+      slabs[i] = new Slab(slabSize);
+    }
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_OFFHEAPCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeOffHeapChangeListener(this);
+
+    // Release all memory currently in use by this cache.  The direct buffers
+    // themselves are freed once they have been garbage collected.
+    writeLock.lock();
+    try
+    {
+      clear();
+      for (Slab slab : slabs)
+      {
+        slab.buffer = null;
+      }
+      allocatedMemory.set(0);
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && isValid(dnMap.get(entryDN));
+  }
+
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    Entry entry = entryDN != null ? read(dnMap.get(entryDN)) : null;
+    if (entry == null)
+    {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    return entry;
+  }
+
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    Location location = entryDN != null ? dnMap.get(entryDN) : null;
+    return isValid(location) ? location.entryID : -1;
+  }
+
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    // Locate specific backend map and return the entry DN by ID.
+    Map<Long, Location> backendMap = idMap.get(backendID);
+    if (backendMap != null)
+    {
+      Location location = backendMap.get(entryID);
+      if (isValid(location))
+      {
+        return location.dn;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    ByteStringBuilder buffer = encode(entry);
+    if (buffer == null)
+    {
+      return;
+    }
+
+    writeLock.lock();
+    try
+    {
+      write(entry.getName(), backendID, entryID, buffer);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    // Avoid encoding the entry when it is already present.
+    if (containsEntry(entry.getName()))
+    {
+      return false;
+    }
+
+    ByteStringBuilder buffer = encode(entry);
+    if (buffer == null)
+    {
+      // We can't rule out the possibility of a conflict, so return false.
+      return false;
+    }
+
+    writeLock.lock();
+    try
+    {
+      // Check again now that no other entry can be written.
+      if (containsEntry(entry.getName()))
+      {
+        return false;
+      }
+      write(entry.getName(), backendID, entryID, buffer);
+
+      // We'll always return true in this case, even if we didn't actually add
+      // the entry because it is too large.
+      return true;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // We can't be sure there wasn't a conflict, so return false.
+      return false;
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    if (entryDN == null)
+    {
+      return;
+    }
+
+    // Serialized with the writes, which index an entry in both maps.
+    writeLock.lock();
+    try
+    {
+      // The space used by the entry is reclaimed when its slab is recycled.
+      Location location = dnMap.remove(entryDN);
+      if (location != null)
+      {
+        Map<Long, Location> map = idMap.get(location.backendID);
+        if (map != null)
+        {
+          map.remove(location.entryID, location);
+        }
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    writeLock.lock();
+    try
+    {
+      dnMap.clear();
+      idMap.clear();
+      for (Slab slab : slabs)
+      {
+        slab.reset();
+      }
+      currentSlab = 0;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // This shouldn't happen, but there's not much that we can do if it does.
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void clearBackend(String backendID)
+  {
+    writeLock.lock();
+    try
+    {
+      // Remove all references to entries for this backend from the ID cache.
+      Map<Long, Location> map = idMap.remove(backendID);
+      if (map != null)
+      {
+        for (Location location : map.values())
+        {
+          dnMap.remove(location.dn, location);
+        }
+      }
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      writeLock.lock();
+      try
+      {
+        clearSubtree(baseDN, backend);
+      }
+      finally
+      {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.  The write lock must be held.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.
+    Map<Long, Location> map = idMap.get(backend.getBackendID());
+    if (map != null)
+    {
+      for (Location location : map.values())
+      {
+        if (location.dn.isSubordinateOrEqualTo(baseDN))
+        {
+          map.remove(location.entryID, location);
+          dnMap.remove(location.dn, location);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isSubordinateOrEqualTo(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void handleLowMemory()
+  {
+    // The cached entries are not on the heap, but their index is.  If there
+    // are less than 1000 entries, then we'll dump all of them.  Otherwise,
+    // we'll release 10% of the slabs, starting with the oldest ones.
+    if (dnMap.size() < 1000)
+    {
+      clear();
+      return;
+    }
+
+    writeLock.lock();
+    try
+    {
+      for (int i = 1; i <= Math.max(slabs.length / 10, 1); i++)
+      {
+        recycle(slabs[(currentSlab + i) % slabs.length]);
+      }
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // This shouldn't happen, but there's not much that we can do if it does.
+    }
+    finally
+    {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    OffHeapEntryCacheCfg config = (OffHeapEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      OffHeapEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons
+      )
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(OffHeapEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    // The memory layout can only be changed by restarting the cache.
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired()
+        || configuration.getMaxMemorySize() != maxMemorySize
+        || Math.min(configuration.getSlabSize(), configuration.getMaxMemorySize()) != slabs[0].size);
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      OffHeapEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Local variables to read configuration.
+    Set<SearchFilter> newIncludeFilters = null;
+    Set<SearchFilter> newExcludeFilters = null;
+
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+
+    // Get include and exclude filters.
+    switch (errorHandler.getConfigPhase())
+    {
+    case PHASE_INIT:
+    case PHASE_ACCEPTABLE:
+    case PHASE_APPLY:
+      newIncludeFilters = EntryCacheCommon.getFilters (
+          configuration.getIncludeFilter(),
+          ERR_CACHE_INVALID_INCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      newExcludeFilters = EntryCacheCommon.getFilters (
+          configuration.getExcludeFilter(),
+          ERR_CACHE_INVALID_EXCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      break;
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    try {
+      return EntryCacheCommon.getGenericMonitorData(
+        cacheHits.longValue(),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        allocatedMemory.longValue(),
+        maxMemorySize,
+        Long.valueOf(dnMap.size()),
+        null
+        );
+    } catch (Exception e) {
+      logger.traceException(e);
+      return new MonitorData(0);
+    }
+  }
+
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // The maps are concurrent, so iterating over them is safe but only
+    // reflects a weakly consistent view of the cache contents.
+    Map<DN, Location> dnMapCopy = new HashMap<>(dnMap);
+    for (Map.Entry<DN, Location> entry : dnMapCopy.entrySet()) {
+      final Location location = entry.getValue();
+      sb.append(entry.getKey());
+      sb.append(":");
+      sb.append(location.entryID);
+      sb.append(":");
+      sb.append(location.backendID);
+      sb.append(ServerConstants.EOL);
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // dnMap in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, Location>> backendCache : idMap.entrySet()) {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, Location> entry : backendCache.getValue().entrySet()) {
+        final Location location = entry.getValue();
+        if (!dnMapCopy.containsKey(location.dn)) {
+          sb.append(location.dn);
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+
+  /**
+   * Encodes the provided entry in the form it will be stored in the slabs.
+   *
+   * @param entry  The entry to encode.
+   * @return  The encoded entry, or {@code null} if it could not be encoded.
+   */
+  private static ByteStringBuilder encode(Entry entry)
+  {
+    try
+    {
+      ByteStringBuilder buffer = new ByteStringBuilder();
+      entry.encode(buffer, EntryEncodeConfig.DEFAULT_CONFIG);
+      return buffer;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /**
+   * Appends an encoded entry to the current slab and indexes it.  The write
+   * lock must be held.
+   */
+  private void write(DN dn, String backendID, long entryID, ByteStringBuilder buffer)
+  {
+    final int length = buffer.length();
+    Slab slab = slabs[currentSlab];
+    if (length > slab.size)
+    {
+      // Entries larger than a slab are never cached, but the cache must not
+      // keep returning the previous version of the entry.
+      removeEntry(dn);
+      return;
+    }
+
+    if (slab.writeOffset + length > slab.size)
+    {
+      currentSlab = (currentSlab + 1) % slabs.length;
+      if (slabs[currentSlab].buffer == null && !allocate(slabs[currentSlab]))
+      {
+        // Not enough direct memory: keep cycling through the allocated slabs.
+        currentSlab = 0;
+      }
+      slab = slabs[currentSlab];
+      recycle(slab);
+    }
+    if (slab.buffer == null && !allocate(slab))
+    {
+      removeEntry(dn);
+      return;
+    }
+
+    final Location location =
+        new Location(dn, backendID, entryID, currentSlab, slab.generation, slab.writeOffset, length);
+    final ByteBuffer target = slab.buffer.duplicate();
+    target.position(slab.writeOffset);
+    buffer.copyTo(target);
+    slab.writeOffset += length;
+    slab.locations.add(location);
+
+    // Publish the entry once it has been fully written.
+    dnMap.put(dn, location);
+    ConcurrentMap<Long, Location> map = idMap.get(backendID);
+    if (map == null)
+    {
+      map = new ConcurrentHashMap<>();
+      ConcurrentMap<Long, Location> existingMap = idMap.putIfAbsent(backendID, map);
+      if (existingMap != null)
+      {
+        map = existingMap;
+      }
+    }
+    map.put(entryID, location);
+  }
+
+  /**
+   * Allocates the direct memory of a slab.  The write lock must be held.
+   *
+   * @return  {@code true} if the memory could be allocated.
+   */
+  private boolean allocate(Slab slab)
+  {
+    if (allocationFailed)
+    {
+      return false;
+    }
+    try
+    {
+      slab.buffer = ByteBuffer.allocateDirect(slab.size);
+      allocatedMemory.addAndGet(slab.size);
+      return true;
+    }
+    catch (OutOfMemoryError e)
+    {
+      allocationFailed = true;
+      logger.warn(WARN_OFFHEAPCACHE_CANNOT_ALLOCATE_SLAB,
+          allocatedMemory.longValue(), maxMemorySize, stackTraceToSingleLineString(e));
+      return false;
+    }
+  }
+
+  /**
+   * Evicts all the entries held by a slab so that it can be overwritten.  The
+   * write lock must be held.
+   */
+  private void recycle(Slab slab)
+  {
+    // Bump the generation before any data is overwritten, so that concurrent
+    // readers of the evicted entries can detect it.
+    slab.bumpGeneration();
+    for (Location location : slab.locations)
+    {
+      if (dnMap.remove(location.dn, location))
+      {
+        Map<Long, Location> map = idMap.get(location.backendID);
+        if (map != null)
+        {
+          map.remove(location.entryID, location);
+        }
+      }
+    }
+    slab.locations.clear();
+    slab.writeOffset = 0;
+  }
+
+  private boolean isValid(Location location)
+  {
+    return location != null && slabs[location.slab].generation == location.generation;
+  }
+
+  /**
+   * Decodes the entry stored at the provided location.
+   *
+   * @param location  The location of the entry, may be {@code null}.
+   * @return  The decoded entry, or {@code null} if there is no entry at this
+   *          location anymore.
+   */
+  private Entry read(Location location)
+  {
+    if (location == null)
+    {
+      return null;
+    }
+    final Slab slab = slabs[location.slab];
+    final byte[] bytes;
+    if (LOAD_FENCE != null)
+    {
+      bytes = copy(slab, location);
+      // Prevent the copy from being reordered after the generation check.
+      fence(LOAD_FENCE);
+      if (bytes == null || slab.generation != location.generation)
+      {
+        // The slab has been recycled while copying the entry.
+        return null;
+      }
+    }
+    else
+    {
+      // The slab cannot be recycled while the read lock is held.
+      slab.recycleLock.readLock().lock();
+      try
+      {
+        bytes = copy(slab, location);
+      }
+      finally
+      {
+        slab.recycleLock.readLock().unlock();
+      }
+      if (bytes == null)
+      {
+        return null;
+      }
+    }
+
+    try
+    {
+      return Entry.decode(ByteString.wrap(bytes).asReader());
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /**
+   * Copies the encoded entry stored at the provided location.
+   *
+   * @return  The encoded entry, or {@code null} if the slab has been recycled
+   *          since the entry was stored.
+   */
+  private static byte[] copy(Slab slab, Location location)
+  {
+    final ByteBuffer buffer = slab.buffer;
+    if (buffer == null || slab.generation != location.generation)
+    {
+      return null;
+    }
+    final byte[] bytes = new byte[location.length];
+    final ByteBuffer source = buffer.duplicate();
+    source.position(location.offset);
+    source.get(bytes);
+    return bytes;
+  }
+
+  private static void fence(MethodHandle fence)
+  {
+    try
+    {
+      fence.invokeExact();
+    }
+    catch (Throwable t)
+    {
+      // The fences do not throw
+      throw new IllegalStateException(t);
+    }
+  }
+
+  /** The immutable location of a cached entry in the slabs. */
+  private static final class Location
+  {
+    private final DN dn;
+    private final String backendID;
+    private final long entryID;
+    private final int slab;
+    private final long generation;
+    private final int offset;
+    private final int length;
+
+    private Location(DN dn, String backendID, long entryID, int slab, long generation, int offset, int length)
+    {
+      this.dn = dn;
+      this.backendID = backendID;
+      this.entryID = entryID;
+      this.slab = slab;
+      this.generation = generation;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /** A block of direct memory in which entries are appended. */
+  private static final class Slab
+  {
+    private final int size;
+
+    /** Incremented each time the slab is recycled, read without locking. */
+    private volatile long generation;
+
+    /** Excludes the readers while recycling the slab when the JVM provides no memory fences. */
+    private final ReentrantReadWriteLock recycleLock = new ReentrantReadWriteLock();
+
+    /** The following fields are guarded by the write lock, except for reads of the buffer. */
+    private volatile ByteBuffer buffer;
+    private int writeOffset;
+    private final List<Location> locations = new ArrayList<>();
+
+    private Slab(int size)
+    {
+      this.size = size;
+    }
+
+    /**
+     * Invalidates the locations of the entries held by this slab.  The write
+     * lock must be held, and the slab must be overwritten after this call.
+     */
+    private void bumpGeneration()
+    {
+      if (STORE_FENCE != null)
+      {
+        generation++;
+        // Prevent the writes overwriting the slab from being reordered before
+        // the increment, matching the load fence of the readers.
+        fence(STORE_FENCE);
+        return;
+      }
+
+      // Wait for the readers copying entries from this slab: the next ones
+      // will see the new generation.
+      recycleLock.writeLock().lock();
+      try
+      {
+        generation++;
+      }
+      finally
+      {
+        recycleLock.writeLock().unlock();
+      }
+    }
+
+    private void reset()
+    {
+      bumpGeneration();
+      locations.clear();
+      writeOffset = 0;
+    }
+  }
+}
@@ -88,7 +88,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
   private DN groupEntryDN;
 
   /** The set of the DNs of the members for this group. */
-  private LinkedHashSet<CompactDn> memberDNs;
+  private volatile LinkedHashSet<CompactDn> memberDNs;
 
   /** The list of nested group DNs for this group. */
   private LinkedList<DN> nestedGroups = new LinkedList<>();
@@ -336,6 +336,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
       newMemberDNs.add(toCompactDn(nestedGroupDN));
       memberDNs = newMemberDNs;
+      getGroupManager().addToMemberIndex(this, toCompactDn(nestedGroupDN));
+      getGroupManager().membershipChanged();
     }
     finally
     {
@@ -374,6 +376,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
       newMemberDNs.remove(toCompactDn(nestedGroupDN));
       memberDNs = newMemberDNs;
+      getGroupManager().removeFromMemberIndex(this, toCompactDn(nestedGroupDN));
+      getGroupManager().membershipChanged();
     }
     finally
     {
@@ -541,7 +545,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
               for (ByteString v : attribute)
               {
                 DN member = DN.valueOf(v);
-                memberDNs.add(toCompactDn(member));
+                addMemberDN(member);
                 if (DirectoryServer.getGroupManager().getGroupInstance(member) != null)
                 {
                   nestedGroups.add(member);
@@ -551,7 +555,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
             case DELETE:
               if (attribute.isEmpty())
               {
-                memberDNs.clear();
+                clearMemberDNs();
                 nestedGroups.clear();
               }
               else
@@ -559,18 +563,18 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
                 for (ByteString v : attribute)
                 {
                   DN member = DN.valueOf(v);
-                  memberDNs.remove(toCompactDn(member));
+                  removeMemberDN(member);
                   nestedGroups.remove(member);
                 }
               }
               break;
             case REPLACE:
-              memberDNs.clear();
+              clearMemberDNs();
               nestedGroups.clear();
               for (ByteString v : attribute)
               {
                 DN member = DN.valueOf(v);
-                memberDNs.add(toCompactDn(member));
+                addMemberDN(member);
                 if (DirectoryServer.getGroupManager().getGroupInstance(member) != null)
                 {
                   nestedGroups.add(member);
@@ -586,6 +590,44 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
     }
   }
 
+  /** Adds a member while holding the write lock, keeping the member index of the group manager up to date. */
+  private void addMemberDN(DN member)
+  {
+    CompactDn compactMember = toCompactDn(member);
+    if (memberDNs.add(compactMember))
+    {
+      getGroupManager().addToMemberIndex(this, compactMember);
+    }
+  }
+
+  /** Removes a member while holding the write lock, keeping the member index of the group manager up to date. */
+  private void removeMemberDN(DN member)
+  {
+    CompactDn compactMember = toCompactDn(member);
+    if (memberDNs.remove(compactMember))
+    {
+      getGroupManager().removeFromMemberIndex(this, compactMember);
+    }
+  }
+
+  /** Removes all the members while holding the write lock, keeping the member index of the group manager up to date. */
+  private void clearMemberDNs()
+  {
+    for (CompactDn compactMember : memberDNs)
+    {
+      getGroupManager().removeFromMemberIndex(this, compactMember);
+    }
+    memberDNs.clear();
+  }
+
+  @Override
+  public Set<CompactDn> getExplicitMemberDNs()
+  {
+    // The members are either replaced by a copy, or only modified in place
+    // while the group manager holds its lock, as it does when calling this method
+    return memberDNs;
+  }
+
   @Override
   public void addMember(Entry userEntry) throws UnsupportedOperationException, DirectoryException
   {
@@ -614,6 +656,8 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<CompactDn>(memberDNs);
       newMemberDNs.add(compactUserDN);
       memberDNs = newMemberDNs;
+      getGroupManager().addToMemberIndex(this, compactUserDN);
+      getGroupManager().membershipChanged();
     }
     finally
     {
@@ -647,6 +691,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
       LinkedHashSet<CompactDn> newMemberDNs = new LinkedHashSet<>(memberDNs);
       newMemberDNs.remove(compactUserDN);
       memberDNs = newMemberDNs;
+      getGroupManager().removeFromMemberIndex(this, compactUserDN);
       //If it is in the nested group list remove it.
       if (nestedGroups.contains(userDN))
       {
@@ -654,6 +699,7 @@ public class StaticGroup extends Group<StaticGroupImplementationCfg>
         newNestedGroups.remove(userDN);
         nestedGroups = newNestedGroups;
       }
+      getGroupManager().membershipChanged();
     }
     finally
     {
@@ -0,0 +1,1140 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ExtensionMessages.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.config.server.ConfigurationChangeListener;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.server.config.server.EntryCacheCfg;
+import org.forgerock.opendj.server.config.server.TinyLFUEntryCacheCfg;
+import org.forgerock.util.Utils;
+import org.opends.server.api.Backend;
+import org.opends.server.api.EntryCache;
+import org.opends.server.api.MonitorData;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.CacheEntry;
+import org.opends.server.types.Entry;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.SearchFilter;
+import org.opends.server.util.ServerConstants;
+
+/**
+ * This class defines a Directory Server entry cache which is split into
+ * independently locked segments and which uses the W-TinyLFU policy to decide
+ * which entries are kept in the cache.
+ * <BR><BR>
+ * Lookups by DN or by backend and entry ID are served from concurrent maps and
+ * never block.  Adding, replacing or removing an entry only locks the segment
+ * which the entry DN hashes to.  Accesses are recorded on a best effort basis:
+ * if the segment lock is busy the access is simply not recorded, which only
+ * slightly degrades the accuracy of the eviction policy.
+ * <BR><BR>
+ * Each segment keeps newly added entries in a small LRU admission window.  The
+ * remaining entries live in a segmented LRU main area made of a probation and a
+ * protected region.  An entry leaving the window is only admitted into the
+ * main area when the cache is full if it has been accessed more frequently
+ * than the probation entry it would replace.  Access frequencies are
+ * estimated by a count-min sketch of 4-bit counters, halved periodically so
+ * that the policy adapts to changes in the workload.
+ * <BR><BR>
+ * Cache sizing is based on the percentage of free memory within the JVM and,
+ * optionally, on a maximum number of entries, in the same way as the
+ * {@link FIFOEntryCache}.
+ */
+public class TinyLFUEntryCache
+       extends EntryCache<TinyLFUEntryCacheCfg>
+       implements ConfigurationChangeListener<TinyLFUEntryCacheCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /** The reference to the Java runtime used to determine the amount of memory currently in use. */
+  private static final Runtime runtime = Runtime.getRuntime();
+
+  /** Upper bound on the number of sketch words shared by all the segments. */
+  private static final int MAX_SKETCH_WORDS = 1 << 18;
+
+  /** The mapping between entry backends/IDs and cached nodes. */
+  private final ConcurrentMap<String, ConcurrentMap<Long, Node>> idMap = new ConcurrentHashMap<>();
+
+  /** The mapping between DNs and cached nodes. */
+  private final ConcurrentMap<DN, Node> dnMap = new ConcurrentHashMap<>();
+
+  /** The number of entries evicted to make room for more frequently used entries. */
+  private final AtomicLong cacheEvictions = new AtomicLong();
+
+  /** The number of entries which were not admitted because they were not used frequently enough. */
+  private final AtomicLong cacheAdmissionRejects = new AtomicLong();
+
+  /** The segments of this cache, fixed once the cache has been initialized. */
+  private Segment[] segments;
+
+  /**
+   * The maximum amount of memory in bytes that the JVM will be allowed to use
+   * before we need to start purging entries.
+   */
+  private volatile long maxAllowedMemory;
+
+  /** The maximum number of entries that may be held in the cache. */
+  private volatile long maxEntries;
+
+  /** Currently registered configuration object. */
+  private TinyLFUEntryCacheCfg registeredConfiguration;
+
+  /** The maximum length of time to try to obtain a segment lock before giving up. */
+  private volatile long lockTimeout = 2000;
+
+  /** Creates a new instance of this Tiny LFU entry cache. */
+  public TinyLFUEntryCache()
+  {
+    super();
+    // All initialization should be performed in the initializeEntryCache.
+  }
+
+  @Override
+  public void initializeEntryCache(TinyLFUEntryCacheCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    registeredConfiguration = configuration;
+    configuration.addTinyLFUChangeListener(this);
+
+    // The number of segments can only be changed by restarting the cache.
+    int nbSegments = getSegmentCount(configuration);
+    segments = new Segment[nbSegments];
+    for (int i = 0; i < nbSegments; i++)
+    {
+      segments[i] = new Segment();
+    }
+
+    // Read configuration and apply changes.
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_INIT, null, errorMessages
+          );
+    if (!processEntryCacheConfig(configuration, applyChanges, errorHandler)) {
+      String buffer = Utils.joinAsString(".  ", errorMessages);
+      throw new ConfigException(ERR_TINYLFUCACHE_CANNOT_INITIALIZE.get(buffer));
+    }
+  }
+
+  @Override
+  public void finalizeEntryCache()
+  {
+    registeredConfiguration.removeTinyLFUChangeListener(this);
+
+    // Release all memory currently in use by this cache.
+    clear();
+  }
+
+  @Override
+  public boolean containsEntry(DN entryDN)
+  {
+    return entryDN != null && dnMap.containsKey(entryDN);
+  }
+
+  @Override
+  public Entry getEntry(DN entryDN)
+  {
+    final int hash = hash(entryDN);
+    final Node node = entryDN != null ? dnMap.get(entryDN) : null;
+    segmentFor(hash).recordAccess(hash, node);
+    if (node == null)
+    {
+      // Indicate cache miss.
+      cacheMisses.getAndIncrement();
+      return null;
+    }
+    // Indicate cache hit.
+    cacheHits.getAndIncrement();
+    return node.cacheEntry.getEntry();
+  }
+
+  @Override
+  public long getEntryID(DN entryDN)
+  {
+    Node node = entryDN != null ? dnMap.get(entryDN) : null;
+    return node != null ? node.cacheEntry.getEntryID() : -1;
+  }
+
+  @Override
+  public DN getEntryDN(String backendID, long entryID)
+  {
+    // Locate specific backend map and return the entry DN by ID.
+    Map<Long, Node> backendMap = idMap.get(backendID);
+    if (backendMap != null)
+    {
+      Node node = backendMap.get(entryID);
+      if (node != null)
+      {
+        return node.cacheEntry.getDN();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void putEntry(Entry entry, String backendID, long entryID)
+  {
+    final CacheEntry cacheEntry = new CacheEntry(entry, backendID, entryID);
+    final int hash = hash(entry.getName());
+    final Segment segment = segmentFor(hash);
+
+    // Obtain a lock on the segment.  If this fails, then don't do anything.
+    if (!tryLock(segment))
+    {
+      return;
+    }
+    try
+    {
+      segment.add(hash, cacheEntry);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean putEntryIfAbsent(Entry entry, String backendID, long entryID)
+  {
+    // Avoid locking the segment when the entry is already present.
+    if (dnMap.containsKey(entry.getName()))
+    {
+      return false;
+    }
+
+    final CacheEntry cacheEntry = new CacheEntry(entry, backendID, entryID);
+    final int hash = hash(entry.getName());
+    final Segment segment = segmentFor(hash);
+
+    // Obtain a lock on the segment.  If this fails, then we can't rule out the
+    // possibility of a conflict, so return false.
+    if (!tryLock(segment))
+    {
+      return false;
+    }
+    try
+    {
+      // Check again now that the segment is locked.
+      if (dnMap.containsKey(entry.getName()))
+      {
+        return false;
+      }
+      segment.add(hash, cacheEntry);
+
+      // We'll always return true in this case, even if we didn't actually add
+      // the entry due to memory constraints or to the admission policy.
+      return true;
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // We can't be sure there wasn't a conflict, so return false.
+      return false;
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public void removeEntry(DN entryDN)
+  {
+    if (entryDN == null)
+    {
+      return;
+    }
+
+    // We should not return until the entry is removed, so block on the lock.
+    final Segment segment = segmentFor(hash(entryDN));
+    segment.lock.lock();
+    try
+    {
+      Node node = dnMap.get(entryDN);
+      if (node != null)
+      {
+        segment.remove(node);
+      }
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // This shouldn't happen, but there's not much that we can do if it does.
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear()
+  {
+    // Acquire all the segment locks, always in the same order.  We should not
+    // return until the cache has been cleared, so block until we get them.
+    for (Segment segment : segments)
+    {
+      segment.lock.lock();
+    }
+    try
+    {
+      for (Segment segment : segments)
+      {
+        segment.clear();
+      }
+      dnMap.clear();
+      idMap.clear();
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // This shouldn't happen, but there's not much that we can do if it does.
+    }
+    finally
+    {
+      for (Segment segment : segments)
+      {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public void clearBackend(String backendID)
+  {
+    // Remove all references to entries for this backend from the ID cache.
+    Map<Long, Node> map = idMap.remove(backendID);
+    if (map == null)
+    {
+      // No entries were in the cache for this backend, so we can return
+      // without doing anything.
+      return;
+    }
+
+    // Only one segment is locked at a time, so this is never a stop-the-world
+    // event as far as the cache is concerned.
+    for (Node node : map.values())
+    {
+      removeNode(node);
+    }
+  }
+
+  @Override
+  public void clearSubtree(DN baseDN)
+  {
+    // Determine which backend should be used for the provided base DN.  If
+    // there is none, then we don't need to do anything.
+    Backend<?> backend = DirectoryServer.getBackend(baseDN);
+    if (backend != null)
+    {
+      clearSubtree(baseDN, backend);
+    }
+  }
+
+  /**
+   * Clears all entries at or below the specified base DN that are associated
+   * with the given backend.
+   *
+   * @param  baseDN   The base DN below which all entries should be flushed.
+   * @param  backend  The backend for which to remove the appropriate entries.
+   */
+  private void clearSubtree(DN baseDN, Backend<?> backend)
+  {
+    // See if there are any entries for the provided backend in the cache.
+    Map<Long, Node> map = idMap.get(backend.getBackendID());
+    if (map != null)
+    {
+      for (Node node : map.values())
+      {
+        if (node.cacheEntry.getDN().isSubordinateOrEqualTo(baseDN))
+        {
+          removeNode(node);
+        }
+      }
+    }
+
+    // See if the backend has any subordinate backends.  If so, then process
+    // them recursively.
+    for (Backend<?> subBackend : backend.getSubordinateBackends())
+    {
+      for (DN subBase : subBackend.getBaseDNs())
+      {
+        if (subBase.isSubordinateOrEqualTo(baseDN))
+        {
+          clearSubtree(baseDN, subBackend);
+          break;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void handleLowMemory()
+  {
+    // See how many entries are in the cache.  If there are less than 1000,
+    // then we'll dump all of them.  Otherwise, we'll dump 10% of the entries
+    // of each segment, starting with the least valuable ones.
+    if (dnMap.size() < 1000)
+    {
+      clear();
+      return;
+    }
+
+    for (Segment segment : segments)
+    {
+      segment.lock.lock();
+      try
+      {
+        for (int numToDrop = segment.size() / 10; numToDrop > 0; numToDrop--)
+        {
+          segment.evict(segment.victim());
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+
+        // This shouldn't happen, but there's not much that we can do if it does.
+      }
+      finally
+      {
+        segment.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public boolean isConfigurationAcceptable(EntryCacheCfg configuration,
+                                           List<LocalizableMessage> unacceptableReasons)
+  {
+    TinyLFUEntryCacheCfg config = (TinyLFUEntryCacheCfg) configuration;
+    return isConfigurationChangeAcceptable(config, unacceptableReasons);
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      TinyLFUEntryCacheCfg configuration,
+      List<LocalizableMessage> unacceptableReasons
+      )
+  {
+    boolean applyChanges = false;
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_ACCEPTABLE,
+          unacceptableReasons,
+          null
+        );
+    processEntryCacheConfig (configuration, applyChanges, errorHandler);
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(TinyLFUEntryCacheCfg configuration)
+  {
+    boolean applyChanges = true;
+    List<LocalizableMessage> errorMessages = new ArrayList<>();
+    EntryCacheCommon.ConfigErrorHandler errorHandler =
+      EntryCacheCommon.getConfigErrorHandler (
+          EntryCacheCommon.ConfigPhase.PHASE_APPLY, null, errorMessages
+          );
+
+    // Do not apply changes unless this cache is enabled.
+    if (configuration.isEnabled()) {
+      processEntryCacheConfig (configuration, applyChanges, errorHandler);
+    }
+
+    final ConfigChangeResult changeResult = new ConfigChangeResult();
+    changeResult.setResultCode(errorHandler.getResultCode());
+    changeResult.setAdminActionRequired(errorHandler.getIsAdminActionRequired()
+        || getSegmentCount(configuration) != segments.length);
+    changeResult.getMessages().addAll(errorHandler.getErrorMessages());
+    return changeResult;
+  }
+
+  /**
+   * Parses the provided configuration and configure the entry cache.
+   *
+   * @param configuration  The new configuration containing the changes.
+   * @param applyChanges   If true then take into account the new configuration.
+   * @param errorHandler   An handler used to report errors.
+   *
+   * @return  <CODE>true</CODE> if configuration is acceptable,
+   *          or <CODE>false</CODE> otherwise.
+   */
+  private boolean processEntryCacheConfig(
+      TinyLFUEntryCacheCfg                configuration,
+      boolean                             applyChanges,
+      EntryCacheCommon.ConfigErrorHandler errorHandler
+      )
+  {
+    // Local variables to read configuration.
+    Set<SearchFilter> newIncludeFilters = null;
+    Set<SearchFilter> newExcludeFilters = null;
+
+    // Read configuration.
+    DN newConfigEntryDN = configuration.dn();
+    long newLockTimeout = configuration.getLockTimeout();
+    long newMaxEntries  = configuration.getMaxEntries();
+    int newWindowPercent = configuration.getWindowPercent();
+
+    // Maximum memory the cache can use.
+    int newMaxMemoryPercent  = configuration.getMaxMemoryPercent();
+    long maxJvmHeapSize      = Runtime.getRuntime().maxMemory();
+    long newMaxAllowedMemory = (maxJvmHeapSize / 100) * newMaxMemoryPercent;
+
+    // Get include and exclude filters.
+    switch (errorHandler.getConfigPhase())
+    {
+    case PHASE_INIT:
+    case PHASE_ACCEPTABLE:
+    case PHASE_APPLY:
+      newIncludeFilters = EntryCacheCommon.getFilters (
+          configuration.getIncludeFilter(),
+          ERR_CACHE_INVALID_INCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      newExcludeFilters = EntryCacheCommon.getFilters (
+          configuration.getExcludeFilter(),
+          ERR_CACHE_INVALID_EXCLUDE_FILTER,
+          errorHandler,
+          newConfigEntryDN
+          );
+      break;
+    }
+
+    if (applyChanges && errorHandler.getIsAcceptable())
+    {
+      maxEntries       = newMaxEntries;
+      maxAllowedMemory = newMaxAllowedMemory;
+      lockTimeout = newLockTimeout;
+      setIncludeFilters(newIncludeFilters);
+      setExcludeFilters(newExcludeFilters);
+      registeredConfiguration = configuration;
+
+      // Entries above the new limits will be evicted by subsequent additions.
+      for (Segment segment : segments)
+      {
+        segment.lock.lock();
+        try
+        {
+          segment.resize(newMaxEntries, newWindowPercent, segments.length);
+        }
+        finally
+        {
+          segment.lock.unlock();
+        }
+      }
+    }
+
+    return errorHandler.getIsAcceptable();
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    try {
+      MonitorData attrs = EntryCacheCommon.getGenericMonitorData(
+        cacheHits.longValue(),
+        // If cache misses is maintained by default cache
+        // get it from there and if not point to itself.
+        DirectoryServer.getEntryCache().getCacheMisses(),
+        null,
+        maxAllowedMemory,
+        Long.valueOf(dnMap.size()),
+        Long.valueOf(
+            (maxEntries != Integer.MAX_VALUE && maxEntries != Long.MAX_VALUE) ? maxEntries : 0)
+        );
+      attrs.add("entryCacheEvictions", cacheEvictions.longValue());
+      attrs.add("entryCacheAdmissionRejects", cacheAdmissionRejects.longValue());
+      return attrs;
+    } catch (Exception e) {
+      logger.traceException(e);
+      return new MonitorData(0);
+    }
+  }
+
+  @Override
+  public Long getCacheCount()
+  {
+    return Long.valueOf(dnMap.size());
+  }
+
+  /**
+   * Returns the number of entries evicted from this cache to make room for
+   * more frequently accessed entries.
+   *
+   * @return  The number of evicted entries.
+   */
+  long getCacheEvictions()
+  {
+    return cacheEvictions.longValue();
+  }
+
+  /**
+   * Returns the number of entries which were not admitted into this cache
+   * because they were accessed less frequently than the entries already cached.
+   *
+   * @return  The number of rejected entries.
+   */
+  long getCacheAdmissionRejects()
+  {
+    return cacheAdmissionRejects.longValue();
+  }
+
+  @Override
+  public String toVerboseString()
+  {
+    StringBuilder sb = new StringBuilder();
+
+    // The maps are concurrent, so iterating over them is safe but only
+    // reflects a weakly consistent view of the cache contents.
+    Map<DN, Node> dnMapCopy = new HashMap<>(dnMap);
+    for (Map.Entry<DN, Node> entry : dnMapCopy.entrySet()) {
+      final CacheEntry cacheEntry = entry.getValue().cacheEntry;
+      sb.append(entry.getKey());
+      sb.append(":");
+      sb.append(cacheEntry.getEntryID());
+      sb.append(":");
+      sb.append(cacheEntry.getBackendID());
+      sb.append(ServerConstants.EOL);
+    }
+
+    // See if there is anything on idMap that is not reflected on
+    // dnMap in case maps went out of sync.
+    for (Map.Entry<String, ConcurrentMap<Long, Node>> backendCache : idMap.entrySet()) {
+      final String backendID = backendCache.getKey();
+      for (Map.Entry<Long, Node> entry : backendCache.getValue().entrySet()) {
+        final CacheEntry cacheEntry = entry.getValue().cacheEntry;
+        if (!dnMapCopy.containsKey(cacheEntry.getDN())) {
+          sb.append(cacheEntry.getDN());
+          sb.append(":");
+          sb.append(entry.getKey());
+          sb.append(":");
+          sb.append(backendID);
+          sb.append(ServerConstants.EOL);
+        }
+      }
+    }
+
+    String verboseString = sb.toString();
+    return verboseString.length() > 0 ? verboseString : null;
+  }
+
+  /**
+   * Removes the provided node from the cache, unless it has already been
+   * removed or replaced.
+   *
+   * @param  node  The node to remove.
+   */
+  private void removeNode(Node node)
+  {
+    final Segment segment = segmentFor(node.hash);
+    segment.lock.lock();
+    try
+    {
+      segment.remove(node);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+    }
+    finally
+    {
+      segment.lock.unlock();
+    }
+  }
+
+  /** Returns the configured number of segments rounded up to the next power of two. */
+  private static int getSegmentCount(TinyLFUEntryCacheCfg configuration)
+  {
+    int segmentCount = configuration.getSegmentCount();
+    return segmentCount > 1 ? Integer.highestOneBit(segmentCount - 1) << 1 : 1;
+  }
+
+  private boolean tryLock(Segment segment)
+  {
+    try
+    {
+      return segment.lock.tryLock(lockTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      return false;
+    }
+  }
+
+  private Segment segmentFor(int hash)
+  {
+    return segments[(hash >>> 16) & (segments.length - 1)];
+  }
+
+  /** Spreads the bits of the DN hash code since the low bits are used to index the sketch. */
+  private static int hash(DN dn)
+  {
+    int h = dn != null ? dn.hashCode() : 0;
+    h = ((h >>> 16) ^ h) * 0x45d9f3b;
+    return (h >>> 16) ^ h;
+  }
+
+  /** The regions of a segment an entry can be in. */
+  private enum Region
+  {
+    /** Recently added entries, not yet subject to the admission policy. */
+    WINDOW,
+    /** Entries admitted in the main area but not accessed since then. */
+    PROBATION,
+    /** Entries accessed at least once while in the probation region. */
+    PROTECTED
+  }
+
+  /** A cached entry, linked in the LRU list of the region of its segment it belongs to. */
+  private static final class Node
+  {
+    private final CacheEntry cacheEntry;
+    private final int hash;
+
+    /** The following fields are guarded by the segment lock. */
+    private Region region;
+    private Node prev;
+    private Node next;
+    private boolean removed;
+
+    private Node(CacheEntry cacheEntry, int hash)
+    {
+      this.cacheEntry = cacheEntry;
+      this.hash = hash;
+    }
+  }
+
+  /** An intrusive doubly linked list of nodes, ordered from least to most recently used. */
+  private static final class NodeList
+  {
+    private Node head;
+    private Node tail;
+    private int size;
+
+    private void append(Node node)
+    {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null)
+      {
+        head = node;
+      }
+      else
+      {
+        tail.next = node;
+      }
+      tail = node;
+      size++;
+    }
+
+    private void unlink(Node node)
+    {
+      if (node.prev == null)
+      {
+        head = node.next;
+      }
+      else
+      {
+        node.prev.next = node.next;
+      }
+      if (node.next == null)
+      {
+        tail = node.prev;
+      }
+      else
+      {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+      size--;
+    }
+
+    private void moveToTail(Node node)
+    {
+      if (node != tail)
+      {
+        unlink(node);
+        append(node);
+      }
+    }
+
+    private void clear()
+    {
+      head = null;
+      tail = null;
+      size = 0;
+    }
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters estimating how often DNs have been
+   * accessed.  Each DN is mapped to four counters located in different words of
+   * the table, and its frequency is the smallest of these counters.  All
+   * counters are halved once the number of increments reaches ten times the
+   * table size, so that old accesses are eventually forgotten.
+   */
+  private static final class FrequencySketch
+  {
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    private FrequencySketch(int nbWords)
+    {
+      table = new long[nbWords];
+      tableMask = nbWords - 1;
+      sampleSize = 10 * nbWords;
+    }
+
+    private int frequency(int hash)
+    {
+      final int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++)
+      {
+        final int shift = (start + i) << 2;
+        final int count = (int) ((table[indexOf(hash, i)] >>> shift) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    private void increment(int hash)
+    {
+      final int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++)
+      {
+        final int index = indexOf(hash, i);
+        final int shift = (start + i) << 2;
+        final long mask = 0xfL << shift;
+        if ((table[index] & mask) != mask)
+        {
+          table[index] += 1L << shift;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize)
+      {
+        reset();
+      }
+    }
+
+    private void reset()
+    {
+      for (int i = 0; i < table.length; i++)
+      {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions >>>= 1;
+    }
+
+    private int indexOf(int hash, int i)
+    {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return ((int) h) & tableMask;
+    }
+  }
+
+  /**
+   * An independently locked part of the cache.  All the fields of a segment,
+   * as well as the DN and ID map entries of the nodes belonging to it, are
+   * only modified while holding its lock.
+   */
+  private final class Segment
+  {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final NodeList window = new NodeList();
+    private final NodeList probation = new NodeList();
+    private final NodeList protectedList = new NodeList();
+    private FrequencySketch sketch = new FrequencySketch(16);
+    private long windowCapacity = Long.MAX_VALUE;
+    private long protectedCapacity = Long.MAX_VALUE;
+
+    /**
+     * Recomputes the capacities of the regions of this segment.
+     *
+     * @param maxEntries     The maximum number of entries of the whole cache.
+     * @param windowPercent  The percentage of the segment used by the admission window.
+     * @param nbSegments     The number of segments of the cache.
+     */
+    private void resize(long maxEntries, int windowPercent, int nbSegments)
+    {
+      final long share = maxEntries > 0 ? Math.max(maxEntries / nbSegments, 1) : Long.MAX_VALUE;
+      windowCapacity = Math.max(share / 100 * windowPercent + share % 100 * windowPercent / 100, 1);
+      final long mainCapacity = share - Math.min(windowCapacity, share);
+      protectedCapacity = mainCapacity - mainCapacity / 5;
+
+      final int nbWords = (int) Math.min(Math.max(share, 16), Math.max(MAX_SKETCH_WORDS / nbSegments, 16));
+      final int sketchSize = Integer.highestOneBit(nbWords - 1) << 1;
+      if (sketch.table.length != sketchSize)
+      {
+        sketch = new FrequencySketch(sketchSize);
+      }
+    }
+
+    private int size()
+    {
+      return window.size + probation.size + protectedList.size;
+    }
+
+    /**
+     * Records an access to a DN hashing to this segment.  The access is
+     * dropped if the segment lock is not immediately available.
+     *
+     * @param hash  The hash of the accessed DN.
+     * @param node  The cached node, or {@code null} if the DN is not cached.
+     */
+    private void recordAccess(int hash, Node node)
+    {
+      if (!lock.tryLock())
+      {
+        return;
+      }
+      try
+      {
+        sketch.increment(hash);
+        if (node == null || node.removed)
+        {
+          return;
+        }
+        switch (node.region)
+        {
+        case WINDOW:
+          window.moveToTail(node);
+          break;
+        case PROBATION:
+          probation.unlink(node);
+          node.region = Region.PROTECTED;
+          protectedList.append(node);
+          // Demote the least recently used protected entries if needed.
+          while (protectedList.size > protectedCapacity)
+          {
+            Node demoted = protectedList.head;
+            protectedList.unlink(demoted);
+            demoted.region = Region.PROBATION;
+            probation.append(demoted);
+          }
+          break;
+        case PROTECTED:
+          protectedList.moveToTail(node);
+          break;
+        }
+      }
+      finally
+      {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Adds or replaces an entry.  The segment lock must be held.
+     *
+     * @param hash        The hash of the entry DN.
+     * @param cacheEntry  The entry to add.
+     */
+    private void add(int hash, CacheEntry cacheEntry)
+    {
+      sketch.increment(hash);
+
+      final Node previous = dnMap.get(cacheEntry.getDN());
+      if (previous != null)
+      {
+        remove(previous);
+      }
+
+      // See if the current memory usage is within acceptable constraints.  If
+      // not, then remove an existing entry and don't add the new entry.
+      long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+      if (usedMemory > maxAllowedMemory)
+      {
+        if (previous == null && size() > 0)
+        {
+          evict(victim());
+        }
+        return;
+      }
+
+      final Node node = new Node(cacheEntry, hash);
+      node.region = Region.WINDOW;
+      window.append(node);
+      dnMap.put(cacheEntry.getDN(), node);
+      ConcurrentMap<Long, Node> map = idMap.get(cacheEntry.getBackendID());
+      if (map == null)
+      {
+        map = new ConcurrentHashMap<>();
+        ConcurrentMap<Long, Node> existingMap = idMap.putIfAbsent(cacheEntry.getBackendID(), map);
+        if (existingMap != null)
+        {
+          map = existingMap;
+        }
+      }
+      map.put(cacheEntry.getEntryID(), node);
+
+      // Entries leaving the window must compete for a place in the main area
+      // as long as the cache holds more than the maximum number of entries.
+      while (window.size > windowCapacity)
+      {
+        Node candidate = window.head;
+        window.unlink(candidate);
+        candidate.region = Region.PROBATION;
+        probation.append(candidate);
+        if (isFull())
+        {
+          admit(candidate);
+        }
+      }
+
+      // The window of this segment is not full but other segments may be.
+      while (isFull() && size() > 0)
+      {
+        evict(victim());
+      }
+    }
+
+    private boolean isFull()
+    {
+      return maxEntries > 0 && dnMap.size() > maxEntries;
+    }
+
+    /**
+     * Evicts either the candidate or the probation victim, whichever is the
+     * least frequently accessed.
+     *
+     * @param candidate  The node which has just left the admission window.
+     */
+    private void admit(Node candidate)
+    {
+      Node victim = probation.head != candidate ? probation.head : protectedList.head;
+      if (victim != null && sketch.frequency(candidate.hash) > sketch.frequency(victim.hash))
+      {
+        evict(victim);
+      }
+      else
+      {
+        remove(candidate);
+        cacheAdmissionRejects.getAndIncrement();
+      }
+    }
+
+    /**
+     * Returns the node which should be evicted first: the least recently used
+     * probation entry, then the oldest window entry, then the least recently
+     * used protected entry.  The segment must not be empty.
+     */
+    private Node victim()
+    {
+      if (probation.head != null)
+      {
+        return probation.head;
+      }
+      return window.head != null ? window.head : protectedList.head;
+    }
+
+    private void evict(Node node)
+    {
+      remove(node);
+      cacheEvictions.getAndIncrement();
+    }
+
+    /**
+     * Removes a node from this segment and from the cache maps.  The segment
+     * lock must be held.
+     *
+     * @param node  The node to remove, which is ignored if it has already been removed.
+     */
+    private void remove(Node node)
+    {
+      if (node.removed)
+      {
+        return;
+      }
+      node.removed = true;
+      regionOf(node).unlink(node);
+
+      final CacheEntry cacheEntry = node.cacheEntry;
+      dnMap.remove(cacheEntry.getDN(), node);
+      Map<Long, Node> map = idMap.get(cacheEntry.getBackendID());
+      if (map != null)
+      {
+        map.remove(cacheEntry.getEntryID(), node);
+      }
+    }
+
+    private NodeList regionOf(Node node)
+    {
+      switch (node.region)
+      {
+      case WINDOW:
+        return window;
+      case PROBATION:
+        return probation;
+      default:
+        return protectedList;
+      }
+    }
+
+    private void clear()
+    {
+      for (NodeList list : new NodeList[] { window, probation, protectedList })
+      {
+        for (Node node = list.head; node != null; node = node.next)
+        {
+          node.removed = true;
+        }
+        list.clear();
+      }
+      sketch = new FrequencySketch(sketch.table.length);
+    }
+  }
+}
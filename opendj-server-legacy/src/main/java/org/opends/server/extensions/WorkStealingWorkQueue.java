@@ -0,0 +1,850 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.opends.messages.ConfigMessages.*;
+import static org.opends.messages.CoreMessages.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.config.server.ConfigChangeResult;
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.config.server.ConfigurationChangeListener;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.opendj.server.config.server.WorkStealingWorkQueueCfg;
+import org.opends.server.api.WorkQueue;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.monitors.WorkStealingWorkQueueMonitor;
+import org.opends.server.types.CancelRequest;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.Operation;
+
+/**
+ * This class defines a Directory Server work queue where each worker thread
+ * has its own queue of pending operations, and steals operations from the
+ * queues of the other worker threads when its own queue is empty.
+ * <p>
+ * All the operations of a client connection are submitted to the queue of the
+ * same worker thread, and operations are always taken from the head of a
+ * queue, be it by its owner or by another worker thread. As a consequence, the
+ * operations of a client connection are picked up for processing in the order
+ * they were submitted, as with the traditional work queue, while submitting and
+ * picking up an operation only contends on the queue of a single worker thread.
+ */
+public class WorkStealingWorkQueue extends WorkQueue<WorkStealingWorkQueueCfg>
+    implements ConfigurationChangeListener<WorkStealingWorkQueueCfg>
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  /**
+   * The maximum number of times to retry getting the next operation from the
+   * queue if an unexpected failure occurs.
+   */
+  private static final int MAX_RETRY_COUNT = 5;
+
+  /** The queue of pending operations owned by a worker thread. */
+  static final class OperationDeque
+  {
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Signaled when an operation is added to this queue, or when the owner of
+     * this queue should look for operations to steal from the other queues.
+     */
+    private final Condition workAvailable = lock.newCondition();
+    /** Signaled when an operation is removed from this queue. */
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Operation> operations = new ArrayDeque<>();
+    /** The number of pending operations, which can be read without holding the lock. */
+    private volatile int size;
+    /** Indicates whether the owner of this queue is looking for or waiting for work. */
+    private volatile boolean ownerIsIdle;
+    /** Indicates whether the owner of this queue has been asked to steal operations. */
+    private boolean stealRequested;
+    /** Indicates whether the owner of this queue has exited, in which case no operations can be added. */
+    private boolean retired;
+    /** The number of operations submitted to this queue. */
+    private final AtomicLong opsSubmitted = new AtomicLong();
+    /** The number of operations stolen from the other queues by the owner of this queue. */
+    private final AtomicLong opsStolen = new AtomicLong();
+
+    /** Must be called with the lock held. */
+    private Operation poll()
+    {
+      final Operation operation = operations.poll();
+      if (operation != null)
+      {
+        size = operations.size();
+        notFull.signal();
+      }
+      return operation;
+    }
+  }
+
+  /** The worker threads servicing this work queue, replaced on configuration changes. */
+  private volatile WorkStealingWorkerThread[] workerThreads = new WorkStealingWorkerThread[0];
+
+  /** The number of operations submitted to the queues of the worker threads which have exited. */
+  private final AtomicLong retiredOpsSubmitted = new AtomicLong();
+
+  /** The number of operations stolen by the worker threads which have exited. */
+  private final AtomicLong retiredOpsStolen = new AtomicLong();
+
+  /**
+   * The number of times that an attempt to submit a new request has been
+   * rejected because the work queue is already at its maximum capacity.
+   */
+  private final AtomicLong queueFullRejects = new AtomicLong();
+
+  /**
+   * Indicates whether one or more of the worker threads needs to be killed at
+   * the next convenient opportunity.
+   */
+  private volatile boolean killThreads;
+
+  /** Indicates whether the Directory Server is shutting down. */
+  private volatile boolean shutdownRequested;
+
+  /** The thread number used for the last worker thread that was created. */
+  private int lastThreadNumber;
+
+  /**
+   * The maximum number of pending requests that this work queue will allow
+   * before it will start rejecting them.
+   */
+  private volatile int maxCapacity;
+
+  /** The maximum number of pending requests in the queue of each worker thread. */
+  private volatile int maxCapacityPerWorkerThread;
+
+  /**
+   * The number of worker threads that should be active (or will be shortly if a
+   * configuration change has not been completely applied).
+   */
+  private volatile int numWorkerThreads;
+
+  /** The lock used for configuration changes and worker thread removals. */
+  private final Object configLock = new Object();
+
+  /**
+   * Creates a new instance of this work queue. All initialization should be
+   * performed in the <CODE>initializeWorkQueue</CODE> method.
+   */
+  public WorkStealingWorkQueue()
+  {
+    // No implementation should be performed here.
+  }
+
+  @Override
+  public void initializeWorkQueue(WorkStealingWorkQueueCfg configuration)
+      throws ConfigException, InitializationException
+  {
+    synchronized (configLock)
+    {
+      shutdownRequested = false;
+      killThreads = false;
+
+      // Register to be notified of any configuration changes.
+      configuration.addWorkStealingChangeListener(this);
+
+      // Get the necessary configuration from the provided entry.
+      numWorkerThreads = computeNumWorkerThreads(configuration.getNumWorkerThreads());
+      maxCapacity = configuration.getMaxWorkQueueCapacity();
+      maxCapacityPerWorkerThread = computeMaxCapacityPerWorkerThread(maxCapacity, numWorkerThreads);
+
+      // Create the set of worker threads that should be used to service the
+      // work queue.
+      final WorkStealingWorkerThread[] threads = new WorkStealingWorkerThread[numWorkerThreads];
+      for (lastThreadNumber = 0; lastThreadNumber < numWorkerThreads; lastThreadNumber++)
+      {
+        threads[lastThreadNumber] = new WorkStealingWorkerThread(this, lastThreadNumber);
+      }
+      workerThreads = threads;
+      for (WorkStealingWorkerThread t : threads)
+      {
+        t.start();
+      }
+    }
+
+    // Create and register a monitor provider for the work queue.
+    try
+    {
+      WorkStealingWorkQueueMonitor monitor = new WorkStealingWorkQueueMonitor(this);
+      monitor.initializeMonitorProvider(null);
+      DirectoryServer.registerMonitorProvider(monitor);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+      logger.error(ERR_CONFIG_WORK_QUEUE_CANNOT_CREATE_MONITOR, WorkStealingWorkQueueMonitor.class, e);
+    }
+  }
+
+  @Override
+  public void finalizeWorkQueue(LocalizableMessage reason)
+  {
+    shutdownRequested = true;
+
+    // From now on no more operations can be enqueued or dequeued.
+
+    // Send responses to any operations in the pending queues to indicate that
+    // they won't be processed because the server is shutting down.
+    final WorkStealingWorkerThread[] threads = workerThreads;
+    final List<Operation> pendingOperations = new ArrayList<>();
+    for (WorkStealingWorkerThread t : threads)
+    {
+      pendingOperations.addAll(drain(t.getOperations(), false));
+    }
+
+    CancelRequest cancelRequest = new CancelRequest(true, reason);
+    for (Operation o : pendingOperations)
+    {
+      try
+      {
+        // The operation has no chance of responding to the cancel
+        // request so avoid waiting for a cancel response.
+        if (o.getCancelResult() == null)
+        {
+          o.abort(cancelRequest);
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_CANCEL, o, e);
+      }
+    }
+
+    // Notify all the worker threads of the shutdown.
+    for (WorkStealingWorkerThread t : threads)
+    {
+      try
+      {
+        t.shutDown();
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+        logger.warn(WARN_QUEUE_UNABLE_TO_NOTIFY_THREAD, t.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Indicates whether this work queue has received a request to shut down.
+   *
+   * @return <CODE>true</CODE> if the work queue has recieved a request to shut
+   *         down, or <CODE>false</CODE> if not.
+   */
+  public boolean shutdownRequested()
+  {
+    return shutdownRequested;
+  }
+
+  /**
+   * Submits an operation to be processed by one of the worker threads
+   * associated with this work queue.
+   *
+   * @param operation
+   *          The operation to be processed.
+   * @throws DirectoryException
+   *           If the provided operation is not accepted for some reason (e.g.,
+   *           if the server is shutting down or the pending operation queue is
+   *           already at its maximum capacity).
+   */
+  @Override
+  public void submitOperation(Operation operation) throws DirectoryException
+  {
+    submitOperation(operation, true);
+  }
+
+  @Override
+  public boolean trySubmitOperation(Operation operation)
+      throws DirectoryException
+  {
+    try
+    {
+      submitOperation(operation, false);
+      return true;
+    }
+    catch (DirectoryException e)
+    {
+      if (ResultCode.BUSY == e.getResultCode())
+      {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void submitOperation(Operation operation,
+      boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    while (true)
+    {
+      checkNotShutdown();
+
+      // Retry with the new worker threads if the selected one has exited.
+      final WorkStealingWorkerThread[] threads = workerThreads;
+      final int index = getWorkerThreadIndex(operation, threads.length);
+      final OperationDeque deque = threads[index].getOperations();
+      if (enqueue(deque, operation, blockEnqueuingWhenFull))
+      {
+        if (!deque.ownerIsIdle)
+        {
+          // The owner is busy: let an idle worker thread steal the operation.
+          requestSteal(threads, index);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the worker thread in charge of the provided
+   * operation: all the operations of a client connection are submitted to the
+   * same worker thread so that they are picked up in order.
+   */
+  private static int getWorkerThreadIndex(Operation operation, int numThreads)
+  {
+    return (int) ((operation.getConnectionID() & Long.MAX_VALUE) % numThreads);
+  }
+
+  /**
+   * Adds the provided operation to the provided queue.
+   *
+   * @return {@code false} if the owner of the queue has exited.
+   */
+  private boolean enqueue(OperationDeque deque, Operation operation,
+      boolean blockEnqueuingWhenFull) throws DirectoryException
+  {
+    deque.lock.lock();
+    try
+    {
+      while (!deque.retired && deque.operations.size() >= maxCapacityPerWorkerThread)
+      {
+        if (!blockEnqueuingWhenFull)
+        {
+          queueFullRejects.incrementAndGet();
+
+          LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_FULL.get(maxCapacity);
+          throw new DirectoryException(ResultCode.BUSY, message);
+        }
+
+        try
+        {
+          deque.notFull.await(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+          // We cannot handle the interruption here. Reject the request and
+          // re-interrupt this thread.
+          Thread.currentThread().interrupt();
+
+          queueFullRejects.incrementAndGet();
+
+          LocalizableMessage message = WARN_OP_REJECTED_BY_QUEUE_INTERRUPT.get();
+          throw new DirectoryException(ResultCode.BUSY, message);
+        }
+        checkNotShutdown();
+      }
+      if (deque.retired)
+      {
+        return false;
+      }
+
+      deque.operations.add(operation);
+      deque.size = deque.operations.size();
+      deque.opsSubmitted.incrementAndGet();
+      deque.workAvailable.signal();
+      return true;
+    }
+    finally
+    {
+      deque.lock.unlock();
+    }
+  }
+
+  private void checkNotShutdown() throws DirectoryException
+  {
+    if (shutdownRequested)
+    {
+      LocalizableMessage message = WARN_OP_REJECTED_BY_SHUTDOWN.get();
+      throw new DirectoryException(ResultCode.UNAVAILABLE, message);
+    }
+  }
+
+  /** Wakes up an idle worker thread so that it steals operations from the busy one. */
+  private void requestSteal(WorkStealingWorkerThread[] threads, int busyIndex)
+  {
+    for (int i = 1; i < threads.length; i++)
+    {
+      final OperationDeque deque = threads[(busyIndex + i) % threads.length].getOperations();
+      if (deque.ownerIsIdle)
+      {
+        deque.lock.lock();
+        try
+        {
+          deque.stealRequested = true;
+          deque.workAvailable.signal();
+        }
+        finally
+        {
+          deque.lock.unlock();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Retrieves the next operation that should be processed by one of the worker
+   * threads, blocking if necessary until a new request arrives. This method
+   * should only be called by a worker thread associated with this work queue.
+   *
+   * @param workerThread
+   *          The worker thread that is requesting the operation.
+   * @return The next operation that should be processed, or <CODE>null</CODE>
+   *         if the server is shutting down and no more operations will be
+   *         processed.
+   */
+  public Operation nextOperation(WorkStealingWorkerThread workerThread)
+  {
+    return retryNextOperation(workerThread, 0);
+  }
+
+  /**
+   * Retrieves the next operation that should be processed by one of the worker
+   * threads following a previous failure attempt. A maximum of five consecutive
+   * failures will be allowed before returning <CODE>null</CODE>, which will
+   * cause the associated thread to exit.
+   *
+   * @param workerThread
+   *          The worker thread that is requesting the operation.
+   * @param numFailures
+   *          The number of consecutive failures that the worker thread has
+   *          experienced so far. If this gets too high, then this method will
+   *          return <CODE>null</CODE> rather than retrying.
+   * @return The next operation that should be processed, or <CODE>null</CODE>
+   *         if the server is shutting down and no more operations will be
+   *         processed, or if there have been too many consecutive failures.
+   */
+  private Operation retryNextOperation(WorkStealingWorkerThread workerThread,
+      int numFailures)
+  {
+    // See if we should kill off this thread. This could be necessary if the
+    // number of worker threads has been decreased with the server online. If
+    // so, then return null and the thread will exit.
+    if (shutdownRequested)
+    {
+      return null;
+    }
+
+    if (killThreads && tryKillThisWorkerThread(workerThread))
+    {
+      return null;
+    }
+
+    if (numFailures > MAX_RETRY_COUNT)
+    {
+      logger.error(ERR_CONFIG_WORK_QUEUE_TOO_MANY_FAILURES, Thread
+          .currentThread().getName(), numFailures, MAX_RETRY_COUNT);
+
+      return null;
+    }
+
+    final OperationDeque ownOperations = workerThread.getOperations();
+    try
+    {
+      while (true)
+      {
+        Operation nextOperation = poll(ownOperations);
+        if (nextOperation != null)
+        {
+          return nextOperation;
+        }
+
+        // Submitters check the idle flag after adding an operation, so it must
+        // be set before looking at the other queues in order to not miss any.
+        ownOperations.ownerIsIdle = true;
+        try
+        {
+          nextOperation = steal(workerThread);
+          if (nextOperation != null)
+          {
+            return nextOperation;
+          }
+
+          ownOperations.lock.lock();
+          try
+          {
+            if (ownOperations.operations.isEmpty() && !ownOperations.stealRequested)
+            {
+              ownOperations.workAvailable.await(5, TimeUnit.SECONDS);
+            }
+            ownOperations.stealRequested = false;
+          }
+          finally
+          {
+            ownOperations.lock.unlock();
+          }
+        }
+        finally
+        {
+          ownOperations.ownerIsIdle = false;
+        }
+
+        // There may be no work to do. See if we should give up or check again.
+        if (shutdownRequested)
+        {
+          return null;
+        }
+
+        if (killThreads && tryKillThisWorkerThread(workerThread))
+        {
+          return null;
+        }
+      }
+    }
+    catch (InterruptedException ie)
+    {
+      // If this occurs, then the worker thread must have been interrupted for
+      // some reason. This could be because the Directory Server is shutting
+      // down, in which case we should return null.
+      if (shutdownRequested)
+      {
+        return null;
+      }
+
+      // If we've gotten here, then the worker thread was interrupted for some
+      // other reason. This should not happen, and we need to log a message.
+      logger.warn(WARN_WORKER_INTERRUPTED_WITHOUT_SHUTDOWN, Thread.currentThread().getName(), ie);
+    }
+    catch (Exception e)
+    {
+      logger.traceException(e);
+
+      // This should not happen. The only recourse we have is to log a message
+      // and try again.
+      logger.warn(WARN_WORKER_WAITING_UNCAUGHT_EXCEPTION, Thread.currentThread().getName(), e);
+    }
+
+    // An exception has occurred - retry.
+    return retryNextOperation(workerThread, numFailures + 1);
+  }
+
+  private Operation poll(OperationDeque deque)
+  {
+    deque.lock.lock();
+    try
+    {
+      return deque.poll();
+    }
+    finally
+    {
+      deque.lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the operation at the head of the queue of another worker thread,
+   * starting from a random worker thread in order to spread the thieves.
+   */
+  private Operation steal(WorkStealingWorkerThread workerThread)
+  {
+    final WorkStealingWorkerThread[] threads = workerThreads;
+    final OperationDeque ownOperations = workerThread.getOperations();
+    final int start = ThreadLocalRandom.current().nextInt(threads.length);
+    boolean contended;
+    do
+    {
+      contended = false;
+      for (int i = 0; i < threads.length; i++)
+      {
+        final OperationDeque victim = threads[(start + i) % threads.length].getOperations();
+        if (victim == ownOperations || victim.size == 0)
+        {
+          continue;
+        }
+        // Do not queue behind the owner or other thieves: try the other queues first.
+        if (!victim.lock.tryLock())
+        {
+          contended = true;
+          continue;
+        }
+        try
+        {
+          final Operation operation = victim.poll();
+          if (operation != null)
+          {
+            ownOperations.opsStolen.incrementAndGet();
+            return operation;
+          }
+        }
+        finally
+        {
+          victim.lock.unlock();
+        }
+      }
+    }
+    while (contended && !shutdownRequested);
+    return null;
+  }
+
+  /**
+   * Kills this worker thread if needed, submitting its pending operations to
+   * the remaining worker threads.
+   *
+   * @param workerThread
+   *          The worker thread associated with this thread.
+   * @return {@code true} if this thread was killed or is about to be killed as
+   *         a result of shutdown.
+   */
+  private boolean tryKillThisWorkerThread(WorkStealingWorkerThread workerThread)
+  {
+    final List<Operation> pendingOperations;
+    synchronized (configLock)
+    {
+      if (shutdownRequested)
+      {
+        // This thread is about to shutdown anyway, so return true.
+        return true;
+      }
+
+      final WorkStealingWorkerThread[] threads = workerThreads;
+      if (threads.length <= numWorkerThreads)
+      {
+        killThreads = false;
+        return false;
+      }
+
+      final List<WorkStealingWorkerThread> remainingThreads = new ArrayList<>(Arrays.asList(threads));
+      remainingThreads.remove(workerThread);
+      workerThreads = remainingThreads.toArray(new WorkStealingWorkerThread[remainingThreads.size()]);
+      if (remainingThreads.size() <= numWorkerThreads)
+      {
+        killThreads = false;
+      }
+
+      final OperationDeque ownOperations = workerThread.getOperations();
+      pendingOperations = drain(ownOperations, true);
+      // The pending operations will be counted again when handed over.
+      retiredOpsSubmitted.addAndGet(ownOperations.opsSubmitted.get() - pendingOperations.size());
+      retiredOpsStolen.addAndGet(ownOperations.opsStolen.get());
+      workerThread.setStoppedByReducedThreadNumber();
+    }
+
+    // Hand over the pending operations to the remaining worker threads.
+    for (Operation operation : pendingOperations)
+    {
+      try
+      {
+        submitOperation(operation, true);
+      }
+      catch (DirectoryException e)
+      {
+        logger.traceException(e);
+        operation.abort(new CancelRequest(true, e.getMessageObject()));
+      }
+    }
+    return true;
+  }
+
+  /** Removes all the operations from the provided queue, optionally preventing any further additions. */
+  private List<Operation> drain(OperationDeque deque, boolean retire)
+  {
+    deque.lock.lock();
+    try
+    {
+      final List<Operation> pendingOperations = new ArrayList<>(deque.operations);
+      deque.operations.clear();
+      deque.size = 0;
+      deque.retired |= retire;
+      deque.notFull.signalAll();
+      return pendingOperations;
+    }
+    finally
+    {
+      deque.lock.unlock();
+    }
+  }
+
+  /**
+   * Retrieves the total number of operations that have been successfully
+   * submitted to this work queue for processing since server startup. This does
+   * not include operations that have been rejected for some reason like the
+   * queue already at its maximum capacity.
+   *
+   * @return The total number of operations that have been successfully
+   *         submitted to this work queue since startup.
+   */
+  public long getOpsSubmitted()
+  {
+    long opsSubmitted = retiredOpsSubmitted.get();
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      opsSubmitted += t.getOperations().opsSubmitted.get();
+    }
+    return opsSubmitted;
+  }
+
+  /**
+   * Retrieves the total number of operations that have been picked up by a
+   * worker thread from the queue of another worker thread.
+   *
+   * @return The total number of operations that have been picked up by a
+   *         worker thread from the queue of another worker thread.
+   */
+  public long getOpsStolen()
+  {
+    long opsStolen = retiredOpsStolen.get();
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      opsStolen += t.getOperations().opsStolen.get();
+    }
+    return opsStolen;
+  }
+
+  /**
+   * Retrieves the total number of operations that have been rejected because
+   * the work queue was already at its maximum capacity.
+   *
+   * @return The total number of operations that have been rejected because the
+   *         work queue was already at its maximum capacity.
+   */
+  public long getOpsRejectedDueToQueueFull()
+  {
+    return queueFullRejects.longValue();
+  }
+
+  /**
+   * Retrieves the number of pending operations in the queues that have not yet
+   * been picked up for processing.
+   *
+   * @return The number of pending operations in the queues that have not yet
+   *         been picked up for processing.
+   */
+  public int size()
+  {
+    int size = 0;
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      size += t.getOperations().size;
+    }
+    return size;
+  }
+
+  /**
+   * Retrieves the highest number of pending operations in the queue of a single
+   * worker thread.
+   *
+   * @return The highest number of pending operations in the queue of a single
+   *         worker thread.
+   */
+  public int maxWorkerThreadQueueSize()
+  {
+    int maxSize = 0;
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      maxSize = Math.max(maxSize, t.getOperations().size);
+    }
+    return maxSize;
+  }
+
+  @Override
+  public boolean isConfigurationChangeAcceptable(
+      WorkStealingWorkQueueCfg configuration, List<LocalizableMessage> unacceptableReasons)
+  {
+    return true;
+  }
+
+  @Override
+  public ConfigChangeResult applyConfigurationChange(
+      WorkStealingWorkQueueCfg configuration)
+  {
+    int newNumThreads =
+        computeNumWorkerThreads(configuration.getNumWorkerThreads());
+    int newMaxCapacity = configuration.getMaxWorkQueueCapacity();
+
+    synchronized (configLock)
+    {
+      // Apply a change to the number of worker threads if appropriate.
+      final WorkStealingWorkerThread[] threads = workerThreads;
+      int threadsToAdd = newNumThreads - threads.length;
+      if (threadsToAdd > 0)
+      {
+        final WorkStealingWorkerThread[] newThreads = Arrays.copyOf(threads, newNumThreads);
+        for (int i = threads.length; i < newNumThreads; i++)
+        {
+          newThreads[i] = new WorkStealingWorkerThread(this, lastThreadNumber++);
+          newThreads[i].start();
+        }
+        workerThreads = newThreads;
+        killThreads = false;
+      }
+      else if (threadsToAdd < 0)
+      {
+        killThreads = true;
+      }
+
+      // Changing the capacity only affects the next submissions: operations
+      // already queued beyond the new capacity are processed normally.
+      numWorkerThreads = newNumThreads;
+      maxCapacity = newMaxCapacity;
+      maxCapacityPerWorkerThread = computeMaxCapacityPerWorkerThread(newMaxCapacity, newNumThreads);
+    }
+    return new ConfigChangeResult();
+  }
+
+  private static int computeMaxCapacityPerWorkerThread(int maxCapacity, int numWorkerThreads)
+  {
+    return Math.max(1, (int) (((long) maxCapacity + numWorkerThreads - 1) / numWorkerThreads));
+  }
+
+  @Override
+  public boolean isIdle()
+  {
+    for (WorkStealingWorkerThread t : workerThreads)
+    {
+      if (t.getOperations().size > 0 || t.isActive())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Return the number of worker threads used by this WorkQueue.
+   *
+   * @return the number of worker threads used by this WorkQueue
+   */
+  @Override
+  public int getNumWorkerThreads()
+  {
+    return this.numWorkerThreads;
+  }
+}
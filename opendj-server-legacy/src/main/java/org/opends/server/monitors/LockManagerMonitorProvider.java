@@ -0,0 +1,95 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.monitors;
+
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.server.config.server.LockManagerMonitorProviderCfg;
+import org.opends.server.api.MonitorData;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.InitializationException;
+import org.opends.server.types.LockManager;
+import org.opends.server.types.LockManager.LockStatistics;
+import org.opends.server.types.LockManager.LockType;
+
+/**
+ * This class defines a monitor provider that reports how often and how long the Directory Server
+ * lock manager had to wait for entry and subtree locks.
+ */
+public class LockManagerMonitorProvider
+       extends MonitorProvider<LockManagerMonitorProviderCfg>
+{
+  /** The name of the attribute used to provide the number of lock stripes. */
+  public static final String ATTR_LOCK_STRIPES = "lockStripes";
+
+  /** The suffixes of the attributes used to provide the wait time histogram, in ascending order. */
+  private static final String[] HISTOGRAM_SUFFIXES = {
+    "Under100us", "Under1ms", "Under10ms", "Under100ms", "Under1s", "Over1s" };
+
+  @Override
+  public void initializeMonitorProvider(LockManagerMonitorProviderCfg configuration)
+         throws ConfigException, InitializationException
+  {
+    // No initialization is required.
+  }
+
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return "Lock Manager";
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    final LockManager lockManager = DirectoryServer.getLockManager();
+    final MonitorData attrs = new MonitorData(1 + LockType.values().length * (3 + HISTOGRAM_SUFFIXES.length));
+    final int numberOfStripes = lockManager.getNumberOfStripes();
+    if (numberOfStripes > 0)
+    {
+      attrs.add(ATTR_LOCK_STRIPES, numberOfStripes);
+    }
+    for (LockType lockType : LockType.values())
+    {
+      final String prefix = getAttributePrefix(lockType);
+      final LockStatistics stats = lockManager.getLockStatistics(lockType);
+      attrs.add(prefix + "LockWaits", stats.getWaitCount());
+      attrs.add(prefix + "LockTimeouts", stats.getTimeoutCount());
+      attrs.add(prefix + "LockWaitTime", stats.getTotalWaitTime(TimeUnit.MILLISECONDS));
+      final long[] histogram = stats.getWaitTimeHistogram();
+      for (int i = 0; i < histogram.length; i++)
+      {
+        attrs.add(prefix + "LockWaits" + HISTOGRAM_SUFFIXES[i], histogram[i]);
+      }
+    }
+    return attrs;
+  }
+
+  private static String getAttributePrefix(LockType lockType)
+  {
+    switch (lockType)
+    {
+    case READ_ENTRY:
+      return "readEntry";
+    case WRITE_ENTRY:
+      return "writeEntry";
+    default:
+      return "writeSubtree";
+    }
+  }
+}
@@ -61,6 +61,10 @@ import org.forgerock.opendj.ldap.DecodeException;
  * {@link IllegalBlockingModeException}s being thrown while reading
  * ASN.1 elements. Once an exception is thrown, the state of the reader
  * is no longer stable and can not be used again.
+ * <p>
+ * When created with a {@link ReadBufferPool}, the reader only holds a
+ * buffer from the pool while there are data to process: it is returned
+ * to the pool as soon as no more data could be read from the channel.
  */
 final class ASN1ByteChannelReader implements ASN1Reader
 {
@@ -70,8 +74,14 @@ final class ASN1ByteChannelReader implements ASN1Reader
   /** The wrapped ASN.1 reader. */
   private final ASN1Reader reader;
 
+  /** An empty buffer used in place of a pooled buffer when none is borrowed. */
+  private static final ByteBuffer NO_BUFFER = ByteBuffer.allocate(0);
+
+  /** The pool providing the NIO byte buffer, or {@code null} if the reader has its own buffer. */
+  private final ReadBufferPool bufferPool;
+
   /** The NIO ByteStringBuilder that stores any immediate data read off the channel. */
-  private final ByteBuffer byteBuffer;
+  private ByteBuffer byteBuffer;
 
   /**
    * The save buffer used to store any unprocessed data waiting to be read as
@@ -273,9 +283,36 @@ final class ASN1ByteChannelReader implements ASN1Reader
   ASN1ByteChannelReader(ReadableByteChannel channel, int bufferSize,
       int maxElementSize)
   {
-    this.byteChannel = channel;
-    this.byteBuffer = ByteBuffer.allocate(bufferSize);
+    this(channel, null, ByteBuffer.allocate(bufferSize), maxElementSize);
     this.byteBuffer.flip();
+  }
+
+  /**
+   * Creates a new ASN.1 byte channel reader whose source is the
+   * provided readable byte channel, borrowing buffers from the
+   * provided pool when reading from the channel, and having a user
+   * defined maximum BER element size.
+   *
+   * @param channel
+   *          The readable byte channel to use.
+   * @param bufferPool
+   *          The pool providing the buffers used when reading from
+   *          the channel.
+   * @param maxElementSize
+   *          The max ASN.1 element size this reader will read.
+   */
+  ASN1ByteChannelReader(ReadableByteChannel channel, ReadBufferPool bufferPool,
+      int maxElementSize)
+  {
+    this(channel, bufferPool, NO_BUFFER, maxElementSize);
+  }
+
+  private ASN1ByteChannelReader(ReadableByteChannel channel, ReadBufferPool bufferPool,
+      ByteBuffer byteBuffer, int maxElementSize)
+  {
+    this.byteChannel = channel;
+    this.bufferPool = bufferPool;
+    this.byteBuffer = byteBuffer;
     this.saveBuffer = new ByteStringBuilder();
     this.saveBufferReader = saveBuffer.asReader();
 
@@ -295,6 +332,8 @@ final class ASN1ByteChannelReader implements ASN1Reader
    * <li>Append any unread data from the NIO byte buffer to the save
    * buffer.
    * <li>Clear the NIO byte buffer and read from the channel.
+   * <li>Return the NIO byte buffer to the pool, if any, when no data
+   * could be read.
    * </ul>
    *
    * @return The number of bytes read from the channel or -1 if
@@ -302,7 +341,7 @@ final class ASN1ByteChannelReader implements ASN1Reader
    * @throws IOException
    *           If an exception occurs while reading from the channel.
    */
-  public int processChannelData() throws IOException
+  public synchronized int processChannelData() throws IOException
   {
     // Clear the save buffer if we have read all of it
     if (saveBufferReader.remaining() == 0)
@@ -317,10 +356,17 @@ final class ASN1ByteChannelReader implements ASN1Reader
       saveBuffer.appendBytes(byteBuffer, byteBuffer.remaining());
     }
 
+    if (byteBuffer == NO_BUFFER)
+    {
+      byteBuffer = bufferPool.borrowBuffer();
+    }
+
     byteBuffer.clear();
+    int bytesRead = -1;
     try
     {
-      return byteChannel.read(byteBuffer);
+      bytesRead = byteChannel.read(byteBuffer);
+      return bytesRead;
     }
     finally
     {
@@ -328,6 +374,35 @@ final class ASN1ByteChannelReader implements ASN1Reader
       // ensure that subsequent calls which query the remaining data return
       // valid results.
       byteBuffer.flip();
+      if (bytesRead <= 0)
+      {
+        releaseBuffer();
+      }
+    }
+  }
+
+  /**
+   * Returns the NIO byte buffer to the pool, if any, saving any unread data.
+   * The save buffer is shrunk as well if it grew to hold a large element.
+   */
+  private void releaseBuffer()
+  {
+    if (bufferPool == null || byteBuffer == NO_BUFFER)
+    {
+      return;
+    }
+
+    if (byteBuffer.remaining() > 0)
+    {
+      saveBuffer.appendBytes(byteBuffer, byteBuffer.remaining());
+    }
+    bufferPool.releaseBuffer(byteBuffer);
+    byteBuffer = NO_BUFFER;
+
+    if (saveBufferReader.remaining() == 0)
+    {
+      saveBuffer.clearAndTruncate(bufferPool.getBufferSize(), 0);
+      saveBufferReader.rewind();
     }
   }
 
@@ -495,7 +570,14 @@ final class ASN1ByteChannelReader implements ASN1Reader
   }
 
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    // The connection may be closed while a request handler is still reading
+    // from the buffer, so it must not be reused.
+    if (bufferPool != null && byteBuffer != NO_BUFFER)
+    {
+      bufferPool.discardBuffer();
+      byteBuffer = NO_BUFFER;
+    }
     reader.close();
     byteChannel.close();
   }
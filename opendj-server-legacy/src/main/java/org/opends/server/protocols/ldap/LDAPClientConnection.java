@@ -419,7 +419,6 @@ public final class LDAPClientConnection extends ClientConnection implements
   private final String serverAddress;
 
   private final ASN1ByteChannelReader asn1Reader;
-  private final int bufferSize;
   private final RedirectingByteChannel saslChannel;
   private final RedirectingByteChannel tlsChannel;
   private volatile ConnectionSecurityProvider saslActiveProvider;
@@ -473,11 +472,10 @@ public final class LDAPClientConnection extends ClientConnection implements
       this.useNanoTime = false;
     }
 
-    bufferSize = connectionHandler.getBufferSize();
-
     tlsChannel = RedirectingByteChannel.getRedirectingByteChannel(timeoutClientChannel);
     saslChannel = RedirectingByteChannel.getRedirectingByteChannel(tlsChannel);
-    this.asn1Reader = new ASN1ByteChannelReader(saslChannel, bufferSize, connectionHandler.getMaxRequestSize());
+    this.asn1Reader = new ASN1ByteChannelReader(saslChannel, connectionHandler.getReadBufferPool(),
+        connectionHandler.getMaxRequestSize());
 
     if (connectionHandler.useSSL())
     {
@@ -1434,6 +1432,19 @@ public final class LDAPClientConnection extends ClientConnection implements
     return asn1Reader;
   }
 
+  /**
+   * Indicates whether this connection can be transferred to another request
+   * handler, which is the case when it has no data waiting to be decoded and
+   * no bind or StartTLS operation in progress.
+   *
+   * @return {@code true} if this connection can be transferred to another
+   *         request handler
+   */
+  boolean isTransferable()
+  {
+    return !bindInProgress.get() && !startTLSInProgress.get() && !asn1Reader.hasRemainingData();
+  }
+
   /**
    * Process data read.
    *
@@ -158,6 +158,9 @@ public final class LDAPConnectionHandler extends
   /** The set of statistics collected for this connection handler. */
   private LDAPStatistics statTracker;
 
+  /** The pool of buffers used to read data from the client connections. */
+  private volatile ReadBufferPool readBufferPool;
+
   /** The client connection monitor provider associated with this connection handler. */
   private ClientConnectionMonitorProvider connMonitor;
 
@@ -285,6 +288,14 @@ public final class LDAPConnectionHandler extends
       statTracker.clearStatistics();
     }
 
+    // Use a new read buffer pool if the buffer size changes. Existing
+    // connections keep using the previous one.
+    if (currentConfig.getBufferSize() != config.getBufferSize())
+    {
+      DirectoryServer.deregisterMonitorProvider(readBufferPool);
+      readBufferPool = newReadBufferPool(config);
+    }
+
     // Apply the changes.
     currentConfig = config;
     enabled = config.isEnabled();
@@ -348,6 +359,11 @@ public final class LDAPConnectionHandler extends
       DirectoryServer.deregisterMonitorProvider(statTracker);
     }
 
+    if (readBufferPool != null)
+    {
+      DirectoryServer.deregisterMonitorProvider(readBufferPool);
+    }
+
     DirectoryServer.deregisterSupportedLDAPVersion(2, this);
     DirectoryServer.deregisterSupportedLDAPVersion(3, this);
 
@@ -539,6 +555,54 @@ public final class LDAPConnectionHandler extends
     return handlerName;
   }
 
+  /**
+   * Retrieves the pool of buffers used to read data from the client
+   * connections.
+   *
+   * @return The pool of buffers used to read data from the client
+   *         connections.
+   */
+  ReadBufferPool getReadBufferPool()
+  {
+    return readBufferPool;
+  }
+
+  private ReadBufferPool newReadBufferPool(LDAPConnectionHandlerCfg config)
+  {
+    ReadBufferPool pool = new ReadBufferPool(handlerName + " Read Buffer Pool", (int) config.getBufferSize());
+    DirectoryServer.registerMonitorProvider(pool);
+    return pool;
+  }
+
+  /**
+   * Retrieves the request handler having the lowest number of client
+   * connections.
+   *
+   * @return The request handler having the lowest number of client
+   *         connections.
+   */
+  LDAPRequestHandler getLeastLoadedRequestHandler()
+  {
+    return getLeastLoadedRequestHandler(0);
+  }
+
+  private LDAPRequestHandler getLeastLoadedRequestHandler(int firstIndex)
+  {
+    LDAPRequestHandler leastLoaded = null;
+    int minNumConnections = Integer.MAX_VALUE;
+    for (int i = 0; i < numRequestHandlers; i++)
+    {
+      LDAPRequestHandler requestHandler = requestHandlers[(firstIndex + i) % numRequestHandlers];
+      int numConnections = requestHandler.getNumConnections();
+      if (numConnections < minNumConnections)
+      {
+        leastLoaded = requestHandler;
+        minNumConnections = numConnections;
+      }
+    }
+    return leastLoaded;
+  }
+
   /**
    * Retrieves the SSL client authentication policy for this connection handler.
    *
@@ -673,6 +737,7 @@ public final class LDAPConnectionHandler extends
     // Create and register monitors.
     statTracker = new LDAPStatistics(handlerName + " Statistics");
     DirectoryServer.registerMonitorProvider(statTracker);
+    readBufferPool = newReadBufferPool(config);
 
     connMonitor = new ClientConnectionMonitorProvider(this);
     DirectoryServer.registerMonitorProvider(connMonitor);
@@ -1117,8 +1182,10 @@ public final class LDAPConnectionHandler extends
         return;
       }
 
+      // Start looking from a different request handler each time, so that
+      // connections are spread evenly when the request handlers are balanced.
       LDAPRequestHandler requestHandler =
-          requestHandlers[requestHandlerIndex++];
+          getLeastLoadedRequestHandler(requestHandlerIndex++);
       if (requestHandlerIndex >= numRequestHandlers)
       {
         requestHandlerIndex = 0;
@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
@@ -47,6 +48,10 @@ import org.opends.server.types.LDAPException;
  * that LDAP clients may send to the server.  Multiple request handlers may be
  * used in conjunction with a single connection handler for better performance
  * and scalability.
+ * <p>
+ * Request handlers periodically check whether they have many more connections
+ * than the least loaded request handler of their connection handler, and if
+ * so transfer some of their idle connections to it.
  */
 public class LDAPRequestHandler
        extends DirectoryThread
@@ -54,6 +59,14 @@ public class LDAPRequestHandler
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** The interval between two checks of the connection balance, in milliseconds. */
+  private static final long REBALANCING_INTERVAL_MS = 10000;
+  /**
+   * The minimum difference between the number of connections of this request
+   * handler and of the least loaded one which triggers a rebalancing.
+   */
+  private static final int MIN_CONNECTION_IMBALANCE = 16;
+
   /** Indicates whether the Directory Server is in the process of shutting down. */
   private volatile boolean shutdownRequested;
   /** The current set of selection keys. */
@@ -65,8 +78,15 @@ public class LDAPRequestHandler
    * TODO: revisit, see Issue 4202.
    */
   private List<LDAPClientConnection> pendingConnections = new LinkedList<>();
+  /**
+   * The queue that will be used to hold the set of connections transferred
+   * from other request handlers that need to be registered with the selector.
+   */
+  private List<LDAPClientConnection> transferredConnections = new LinkedList<>();
+  /** The number of connections in the pending and transferred connections queues. */
+  private final AtomicInteger nbPendingConnections = new AtomicInteger();
 
-  /** Lock object for synchronizing access to the pending connections queue. */
+  /** Lock object for synchronizing access to the pending connections queues. */
   private final Object pendingConnectionsLock = new Object();
   /** The list of connections ready for request processing. */
   private final LinkedList<LDAPClientConnection> readyConnections = new LinkedList<>();
@@ -74,6 +94,10 @@ public class LDAPRequestHandler
   private final Selector selector;
   /** The name to use for this request handler. */
   private final String handlerName;
+  /** The connection handler with which this request handler is associated. */
+  private final LDAPConnectionHandler connectionHandler;
+  /** The time of the next check of the connection balance. */
+  private long nextRebalancingTime;
 
 
 
@@ -98,6 +122,8 @@ public class LDAPRequestHandler
 
 
     handlerName        = getName();
+    this.connectionHandler = connectionHandler;
+    nextRebalancingTime = System.currentTimeMillis() + REBALANCING_INTERVAL_MS;
 
     try
     {
@@ -203,6 +229,7 @@ public class LDAPRequestHandler
       // Check to see if we have any pending connections that need to be
       // registered with the selector.
       List<LDAPClientConnection> tmp = null;
+      List<LDAPClientConnection> tmpTransferred = null;
       synchronized (pendingConnectionsLock)
       {
         if (!pendingConnections.isEmpty())
@@ -210,33 +237,37 @@ public class LDAPRequestHandler
           tmp = pendingConnections;
           pendingConnections = new LinkedList<>();
         }
+        if (!transferredConnections.isEmpty())
+        {
+          tmpTransferred = transferredConnections;
+          transferredConnections = new LinkedList<>();
+        }
       }
 
+      int nbRegistered = 0;
       if (tmp != null)
       {
-        for (LDAPClientConnection c : tmp)
-        {
-          try
-          {
-            SocketChannel socketChannel = c.getSocketChannel();
-            socketChannel.configureBlocking(false);
-            socketChannel.register(selector, SelectionKey.OP_READ, c);
-            logConnect(c);
-          }
-          catch (Exception e)
-          {
-            logger.traceException(e);
+        registerPendingConnections(tmp, true);
+        nbRegistered += tmp.size();
+      }
+      if (tmpTransferred != null)
+      {
+        registerPendingConnections(tmpTransferred, false);
+        nbRegistered += tmpTransferred.size();
+      }
 
-            c.disconnect(DisconnectReason.SERVER_ERROR, true,
-                ERR_LDAP_REQHANDLER_CANNOT_REGISTER.get(handlerName, e));
-          }
-        }
+      long currentTime = System.currentTimeMillis();
+      if (currentTime >= nextRebalancingTime)
+      {
+        nextRebalancingTime = currentTime + REBALANCING_INTERVAL_MS;
+        rebalanceConnections();
       }
 
       // Create a copy of the selection keys which can be used in a
       // thread-safe manner by getClientConnections. This copy is only
       // updated once per loop, so may not be accurate.
       keys = selector.keys().toArray(new SelectionKey[0]);
+      nbPendingConnections.addAndGet(-nbRegistered);
 
       int selectedKeys = 0;
       try
@@ -373,7 +404,9 @@ public class LDAPRequestHandler
     // Disconnect all pending connections.
     synchronized (pendingConnectionsLock)
     {
-      for (LDAPClientConnection c : pendingConnections)
+      List<LDAPClientConnection> allPendingConnections = new ArrayList<>(pendingConnections);
+      allPendingConnections.addAll(transferredConnections);
+      for (LDAPClientConnection c : allPendingConnections)
       {
         try
         {
@@ -388,6 +421,78 @@ public class LDAPRequestHandler
     }
   }
 
+  /**
+   * Registers the provided pending connections with the selector.
+   *
+   * @param connections
+   *          The connections to register.
+   * @param newConnections
+   *          Whether the connections have just been accepted, as opposed to
+   *          transferred from another request handler.
+   */
+  private void registerPendingConnections(List<LDAPClientConnection> connections, boolean newConnections)
+  {
+    for (LDAPClientConnection c : connections)
+    {
+      try
+      {
+        SocketChannel socketChannel = c.getSocketChannel();
+        socketChannel.configureBlocking(false);
+        socketChannel.register(selector, SelectionKey.OP_READ, c);
+        if (newConnections)
+        {
+          logConnect(c);
+        }
+      }
+      catch (Exception e)
+      {
+        logger.traceException(e);
+
+        c.disconnect(DisconnectReason.SERVER_ERROR, true,
+            ERR_LDAP_REQHANDLER_CANNOT_REGISTER.get(handlerName, e));
+      }
+    }
+  }
+
+  /**
+   * Transfers idle connections to the least loaded request handler if this
+   * request handler has many more connections. Only half of the difference is
+   * transferred, so that request handlers rebalancing at the same time do not
+   * overshoot.
+   */
+  private void rebalanceConnections()
+  {
+    LDAPRequestHandler target = connectionHandler.getLeastLoadedRequestHandler();
+    int nbToTransfer = (getNumConnections() - target.getNumConnections()) / 2;
+    if (target == this || nbToTransfer < MIN_CONNECTION_IMBALANCE / 2)
+    {
+      return;
+    }
+
+    // The selected keys have all been processed, and the cancelled keys will
+    // be deregistered by the next select before the transferred connections
+    // can be transferred back.
+    int nbTransferred = 0;
+    for (SelectionKey key : selector.keys())
+    {
+      LDAPClientConnection c = (LDAPClientConnection) key.attachment();
+      if (key.isValid() && c != null && c.isTransferable())
+      {
+        key.cancel();
+        key.attach(null);
+        if (!target.transferClient(c))
+        {
+          return;
+        }
+        if (++nbTransferred >= nbToTransfer)
+        {
+          break;
+        }
+      }
+    }
+    logger.trace("Transferred %d connections from %s to %s", nbTransferred, handlerName, target.handlerName);
+  }
+
 
 
   /**
@@ -422,12 +527,56 @@ public class LDAPRequestHandler
     synchronized (pendingConnectionsLock)
     {
       pendingConnections.add(clientConnection);
+      nbPendingConnections.incrementAndGet();
     }
 
     selector.wakeup();
     return true;
   }
 
+  /**
+   * Registers the provided client connection, previously registered with
+   * another request handler, with this request handler.
+   *
+   * @param clientConnection
+   *          The client connection to be registered with this request
+   *          handler.
+   * @return <CODE>true</CODE> if the client connection was properly
+   *         registered with this request handler, or
+   *         <CODE>false</CODE> if not.
+   */
+  private boolean transferClient(LDAPClientConnection clientConnection)
+  {
+    if (shutdownRequested)
+    {
+      clientConnection.disconnect(DisconnectReason.SERVER_SHUTDOWN, true,
+           ERR_LDAP_REQHANDLER_DEREGISTER_DUE_TO_SHUTDOWN.get());
+      return false;
+    }
+
+    synchronized (pendingConnectionsLock)
+    {
+      transferredConnections.add(clientConnection);
+      nbPendingConnections.incrementAndGet();
+    }
+
+    selector.wakeup();
+    return true;
+  }
+
+  /**
+   * Retrieves the approximate number of client connections registered with
+   * this request handler, including the ones waiting to be registered with
+   * the selector.
+   *
+   * @return The approximate number of client connections registered with
+   *         this request handler.
+   */
+  int getNumConnections()
+  {
+    return keys.length + nbPendingConnections.get();
+  }
+
 
 
   /**
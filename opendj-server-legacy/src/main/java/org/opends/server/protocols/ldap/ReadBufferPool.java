@@ -0,0 +1,171 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.protocols.ldap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.server.config.server.MonitorProviderCfg;
+import org.opends.server.api.MonitorData;
+import org.opends.server.api.MonitorProvider;
+
+/**
+ * A pool of direct byte buffers used to read data from client connections.
+ * <p>
+ * The buffers are shared by all the request handlers of a connection handler,
+ * and a client connection only borrows one while it has data to decode: idle
+ * connections do not hold any read buffer. The pool grows on demand, so its
+ * size is the highest number of connections which had data to decode at the
+ * same time.
+ * <p>
+ * This class is also a monitor provider reporting the pool usage.
+ */
+final class ReadBufferPool extends MonitorProvider<MonitorProviderCfg>
+{
+  /** The instance name for this monitor provider instance. */
+  private final String instanceName;
+  /** The size of the buffers. */
+  private final int bufferSize;
+  /** The buffers available for borrowing. */
+  private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+  /** The number of buffers allocated by this pool. */
+  private final AtomicInteger nbBuffers = new AtomicInteger();
+  /** The number of buffers currently borrowed. */
+  private final AtomicInteger nbBuffersInUse = new AtomicInteger();
+  /** The number of times a buffer has been borrowed. */
+  private final AtomicLong nbBorrows = new AtomicLong();
+  /** The number of buffers borrowed and never released, for instance by connections closed while reading. */
+  private final AtomicLong nbDiscarded = new AtomicLong();
+
+  /**
+   * Creates a new read buffer pool.
+   *
+   * @param instanceName
+   *          The name for this monitor provider instance.
+   * @param bufferSize
+   *          The size of the buffers.
+   */
+  ReadBufferPool(String instanceName, int bufferSize)
+  {
+    this.instanceName = instanceName;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Returns the size of the buffers of this pool.
+   *
+   * @return The size of the buffers of this pool.
+   */
+  int getBufferSize()
+  {
+    return bufferSize;
+  }
+
+  /**
+   * Borrows a buffer from this pool, allocating a new one if none is available.
+   * The returned buffer is cleared.
+   *
+   * @return A buffer which must be returned with {@link #releaseBuffer(ByteBuffer)}
+   *         or given up with {@link #discardBuffer()}.
+   */
+  ByteBuffer borrowBuffer()
+  {
+    ByteBuffer buffer = freeBuffers.poll();
+    if (buffer == null)
+    {
+      buffer = ByteBuffer.allocateDirect(bufferSize);
+      nbBuffers.incrementAndGet();
+    }
+    buffer.clear();
+    nbBuffersInUse.incrementAndGet();
+    nbBorrows.incrementAndGet();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer borrowed from this pool, making it available for reuse.
+   * The caller must not access the buffer anymore.
+   *
+   * @param buffer
+   *          The buffer to return.
+   */
+  void releaseBuffer(ByteBuffer buffer)
+  {
+    nbBuffersInUse.decrementAndGet();
+    freeBuffers.offer(buffer);
+  }
+
+  /**
+   * Gives up a buffer borrowed from this pool, which may still be accessed by
+   * another thread and hence cannot be reused. It is left to the garbage
+   * collector.
+   */
+  void discardBuffer()
+  {
+    nbBuffersInUse.decrementAndGet();
+    nbBuffers.decrementAndGet();
+    nbDiscarded.incrementAndGet();
+  }
+
+  /**
+   * Returns the number of buffers allocated by this pool, be they borrowed or not.
+   *
+   * @return The number of buffers allocated by this pool.
+   */
+  int getNumBuffers()
+  {
+    return nbBuffers.get();
+  }
+
+  /**
+   * Returns the number of buffers currently borrowed from this pool.
+   *
+   * @return The number of buffers currently borrowed from this pool.
+   */
+  int getNumBuffersInUse()
+  {
+    return nbBuffersInUse.get();
+  }
+
+  @Override
+  public void initializeMonitorProvider(MonitorProviderCfg configuration) throws ConfigException
+  {
+    // No initialization is required.
+  }
+
+  @Override
+  public String getMonitorInstanceName()
+  {
+    return instanceName;
+  }
+
+  @Override
+  public MonitorData getMonitorData()
+  {
+    final int allocated = getNumBuffers();
+    final MonitorData attrs = new MonitorData(6);
+    attrs.add("readBufferSize", bufferSize);
+    attrs.add("readBuffersAllocated", allocated);
+    attrs.add("readBuffersInUse", getNumBuffersInUse());
+    attrs.add("readBuffersAllocatedBytes", (long) allocated * bufferSize);
+    attrs.add("readBufferBorrows", nbBorrows.get());
+    attrs.add("readBuffersDiscarded", nbDiscarded.get());
+    return attrs;
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import static org.opends.server.replication.plugin.HistAttrModificationKey.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.AttributeDescription;
+import org.forgerock.opendj.ldap.ByteSequence;
+import org.forgerock.opendj.ldap.ByteSequenceReader;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.opends.server.replication.common.CSN;
+
+/**
+ * A value of the historical attribute in the compact binary format. Such a
+ * value holds all the historical information of one attribute description,
+ * whereas the text format stores one value per change.
+ * <p>
+ * The changes are sorted by CSN, and each CSN is stored as the difference of
+ * time with the previous one, which is usually a few bytes. The attribute
+ * description and the time range of the changes are stored first, so that
+ * the value can be purged or kept as is without decoding the changes: only the
+ * attributes being modified need to be decoded.
+ * <p>
+ * The format is:
+ * <pre>
+ * 0 (byte) | format version (byte) | attribute description (compact length, UTF-8)
+ * number of changes (compact) | time of the newest change - time of the oldest change (compact)
+ * then, for each change by ascending CSN:
+ *   kind of change (byte, with {@link #HAS_VALUE} if a value follows)
+ *   time - time of the previous change (compact) | seqnum (compact) | server id (compact)
+ *   value (compact length, bytes)
+ * </pre>
+ * A text value starts with an attribute description, so it never starts with
+ * a 0 byte.
+ */
+final class BinaryHistoricalValue
+{
+  private static final byte MARKER = 0;
+  private static final byte FORMAT_VERSION = 1;
+
+  /** Flag of the kind of change indicating that a value follows. */
+  private static final int HAS_VALUE = 0x80;
+  /** Kind of the change recording the last rename of the entry. */
+  private static final int MODDN = 4;
+
+  /** Orders the changes by CSN, and then deterministically so that encoding is stable. */
+  private static final Comparator<HistoricalAttributeValue> ORDER = new Comparator<HistoricalAttributeValue>()
+  {
+    @Override
+    public int compare(HistoricalAttributeValue v1, HistoricalAttributeValue v2)
+    {
+      int result = CSN.compare(v1.getCSN(), v2.getCSN());
+      if (result == 0)
+      {
+        result = getKind(v1) - getKind(v2);
+      }
+      if (result == 0 && v1.getAttributeValue() != null && v2.getAttributeValue() != null)
+      {
+        result = v1.getAttributeValue().compareTo(v2.getAttributeValue());
+      }
+      return result;
+    }
+  };
+
+  private final ByteString encoded;
+  private final String attrDescription;
+  private final int nbChanges;
+  private final CSN oldestCSN;
+  private final long newestTime;
+  /** Position of the first change in the encoded value. */
+  private final int changesStart;
+
+  private BinaryHistoricalValue(ByteString encoded, String attrDescription, int nbChanges, CSN oldestCSN,
+      long newestTime, int changesStart)
+  {
+    this.encoded = encoded;
+    this.attrDescription = attrDescription;
+    this.nbChanges = nbChanges;
+    this.oldestCSN = oldestCSN;
+    this.newestTime = newestTime;
+    this.changesStart = changesStart;
+  }
+
+  /**
+   * Returns whether the provided value of the historical attribute is in the
+   * binary format.
+   *
+   * @param value
+   *          a value of the historical attribute
+   * @return {@code true} if the value is in the binary format, {@code false}
+   *         if it is in the text format
+   */
+  static boolean isBinary(ByteSequence value)
+  {
+    return value.length() > 0 && value.byteAt(0) == MARKER;
+  }
+
+  /**
+   * Reads the header of a value in the binary format. The changes are only
+   * decoded by {@link #decode()}.
+   *
+   * @param value
+   *          a value of the historical attribute in the binary format
+   * @return the binary value
+   * @throws IllegalArgumentException
+   *           If the value is not a valid value in the binary format
+   */
+  static BinaryHistoricalValue valueOf(ByteString value)
+  {
+    try
+    {
+      final ByteSequenceReader reader = readHeader(value);
+      final String attrDescription = reader.readByteString(reader.readCompactUnsignedInt()).toString();
+      final int nbChanges = reader.readCompactUnsignedInt();
+      final long timeRange = reader.readCompactUnsignedLong();
+      final int changesStart = reader.position();
+      reader.readByte();
+      final long oldestTime = reader.readCompactUnsignedLong();
+      final CSN oldestCSN = new CSN(oldestTime, reader.readCompactUnsignedInt(), reader.readCompactUnsignedInt());
+      return new BinaryHistoricalValue(value, attrDescription, nbChanges, oldestCSN, oldestTime + timeRange,
+          changesStart);
+    }
+    catch (IndexOutOfBoundsException | IllegalStateException e)
+    {
+      throw new IllegalArgumentException("Truncated historical value " + value.toHexString(), e);
+    }
+  }
+
+  private static ByteSequenceReader readHeader(ByteSequence value)
+  {
+    final ByteSequenceReader reader = value.asReader();
+    if (reader.readByte() != MARKER || reader.readByte() != FORMAT_VERSION)
+    {
+      throw new IllegalArgumentException("Unsupported historical value " + value.toByteString().toHexString());
+    }
+    return reader;
+  }
+
+  /**
+   * Returns the CSNs of all the changes of a value in the binary format,
+   * without decoding the attribute description nor the values. This is used
+   * for ordering and indexing historical values by CSN.
+   *
+   * @param value
+   *          a value of the historical attribute in the binary format
+   * @return the CSNs of the changes, by ascending CSN
+   * @throws IllegalArgumentException
+   *           If the value is not a valid value in the binary format
+   */
+  static List<CSN> decodeCSNs(ByteSequence value)
+  {
+    try
+    {
+      final ByteSequenceReader reader = readHeader(value);
+      reader.skip(reader.readCompactUnsignedInt());
+      final int nbChanges = reader.readCompactUnsignedInt();
+      reader.readCompactUnsignedLong();
+      final List<CSN> csns = new ArrayList<>(nbChanges);
+      long time = 0;
+      for (int i = 0; i < nbChanges; i++)
+      {
+        final int kind = reader.readByte() & 0xff;
+        time += reader.readCompactUnsignedLong();
+        csns.add(new CSN(time, reader.readCompactUnsignedInt(), reader.readCompactUnsignedInt()));
+        if ((kind & HAS_VALUE) != 0)
+        {
+          reader.skip(reader.readCompactUnsignedInt());
+        }
+      }
+      return csns;
+    }
+    catch (IndexOutOfBoundsException | IllegalStateException e)
+    {
+      throw new IllegalArgumentException("Truncated historical value " + value.toByteString().toHexString(), e);
+    }
+  }
+
+  /**
+   * Decodes all the changes held by this value.
+   *
+   * @return the changes, by ascending CSN
+   * @throws IllegalArgumentException
+   *           If the value is not a valid value in the binary format
+   */
+  List<HistoricalAttributeValue> decode()
+  {
+    final AttributeDescription attrDesc = AttributeDescription.valueOf(attrDescription);
+    final ByteSequenceReader reader = encoded.asReader();
+    reader.position(changesStart);
+    try
+    {
+      final List<HistoricalAttributeValue> changes = new ArrayList<>(nbChanges);
+      long time = 0;
+      for (int i = 0; i < nbChanges; i++)
+      {
+        final int kind = reader.readByte() & 0xff;
+        time += reader.readCompactUnsignedLong();
+        final CSN csn = new CSN(time, reader.readCompactUnsignedInt(), reader.readCompactUnsignedInt());
+        final ByteString value =
+            (kind & HAS_VALUE) != 0 ? reader.readByteString(reader.readCompactUnsignedInt()) : null;
+        final int kindWithoutValue = kind & ~HAS_VALUE;
+        if (kindWithoutValue == MODDN)
+        {
+          changes.add(new HistoricalAttributeValue(attrDesc, csn, null, value, true));
+        }
+        else
+        {
+          changes.add(new HistoricalAttributeValue(attrDesc, csn, toKey(kindWithoutValue), value, false));
+        }
+      }
+      return changes;
+    }
+    catch (IndexOutOfBoundsException | IllegalStateException e)
+    {
+      throw new IllegalArgumentException("Truncated historical value " + encoded.toHexString(), e);
+    }
+  }
+
+  /**
+   * Encodes the changes of one attribute description in the binary format.
+   *
+   * @param attrDescription
+   *          the attribute description, as stored in the text format
+   * @param changes
+   *          the changes of the attribute description, in any order
+   * @return the value of the historical attribute in the binary format
+   */
+  static ByteString encode(String attrDescription, List<HistoricalAttributeValue> changes)
+  {
+    final List<HistoricalAttributeValue> sortedChanges = new ArrayList<>(changes);
+    Collections.sort(sortedChanges, ORDER);
+    final ByteString attrDescBytes = ByteString.valueOfUtf8(attrDescription);
+    final long oldestTime = sortedChanges.get(0).getCSN().getTime();
+    final long newestTime = sortedChanges.get(sortedChanges.size() - 1).getCSN().getTime();
+
+    final ByteStringBuilder builder = new ByteStringBuilder();
+    builder.appendByte(MARKER);
+    builder.appendByte(FORMAT_VERSION);
+    builder.appendCompactUnsigned(attrDescBytes.length());
+    builder.appendBytes(attrDescBytes);
+    builder.appendCompactUnsigned(sortedChanges.size());
+    builder.appendCompactUnsigned(newestTime - oldestTime);
+    long previousTime = 0;
+    for (HistoricalAttributeValue change : sortedChanges)
+    {
+      final CSN csn = change.getCSN();
+      final ByteString value = change.getAttributeValue();
+      builder.appendByte(getKind(change) | (value != null ? HAS_VALUE : 0));
+      builder.appendCompactUnsigned(csn.getTime() - previousTime);
+      builder.appendCompactUnsigned(csn.getSeqnum());
+      builder.appendCompactUnsigned(csn.getServerId());
+      if (value != null)
+      {
+        builder.appendCompactUnsigned(value.length());
+        builder.appendBytes(value);
+      }
+      previousTime = csn.getTime();
+    }
+    return builder.toByteString();
+  }
+
+  private static int getKind(HistoricalAttributeValue change)
+  {
+    if (change.isMODDNOperation())
+    {
+      return MODDN;
+    }
+    switch (change.getHistKey())
+    {
+    case ADD:
+      return 0;
+    case DEL:
+      return 1;
+    case REPL:
+      return 2;
+    case ATTRDEL:
+      return 3;
+    default:
+      throw new IllegalArgumentException("Unexpected historical change " + change);
+    }
+  }
+
+  private static HistAttrModificationKey toKey(int kind)
+  {
+    switch (kind)
+    {
+    case 0:
+      return ADD;
+    case 1:
+      return DEL;
+    case 2:
+      return REPL;
+    case 3:
+      return ATTRDEL;
+    default:
+      throw new IllegalArgumentException("Unexpected kind of historical change " + kind);
+    }
+  }
+
+  /**
+   * Returns the attribute description of the changes held by this value, as
+   * stored in the text format.
+   *
+   * @return the attribute description
+   */
+  String getAttributeDescription()
+  {
+    return attrDescription;
+  }
+
+  /**
+   * Returns the number of changes held by this value.
+   *
+   * @return the number of changes
+   */
+  int getNbChanges()
+  {
+    return nbChanges;
+  }
+
+  /**
+   * Returns the CSN of the oldest change held by this value.
+   *
+   * @return the CSN of the oldest change
+   */
+  CSN getOldestCSN()
+  {
+    return oldestCSN;
+  }
+
+  /**
+   * Returns the time of the newest change held by this value.
+   *
+   * @return the time of the newest change
+   */
+  long getNewestTime()
+  {
+    return newestTime;
+  }
+
+  /**
+   * Returns the encoded form of this value.
+   *
+   * @return the encoded form of this value
+   */
+  ByteString toByteString()
+  {
+    return encoded;
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "(" + attrDescription + ", " + nbChanges + " changes from " + oldestCSN + ")";
+  }
+}
@@ -20,6 +20,8 @@ import static org.forgerock.opendj.ldap.schema.CoreSchema.*;
 import static org.opends.messages.ReplicationMessages.*;
 import static org.opends.server.replication.plugin.HistAttrModificationKey.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -75,6 +77,8 @@ public class EntryHistorical
   public static final String HISTORICAL = "ds-synch-historical";
   /** Name of the entryuuid attribute. */
   public static final String ENTRYUUID_ATTRIBUTE_NAME = "entryuuid";
+  /** Attribute description storing the dates when the entry was added and last renamed. */
+  private static final String ENTRY_HISTORICAL_ATTRIBUTE_DESCRIPTION = "dn";
 
   /**
    * The delay to purge the historical information.
@@ -107,8 +111,26 @@ public class EntryHistorical
   /** The date when the entry was last renamed. */
   private CSN entryMODDNDate;
 
+  /**
+   * Whether the historical information is encoded in the compact binary format
+   * (one value per attribute description) rather than in the text format (one
+   * value per change).
+   */
+  private boolean compactEncoding;
+
+  /** The DN of the entry, only used for logging errors. */
+  private DN entryDN;
+
   /** Contains Historical information for each attribute description. */
   private final Map<AttributeDescription, AttrHistorical> attributesHistorical = new HashMap<>();
+  /**
+   * Contains the historical information read in the binary format and not
+   * decoded yet, for each attribute description. An attribute description is
+   * either in this map or in {@link #attributesHistorical}, never in both: the
+   * historical information is only decoded when the attribute is modified, or
+   * when it must be purged.
+   */
+  private final Map<AttributeDescription, BinaryHistoricalValue> encodedAttributesHistorical = new HashMap<>();
 
   @Override
   public String toString()
@@ -255,29 +277,50 @@ public class EntryHistorical
    *   required here or before(in the HandleConflictResolution phase)
    *
    * @param addOperation The Operation to which the historical attribute will be added.
+   * @param compactEncoding Whether the historical information is encoded in the
+   *          compact binary format.
    */
-  public static void setHistoricalAttrToOperation(PreOperationAddOperation addOperation)
+  public static void setHistoricalAttrToOperation(PreOperationAddOperation addOperation, boolean compactEncoding)
   {
     AttributeType attrType = DirectoryServer.getSchema().getAttributeType(HISTORICAL_ATTRIBUTE_NAME);
-    String attrValue = encodeHistorical(OperationContext.getCSN(addOperation), "add");
+    final HistoricalAttributeValue change = new HistoricalAttributeValue(
+        getEntryAttributeDescription(), OperationContext.getCSN(addOperation), ADD, null, false);
+    final ByteString attrValue = compactEncoding
+        ? BinaryHistoricalValue.encode(ENTRY_HISTORICAL_ATTRIBUTE_DESCRIPTION, Collections.singletonList(change))
+        : ByteString.valueOfUtf8(change.toString());
     List<Attribute> attrs = Attributes.createAsList(attrType, attrValue);
     addOperation.setAttribute(attrType, attrs);
   }
 
+  private static AttributeDescription getEntryAttributeDescription()
+  {
+    return AttributeDescription.valueOf(ENTRY_HISTORICAL_ATTRIBUTE_DESCRIPTION);
+  }
+
   /**
-   * Builds an attributeValue for the supplied historical information and
-   * operation type . For ADD Operation : "dn:changeNumber:add", for MODDN
-   * Operation : "dn:changeNumber:moddn", etc.
-   *
-   * @param csn
-   *          The date when the ADD Operation happened.
-   * @param operationType
-   *          the operation type to encode
-   * @return The attribute value containing the historical information for the Operation type.
+   * Adds to the historical attribute the values encoding the provided changes
+   * of one attribute description: a single value in the binary format, or one
+   * value per change in the text format, for example "dn:changeNumber:add" for
+   * an ADD Operation.
    */
-  private static String encodeHistorical(CSN csn, String operationType)
+  private static void addEncoded(AttributeBuilder builder, String attrDescription,
+      List<HistoricalAttributeValue> changes, boolean compactEncoding)
   {
-    return "dn:" + csn + ":" + operationType;
+    if (changes.isEmpty())
+    {
+      return;
+    }
+    if (compactEncoding)
+    {
+      builder.add(BinaryHistoricalValue.encode(attrDescription, changes));
+    }
+    else
+    {
+      for (HistoricalAttributeValue change : changes)
+      {
+        builder.add(change.toString());
+      }
+    }
   }
 
   /**
@@ -305,16 +348,47 @@ public class EntryHistorical
 
     // Read from this entryHistorical,
     // Create one empty if none was existing in this entryHistorical.
-    AttributeDescription attrDesc = modAttr.getAttributeDescription();
+    return getOrCreateAttrHistorical(modAttr.getAttributeDescription());
+  }
+
+  /**
+   * Returns the attribute historical of the provided attribute description,
+   * decoding it if it was read in the binary format, or creating it empty.
+   */
+  private AttrHistorical getOrCreateAttrHistorical(AttributeDescription attrDesc)
+  {
     AttrHistorical attrHist = attributesHistorical.get(attrDesc);
     if (attrHist == null)
     {
-      attrHist = AttrHistorical.createAttributeHistorical(modAttr.getAttributeDescription().getAttributeType());
+      attrHist = AttrHistorical.createAttributeHistorical(attrDesc.getAttributeType());
       attributesHistorical.put(attrDesc, attrHist);
+      final BinaryHistoricalValue encodedHist = encodedAttributesHistorical.remove(attrDesc);
+      if (encodedHist != null)
+      {
+        decode(attrHist, encodedHist);
+      }
     }
     return attrHist;
   }
 
+  private void decode(AttrHistorical attrHist, BinaryHistoricalValue encodedHist)
+  {
+    try
+    {
+      for (HistoricalAttributeValue histVal : encodedHist.decode())
+      {
+        attrHist.assign(histVal.getHistKey(), histVal.getAttributeValue(), histVal.getCSN());
+      }
+    }
+    catch (IllegalArgumentException e)
+    {
+      // The coding of the historical information was wrong:
+      // continue with the historical information decoded so far.
+      logger.traceException(e);
+      logger.error(ERR_BAD_HISTORICAL, entryDN);
+    }
+  }
+
   /**
    * For stats/monitoring purpose, returns the number of historical values
    * purged the last time a purge has been applied on this entry historical.
@@ -348,11 +422,39 @@ public class EntryHistorical
 
     AttributeBuilder builder = new AttributeBuilder(HISTORICAL_ATTRIBUTE_NAME);
 
+    // The historical information read in the binary format is kept as is,
+    // unless some of its changes must be purged or the format changed.
+    final List<AttributeDescription> toDecode = new ArrayList<>();
+    for (Iterator<BinaryHistoricalValue> it = encodedAttributesHistorical.values().iterator(); it.hasNext();)
+    {
+      final BinaryHistoricalValue encodedHist = it.next();
+      if (purgeDelayInMillisec > 0 && encodedHist.getNewestTime() <= purgeDate)
+      {
+        // all the changes are older than the purge delay
+        this.lastPurgedValuesCount += encodedHist.getNbChanges();
+        it.remove();
+      }
+      else if (compactEncoding
+          && (purgeDelayInMillisec <= 0 || encodedHist.getOldestCSN().getTime() > purgeDate))
+      {
+        builder.add(encodedHist.toByteString());
+      }
+      else
+      {
+        toDecode.add(AttributeDescription.valueOf(encodedHist.getAttributeDescription()));
+      }
+    }
+    for (AttributeDescription attrDesc : toDecode)
+    {
+      getOrCreateAttrHistorical(attrDesc);
+    }
+
+    final List<HistoricalAttributeValue> changes = new ArrayList<>();
     for (Map.Entry<AttributeDescription, AttrHistorical> mapEntry : attributesHistorical.entrySet())
     {
       AttributeDescription attrDesc = mapEntry.getKey();
-      String options = attrDesc.toString();
       AttrHistorical attrHist = mapEntry.getValue();
+      changes.clear();
 
       CSN deleteTime = attrHist.getDeleteTime();
       /* generate the historical information for deleted attributes */
@@ -370,8 +472,7 @@ public class EntryHistorical
             // this hist must be purged now, so skip its encoding
             continue;
           }
-          String strValue = encode(DEL, options, attrValHist.getValueDeleteTime(), value);
-          builder.add(strValue);
+          changes.add(new HistoricalAttributeValue(attrDesc, attrValHist.getValueDeleteTime(), DEL, value, false));
         }
         else if (attrValHist.getValueUpdateTime() != null)
         {
@@ -381,54 +482,45 @@ public class EntryHistorical
             continue;
           }
 
-          String strValue;
           final CSN updateTime = attrValHist.getValueUpdateTime();
           // FIXME very suspicious use of == in the next if statement,
           // unit tests do not like changing it
           if (attrDel && updateTime == deleteTime && value != null)
           {
-            strValue = encode(REPL, options, updateTime, value);
+            changes.add(new HistoricalAttributeValue(attrDesc, updateTime, REPL, value, false));
             attrDel = false;
           }
-          else if (value != null)
-          {
-            strValue = encode(ADD, options, updateTime, value);
-          }
           else
           {
             // "add" without any value is suspicious. Tests never go there.
             // Is this used to encode "add" with an empty string?
-            strValue = encode(ADD, options, updateTime);
+            changes.add(new HistoricalAttributeValue(attrDesc, updateTime, ADD, value, false));
           }
-
-          builder.add(strValue);
         }
       }
 
-      if (attrDel)
+      if (attrDel && !needsPurge(deleteTime, purgeDate))
       {
-        if (needsPurge(deleteTime, purgeDate))
-        {
-          // this hist must be purged now, so skip its encoding
-          continue;
-        }
-        builder.add(encode(ATTRDEL, options, deleteTime));
+        changes.add(new HistoricalAttributeValue(attrDesc, deleteTime, ATTRDEL, null, false));
       }
+      addEncoded(builder, attrDesc.toString(), changes, compactEncoding);
     }
 
+    changes.clear();
     if (entryADDDate != null && !needsPurge(entryADDDate, purgeDate))
     {
       // Encode the historical information for the ADD Operation.
       // Stores the ADDDate when not older than the purge delay
-      builder.add(encodeHistorical(entryADDDate, "add"));
+      changes.add(new HistoricalAttributeValue(getEntryAttributeDescription(), entryADDDate, ADD, null, false));
     }
 
     if (entryMODDNDate != null && !needsPurge(entryMODDNDate, purgeDate))
     {
       // Encode the historical information for the MODDN Operation.
       // Stores the MODDNDate when not older than the purge delay
-      builder.add(encodeHistorical(entryMODDNDate, "moddn"));
+      changes.add(new HistoricalAttributeValue(getEntryAttributeDescription(), entryMODDNDate, null, null, true));
     }
+    addEncoded(builder, ENTRY_HISTORICAL_ATTRIBUTE_DESCRIPTION, changes, compactEncoding);
 
     return builder.toAttribute();
   }
@@ -444,16 +536,6 @@ public class EntryHistorical
     return needsPurge;
   }
 
-  private String encode(HistAttrModificationKey modKey, String options, CSN changeTime)
-  {
-    return options + ":" + changeTime + ":" + modKey;
-  }
-
-  private String encode(HistAttrModificationKey modKey, String options, CSN changeTime, ByteString value)
-  {
-    return options + ":" + changeTime + ":" + modKey + ":" + value;
-  }
-
   /**
    * Set the delay to purge the historical information. The purge is applied
    * only when historical attribute is updated (write operations).
@@ -465,6 +547,21 @@ public class EntryHistorical
     this.purgeDelayInMillisec = purgeDelay;
   }
 
+  /**
+   * Set whether the historical information is encoded in the compact binary
+   * format rather than in the text format, the next time it is encoded. By
+   * default, the format of the historical information read from the entry is
+   * kept.
+   *
+   * @param compactEncoding
+   *          {@code true} for the binary format, {@code false} for the text
+   *          format
+   */
+  public void setCompactEncoding(boolean compactEncoding)
+  {
+    this.compactEncoding = compactEncoding;
+  }
+
   /**
    * Indicates if the Entry was renamed or added after the CSN that is given as
    * a parameter.
@@ -519,6 +616,7 @@ public class EntryHistorical
 
     // Now we'll build the Historical object we want to construct
     final EntryHistorical newHistorical = new EntryHistorical();
+    newHistorical.entryDN = entry.getName();
     if (histAttrWithOptionsFromEntry.isEmpty())
     {
       // No historical attribute in the entry, return empty object
@@ -537,50 +635,15 @@ public class EntryHistorical
         // For each Attribute (option), traverse the values
         for (ByteString histAttrValueFromEntry : histAttrFromEntry)
         {
-          // From each value of the hist attr, create an object
-          final HistoricalAttributeValue histVal = new HistoricalAttributeValue(histAttrValueFromEntry.toString());
-          final CSN csn = histVal.getCSN();
-
-          // update the oldest CSN stored in the new entry historical
-          newHistorical.updateOldestCSN(csn);
-
-          if (histVal.isADDOperation())
+          if (BinaryHistoricalValue.isBinary(histAttrValueFromEntry))
           {
-            newHistorical.entryADDDate = csn;
-          }
-          else if (histVal.isMODDNOperation())
-          {
-            newHistorical.entryMODDNDate = csn;
+            newHistorical.compactEncoding = true;
+            newHistorical.assign(entry, BinaryHistoricalValue.valueOf(histAttrValueFromEntry));
           }
           else
           {
-            AttributeDescription attrDesc = histVal.getAttributeDescription();
-            if (attrDesc == null)
-            {
-              /*
-               * This attribute is unknown from the schema
-               * Just skip it, the modification will be processed but no
-               * historical information is going to be kept.
-               * Log information for the repair tool.
-               */
-              logger.error(ERR_UNKNOWN_ATTRIBUTE_IN_HISTORICAL, entry.getName(), histVal.getAttrString());
-              continue;
-            }
-
-            /* if attribute type does not match we create new
-             *   AttrInfoWithOptions and AttrInfo
-             *   we also add old AttrInfoWithOptions into histObj.attributesInfo
-             * if attribute type match but options does not match we create new
-             *   AttrInfo that we add to AttrInfoWithOptions
-             * if both match we keep everything
-             */
-            AttrHistorical attrInfo = newHistorical.attributesHistorical.get(attrDesc);
-            if (attrInfo == null)
-            {
-              attrInfo = AttrHistorical.createAttributeHistorical(attrDesc.getAttributeType());
-              newHistorical.attributesHistorical.put(attrDesc, attrInfo);
-            }
-            attrInfo.assign(histVal.getHistKey(), histVal.getAttributeValue(), csn);
+            // From each value of the hist attr, create an object
+            newHistorical.assign(entry, new HistoricalAttributeValue(histAttrValueFromEntry.toString()));
           }
         }
       }
@@ -596,6 +659,80 @@ public class EntryHistorical
     return newHistorical;
   }
 
+  /**
+   * Assigns a value of the historical attribute read in the binary format. Only
+   * the dates of the entry are decoded: the historical information of the
+   * attributes is decoded on demand.
+   */
+  private void assign(Entry entry, BinaryHistoricalValue encodedHist)
+  {
+    // update the oldest CSN stored in the new entry historical
+    updateOldestCSN(encodedHist.getOldestCSN());
+
+    if (ENTRY_HISTORICAL_ATTRIBUTE_DESCRIPTION.equalsIgnoreCase(encodedHist.getAttributeDescription()))
+    {
+      for (HistoricalAttributeValue histVal : encodedHist.decode())
+      {
+        assign(entry, histVal);
+      }
+      return;
+    }
+
+    final AttributeDescription attrDesc = AttributeDescription.valueOf(encodedHist.getAttributeDescription());
+    final AttrHistorical attrInfo = attributesHistorical.get(attrDesc);
+    if (attrInfo != null)
+    {
+      // also read in the text format
+      decode(attrInfo, encodedHist);
+    }
+    else
+    {
+      encodedAttributesHistorical.put(attrDesc, encodedHist);
+    }
+  }
+
+  /** Assigns one change read from the historical attribute. */
+  private void assign(Entry entry, HistoricalAttributeValue histVal)
+  {
+    final CSN csn = histVal.getCSN();
+
+    // update the oldest CSN stored in the new entry historical
+    updateOldestCSN(csn);
+
+    if (histVal.isADDOperation())
+    {
+      entryADDDate = csn;
+    }
+    else if (histVal.isMODDNOperation())
+    {
+      entryMODDNDate = csn;
+    }
+    else
+    {
+      AttributeDescription attrDesc = histVal.getAttributeDescription();
+      if (attrDesc == null)
+      {
+        /*
+         * This attribute is unknown from the schema
+         * Just skip it, the modification will be processed but no
+         * historical information is going to be kept.
+         * Log information for the repair tool.
+         */
+        logger.error(ERR_UNKNOWN_ATTRIBUTE_IN_HISTORICAL, entry.getName(), histVal.getAttrString());
+        return;
+      }
+
+      /* if attribute type does not match we create new
+       *   AttrInfoWithOptions and AttrInfo
+       *   we also add old AttrInfoWithOptions into histObj.attributesInfo
+       * if attribute type match but options does not match we create new
+       *   AttrInfo that we add to AttrInfoWithOptions
+       * if both match we keep everything
+       */
+      getOrCreateAttrHistorical(attrDesc).assign(histVal.getHistKey(), histVal.getAttributeValue(), csn);
+    }
+  }
+
   /**
    * Use this historical information to generate fake operations that would
    * result in this historical information.
@@ -612,39 +749,41 @@ public class EntryHistorical
     {
       for (ByteString val : attr)
       {
-        HistoricalAttributeValue histVal = new HistoricalAttributeValue(val.toString());
-        if (histVal.isADDOperation())
-        {
-          // Found some historical information indicating that this entry was just added.
-          // Create the corresponding ADD operation.
-          operations.put(histVal.getCSN(), new FakeAddOperation(histVal.getCSN(), entry));
-        }
-        else if (histVal.isMODDNOperation())
+        for (HistoricalAttributeValue histVal : HistoricalAttributeValue.decode(val))
         {
-          // Found some historical information indicating that this entry was just renamed.
-          // Create the corresponding ADD operation.
-          operations.put(histVal.getCSN(), new FakeModdnOperation(histVal.getCSN(), entry));
-        }
-        else
-        {
-          // Found some historical information for modify operation.
-          // Generate the corresponding ModifyOperation or update
-          // the already generated Operation if it can be found.
-          CSN csn = histVal.getCSN();
-          Modification mod = histVal.generateMod();
-          FakeOperation fakeOperation = operations.get(csn);
-
-          if (fakeOperation instanceof FakeModifyOperation)
+          if (histVal.isADDOperation())
           {
-            FakeModifyOperation modifyFakeOperation = (FakeModifyOperation) fakeOperation;
-            modifyFakeOperation.addModification(mod);
+            // Found some historical information indicating that this entry was just added.
+            // Create the corresponding ADD operation.
+            operations.put(histVal.getCSN(), new FakeAddOperation(histVal.getCSN(), entry));
+          }
+          else if (histVal.isMODDNOperation())
+          {
+            // Found some historical information indicating that this entry was just renamed.
+            // Create the corresponding ADD operation.
+            operations.put(histVal.getCSN(), new FakeModdnOperation(histVal.getCSN(), entry));
           }
           else
           {
-            String uuidString = getEntryUUID(entry);
-            FakeModifyOperation modifyFakeOperation = new FakeModifyOperation(entry.getName(), csn, uuidString);
-            modifyFakeOperation.addModification(mod);
-            operations.put(histVal.getCSN(), modifyFakeOperation);
+            // Found some historical information for modify operation.
+            // Generate the corresponding ModifyOperation or update
+            // the already generated Operation if it can be found.
+            CSN csn = histVal.getCSN();
+            Modification mod = histVal.generateMod();
+            FakeOperation fakeOperation = operations.get(csn);
+
+            if (fakeOperation instanceof FakeModifyOperation)
+            {
+              FakeModifyOperation modifyFakeOperation = (FakeModifyOperation) fakeOperation;
+              modifyFakeOperation.addModification(mod);
+            }
+            else
+            {
+              String uuidString = getEntryUUID(entry);
+              FakeModifyOperation modifyFakeOperation = new FakeModifyOperation(entry.getName(), csn, uuidString);
+              modifyFakeOperation.addModification(mod);
+              operations.put(histVal.getCSN(), modifyFakeOperation);
+            }
           }
         }
       }
@@ -0,0 +1,254 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import static org.opends.server.replication.plugin.EntryHistorical.*;
+import static org.opends.server.util.StaticUtils.*;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.schema.AttributeType;
+import org.forgerock.opendj.ldap.schema.ObjectClass;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.protocols.internal.InternalSearchListener;
+import org.opends.server.protocols.internal.InternalSearchOperation;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.SearchResultEntry;
+import org.opends.server.types.SearchResultReference;
+
+/**
+ * Computes the checksums of the entries of a replication domain, grouped in
+ * ranges of DNs, so that two replicas can find the ranges holding entries that
+ * differ without transferring the entries.
+ * <p>
+ * The range of an entry only depends on its normalized DN. The checksum of an
+ * entry is computed from its normalized DN, its object classes and its real
+ * user and operational attributes, with their values sorted: two replicas
+ * holding the same entry compute the same checksum, and replicas differing only
+ * in replicated operational attributes such as the ACIs or the privileges
+ * compute different checksums. The historical information is left out, since
+ * its encoding and its purged values differ between replicas holding the same
+ * entry, as well as the replication state and configuration stored by each
+ * replica in the base entry. The checksum of a range is the sum of the
+ * checksums of its entries, like {@link GenerationIdChecksum}, so that it does
+ * not depend on the order in which the entries are read. However, each entry is
+ * digested rather than summed byte per byte, so that swapped values are
+ * detected.
+ */
+final class EntryRangeChecksums implements InternalSearchListener
+{
+  /** The attributes needed for computing the checksum of an entry. */
+  static final String[] CHECKSUM_ATTRIBUTES = { "*", "+" };
+  /** The operational attributes which are not replicated, or not in the same form by all the replicas. */
+  private static final String[] EXCLUDED_ATTRIBUTES = { HISTORICAL_ATTRIBUTE_NAME,
+    PersistentServerState.REPLICATION_STATE, LDAPReplicationDomain.REPLICATION_GENERATION_ID,
+    LDAPReplicationDomain.REPLICATION_FRACTIONAL_INCLUDE, LDAPReplicationDomain.REPLICATION_FRACTIONAL_EXCLUDE };
+
+  private static final String DIGEST_ALGORITHM = "SHA-1";
+
+  private final long[] checksums;
+  private final MessageDigest digest;
+  private final Set<AttributeType> excludedTypes = new HashSet<>();
+
+  /**
+   * Creates checksums of entries split into the provided number of ranges.
+   *
+   * @param nbRanges
+   *          the number of ranges
+   */
+  EntryRangeChecksums(int nbRanges)
+  {
+    this.checksums = new long[nbRanges];
+    try
+    {
+      this.digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+    }
+    catch (NoSuchAlgorithmException e)
+    {
+      // every Java platform supports SHA-1
+      throw new RuntimeException(e);
+    }
+    for (String attrName : EXCLUDED_ATTRIBUTES)
+    {
+      excludedTypes.add(DirectoryServer.getSchema().getAttributeType(attrName));
+    }
+  }
+
+  /**
+   * Returns the range of the entry with the provided DN.
+   *
+   * @param dn
+   *          the DN of the entry
+   * @param nbRanges
+   *          the number of ranges
+   * @return the range of the entry, between 0 and {@code nbRanges} excluded
+   */
+  static int getRange(DN dn, int nbRanges)
+  {
+    // FNV-1a hash, which does not depend on the Java platform
+    final ByteString normalizedDN = dn.toNormalizedByteString();
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < normalizedDN.length(); i++)
+    {
+      hash ^= normalizedDN.byteAt(i) & 0xff;
+      hash *= 0x01000193;
+    }
+    return (hash & Integer.MAX_VALUE) % nbRanges;
+  }
+
+  /**
+   * Adds an entry to the checksum of its range.
+   *
+   * @param entry
+   *          the entry, holding at least the attributes listed in
+   *          {@link #CHECKSUM_ATTRIBUTES}
+   */
+  void add(Entry entry)
+  {
+    final int range = getRange(entry.getName(), checksums.length);
+    checksums[range] += getChecksum(entry);
+  }
+
+  private long getChecksum(Entry entry)
+  {
+    digest.reset();
+    update(entry.getName().toNormalizedByteString());
+    final List<String> objectClassOIDs = new ArrayList<>();
+    for (ObjectClass objectClass : entry.getObjectClasses().keySet())
+    {
+      objectClassOIDs.add(objectClass.getOID());
+    }
+    Collections.sort(objectClassOIDs);
+    for (String oid : objectClassOIDs)
+    {
+      update(ByteString.valueOfUtf8(oid));
+    }
+    for (Attribute attr : getSortedAttributes(entry))
+    {
+      // the OID does not depend on the name used by the client which added the attribute
+      final StringBuilder attrDesc = new StringBuilder(attr.getAttributeDescription().getAttributeType().getOID());
+      final List<String> options = new ArrayList<>();
+      for (String option : attr.getAttributeDescription().getOptions())
+      {
+        options.add(toLowerCase(option));
+      }
+      Collections.sort(options);
+      for (String option : options)
+      {
+        attrDesc.append(';').append(option);
+      }
+      update(ByteString.valueOfUtf8(attrDesc.toString()));
+      update(getSortedValues(attr));
+    }
+    final byte[] bytes = digest.digest();
+    long checksum = 0;
+    for (int i = 0; i < 8; i++)
+    {
+      checksum = (checksum << 8) | (bytes[i] & 0xff);
+    }
+    return checksum;
+  }
+
+  private void update(ByteString value)
+  {
+    digest.update(value.toByteArray());
+    // separates the values, so that moving bytes between values is detected
+    digest.update((byte) 0);
+  }
+
+  private void update(List<ByteString> values)
+  {
+    for (ByteString value : values)
+    {
+      update(value);
+    }
+    // separates the attributes, so that moving values between attributes is detected
+    digest.update((byte) 1);
+  }
+
+  /**
+   * The attributes of an entry are not stored in the same order by all the
+   * replicas. The virtual attributes are computed by each replica.
+   */
+  private List<Attribute> getSortedAttributes(Entry entry)
+  {
+    final List<Attribute> attributes = new ArrayList<>();
+    for (Attribute attr : entry.getAttributes())
+    {
+      if (!attr.isVirtual() && !attr.isEmpty()
+          && !excludedTypes.contains(attr.getAttributeDescription().getAttributeType()))
+      {
+        attributes.add(attr);
+      }
+    }
+    Collections.sort(attributes, new Comparator<Attribute>()
+    {
+      @Override
+      public int compare(Attribute a1, Attribute a2)
+      {
+        return a1.getAttributeDescription().compareTo(a2.getAttributeDescription());
+      }
+    });
+    return attributes;
+  }
+
+  /** The values of an attribute are not stored in the same order by all the replicas. */
+  private static List<ByteString> getSortedValues(Attribute attr)
+  {
+    final List<ByteString> values = new ArrayList<>();
+    for (ByteString value : attr)
+    {
+      values.add(value);
+    }
+    Collections.sort(values);
+    return values;
+  }
+
+  /**
+   * Returns the checksum of each range.
+   *
+   * @return the checksum of each range
+   */
+  long[] getChecksums()
+  {
+    return checksums;
+  }
+
+  @Override
+  public void handleInternalSearchEntry(InternalSearchOperation searchOperation, SearchResultEntry searchEntry)
+      throws DirectoryException
+  {
+    add(searchEntry);
+  }
+
+  @Override
+  public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+      SearchResultReference searchReference) throws DirectoryException
+  {
+    // Nothing to do: the search uses the ManageDSAIT control
+  }
+}
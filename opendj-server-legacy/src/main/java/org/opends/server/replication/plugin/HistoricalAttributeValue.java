@@ -19,6 +19,9 @@ package org.opends.server.replication.plugin;
 import static org.opends.server.replication.plugin.HistAttrModificationKey.*;
 import static org.opends.server.util.StaticUtils.*;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.forgerock.opendj.ldap.AttributeDescription;
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ModificationType;
@@ -58,6 +61,10 @@ import org.opends.server.types.Modification;
  *  options are stored with the attribute names using; as a separator
  *  example :
  *  description;FR;France:00000108b3a65541000000000001:add:added_value
+ *
+ *  In the binary format, one value of the historical attribute holds all the
+ *  historical information of one attribute description: see
+ *  {@link BinaryHistoricalValue}.
  */
 class HistoricalAttributeValue
 {
@@ -116,6 +123,62 @@ class HistoricalAttributeValue
     }
   }
 
+  /**
+   * Create a new object from its decoded parts.
+   *
+   * @param attrDesc The attribute description, "dn" for the ADD and MODDN operations.
+   * @param csn The CSN of the change.
+   * @param histKey The type of change, null for the MODDN operation.
+   * @param attributeValue The value of the change, null if none.
+   * @param isModDN Whether this value stores the date when the entry was last renamed.
+   * @see BinaryHistoricalValue#decode() decoding in BinaryHistoricalValue
+   */
+  HistoricalAttributeValue(AttributeDescription attrDesc, CSN csn, HistAttrModificationKey histKey,
+      ByteString attributeValue, boolean isModDN)
+  {
+    this.attrDesc = attrDesc;
+    this.attrString = toLowerCase(attrDesc.getNameOrOID());
+    this.attrTypeIsNull = attrString.equalsIgnoreCase("dn");
+    this.isModDN = attrTypeIsNull && isModDN;
+    this.csn = csn;
+    this.histKey = histKey;
+    this.attributeValue = histKey != ATTRDEL ? attributeValue : null;
+    this.stringValue = this.attributeValue != null ? this.attributeValue.toString() : null;
+  }
+
+  /**
+   * Decodes a value of the historical attribute, in the text or in the binary
+   * format.
+   *
+   * @param value The value of the historical attribute.
+   * @return The historical information held by the value: a single one for the
+   *         text format.
+   */
+  static List<HistoricalAttributeValue> decode(ByteString value)
+  {
+    if (BinaryHistoricalValue.isBinary(value))
+    {
+      return BinaryHistoricalValue.valueOf(value).decode();
+    }
+    return Collections.singletonList(new HistoricalAttributeValue(value.toString()));
+  }
+
+  /**
+   * Decodes the CSNs of a value of the historical attribute, in the text or in
+   * the binary format, without decoding the changes.
+   *
+   * @param value The value of the historical attribute.
+   * @return The CSNs of the changes held by the value.
+   */
+  static List<CSN> decodeCSNs(ByteString value)
+  {
+    if (BinaryHistoricalValue.isBinary(value))
+    {
+      return BinaryHistoricalValue.decodeCSNs(value);
+    }
+    return Collections.singletonList(new HistoricalAttributeValue(value.toString()).getCSN());
+  }
+
   /**
    * Get the String form of the attribute type.
    *
@@ -19,6 +19,8 @@ package org.opends.server.replication.plugin;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import org.forgerock.opendj.ldap.Assertion;
 import org.forgerock.opendj.ldap.ByteSequence;
@@ -44,6 +46,8 @@ import static org.opends.server.util.StaticUtils.*;
 public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRuleImpl
 {
   private static final String ORDERING_ID = "changeSequenceNumberOrderingMatch";
+  /** Length of the normalized form of one CSN. */
+  private static final int KEY_LENGTH = 14;
 
   private final Collection<? extends Indexer> indexers = Collections.singleton(new HistoricalIndexer());
 
@@ -53,7 +57,15 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
     @Override
     public void createKeys(Schema schema, ByteSequence value, Collection<ByteString> keys) throws DecodeException
     {
-      keys.add(normalizeAttributeValue(schema, value));
+      if (BinaryHistoricalValue.isBinary(value))
+      {
+        // one key per change, so that the index finds the value from any of its CSNs
+        keys.addAll(normalizeBinaryValue(value));
+      }
+      else
+      {
+        keys.add(normalizeAttributeValue(schema, value));
+      }
     }
 
     @Override
@@ -74,10 +86,27 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
     }
   }
 
-  /** {@inheritDoc} */
+  /**
+   * {@inheritDoc}
+   * <p>
+   * A value in the binary format holds several CSNs: it is normalized to the
+   * concatenation of the normalized CSNs, sorted and without duplicates. Hence
+   * the first and last {@value #KEY_LENGTH} bytes are the lowest and greatest
+   * normalized CSNs, which is all the ordering assertions need.
+   */
   @Override
   public ByteString normalizeAttributeValue(Schema schema, ByteSequence value) throws DecodeException
   {
+    if (BinaryHistoricalValue.isBinary(value))
+    {
+      final ByteStringBuilder builder = new ByteStringBuilder();
+      for (ByteString key : normalizeBinaryValue(value))
+      {
+        builder.appendBytes(key);
+      }
+      return builder.toByteString();
+    }
+
     /*
      * Change the format of the value to index and start with the serverId. In
      * that manner, the search response time is optimized for a particular
@@ -101,6 +130,41 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
     }
   }
 
+  private static SortedSet<ByteString> normalizeBinaryValue(ByteSequence value) throws DecodeException
+  {
+    try
+    {
+      final SortedSet<ByteString> keys = new TreeSet<>();
+      for (CSN csn : BinaryHistoricalValue.decodeCSNs(value))
+      {
+        ByteStringBuilder builder = new ByteStringBuilder(KEY_LENGTH);
+        builder.appendShort(csn.getServerId());
+        builder.appendLong(csn.getTime());
+        builder.appendInt(csn.getSeqnum());
+        keys.add(builder.toByteString());
+      }
+      return keys;
+    }
+    catch (IllegalArgumentException e)
+    {
+      // This should never occur in practice since these attributes are managed
+      // internally.
+      throw DecodeException.error(WARN_INVALID_SYNC_HIST_VALUE.get(value), e);
+    }
+  }
+
+  /** Returns the lowest normalized CSN of a normalized value. */
+  private static ByteSequence lowestKey(ByteSequence normalizedValue)
+  {
+    return normalizedValue.subSequence(0, Math.min(KEY_LENGTH, normalizedValue.length()));
+  }
+
+  /** Returns the greatest normalized CSN of a normalized value. */
+  private static ByteSequence greatestKey(ByteSequence normalizedValue)
+  {
+    return normalizedValue.subSequence(Math.max(0, normalizedValue.length() - KEY_LENGTH), normalizedValue.length());
+  }
+
   /** {@inheritDoc} */
   @Override
   public Assertion getAssertion(final Schema schema, final ByteSequence value) throws DecodeException
@@ -111,7 +175,7 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
       @Override
       public ConditionResult matches(final ByteSequence attributeValue)
       {
-        return ConditionResult.valueOf(attributeValue.compareTo(normAssertion) < 0);
+        return ConditionResult.valueOf(lowestKey(attributeValue).compareTo(normAssertion) < 0);
       }
 
       @Override
@@ -140,7 +204,7 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
       @Override
       public ConditionResult matches(final ByteSequence normalizedAttributeValue)
       {
-        return ConditionResult.valueOf(normalizedAttributeValue.compareTo(normAssertion) >= 0);
+        return ConditionResult.valueOf(greatestKey(normalizedAttributeValue).compareTo(normAssertion) >= 0);
       }
 
       @Override
@@ -161,7 +225,7 @@ public final class HistoricalCsnOrderingMatchingRuleImpl implements MatchingRule
       @Override
       public ConditionResult matches(final ByteSequence normalizedAttributeValue)
       {
-        return ConditionResult.valueOf(normalizedAttributeValue.compareTo(normAssertion) <= 0);
+        return ConditionResult.valueOf(lowestKey(normalizedAttributeValue).compareTo(normAssertion) <= 0);
       }
 
       @Override
@@ -29,6 +29,7 @@ import static org.opends.server.util.ServerConstants.*;
 import static org.opends.server.util.StaticUtils.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
@@ -49,7 +50,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
-import java.util.concurrent.BlockingQueue;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -65,6 +66,7 @@ import org.forgerock.opendj.config.server.ConfigChangeResult;
 import org.forgerock.opendj.config.server.ConfigException;
 import org.forgerock.opendj.config.server.ConfigurationChangeListener;
 import org.forgerock.opendj.ldap.AVA;
+import org.forgerock.opendj.ldap.AttributeDescription;
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.opendj.ldap.DecodeException;
@@ -90,7 +92,9 @@ import org.opends.server.config.ConfigConstants;
 import org.opends.server.config.ConfigurationHandler;
 import org.opends.server.controls.PagedResultsControl;
 import org.opends.server.core.AddOperation;
+import org.opends.server.core.AddOperationBasis;
 import org.opends.server.core.DeleteOperation;
+import org.opends.server.core.DeleteOperationBasis;
 import org.opends.server.core.DirectoryServer;
 import org.opends.server.core.LockFileManager;
 import org.opends.server.core.ModifyDNOperation;
@@ -114,6 +118,7 @@ import org.opends.server.replication.protocol.AddContext;
 import org.opends.server.replication.protocol.AddMsg;
 import org.opends.server.replication.protocol.DeleteContext;
 import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.InitializeRequestMsg;
 import org.opends.server.replication.protocol.LDAPUpdateMsg;
 import org.opends.server.replication.protocol.ModifyContext;
 import org.opends.server.replication.protocol.ModifyDNMsg;
@@ -157,7 +162,9 @@ import org.opends.server.types.operation.PreOperationAddOperation;
 import org.opends.server.types.operation.PreOperationDeleteOperation;
 import org.opends.server.types.operation.PreOperationModifyDNOperation;
 import org.opends.server.types.operation.PreOperationModifyOperation;
+import org.opends.server.util.LDIFException;
 import org.opends.server.util.LDIFReader;
+import org.opends.server.util.LDIFWriter;
 import org.opends.server.util.TimeThread;
 import org.opends.server.workflowelement.localbackend.LocalBackendModifyOperation;
 
@@ -298,7 +305,7 @@ public final class LDAPReplicationDomain extends ReplicationDomain
    * The update to replay message queue where the listener thread is going to
    * push incoming update messages.
    */
-  private final BlockingQueue<UpdateToReplay> updateToReplayQueue;
+  private final ReplayScheduler replayScheduler;
   /** The number of naming conflicts successfully resolved. */
   private final AtomicInteger numResolvedNamingConflicts = new AtomicInteger();
   /** The number of modify conflicts successfully resolved. */
@@ -350,7 +357,7 @@ public final class LDAPReplicationDomain extends ReplicationDomain
   private final ServerStateFlush flushThread;
 
   /** The attribute name used to store the generation id in the backend. */
-  private static final String REPLICATION_GENERATION_ID = "ds-sync-generation-id";
+  static final String REPLICATION_GENERATION_ID = "ds-sync-generation-id";
   /** The attribute name used to store the fractional include configuration in the backend. */
   static final String REPLICATION_FRACTIONAL_INCLUDE = "ds-sync-fractional-include";
   /** The attribute name used to store the fractional exclude configuration in the backend. */
@@ -535,17 +542,17 @@ public final class LDAPReplicationDomain extends ReplicationDomain
    * Creates a new ReplicationDomain using configuration from configEntry.
    *
    * @param configuration    The configuration of this ReplicationDomain.
-   * @param updateToReplayQueue The queue for update messages to replay.
+   * @param replayScheduler  The scheduler of the update messages to replay.
    * @param dsrsShutdownSync Synchronization object for shutdown of combined DS/RS instances.
    * @throws ConfigException In case of invalid configuration.
    */
   LDAPReplicationDomain(ReplicationDomainCfg configuration,
-      BlockingQueue<UpdateToReplay> updateToReplayQueue,
+      ReplayScheduler replayScheduler,
       DSRSShutdownSync dsrsShutdownSync) throws ConfigException
   {
     super(configuration, -1);
 
-    this.updateToReplayQueue = updateToReplayQueue;
+    this.replayScheduler = replayScheduler;
     this.dsrsShutdownSync = dsrsShutdownSync;
 
     // Get assured configuration
@@ -1507,7 +1514,8 @@ public final class LDAPReplicationDomain extends ReplicationDomain
    */
   @Override
   protected void initializeRemote(int target, int requestorID,
-    Task initTask, int initWindow) throws DirectoryException
+    Task initTask, int initWindow, InitializeRequestMsg initReqMsg)
+    throws DirectoryException
   {
     if (target == RoutableMsg.ALL_SERVERS && fractionalConfig.isFractional())
     {
@@ -1515,7 +1523,7 @@ public final class LDAPReplicationDomain extends ReplicationDomain
       throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM, msg);
     }
 
-    super.initializeRemote(target, requestorID, initTask, initWindow);
+    super.initializeRemote(target, requestorID, initTask, initWindow, initReqMsg);
   }
 
   /**
@@ -2260,7 +2268,8 @@ public final class LDAPReplicationDomain extends ReplicationDomain
   }
 
   /**
-   * Marks the specified message as the one currently processed by a replay thread.
+   * Marks the specified message as in progress: it is taken into account when
+   * computing the dependencies of the messages received after it.
    * @param msg the message being processed
    */
   void markInProgress(LDAPUpdateMsg msg)
@@ -3368,6 +3377,35 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     exportBackend(output, false);
   }
 
+  @Override
+  protected int getExportPartitionCount()
+  {
+    final Backend<?> backend = getBackend();
+    if (backend == null || !backend.supports(BackendOperation.PARTITIONED_LDIF_EXPORT))
+    {
+      return 1;
+    }
+    return config.getInitializationPartitionCount();
+  }
+
+  @Override
+  protected long[] getExportPartitionBounds(int nbPartitions) throws DirectoryException
+  {
+    final Backend<?> backend = getBackend();
+    if (backend == null)
+    {
+      return super.getExportPartitionBounds(nbPartitions);
+    }
+    return backend.getLDIFExportPartitionBounds(getBaseDN(), nbPartitions);
+  }
+
+  @Override
+  protected void exportBackend(OutputStream output, long lowerBound, long upperBound)
+      throws DirectoryException
+  {
+    exportBackend(output, false, lowerBound, upperBound);
+  }
+
   /**
    * Export the entries from the backend and/or compute the generation ID.
    * The ieContext must have been set before calling.
@@ -3383,6 +3421,29 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
    */
   private long exportBackend(OutputStream output, boolean checksumOutput)
       throws DirectoryException
+  {
+    return exportBackend(output, checksumOutput, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Export the entries of one partition from the backend and/or compute the
+   * generation ID. The ieContext must have been set before calling.
+   *
+   * @param output              The OutputStream where the export should
+   *                            be produced.
+   * @param checksumOutput      A boolean indicating if this export is
+   *                            invoked to perform a checksum only
+   * @param lowerBound          The lower bound of the partition to export,
+   *                            0 to export all the entries
+   * @param upperBound          The upper bound of the partition to export,
+   *                            Long.MAX_VALUE to export all the entries
+   *
+   * @return The computed       GenerationID.
+   *
+   * @throws DirectoryException when an error occurred
+   */
+  private long exportBackend(OutputStream output, boolean checksumOutput,
+      long lowerBound, long upperBound) throws DirectoryException
   {
     Backend<?> backend = getBackend();
 
@@ -3433,6 +3494,10 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     // baseDN branch is the only one included in the export
     LDIFExportConfig exportConfig = new LDIFExportConfig(os);
     exportConfig.setIncludeBranches(newArrayList(getBaseDN()));
+    if (lowerBound != 0 || upperBound != Long.MAX_VALUE)
+    {
+      exportConfig.setPartitionBounds(lowerBound, upperBound);
+    }
 
     // For the checksum computing mode, only consider the 'stable' attributes
     if (checksumOutput)
@@ -3541,6 +3606,29 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
    */
   @Override
   protected void importBackend(InputStream input) throws DirectoryException
+  {
+    importBackend(new LDIFImportConfig(input));
+  }
+
+  /**
+   * This method triggers an import of the replicated data from the partitions
+   * received during a partitioned total update, all at once.
+   *
+   * @param ldifFiles            The LDIF files holding the partitions.
+   * @throws DirectoryException  When needed.
+   */
+  @Override
+  protected void importBackend(List<File> ldifFiles) throws DirectoryException
+  {
+    final List<String> ldifPaths = new ArrayList<>(ldifFiles.size());
+    for (File ldifFile : ldifFiles)
+    {
+      ldifPaths.add(ldifFile.getAbsolutePath());
+    }
+    importBackend(new LDIFImportConfig(ldifPaths));
+  }
+
+  private void importBackend(LDIFImportConfig ldifImportConfig) throws DirectoryException
   {
     Backend<?> backend = getBackend();
 
@@ -3555,7 +3643,7 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
         return;
       }
 
-      importConfig = new LDIFImportConfig(input);
+      importConfig = ldifImportConfig;
       importConfig.setIncludeBranches(newLinkedHashSet(getBaseDN()));
       importConfig.setSkipDNValidation(true);
       // We should not validate schema for replication
@@ -3624,6 +3712,251 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     }
   }
 
+  @Override
+  protected long[] computeRangeChecksums(int nbRanges) throws DirectoryException
+  {
+    if (fractionalConfig.isFractional())
+    {
+      // Fractional data are filtered by the import plugins, which are not
+      // invoked when updating entries online
+      return null;
+    }
+    final EntryRangeChecksums checksums = new EntryRangeChecksums(nbRanges);
+    searchAllEntries(checksums, EntryRangeChecksums.CHECKSUM_ATTRIBUTES);
+    return checksums.getChecksums();
+  }
+
+  @Override
+  protected void exportRanges(OutputStream output, final int nbRanges, final Set<Integer> ranges)
+      throws DirectoryException
+  {
+    final LDIFWriter writer;
+    try
+    {
+      writer = new LDIFWriter(new LDIFExportConfig(output));
+    }
+    catch (IOException e)
+    {
+      throw new DirectoryException(ResultCode.OTHER,
+          ERR_LDIFEXPORT_ERROR_DURING_EXPORT.get(stackTraceToSingleLineString(e)), e);
+    }
+    try
+    {
+      searchAllEntries(new InternalSearchListener()
+      {
+        @Override
+        public void handleInternalSearchEntry(InternalSearchOperation searchOperation,
+            SearchResultEntry searchEntry) throws DirectoryException
+        {
+          if (ranges.contains(EntryRangeChecksums.getRange(searchEntry.getName(), nbRanges)))
+          {
+            try
+            {
+              // virtual attributes are computed by the importer
+              writer.writeEntry(searchEntry.duplicate(false));
+            }
+            catch (IOException | LDIFException e)
+            {
+              throw new DirectoryException(ResultCode.OTHER,
+                  ERR_LDIFEXPORT_ERROR_DURING_EXPORT.get(stackTraceToSingleLineString(e)), e);
+            }
+          }
+        }
+
+        @Override
+        public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+            SearchResultReference searchReference) throws DirectoryException
+        {
+          // Nothing to do: the search uses the ManageDSAIT control
+        }
+      }, "*", "+");
+    }
+    finally
+    {
+      close(writer);
+    }
+  }
+
+  /**
+   * Replaces the entries of the provided ranges by the entries read from the
+   * provided input. The entries are added, modified and deleted online, as
+   * repair operations, so the backend stays available and the entries of the
+   * other ranges are kept.
+   */
+  @Override
+  protected void importRanges(InputStream input, final int nbRanges, final Set<Integer> ranges,
+      ServerState newState) throws DirectoryException
+  {
+    final ImportExportContext ieCtx = getImportExportContext();
+    final LDIFImportConfig importConfig = new LDIFImportConfig(input);
+    importConfig.setValidateSchema(false);
+    LDIFReader reader = null;
+    final Set<DN> receivedDNs = new HashSet<>();
+    int nbUpdated = 0;
+    try
+    {
+      reader = new LDIFReader(importConfig);
+      Entry entry;
+      while ((entry = reader.readEntry(false)) != null)
+      {
+        receivedDNs.add(entry.getName());
+        if (replaceEntry(entry))
+        {
+          nbUpdated++;
+        }
+      }
+
+      // The entries of these ranges that the exporter does not hold anymore
+      final Set<DN> dnsToDelete = new TreeSet<>(Collections.reverseOrder());
+      searchAllEntries(new InternalSearchListener()
+      {
+        @Override
+        public void handleInternalSearchEntry(InternalSearchOperation searchOperation,
+            SearchResultEntry searchEntry) throws DirectoryException
+        {
+          final DN dn = searchEntry.getName();
+          if (ranges.contains(EntryRangeChecksums.getRange(dn, nbRanges)) && !receivedDNs.contains(dn))
+          {
+            dnsToDelete.add(dn);
+          }
+        }
+
+        @Override
+        public void handleInternalSearchReference(InternalSearchOperation searchOperation,
+            SearchResultReference searchReference) throws DirectoryException
+        {
+          // Nothing to do: the search uses the ManageDSAIT control
+        }
+      }, "1.1");
+      // children are deleted before their parent
+      for (DN dn : dnsToDelete)
+      {
+        final DeleteOperation op = new DeleteOperationBasis(conn, nextOperationID(), nextMessageID(), null, dn);
+        runAsSynchronizedOperation(op);
+        if (op.getResultCode() != ResultCode.SUCCESS && op.getResultCode() != ResultCode.NO_SUCH_OBJECT)
+        {
+          throw new DirectoryException(op.getResultCode(),
+              ERR_INIT_DELTA_ENTRY_FAILURE.get(dn, op.getErrorMessage()));
+        }
+      }
+
+      // The updated entries now reflect the changes covered by the state of
+      // the exporter when the ranges were compared
+      state.clearInMemory();
+      for (CSN csn : newState)
+      {
+        state.update(csn);
+      }
+      state.save();
+      getGenerator().adjust(state.getMaxCSN(getServerId()));
+      logger.info(NOTE_FULL_UPDATE_DELTA_APPLIED, getBaseDN(), nbUpdated, dnsToDelete.size());
+    }
+    catch (DirectoryException e)
+    {
+      ieCtx.setExceptionIfNoneSet(e);
+    }
+    catch (Exception e)
+    {
+      ieCtx.setExceptionIfNoneSet(new DirectoryException(ResultCode.OTHER,
+          ERR_INIT_IMPORT_FAILURE.get(stackTraceToSingleLineString(e))));
+    }
+    finally
+    {
+      close(reader);
+      importConfig.close();
+    }
+
+    if (ieCtx.getException() != null)
+    {
+      throw ieCtx.getException();
+    }
+  }
+
+  /**
+   * Adds the provided entry, or replaces the attributes of the local entry
+   * with the same DN.
+   *
+   * @return whether the local entry was updated
+   */
+  private boolean replaceEntry(Entry entry) throws DirectoryException
+  {
+    final DN dn = entry.getName();
+    final SearchRequest request = newSearchRequest(dn, SearchScope.BASE_OBJECT)
+        .addAttribute("*", "+")
+        .addControl(new LDAPControl(OID_MANAGE_DSAIT_CONTROL));
+    final InternalSearchOperation search = conn.processSearch(request);
+    final Operation op;
+    if (search.getResultCode() == ResultCode.SUCCESS && !search.getSearchEntries().isEmpty())
+    {
+      final Entry localEntry = search.getSearchEntries().getFirst().duplicate(false);
+      final List<Modification> mods = getReplaceModifications(localEntry, entry);
+      if (mods.isEmpty())
+      {
+        return false;
+      }
+      op = new ModifyOperationBasis(conn, nextOperationID(), nextMessageID(), null, dn, mods);
+    }
+    else
+    {
+      op = new AddOperationBasis(conn, nextOperationID(), nextMessageID(), null, dn,
+          entry.getObjectClasses(), entry.getUserAttributes(), entry.getOperationalAttributes());
+    }
+    runAsSynchronizedOperation(op);
+    if (op.getResultCode() != ResultCode.SUCCESS)
+    {
+      throw new DirectoryException(op.getResultCode(), ERR_INIT_DELTA_ENTRY_FAILURE.get(dn, op.getErrorMessage()));
+    }
+    return true;
+  }
+
+  /** Returns the modifications replacing the attributes of the local entry by the ones of the received entry. */
+  private static List<Modification> getReplaceModifications(Entry localEntry, Entry receivedEntry)
+  {
+    final Map<AttributeDescription, Attribute> localAttrs = getAttributesByDescription(localEntry);
+    final Map<AttributeDescription, Attribute> receivedAttrs = getAttributesByDescription(receivedEntry);
+    final List<Modification> mods = new ArrayList<>();
+    for (Attribute attr : receivedAttrs.values())
+    {
+      if (!attr.equals(localAttrs.get(attr.getAttributeDescription())))
+      {
+        mods.add(new Modification(ModificationType.REPLACE, attr));
+      }
+    }
+    for (Map.Entry<AttributeDescription, Attribute> localAttr : localAttrs.entrySet())
+    {
+      if (!receivedAttrs.containsKey(localAttr.getKey()))
+      {
+        mods.add(new Modification(ModificationType.REPLACE, Attributes.empty(localAttr.getValue())));
+      }
+    }
+    return mods;
+  }
+
+  private static Map<AttributeDescription, Attribute> getAttributesByDescription(Entry entry)
+  {
+    final Map<AttributeDescription, Attribute> attrs = new HashMap<>();
+    for (Attribute attr : entry.getAttributes())
+    {
+      attrs.put(attr.getAttributeDescription(), attr);
+    }
+    attrs.put(entry.getObjectClassAttribute().getAttributeDescription(), entry.getObjectClassAttribute());
+    return attrs;
+  }
+
+  /** Searches all the entries of this domain, including the subentries and the referrals. */
+  private void searchAllEntries(InternalSearchListener listener, String... attributes) throws DirectoryException
+  {
+    final SearchRequest request =
+        newSearchRequest(getBaseDN(), SearchScope.WHOLE_SUBTREE, "(|(objectClass=*)(objectClass=ldapSubentry))")
+        .addAttribute(attributes)
+        .addControl(new LDAPControl(OID_MANAGE_DSAIT_CONTROL));
+    final InternalSearchOperation search = conn.processSearch(request, listener);
+    if (search.getResultCode() != ResultCode.SUCCESS)
+    {
+      throw new DirectoryException(search.getResultCode(), search.getErrorMessage().toMessage());
+    }
+  }
+
   /**
    * Make post import operations.
    * @param backend The backend implied in the import.
@@ -4266,15 +4599,22 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
         return true;
       }
 
-      // Put update message into the replay queue
-      // (block until some place in the queue is available)
+      /*
+       * Mark the update as in progress in reception order, before it is handed
+       * over to the replay threads: the updates received later depend on it
+       * whatever the order they are replayed in.
+       */
+      markInProgress(msg);
+
+      // Put update message into its replay lane
+      // (block until some place in the lane is available)
       final UpdateToReplay updateToReplay = new UpdateToReplay(msg, this);
       while (!isListenerShuttingDown())
       {
         // loop until we can offer to the queue or shutdown was initiated
         try
         {
-          if (updateToReplayQueue.offer(updateToReplay, 1, TimeUnit.SECONDS))
+          if (replayScheduler.offer(updateToReplay, 1, TimeUnit.SECONDS))
           {
             // successful offer to the queue, let's exit the loop
             break;
@@ -4305,6 +4645,7 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     attributes.add("remote-pending-changes-size", remotePendingChanges.getQueueSize());
     attributes.add("dependent-changes-size", remotePendingChanges.getDependentChangesSize());
     attributes.add("changes-in-progress-size", remotePendingChanges.changesInProgressSize());
+    replayScheduler.addMonitorData(attributes);
   }
 
   /**
@@ -4898,6 +5239,18 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
     return config.getConflictsHistoricalPurgeDelay() * 60 * 1000;
   }
 
+  /**
+   * Returns whether the historical information necessary to solve conflicts is
+   * stored in the compact binary format.
+   *
+   * @return {@code true} for the binary format, {@code false} for the text
+   *         format
+   */
+  boolean isHistoricalBinaryEncoding()
+  {
+    return config.isConflictsHistoricalBinaryEncoding();
+  }
+
   /**
    * Check and purge the historical attribute on all eligible entries under this domain.
    *
@@ -4978,6 +5331,7 @@ private boolean solveNamingConflict(ModifyDNOperation op, LDAPUpdateMsg msg)
 
         CSN latestOldCSN = entryHist.getOldestCSN();
         entryHist.setPurgeDelay(getHistoricalPurgeDelay());
+        entryHist.setCompactEncoding(isHistoricalBinaryEncoding());
         Attribute attr = entryHist.encodeAndPurge();
 
         if(entryHist.getLastPurgedValuesCount() > 0)
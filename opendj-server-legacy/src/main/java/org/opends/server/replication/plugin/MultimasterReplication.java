@@ -29,9 +29,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
@@ -96,8 +94,8 @@ public class MultimasterReplication
   private ReplicationServerListener replicationServerListener;
   private static final Map<DN, LDAPReplicationDomain> domains = new ConcurrentHashMap<>(4);
   private static final DSRSShutdownSync dsrsShutdownSync = new DSRSShutdownSync();
-  /** The queue of received update messages, to be treated by the ReplayThread threads. */
-  private static final BlockingQueue<UpdateToReplay> updateToReplayQueue = new LinkedBlockingQueue<>(10000);
+  /** Dispatches the received update messages to the ReplayThread threads. */
+  private static final ReplayScheduler replayScheduler = new ReplayScheduler();
   /** The list of ReplayThread threads. */
   private static final List<ReplayThread> replayThreads = new ArrayList<>();
   /** The configurable number of replay threads. */
@@ -190,7 +188,7 @@ public class MultimasterReplication
     try
     {
       final LDAPReplicationDomain domain = new LDAPReplicationDomain(
-          configuration, updateToReplayQueue, dsrsShutdownSync);
+          configuration, replayScheduler, dsrsShutdownSync);
       if (domains.isEmpty())
       {
         // Create the threads that will process incoming update messages
@@ -226,7 +224,7 @@ public class MultimasterReplication
       throws ConfigException
   {
     final LDAPReplicationDomain domain =
-        new LDAPReplicationDomain(configuration, queue, dsrsShutdownSync);
+        new LDAPReplicationDomain(configuration, new ReplayScheduler(queue), dsrsShutdownSync);
     domains.put(domain.getBaseDN(), domain);
     return domain;
   }
@@ -302,10 +300,9 @@ public class MultimasterReplication
   {
     replayThreads.clear();
 
-    ReentrantLock switchQueueLock = new ReentrantLock();
-    for (int i = 0; i < replayThreadNumber; i++)
+    for (ReplayScheduler.Lane lane : replayScheduler.setNumberOfLanes(replayThreadNumber))
     {
-      ReplayThread replayThread = new ReplayThread(updateToReplayQueue, switchQueueLock);
+      ReplayThread replayThread = new ReplayThread(lane);
       replayThread.start();
       replayThreads.add(replayThread);
     }
@@ -464,6 +461,7 @@ public class MultimasterReplication
           historicalInformation);
     }
     historicalInformation.setPurgeDelay(domain.getHistoricalPurgeDelay());
+    historicalInformation.setCompactEncoding(domain.isHistoricalBinaryEncoding());
     historicalInformation.setHistoricalAttrToOperation(modifyOperation);
 
     if (modifyOperation.getModifications().isEmpty())
@@ -513,6 +511,7 @@ public class MultimasterReplication
           historicalInformation);
     }
     historicalInformation.setPurgeDelay(domain.getHistoricalPurgeDelay());
+    historicalInformation.setCompactEncoding(domain.isHistoricalBinaryEncoding());
 
     // Add to the operation the historical attribute : "dn:changeNumber:moddn"
     historicalInformation.setHistoricalAttrToOperation(modifyDNOperation);
@@ -539,7 +538,7 @@ public class MultimasterReplication
     }
 
     // Add to the operation the historical attribute : "dn:changeNumber:add"
-    EntryHistorical.setHistoricalAttrToOperation(addOperation);
+    EntryHistorical.setHistoricalAttrToOperation(addOperation, domain.isHistoricalBinaryEncoding());
 
     return new SynchronizationProviderResult.ContinueProcessing();
   }
@@ -28,7 +28,8 @@ import org.opends.server.types.operation.PluginOperation;
 class PendingChange implements Comparable<PendingChange>
 {
   private final CSN csn;
-  private boolean committed;
+  /** Volatile because remote changes are committed without locking, see {@link RemotePendingChanges}. */
+  private volatile boolean committed;
   private UpdateMsg msg;
   private final PluginOperation op;
 
@@ -61,7 +61,7 @@ class PersistentServerState
    /**
     * The attribute name used to store the state in the backend.
     */
-   private static final String REPLICATION_STATE = "ds-sync-state";
+   static final String REPLICATION_STATE = "ds-sync-state";
 
   /**
    * Create a new PersistentServerState based on an already existing
@@ -346,14 +346,14 @@ class PersistentServerState
       {
         for (ByteString attrValue : resEntry.getAttribute(histType).get(0))
         {
-          HistoricalAttributeValue histVal =
-              new HistoricalAttributeValue(attrValue.toString());
-          CSN csn = histVal.getCSN();
-          if (csn != null
-              && csn.getServerId() == serverId
-              && dbMaxCSN.isOlderThan(csn))
+          for (CSN csn : HistoricalAttributeValue.decodeCSNs(attrValue))
           {
-            dbMaxCSN = csn;
+            if (csn != null
+                && csn.getServerId() == serverId
+                && dbMaxCSN.isOlderThan(csn))
+            {
+              dbMaxCSN = csn;
+            }
           }
         }
       }
@@ -17,16 +17,11 @@
 package org.opends.server.replication.plugin;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.SortedMap;
-import java.util.SortedSet;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-import net.jcip.annotations.GuardedBy;
 
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.core.AddOperation;
@@ -51,31 +46,29 @@ import org.opends.server.types.Operation;
  * the dependencies between operations.
  *
  * One of this object is instantiated for each ReplicationDomain.
+ * <p>
+ * This class does not use any lock, since it is called by all the replay
+ * threads for each update: the changes are kept in concurrent sorted
+ * collections and the ServerState is advanced by whichever thread finds
+ * committed changes at the head of the pending changes.
  */
 final class RemotePendingChanges
 {
   /** A map used to store the pending changes. */
-  @GuardedBy("pendingChangesLock")
-  private final SortedMap<CSN, PendingChange> pendingChanges = new TreeMap<>();
+  private final ConcurrentNavigableMap<CSN, PendingChange> pendingChanges = new ConcurrentSkipListMap<>();
 
   /**
    * A sorted set containing the list of PendingChanges that have
    * not been replayed correctly because they are dependent on
    * another change to be completed.
    */
-  @GuardedBy("dependentChangesLock")
-  private final SortedSet<PendingChange> dependentChanges = new TreeSet<>();
+  private final ConcurrentSkipListSet<PendingChange> dependentChanges = new ConcurrentSkipListSet<>();
   /**
    * {@code activeAndDependentChanges} also contains changes discovered to be dependent
    * on currently in progress changes.
    */
   private final ConcurrentSkipListSet<PendingChange> activeAndDependentChanges = new ConcurrentSkipListSet<>();
 
-  private final ReentrantReadWriteLock pendingChangesLock = new ReentrantReadWriteLock(true);
-  private final ReentrantReadWriteLock.ReadLock pendingChangesReadLock = pendingChangesLock.readLock();
-  private final ReentrantReadWriteLock.WriteLock pendingChangesWriteLock = pendingChangesLock.writeLock();
-  private final ReentrantLock dependentChangesLock = new ReentrantLock();
-
   /** The ServerState that will be updated when LDAPUpdateMsg are fully replayed. */
   private final ServerState state;
 
@@ -97,15 +90,7 @@ final class RemotePendingChanges
    */
   public int getQueueSize()
   {
-    pendingChangesReadLock.lock();
-    try
-    {
-      return pendingChanges.size();
-    }
-    finally
-    {
-      pendingChangesReadLock.unlock();
-    }
+    return pendingChanges.size();
   }
 
   /**
@@ -125,15 +110,7 @@ final class RemotePendingChanges
    */
   public int getDependentChangesSize()
   {
-    dependentChangesLock.lock();
-    try
-    {
-      return dependentChanges.size();
-    }
-    finally
-    {
-      dependentChangesLock.unlock();
-    }
+    return dependentChanges.size();
   }
 
   /**
@@ -147,16 +124,8 @@ final class RemotePendingChanges
    */
   public boolean putRemoteUpdate(LDAPUpdateMsg update)
   {
-    pendingChangesWriteLock.lock();
-    try
-    {
-      CSN csn = update.getCSN();
-      return pendingChanges.put(csn, new PendingChange(csn, null, update)) == null;
-    }
-    finally
-    {
-      pendingChangesWriteLock.unlock();
-    }
+    CSN csn = update.getCSN();
+    return pendingChanges.putIfAbsent(csn, new PendingChange(csn, null, update)) == null;
   }
 
   /**
@@ -167,48 +136,51 @@ final class RemotePendingChanges
    */
   public void commit(CSN csn)
   {
-    pendingChangesWriteLock.lock();
-    try
+    PendingChange curChange = pendingChanges.get(csn);
+    if (curChange == null)
+    {
+      throw new NoSuchElementException();
+    }
+    curChange.setCommitted(true);
+    activeAndDependentChanges.remove(curChange);
+
+    /*
+     * Remove the committed changes at the head of the pending changes.
+     * Concurrent committers may remove them in any order, which is fine since
+     * the ServerState ignores CSNs older than the ones it already contains.
+     * As the committed flag is volatile, either this thread sees an older
+     * change committed concurrently, or the committing thread sees this one.
+     */
+    Map.Entry<CSN, PendingChange> oldest;
+    while ((oldest = pendingChanges.firstEntry()) != null)
     {
-      PendingChange curChange = pendingChanges.get(csn);
-      if (curChange == null)
+      final PendingChange pendingChange = oldest.getValue();
+      if (!pendingChange.isCommitted())
       {
-        throw new NoSuchElementException();
+        break;
       }
-      curChange.setCommitted(true);
-      activeAndDependentChanges.remove(curChange);
-
-      final Iterator<PendingChange> it = pendingChanges.values().iterator();
-      while (it.hasNext())
+      if (pendingChanges.remove(oldest.getKey(), pendingChange)
+          && pendingChange.getMsg().contributesToDomainState())
       {
-        PendingChange pendingChange = it.next();
-        if (!pendingChange.isCommitted())
-        {
-          break;
-        }
-        if (pendingChange.getMsg().contributesToDomainState())
-        {
-          state.update(pendingChange.getCSN());
-        }
-        it.remove();
+        state.update(pendingChange.getCSN());
       }
     }
-    finally
-    {
-      pendingChangesWriteLock.unlock();
-    }
   }
 
+  /**
+   * Marks the provided update as in progress: the updates received later are
+   * checked for dependencies against it until it is committed. The updates
+   * must be marked in progress in the order they are received.
+   *
+   * @param msg
+   *          The update to mark in progress.
+   */
   public void markInProgress(LDAPUpdateMsg msg)
   {
-    pendingChangesReadLock.lock();
-    try
-    {
-      activeAndDependentChanges.add(pendingChanges.get(msg.getCSN()));
-    }
-    finally
+    final PendingChange change = pendingChanges.get(msg.getCSN());
+    if (change != null)
     {
-      pendingChangesReadLock.unlock();
+      activeAndDependentChanges.add(change);
     }
   }
   /**
@@ -218,26 +190,20 @@ final class RemotePendingChanges
    */
   public LDAPUpdateMsg getNextUpdate()
   {
-    pendingChangesReadLock.lock();
-    dependentChangesLock.lock();
-    try
+    final Iterator<PendingChange> it = dependentChanges.iterator();
+    if (it.hasNext())
     {
-      if (!dependentChanges.isEmpty())
+      final PendingChange firstDependentChange = it.next();
+      final Map.Entry<CSN, PendingChange> oldest = pendingChanges.firstEntry();
+      // only one of the concurrent callers gets to replay the change
+      if (oldest != null
+          && oldest.getKey().isNewerThanOrEqualTo(firstDependentChange.getCSN())
+          && dependentChanges.remove(firstDependentChange))
       {
-        PendingChange firstDependentChange = dependentChanges.first();
-        if (pendingChanges.firstKey().isNewerThanOrEqualTo(firstDependentChange.getCSN()))
-        {
-          dependentChanges.remove(firstDependentChange);
-          return firstDependentChange.getLDAPUpdateMsg();
-        }
+        return firstDependentChange.getLDAPUpdateMsg();
       }
-      return null;
-    }
-    finally
-    {
-      dependentChangesLock.unlock();
-      pendingChangesReadLock.unlock();
     }
+    return null;
   }
 
   /**
@@ -247,28 +213,12 @@ final class RemotePendingChanges
    */
   private void addDependency(PendingChange dependentChange)
   {
-    dependentChangesLock.lock();
-    try
-    {
-      dependentChanges.add(dependentChange);
-    }
-    finally
-    {
-      dependentChangesLock.unlock();
-    }
+    dependentChanges.add(dependentChange);
   }
 
   private PendingChange getPendingChange(CSN csn)
   {
-    pendingChangesReadLock.lock();
-    try
-    {
-      return pendingChanges.get(csn);
-    }
-    finally
-    {
-      pendingChangesReadLock.unlock();
-    }
+    return pendingChanges.get(csn);
   }
 
   /**
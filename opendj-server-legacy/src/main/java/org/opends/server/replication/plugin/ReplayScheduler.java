@@ -0,0 +1,234 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.opends.server.api.MonitorData;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+
+/**
+ * Dispatches the updates received by the replication domains to the replay
+ * threads.
+ * <p>
+ * The updates are partitioned into lanes, each lane being served by one replay
+ * thread. All the updates targeting the same entry (same entryUUID, or same DN
+ * when the entryUUID is unknown) go through the same lane, hence they are
+ * replayed one after the other in the order they were received. Updates
+ * targeting different entries are replayed in parallel, the dependencies
+ * between them (e.g. adding an entry below a parent being added) being
+ * resolved by {@link RemotePendingChanges}.
+ * <p>
+ * One scheduler is shared by all the replication domains.
+ */
+final class ReplayScheduler
+{
+  /** Number of updates that can be queued across all the lanes before blocking the domains listeners. */
+  private static final int TOTAL_LANE_CAPACITY = 10000;
+
+  /** A lane of updates, replayed in order by a single replay thread. */
+  static final class Lane
+  {
+    private final BlockingQueue<UpdateToReplay> queue;
+    private final AtomicLong nbReplayed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private volatile long maxLatencyNanos;
+
+    private Lane(BlockingQueue<UpdateToReplay> queue)
+    {
+      this.queue = queue;
+    }
+
+    /**
+     * Retrieves the next update to replay in this lane, waiting if necessary.
+     *
+     * @param timeout
+     *          how long to wait before giving up
+     * @param unit
+     *          the unit of the timeout
+     * @return the next update to replay, or {@code null} if the timeout elapsed
+     * @throws InterruptedException
+     *           if interrupted while waiting
+     */
+    UpdateToReplay poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+      return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Records that the provided update has been replayed.
+     *
+     * @param update
+     *          the replayed update
+     */
+    void replayed(UpdateToReplay update)
+    {
+      final long latency = System.nanoTime() - update.getReceptionTime();
+      nbReplayed.incrementAndGet();
+      totalLatencyNanos.addAndGet(latency);
+      if (latency > maxLatencyNanos)
+      {
+        // only the thread serving this lane writes it
+        maxLatencyNanos = latency;
+      }
+    }
+  }
+
+  /** Guards the lanes array against concurrent resizes: offers take the read lock. */
+  private final ReentrantReadWriteLock lanesLock = new ReentrantReadWriteLock();
+  private volatile Lane[] lanes;
+
+  /** Creates a scheduler with a single lane. Call {@link #setNumberOfLanes(int)} before use. */
+  ReplayScheduler()
+  {
+    this(new LinkedBlockingQueue<UpdateToReplay>(TOTAL_LANE_CAPACITY));
+  }
+
+  /**
+   * Creates a scheduler with a single lane backed by the provided queue. Only
+   * used by tests so far.
+   *
+   * @param queue
+   *          the queue of updates to replay
+   */
+  ReplayScheduler(BlockingQueue<UpdateToReplay> queue)
+  {
+    this.lanes = new Lane[] { new Lane(queue) };
+  }
+
+  /**
+   * Queues the provided update in its lane, waiting if necessary for space to
+   * become available.
+   *
+   * @param update
+   *          the update to replay
+   * @param timeout
+   *          how long to wait before giving up
+   * @param unit
+   *          the unit of the timeout
+   * @return {@code true} if successful, {@code false} if the timeout elapsed
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  boolean offer(UpdateToReplay update, long timeout, TimeUnit unit) throws InterruptedException
+  {
+    lanesLock.readLock().lock();
+    try
+    {
+      final Lane[] currentLanes = lanes;
+      final Lane lane = currentLanes[laneIndex(update.getUpdateMessage(), currentLanes.length)];
+      return lane.queue.offer(update, timeout, unit);
+    }
+    finally
+    {
+      lanesLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Changes the number of lanes. The updates already queued are moved to their
+   * new lane, keeping their relative order. This must only be called while no
+   * replay thread is running.
+   *
+   * @param nbLanes
+   *          the new number of lanes
+   * @return the new lanes, one replay thread must be started for each of them
+   */
+  Lane[] setNumberOfLanes(int nbLanes)
+  {
+    final int n = Math.max(1, nbLanes);
+    lanesLock.writeLock().lock();
+    try
+    {
+      final List<List<UpdateToReplay>> buckets = new ArrayList<>(n);
+      for (int i = 0; i < n; i++)
+      {
+        buckets.add(new ArrayList<UpdateToReplay>());
+      }
+      // the partitions are preserved when draining the lanes one after the other,
+      // so are the relative orders of the updates of each partition
+      for (Lane lane : lanes)
+      {
+        final List<UpdateToReplay> updates = new ArrayList<>();
+        lane.queue.drainTo(updates);
+        for (UpdateToReplay update : updates)
+        {
+          buckets.get(laneIndex(update.getUpdateMessage(), n)).add(update);
+        }
+      }
+
+      final Lane[] newLanes = new Lane[n];
+      for (int i = 0; i < n; i++)
+      {
+        final List<UpdateToReplay> bucket = buckets.get(i);
+        final BlockingQueue<UpdateToReplay> queue =
+            new LinkedBlockingQueue<>(Math.max(TOTAL_LANE_CAPACITY / n, Math.max(1, bucket.size())));
+        queue.addAll(bucket);
+        newLanes[i] = new Lane(queue);
+      }
+      lanes = newLanes;
+      return newLanes.clone();
+    }
+    finally
+    {
+      lanesLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the index of the lane the provided update must be replayed in.
+   *
+   * @param msg
+   *          the update
+   * @param nbLanes
+   *          the number of lanes
+   * @return the index of the lane for the update
+   */
+  static int laneIndex(LDAPUpdateMsg msg, int nbLanes)
+  {
+    final String entryUUID = msg.getEntryUUID();
+    final int hash = entryUUID != null ? entryUUID.hashCode() : msg.getDN().hashCode();
+    return (hash & Integer.MAX_VALUE) % nbLanes;
+  }
+
+  /**
+   * Adds the monitoring data of each lane to the provided monitor data.
+   *
+   * @param attributes
+   *          where to add the monitoring data
+   */
+  void addMonitorData(MonitorData attributes)
+  {
+    final Lane[] currentLanes = lanes;
+    for (int i = 0; i < currentLanes.length; i++)
+    {
+      final Lane lane = currentLanes[i];
+      final long nbReplayed = lane.nbReplayed.get();
+      final String prefix = "replay-lane-" + i + "-";
+      attributes.add(prefix + "pending-updates", lane.queue.size());
+      attributes.add(prefix + "replayed-updates", nbReplayed);
+      attributes.add(prefix + "average-latency-millis",
+          nbReplayed != 0 ? TimeUnit.NANOSECONDS.toMillis(lane.totalLatencyNanos.get() / nbReplayed) : 0);
+      attributes.add(prefix + "max-latency-millis", TimeUnit.NANOSECONDS.toMillis(lane.maxLatencyNanos));
+    }
+  }
+}
@@ -28,6 +28,7 @@ public class UpdateToReplay
 {
   private LDAPUpdateMsg updateMessage;
   private LDAPReplicationDomain replicationDomain;
+  private final long receptionTime = System.nanoTime();
 
   /**
    * Construct the object associating the update message with the replication
@@ -60,4 +61,13 @@ public class UpdateToReplay
   {
     return replicationDomain;
   }
+
+  /**
+   * Getter for the time this update was queued for replay.
+   * @return The reception time, as given by {@link System#nanoTime()}
+   */
+  long getReceptionTime()
+  {
+    return receptionTime;
+  }
 }
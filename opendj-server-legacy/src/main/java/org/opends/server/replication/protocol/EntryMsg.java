@@ -30,6 +30,10 @@ public class EntryMsg extends RoutableMsg
   private final byte[] entryByteArray;
   /** From V4. */
   private int msgId = -1;
+  /** From V10: the partition the entry bytes belong to, or -1 when the export is not partitioned. */
+  private int partition = -1;
+  /** From V10: whether this message ends the partition. */
+  private boolean endOfPartition;
 
   /**
    * Creates a new EntryMsg.
@@ -56,11 +60,33 @@ public class EntryMsg extends RoutableMsg
    */
   public EntryMsg(int serverID, int destination, byte[] entryBytes, int startPos,
       int length, int msgId)
+  {
+    this(serverID, destination, entryBytes, startPos, length, msgId, -1, false);
+  }
+
+  /**
+   * Creates a new EntryMsg carrying bytes of a partition of a partitioned
+   * export.
+   *
+   * @param serverID       The sender of this message.
+   * @param destination    The destination of this message.
+   * @param entryBytes     The bytes of the entry.
+   * @param startPos       The starting Position in the array.
+   * @param length         Number of array elements to be copied.
+   * @param msgId          Message counter.
+   * @param partition      The partition the bytes belong to, or -1 when the
+   *                       export is not partitioned.
+   * @param endOfPartition Whether this message ends the partition.
+   */
+  public EntryMsg(int serverID, int destination, byte[] entryBytes, int startPos,
+      int length, int msgId, int partition, boolean endOfPartition)
   {
     super(serverID, destination);
     this.entryByteArray = new byte[length];
     System.arraycopy(entryBytes, startPos, this.entryByteArray, 0, length);
     this.msgId = msgId;
+    this.partition = partition;
+    this.endOfPartition = endOfPartition;
   }
 
   /**
@@ -86,6 +112,11 @@ public class EntryMsg extends RoutableMsg
     {
       this.msgId = scanner.nextIntUTF8();
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      this.partition = scanner.nextIntUTF8();
+      this.endOfPartition = scanner.nextBoolean();
+    }
     this.entryByteArray = scanner.remainingBytesZeroTerminated();
   }
 
@@ -110,6 +141,11 @@ public class EntryMsg extends RoutableMsg
     {
       builder.appendIntUTF8(msgId);
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      builder.appendIntUTF8(partition);
+      builder.appendBoolean(endOfPartition);
+    }
     builder.appendZeroTerminatedByteArray(entryByteArray);
     return builder.toByteArray();
   }
@@ -123,6 +159,26 @@ public class EntryMsg extends RoutableMsg
     return this.msgId;
   }
 
+  /**
+   * Returns the partition the entry bytes belong to.
+   *
+   * @return the partition, or -1 when the export is not partitioned
+   */
+  public int getPartition()
+  {
+    return partition;
+  }
+
+  /**
+   * Returns whether this message ends its partition.
+   *
+   * @return {@code true} if no more bytes will be sent for the partition
+   */
+  public boolean isEndOfPartition()
+  {
+    return endOfPartition;
+  }
+
   /**
    * Set the msg id.
    * @param msgId The msg id.
@@ -16,6 +16,9 @@
  */
 package org.opends.server.replication.protocol;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.zip.DataFormatException;
 
 import org.forgerock.opendj.ldap.DN;
@@ -30,6 +33,12 @@ public class InitializeRequestMsg extends RoutableMsg
 {
   private final DN baseDN;
   private int initWindow;
+  /** From V10: bounds of the partitions of the interrupted export the requester resumes, empty if none. */
+  private long[] partitionBounds = new long[0];
+  /** From V10: partitions of the interrupted export already held by the requester. */
+  private Set<Integer> completedPartitions = Collections.emptySet();
+  /** From V11: checksums of the ranges of entries of the requester, empty when all the entries are requested. */
+  private long[] rangeChecksums = new long[0];
 
   /**
    * Creates a InitializeRequestMsg message.
@@ -71,6 +80,28 @@ public class InitializeRequestMsg extends RoutableMsg
     {
       initWindow = scanner.nextIntUTF8();
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      partitionBounds = new long[scanner.nextIntUTF8()];
+      for (int i = 0; i < partitionBounds.length; i++)
+      {
+        partitionBounds[i] = scanner.nextLong();
+      }
+      final int nbCompletedPartitions = scanner.nextIntUTF8();
+      completedPartitions = new TreeSet<>();
+      for (int i = 0; i < nbCompletedPartitions; i++)
+      {
+        completedPartitions.add(scanner.nextIntUTF8());
+      }
+    }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V11)
+    {
+      rangeChecksums = new long[scanner.nextIntUTF8()];
+      for (int i = 0; i < rangeChecksums.length; i++)
+      {
+        rangeChecksums[i] = scanner.nextLong();
+      }
+    }
   }
 
   /**
@@ -100,6 +131,27 @@ public class InitializeRequestMsg extends RoutableMsg
     {
       builder.appendIntUTF8(initWindow);
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      builder.appendIntUTF8(partitionBounds.length);
+      for (long bound : partitionBounds)
+      {
+        builder.appendLong(bound);
+      }
+      builder.appendIntUTF8(completedPartitions.size());
+      for (int partition : completedPartitions)
+      {
+        builder.appendIntUTF8(partition);
+      }
+    }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V11)
+    {
+      builder.appendIntUTF8(rangeChecksums.length);
+      for (long checksum : rangeChecksums)
+      {
+        builder.appendLong(checksum);
+      }
+    }
     return builder.toByteArray();
   }
 
@@ -111,7 +163,9 @@ public class InitializeRequestMsg extends RoutableMsg
   public String toString()
   {
     return "InitializeRequestMessage: baseDN=" + baseDN + " senderId="
-       + senderID + " destination=" + destination + " initWindow=" + initWindow;
+       + senderID + " destination=" + destination + " initWindow=" + initWindow
+       + " nbPartitions=" + getNbPartitions() + " completedPartitions=" + completedPartitions
+       + " nbRanges=" + rangeChecksums.length;
   }
 
   /**
@@ -131,4 +185,75 @@ public class InitializeRequestMsg extends RoutableMsg
   {
     this.initWindow = initWindow;
   }
+
+  /**
+   * Returns the number of partitions of the interrupted export resumed by the
+   * requester.
+   *
+   * @return the number of partitions, 0 if no export is resumed
+   */
+  public int getNbPartitions()
+  {
+    return partitionBounds.length > 0 ? partitionBounds.length - 1 : 0;
+  }
+
+  /**
+   * Returns the bounds of the partitions of the interrupted export resumed by
+   * the requester. The completed partitions can only be skipped by an export
+   * made of the same partitions.
+   *
+   * @return the bounds of the partitions, empty if no export is resumed
+   */
+  public long[] getPartitionBounds()
+  {
+    return partitionBounds;
+  }
+
+  /**
+   * Returns the partitions of the interrupted export already held by the
+   * requester, which do not need to be sent again.
+   *
+   * @return the completed partitions
+   */
+  public Set<Integer> getCompletedPartitions()
+  {
+    return completedPartitions;
+  }
+
+  /**
+   * Sets the partitions of an interrupted export already held by the
+   * requester.
+   *
+   * @param partitionBounds     the bounds of the partitions of the
+   *                            interrupted export
+   * @param completedPartitions the partitions already held by the requester
+   */
+  public void setCompletedPartitions(long[] partitionBounds, Set<Integer> completedPartitions)
+  {
+    this.partitionBounds = partitionBounds;
+    this.completedPartitions = completedPartitions;
+  }
+
+  /**
+   * Returns the checksums of the ranges of entries of the requester, which
+   * only wants the entries of the ranges that differ on the exporter.
+   *
+   * @return the checksums of the ranges, empty when all the entries are
+   *         requested
+   */
+  public long[] getRangeChecksums()
+  {
+    return rangeChecksums;
+  }
+
+  /**
+   * Sets the checksums of the ranges of entries of the requester, which only
+   * wants the entries of the ranges that differ on the exporter.
+   *
+   * @param rangeChecksums the checksums of the ranges of entries
+   */
+  public void setRangeChecksums(long[] rangeChecksums)
+  {
+    this.rangeChecksums = rangeChecksums;
+  }
 }
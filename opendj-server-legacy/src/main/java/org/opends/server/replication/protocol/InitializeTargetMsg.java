@@ -16,9 +16,13 @@
  */
 package org.opends.server.replication.protocol;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.zip.DataFormatException;
 
 import org.forgerock.opendj.ldap.DN;
+import org.opends.server.replication.common.ServerState;
 
 /**
  * This message is part of the replication protocol.
@@ -41,6 +45,18 @@ public class InitializeTargetMsg extends RoutableMsg
 
   private int initWindow;
 
+  /** From V10: bounds of the partitions sent in parallel, empty when the export is a single LDIF stream. */
+  private long[] partitionBounds = new long[0];
+  /** From V10: partitions already held by the importer, which are not sent again. */
+  private Set<Integer> skippedPartitions = Collections.emptySet();
+
+  /** From V11: number of ranges of entries compared for a delta update, 0 when all the entries are sent. */
+  private int nbRanges;
+  /** From V11: ranges of entries that differ, which are the only ones sent. */
+  private Set<Integer> deltaRanges = Collections.emptySet();
+  /** From V11: server state of the exporter when the ranges were compared. */
+  private ServerState deltaState;
+
   /**
    * Creates a InitializeTargetMsg.
    *
@@ -87,6 +103,34 @@ public class InitializeTargetMsg extends RoutableMsg
     {
       initWindow = scanner.nextIntUTF8();
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      partitionBounds = new long[scanner.nextIntUTF8()];
+      for (int i = 0; i < partitionBounds.length; i++)
+      {
+        partitionBounds[i] = scanner.nextLong();
+      }
+      final int nbSkippedPartitions = scanner.nextIntUTF8();
+      skippedPartitions = new TreeSet<>();
+      for (int i = 0; i < nbSkippedPartitions; i++)
+      {
+        skippedPartitions.add(scanner.nextIntUTF8());
+      }
+    }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V11)
+    {
+      nbRanges = scanner.nextIntUTF8();
+      if (nbRanges > 0)
+      {
+        final int nbDeltaRanges = scanner.nextIntUTF8();
+        deltaRanges = new TreeSet<>();
+        for (int i = 0; i < nbDeltaRanges; i++)
+        {
+          deltaRanges.add(scanner.nextIntUTF8());
+        }
+        deltaState = scanner.nextServerStateMustComeLast();
+      }
+    }
   }
 
   /**
@@ -130,6 +174,102 @@ public class InitializeTargetMsg extends RoutableMsg
     return this.initWindow;
   }
 
+  /**
+   * Returns the number of partitions sent in parallel.
+   *
+   * @return the number of partitions, 0 when the export is a single LDIF
+   *         stream
+   */
+  public int getNbPartitions()
+  {
+    return partitionBounds.length > 0 ? partitionBounds.length - 1 : 0;
+  }
+
+  /**
+   * Returns the bounds of the partitions sent in parallel. Partition
+   * {@code i} holds the entries between {@code bounds[i]} included and
+   * {@code bounds[i + 1]} excluded.
+   *
+   * @return the bounds of the partitions, empty when the export is a single
+   *         LDIF stream
+   */
+  public long[] getPartitionBounds()
+  {
+    return partitionBounds;
+  }
+
+  /**
+   * Returns the partitions already held by the importer, which are not sent
+   * again.
+   *
+   * @return the skipped partitions
+   */
+  public Set<Integer> getSkippedPartitions()
+  {
+    return skippedPartitions;
+  }
+
+  /**
+   * Sets the partitions of the export.
+   *
+   * @param partitionBounds   the bounds of the partitions sent in parallel,
+   *                          empty when the export is a single LDIF stream
+   * @param skippedPartitions the partitions already held by the importer
+   */
+  public void setPartitions(long[] partitionBounds, Set<Integer> skippedPartitions)
+  {
+    this.partitionBounds = partitionBounds;
+    this.skippedPartitions = skippedPartitions;
+  }
+
+  /**
+   * Returns the number of ranges of entries compared for a delta update.
+   *
+   * @return the number of ranges, 0 when all the entries are sent
+   */
+  public int getNbRanges()
+  {
+    return nbRanges;
+  }
+
+  /**
+   * Returns the ranges of entries that differ between the exporter and the
+   * importer, which are the only ones sent.
+   *
+   * @return the ranges of entries sent
+   */
+  public Set<Integer> getDeltaRanges()
+  {
+    return deltaRanges;
+  }
+
+  /**
+   * Returns the server state of the exporter when the ranges of entries were
+   * compared, which the importer takes once the ranges are updated.
+   *
+   * @return the server state of the exporter, null when all the entries are
+   *         sent
+   */
+  public ServerState getDeltaState()
+  {
+    return deltaState;
+  }
+
+  /**
+   * Specifies that only the ranges of entries that differ are sent.
+   *
+   * @param nbRanges    the number of ranges of entries compared
+   * @param deltaRanges the ranges of entries that differ
+   * @param deltaState  the server state of the exporter when the ranges were
+   *                    compared
+   */
+  public void setDeltaRanges(int nbRanges, Set<Integer> deltaRanges, ServerState deltaState)
+  {
+    this.nbRanges = nbRanges;
+    this.deltaRanges = deltaRanges;
+    this.deltaState = deltaState;
+  }
+
   // ============
   // Msg encoding
   // ============
@@ -149,6 +289,32 @@ public class InitializeTargetMsg extends RoutableMsg
     {
       builder.appendIntUTF8(initWindow);
     }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      builder.appendIntUTF8(partitionBounds.length);
+      for (long bound : partitionBounds)
+      {
+        builder.appendLong(bound);
+      }
+      builder.appendIntUTF8(skippedPartitions.size());
+      for (int partition : skippedPartitions)
+      {
+        builder.appendIntUTF8(partition);
+      }
+    }
+    if (version >= ProtocolVersion.REPLICATION_PROTOCOL_V11)
+    {
+      builder.appendIntUTF8(nbRanges);
+      if (nbRanges > 0)
+      {
+        builder.appendIntUTF8(deltaRanges.size());
+        for (int range : deltaRanges)
+        {
+          builder.appendIntUTF8(range);
+        }
+        builder.appendServerStateMustComeLast(deltaState);
+      }
+    }
     return builder.toByteArray();
   }
 
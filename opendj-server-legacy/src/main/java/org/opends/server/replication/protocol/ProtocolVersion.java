@@ -94,10 +94,38 @@ public class ProtocolVersion
    */
   public static final short REPLICATION_PROTOCOL_V8 = 8;
 
+  /**
+   * The constant for the 9th version of the replication protocol.
+   * <ul>
+   * <li>Optional compression of the messages sent on a session, flagged in the
+   * length header of each compressed message.</li>
+   * </ul>
+   */
+  public static final short REPLICATION_PROTOCOL_V9 = 9;
+
+  /**
+   * The constant for the 10th version of the replication protocol.
+   * <ul>
+   * <li>Partitioned total update: InitializeRequestMsg, InitializeTargetMsg and
+   * EntryMsg carry the partitions being transferred.</li>
+   * </ul>
+   */
+  public static final short REPLICATION_PROTOCOL_V10 = 10;
+
+  /**
+   * The constant for the 11th version of the replication protocol.
+   * <ul>
+   * <li>Delta total update: InitializeRequestMsg carries the checksums of the
+   * ranges of entries of the importer, InitializeTargetMsg the ranges that
+   * differ and the server state of the exporter.</li>
+   * </ul>
+   */
+  public static final short REPLICATION_PROTOCOL_V11 = 11;
+
   /**
    * The replication protocol version used by the instance of RS/DS in this VM.
    */
-  private static final short CURRENT_VERSION = REPLICATION_PROTOCOL_V8;
+  private static final short CURRENT_VERSION = REPLICATION_PROTOCOL_V11;
 
   /**
    * Gets the current version of the replication protocol.
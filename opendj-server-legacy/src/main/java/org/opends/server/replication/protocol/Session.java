@@ -21,6 +21,7 @@ import static org.opends.server.util.StaticUtils.*;
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -28,20 +29,40 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import javax.net.ssl.SSLSocket;
 
 import org.opends.server.api.DirectoryThread;
+import org.opends.server.api.MonitorData;
 import org.forgerock.i18n.slf4j.LocalizedLogger;
 import org.opends.server.util.StaticUtils;
 
 /**
  * This class defines a replication session using TLS.
+ * <p>
+ * Each message is sent as a frame made of its length, written as 8 hexadecimal
+ * digits, followed by its encoded form. Since
+ * {@link ProtocolVersion#REPLICATION_PROTOCOL_V9}, a server may compress the
+ * messages it sends: the frames carrying a compressed message have the
+ * highest bit of their length set, and contain the
+ * uncompressed length on 4 bytes followed by the output of a Deflate stream
+ * shared by all the compressed messages of the session, flushed after each
+ * message. Sharing the stream lets the attribute names and DNs repeated from
+ * one message to the next be compressed away.
  */
 public final class Session extends DirectoryThread implements Closeable
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** The bit set in the length header of the frames carrying a compressed message. */
+  private static final long COMPRESSED_FRAME = 0x80000000L;
+  /** Messages smaller than this are not worth compressing, e.g. heartbeats, acks or window messages. */
+  private static final int MIN_COMPRESSED_MESSAGE_SIZE = 128;
+  /** The size of the uncompressed length prefixing a compressed message. */
+  private static final int UNCOMPRESSED_LENGTH_SIZE = 4;
+
   private final Socket plainSocket;
   private final SSLSocket secureSocket;
   private final InputStream plainInput;
@@ -95,6 +116,27 @@ public final class Session extends DirectoryThread implements Closeable
    */
   private BufferedOutputStream output;
 
+  /**
+   * The compressor of the messages sent, or {@code null} if they are not
+   * compressed. Guarded by publishLock.
+   */
+  private Deflater deflater;
+  /** The buffer receiving the compressed messages. Guarded by publishLock. */
+  private byte[] compressionBuffer;
+  /**
+   * The decompressor of the messages received, lazily created on the first
+   * compressed message. Only used by the thread receiving the messages.
+   */
+  private Inflater inflater;
+  /** The total size of the messages sent compressed, before compression. */
+  private volatile long uncompressedBytesSent;
+  /** The total size of the messages sent compressed, after compression. */
+  private volatile long compressedBytesSent;
+  /** The total time spent compressing the messages sent, in nanoseconds. */
+  private volatile long compressionTimeNanos;
+  /** The total time spent decompressing the messages received, in nanoseconds. */
+  private volatile long decompressionTimeNanos;
+
   private final LinkedBlockingQueue<byte[]> sendQueue = new LinkedBlockingQueue<>(4000);
   private AtomicBoolean isRunning = new AtomicBoolean(false);
   private final CountDownLatch latch = new CountDownLatch(1);
@@ -202,6 +244,22 @@ public final class Session extends DirectoryThread implements Closeable
     }
 
     StaticUtils.close(plainSocket, secureSocket);
+
+    publishLock.lock();
+    try
+    {
+      if (deflater != null)
+      {
+        deflater.end();
+        deflater = null;
+      }
+      // The inflater may still be used by the receiving thread:
+      // leave it to the garbage collector.
+    }
+    finally
+    {
+      publishLock.unlock();
+    }
   }
 
 
@@ -347,9 +405,6 @@ public final class Session extends DirectoryThread implements Closeable
    */
   private void send(final byte[] buffer) throws IOException
   {
-    final String str = String.format("%08x", buffer.length);
-    final byte[] sendLengthBuf = str.getBytes();
-
     publishLock.lock();
     try
     {
@@ -357,8 +412,17 @@ public final class Session extends DirectoryThread implements Closeable
        * The buffered output stream ensures that the message is usually sent as
        * a single TCP packet.
        */
-      output.write(sendLengthBuf);
-      output.write(buffer);
+      if (deflater != null && buffer.length >= MIN_COMPRESSED_MESSAGE_SIZE)
+      {
+        final int length = compress(buffer);
+        output.write(String.format("%08x", length | COMPRESSED_FRAME).getBytes());
+        output.write(compressionBuffer, 0, length);
+      }
+      else
+      {
+        output.write(String.format("%08x", buffer.length).getBytes());
+        output.write(buffer);
+      }
       output.flush();
     } catch (final IOException e) {
       setSessionError(e);
@@ -402,12 +466,22 @@ public final class Session extends DirectoryThread implements Closeable
 
       // Read the first 8 bytes containing the packet length.
       read(rcvLengthBuf);
-      final int totalLength = Integer.parseInt(new String(rcvLengthBuf), 16);
+      final long header = Long.parseLong(new String(rcvLengthBuf), 16);
+      final boolean isCompressed = (header & COMPRESSED_FRAME) != 0;
+      if (isCompressed && protocolVersion < ProtocolVersion.REPLICATION_PROTOCOL_V9)
+      {
+        throw new DataFormatException("Compressed message received with protocol version " + protocolVersion);
+      }
+      final int totalLength = (int) (header & ~COMPRESSED_FRAME);
 
       try
       {
-        final byte[] buffer = new byte[totalLength];
+        byte[] buffer = new byte[totalLength];
         read(buffer);
+        if (isCompressed)
+        {
+          buffer = decompress(buffer);
+        }
 
         /*
          * We do not want the heartbeat to close the session when we are
@@ -429,6 +503,80 @@ public final class Session extends DirectoryThread implements Closeable
     }
   }
 
+  /**
+   * Compresses the provided message into the compression buffer, prefixed with
+   * its uncompressed length.
+   *
+   * @return the number of bytes written to the compression buffer
+   */
+  private int compress(final byte[] buffer)
+  {
+    final long startTime = System.nanoTime();
+    byte[] out = compressionBuffer;
+    out[0] = (byte) (buffer.length >>> 24);
+    out[1] = (byte) (buffer.length >>> 16);
+    out[2] = (byte) (buffer.length >>> 8);
+    out[3] = (byte) buffer.length;
+    int length = UNCOMPRESSED_LENGTH_SIZE;
+
+    deflater.setInput(buffer);
+    do
+    {
+      if (length == out.length)
+      {
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+      // Flush so that the peer can decompress the whole message on receipt,
+      // the deflater keeps its dictionary for the next messages.
+      length += deflater.deflate(out, length, out.length - length, Deflater.SYNC_FLUSH);
+    }
+    while (length == out.length);
+    compressionBuffer = out;
+
+    uncompressedBytesSent += buffer.length;
+    compressedBytesSent += length;
+    compressionTimeNanos += System.nanoTime() - startTime;
+    return length;
+  }
+
+  /** Decompresses the provided message, prefixed with its uncompressed length. */
+  private byte[] decompress(final byte[] frame) throws DataFormatException
+  {
+    final long startTime = System.nanoTime();
+    if (frame.length < UNCOMPRESSED_LENGTH_SIZE)
+    {
+      throw new DataFormatException("Compressed message is too short: " + frame.length + " bytes");
+    }
+    final int length = ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16)
+        | ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+    if (inflater == null)
+    {
+      inflater = new Inflater();
+    }
+
+    // One spare byte makes the inflater consume the whole frame, including the
+    // trailing flush marker, and detects messages longer than announced.
+    final byte[] buffer = new byte[length + 1];
+    int offset = 0;
+    inflater.setInput(frame, UNCOMPRESSED_LENGTH_SIZE, frame.length - UNCOMPRESSED_LENGTH_SIZE);
+    while (!inflater.needsInput() && offset < buffer.length)
+    {
+      final int read = inflater.inflate(buffer, offset, buffer.length - offset);
+      if (read == 0 && !inflater.needsInput())
+      {
+        throw new DataFormatException("Compressed message cannot be decompressed");
+      }
+      offset += read;
+    }
+    if (offset != length)
+    {
+      throw new DataFormatException("Compressed message has " + offset + " bytes instead of " + length);
+    }
+
+    decompressionTimeNanos += System.nanoTime() - startTime;
+    return Arrays.copyOf(buffer, length);
+  }
+
   private void read(byte[] buffer) throws IOException
   {
     final int totalLength = buffer.length;
@@ -469,6 +617,53 @@ public final class Session extends DirectoryThread implements Closeable
 
 
 
+  /**
+   * Starts compressing the messages sent on this session, if the remote server
+   * supports it. This method must be called after the start messages have been
+   * exchanged and the protocol version set, and before the session is used by
+   * other threads.
+   * <p>
+   * Compression is decided independently for each direction: the remote server
+   * decompresses the frames flagged as compressed whatever its own setting.
+   */
+  public void enableCompression()
+  {
+    if (protocolVersion >= ProtocolVersion.REPLICATION_PROTOCOL_V9 && deflater == null)
+    {
+      deflater = new Deflater(Deflater.BEST_SPEED);
+      compressionBuffer = new byte[8192];
+    }
+  }
+
+  /**
+   * Determine whether the messages sent on this session are compressed.
+   *
+   * @return true if the messages sent are compressed, false otherwise.
+   */
+  public boolean isCompressionEnabled()
+  {
+    return deflater != null;
+  }
+
+  /**
+   * Adds the compression statistics of this session to the provided monitor
+   * data: the ratio between the size of the messages sent before and after
+   * compression, and the time spent compressing and decompressing messages.
+   *
+   * @param attributes
+   *          The monitor data where to add the compression statistics.
+   */
+  public void addCompressionMonitorData(final MonitorData attributes)
+  {
+    attributes.add("compression", isCompressionEnabled());
+    final long compressed = compressedBytesSent;
+    if (compressed > 0)
+    {
+      attributes.add("compression-ratio", (double) uncompressedBytesSent / compressed);
+    }
+    attributes.add("compression-time-millis", (compressionTimeNanos + decompressionTimeNanos) / 1000000);
+  }
+
   /**
    * Set a timeout value.
    * With this option set to a non-zero value, calls to the receive() method
@@ -415,6 +415,10 @@ public class DataServerHandler extends ServerHandler
         {
           session.stopEncryption();
         }
+        if (replicationServer.isCompressionEnabled())
+        {
+          session.enableCompression();
+        }
 
         // wait and process StartSessionMsg from remote RS
         StartSessionMsg inStartSessionMsg =
@@ -18,6 +18,7 @@ package org.opends.server.replication.server;
 
 import static org.opends.messages.ReplicationMessages.*;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.forgerock.i18n.LocalizableMessage;
@@ -57,14 +58,23 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
 
   private static final int MINIMUM_TRESHOLD_MSG_QUEUE_SIZE = 5;
 
-  /** UpdateMsg queue. */
+  /**
+   * UpdateMsg queue. Producers add to it and the consumer removes from it
+   * without locking: only the transitions of {@link #following} are done while
+   * holding {@link #followingLock}.
+   */
   private final MsgQueue msgQueue = new MsgQueue();
   /**
    * Late queue. All access to the lateQueue in getNextMessage() is
-   * single-threaded. However, reads from threads calling getOlderUpdateCN()
-   * need protecting against removals performed using getNextMessage().
+   * single-threaded. Reads from threads calling getOlderUpdateCSN() are safe
+   * since MsgQueue is thread safe.
    */
   private final MsgQueue lateQueue = new MsgQueue();
+  /**
+   * Lock held while trimming the msgQueue and while the consumer catches up
+   * with it, so that the consumer never follows a trimmed msgQueue.
+   */
+  private final Object followingLock = new Object();
   /** Local hosting RS. */
   protected final ReplicationServer replicationServer;
   /** Specifies the related replication server domain based on baseDN. */
@@ -77,8 +87,12 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   protected final int maxQueueSize;
   /** Specifies the max queue size in bytes for this handler. */
   private final int maxQueueBytesSize;
-  /** Specifies whether the consumer is following the producer (is not late). */
-  private boolean following;
+  /**
+   * Specifies whether the consumer is following the producer (is not late).
+   * Only set to true by the consumer, and to false by the producers trimming
+   * the msgQueue, while holding {@link #followingLock}.
+   */
+  private volatile boolean following;
   /** Specifies the current serverState of this handler. */
   private ServerState serverState;
   /** Specifies the baseDN of the domain. */
@@ -88,7 +102,7 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    * If not active, the handler will not return any message.
    * Called at the beginning of shutdown process.
    */
-  private boolean activeConsumer = true;
+  private volatile boolean activeConsumer = true;
   /** Set when ServerHandler is stopping. */
   private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
 
@@ -114,24 +128,21 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   void add(UpdateMsg update)
   {
-    synchronized (msgQueue)
-    {
-      /*
-       * If queue was empty the writer thread was probably asleep
-       * waiting for some changes, wake it up
-       */
-      if (msgQueue.isEmpty())
-      {
-        msgQueue.notify();
-      }
-
-      msgQueue.add(update);
+    // wakes up the writer thread if it is asleep waiting for some changes
+    msgQueue.add(update);
 
-      // TODO : size should be configurable and larger than max-receive-queue-size
-      while (isMsgQueueAboveThreshold())
+    // TODO : size should be configurable and larger than max-receive-queue-size
+    if (isMsgQueueAboveThreshold())
+    {
+      // The consumer is too slow: it will read the trimmed changes from the changelog.
+      // Only the producers of a slow consumer contend here.
+      synchronized (followingLock)
       {
-        following = false;
-        msgQueue.removeFirst();
+        while (isMsgQueueAboveThreshold())
+        {
+          following = false;
+          msgQueue.removeFirst();
+        }
       }
     }
   }
@@ -263,7 +274,7 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
           {
             // we could not find any messages in the changelog
             // so the remote server is not late anymore.
-            synchronized (msgQueue)
+            synchronized (followingLock)
             {
               // Ensure we are below threshold so this server will follow the
               // msgQueue without fearing the msgQueue gets trimmed
@@ -281,7 +292,7 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
              * -> set following to true and empty the lateQueue.
              */
             UpdateMsg msg = lateQueue.first();
-            synchronized (msgQueue)
+            synchronized (followingLock)
             {
               if (msgQueue.contains(msg))
               {
@@ -300,11 +311,7 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
         else
         {
           // get the next change from the lateQueue
-          UpdateMsg msg;
-          synchronized (msgQueue) // TODO JNR why synchronize(msgQueue) here?
-          {
-            msg = lateQueue.removeFirst();
-          }
+          UpdateMsg msg = lateQueue.removeFirst();
           if (updateServerState(msg))
           {
             return msg;
@@ -313,34 +320,36 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
         }
       }
 
-      synchronized (msgQueue)
+      if (following)
       {
-        if (following)
+        try
         {
-          try
+          while (msgQueue.isEmpty() && following)
           {
-            while (msgQueue.isEmpty() && following)
+            msgQueue.awaitNotEmpty(500, TimeUnit.MILLISECONDS);
+            if (!activeConsumer)
             {
-              msgQueue.wait(500);
-              if (!activeConsumer)
-              {
-                return null;
-              }
+              return null;
             }
-          } catch (InterruptedException e)
-          {
-            return null;
-          }
-          UpdateMsg msg = msgQueue.removeFirst();
-          if (updateServerState(msg))
-          {
-            /*
-             * Only push the message if it has not yet been seen
-             * by the other server.
-             * Otherwise just loop to select the next message.
-             */
-            return msg;
           }
+        } catch (InterruptedException e)
+        {
+          return null;
+        }
+        UpdateMsg msg = msgQueue.removeFirst();
+        /*
+         * A producer may have trimmed the msgQueue before the message was
+         * removed: following is then false, and the message is read again
+         * from the changelog, after the trimmed ones.
+         */
+        if (msg != null && following && updateServerState(msg))
+        {
+          /*
+           * Only push the message if it has not yet been seen
+           * by the other server.
+           * Otherwise just loop to select the next message.
+           */
+          return msg;
         }
       }
       /*
@@ -379,35 +388,25 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   public CSN getOlderUpdateCSN()
   {
-    synchronized (msgQueue)
+    if (following)
     {
-      if (following)
-      {
-        if (!msgQueue.isEmpty())
-        {
-          return msgQueue.first().getCSN();
-        }
-      }
-      else
-      {
-        if (!lateQueue.isEmpty())
-        {
-          return lateQueue.first().getCSN();
-        }
-        else
-        {
-          /*
-          following is false AND lateQueue is empty
-          We may be at the very moment when the writer has emptied the
-          lateQueue when it sent the last update. The writer will fill again
-          the lateQueue when it will send the next update but we are not yet
-          there. So let's take the last change not sent directly from the db.
-          */
-          return findOldestCSNFromReplicaDBs();
-        }
-      }
+      final UpdateMsg first = msgQueue.first();
+      return first != null ? first.getCSN() : null;
     }
-    return null;
+
+    final UpdateMsg first = lateQueue.first();
+    if (first != null)
+    {
+      return first.getCSN();
+    }
+    /*
+    following is false AND lateQueue is empty
+    We may be at the very moment when the writer has emptied the
+    lateQueue when it sent the last update. The writer will fill again
+    the lateQueue when it will send the next update but we are not yet
+    there. So let's take the last change not sent directly from the db.
+    */
+    return findOldestCSNFromReplicaDBs();
   }
 
   private CSN findOldestCSNFromReplicaDBs()
@@ -445,27 +444,24 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
    */
   public int getRcvMsgQueueSize()
   {
-    synchronized (msgQueue)
+    /*
+     * When the server is up to date or close to be up to date,
+     * the number of updates to be sent is the size of the receive queue.
+     */
+    if (following)
     {
-      /*
-       * When the server is up to date or close to be up to date,
-       * the number of updates to be sent is the size of the receive queue.
-       */
-      if (following)
-      {
-        return msgQueue.count();
-      }
-
-      /*
-       * When the server is not able to follow, the msgQueue may become too
-       * large and therefore won't contain all the changes. Some changes may
-       * only be stored in the backing DB of the servers.
-       * The total size of the receive queue is calculated by doing the sum of
-       * the number of missing changes for every replicaDB.
-       */
-      ServerState latestState = replicationServerDomain.getLatestServerState();
-      return ServerState.diffChanges(latestState, serverState);
+      return msgQueue.count();
     }
+
+    /*
+     * When the server is not able to follow, the msgQueue may become too
+     * large and therefore won't contain all the changes. Some changes may
+     * only be stored in the backing DB of the servers.
+     * The total size of the receive queue is calculated by doing the sum of
+     * the number of missing changes for every replicaDB.
+     */
+    ServerState latestState = replicationServerDomain.getLatestServerState();
+    return ServerState.diffChanges(latestState, serverState);
   }
 
   /**
@@ -564,12 +560,8 @@ class MessageHandler extends MonitorProvider<MonitorProviderCfg>
   /** Shutdown this handler. */
   public void shutdown()
   {
-    synchronized (msgQueue)
-    {
-      msgQueue.clear();
-      msgQueue.notify();
-      msgQueue.notifyAll();
-    }
+    msgQueue.clear();
+    msgQueue.signalAll();
 
     DirectoryServer.deregisterMonitorProvider(this);
   }
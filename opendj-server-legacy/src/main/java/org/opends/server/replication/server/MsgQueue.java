@@ -18,7 +18,10 @@ package org.opends.server.replication.server;
 
 import static org.opends.messages.ReplicationMessages.*;
 
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.jcip.annotations.ThreadSafe;
 
@@ -29,36 +32,37 @@ import org.opends.server.replication.protocol.UpdateMsg;
 /**
  * This class is used to build ordered lists of UpdateMsg.
  * The order is defined by the order of the CSN of the UpdateMsg.
+ * <p>
+ * The queue is lock-free: producers adding messages never wait for the
+ * consumer, nor for one another. The number of messages and the number of
+ * bytes are maintained along, so that the owner of the queue can bound it
+ * without locking it. They are exact when the queue is not being modified.
  */
 @ThreadSafe
 public class MsgQueue
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
-  private TreeMap<CSN, UpdateMsg> map = new TreeMap<>();
-  /**
-   * FIXME JNR to be investigated:
-   * I strongly suspect that we could replace this field
-   * by using the synchronized keyword on each method.
-   * However, MessageHandler is weirdly synchronizing on msgQueue field
-   * even though it is touching the lateQueue field (?!?).
-   */
-  private final Object lock = new Object();
-
+  private final ConcurrentSkipListMap<CSN, UpdateMsg> map = new ConcurrentSkipListMap<>();
+  /** The number of messages in the queue. */
+  private final AtomicInteger count = new AtomicInteger();
   /** The total number of bytes for all the message in the queue. */
-  private int bytesCount;
+  private final AtomicInteger bytesCount = new AtomicInteger();
+
+  /** Monitor used by the consumer to wait for messages. */
+  private final Object notEmpty = new Object();
+  /** Whether a consumer is waiting on {@link #notEmpty}, so that producers only notify when needed. */
+  private volatile boolean consumerWaiting;
 
   /**
    * Return the first UpdateMsg in the MsgQueue.
    *
-   * @return The first UpdateMsg in the MsgQueue.
+   * @return The first UpdateMsg in the MsgQueue, or {@code null} if the queue is empty.
    */
   public UpdateMsg first()
   {
-    synchronized (lock)
-    {
-      return map.get(map.firstKey());
-    }
+    final Map.Entry<CSN, UpdateMsg> first = map.firstEntry();
+    return first != null ? first.getValue() : null;
   }
 
   /**
@@ -68,10 +72,7 @@ public class MsgQueue
    */
   public int count()
   {
-    synchronized (lock)
-    {
-      return map.size();
-    }
+    return count.get();
   }
 
   /**
@@ -81,10 +82,7 @@ public class MsgQueue
    */
   public int bytesCount()
   {
-    synchronized (lock)
-    {
-      return bytesCount;
-    }
+    return bytesCount.get();
   }
 
   /**
@@ -94,69 +92,112 @@ public class MsgQueue
    */
   public boolean isEmpty()
   {
-    synchronized (lock)
-    {
-      return map.isEmpty();
-    }
+    return map.isEmpty();
   }
 
   /**
-   * Add an UpdateMsg to this MessageQueue.
+   * Add an UpdateMsg to this MessageQueue, and wakes up the consumer waiting
+   * for messages, if any.
    *
    * @param update The UpdateMsg to add to this MessageQueue.
    */
   public void add(UpdateMsg update)
   {
-    synchronized (lock)
+    final UpdateMsg msgSameCSN = map.put(update.getCSN(), update);
+    if (msgSameCSN != null)
     {
-      final UpdateMsg msgSameCSN = map.put(update.getCSN(), update);
-      if (msgSameCSN != null)
+      try
       {
-        try
-        {
-          if (msgSameCSN.getBytes().length != update.getBytes().length
-              || msgSameCSN.isAssured() != update.isAssured()
-              || msgSameCSN.getVersion() != update.getVersion())
-          {
-            // Adding 2 msgs with the same CSN is ok only when the 2 msgs are the same
-            bytesCount += update.size() - msgSameCSN.size();
-            logger.error(ERR_RSQUEUE_DIFFERENT_MSGS_WITH_SAME_CSN, msgSameCSN.getCSN(), msgSameCSN, update);
-          }
-        }
-        catch (Exception e)
+        if (msgSameCSN.getBytes().length != update.getBytes().length
+            || msgSameCSN.isAssured() != update.isAssured()
+            || msgSameCSN.getVersion() != update.getVersion())
         {
-          logger.traceException(e);
+          // Adding 2 msgs with the same CSN is ok only when the 2 msgs are the same
+          bytesCount.addAndGet(update.size() - msgSameCSN.size());
+          logger.error(ERR_RSQUEUE_DIFFERENT_MSGS_WITH_SAME_CSN, msgSameCSN.getCSN(), msgSameCSN, update);
         }
       }
-      else
+      catch (Exception e)
       {
-        // it is really an ADD
-        bytesCount += update.size();
+        logger.traceException(e);
       }
     }
+    else
+    {
+      // it is really an ADD
+      count.incrementAndGet();
+      bytesCount.addAndGet(update.size());
+    }
+
+    if (consumerWaiting)
+    {
+      signalAll();
+    }
   }
 
   /**
    * Get and remove the first UpdateMsg in this MessageQueue.
    *
-   * @return The first UpdateMsg in this MessageQueue.
+   * @return The first UpdateMsg in this MessageQueue, or {@code null} if the queue is empty.
    */
   public UpdateMsg removeFirst()
   {
-    synchronized (lock)
+    final Map.Entry<CSN, UpdateMsg> first = map.pollFirstEntry();
+    if (first == null)
     {
-      // FIXME JNR replace next 2 lines with just that one:
-      // final UpdateMsg update = map.pollFirstEntry().getValue();
-      final UpdateMsg update = map.get(map.firstKey());
-      map.remove(update.getCSN());
-      bytesCount -= update.size();
-      if (map.isEmpty() && bytesCount != 0)
+      return null;
+    }
+    final UpdateMsg update = first.getValue();
+    count.decrementAndGet();
+    bytesCount.addAndGet(-update.size());
+    return update;
+  }
+
+  /**
+   * Waits until this queue is not empty, or the timeout elapses, or
+   * {@link #signalAll()} is called. Only the consumer of the queue waits:
+   * producers never do.
+   *
+   * @param timeout
+   *          the maximum time to wait
+   * @param unit
+   *          the unit of the timeout
+   * @return {@code true} if this queue is not empty
+   * @throws InterruptedException
+   *           If the current thread is interrupted while waiting
+   */
+  public boolean awaitNotEmpty(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    if (!map.isEmpty())
+    {
+      return true;
+    }
+    synchronized (notEmpty)
+    {
+      consumerWaiting = true;
+      try
+      {
+        // checked again after publishing consumerWaiting, so that a concurrent add() either
+        // is seen here or sees consumerWaiting and notifies
+        if (map.isEmpty())
+        {
+          unit.timedWait(notEmpty, timeout);
+        }
+      }
+      finally
       {
-        // should never happen
-        logger.error(ERR_BYTE_COUNT, bytesCount);
-        bytesCount = 0;
+        consumerWaiting = false;
       }
-      return update;
+    }
+    return !map.isEmpty();
+  }
+
+  /** Wakes up the consumer waiting for messages, if any. */
+  public void signalAll()
+  {
+    synchronized (notEmpty)
+    {
+      notEmpty.notifyAll();
     }
   }
 
@@ -171,19 +212,16 @@ public class MsgQueue
    */
   public boolean contains(UpdateMsg msg)
   {
-    synchronized (lock)
-    {
-      return map.containsKey(msg.getCSN());
-    }
+    return map.containsKey(msg.getCSN());
   }
 
   /** Removes all UpdateMsg form this queue. */
   public void clear()
   {
-    synchronized (lock)
+    // removes the messages one by one so that the counts stay consistent with concurrent adds
+    while (removeFirst() != null)
     {
-      map.clear();
-      bytesCount = 0;
+      // nothing more to do
     }
   }
 
@@ -197,21 +235,13 @@ public class MsgQueue
    */
   public void consumeUpTo(UpdateMsg finalMsg)
   {
-    // FIXME this code could be more efficient if the msgQueue could call the
-    // following code (to be tested):
-    // if (!map.containsKey(finalMsg.getCSN())) {
-    // map.clear();
-    // } else {
-    // map.headMap(finalMsg.getCSN(), true).clear();
-    // }
-
     final CSN finalCSN = finalMsg.getCSN();
     UpdateMsg msg;
     do
     {
       msg = removeFirst();
     }
-    while (!finalCSN.equals(msg.getCSN()));
+    while (msg != null && !finalCSN.equals(msg.getCSN()));
   }
 
   @Override
@@ -863,6 +863,13 @@ public class ReplicationServer
     {
       this.changelogDB.setPurgeDelay(getPurgeDelay());
     }
+    if (config.getChangelogCommitWindow() != oldConfig.getChangelogCommitWindow()
+        || config.getChangelogCommitBatchSize() != oldConfig.getChangelogCommitBatchSize()
+        || config.isChangelogSyncOnCommit() != oldConfig.isChangelogSyncOnCommit())
+    {
+      this.changelogDB.setGroupCommit(
+          getChangelogCommitWindow(), getChangelogCommitBatchSize(), isChangelogSyncOnCommit());
+    }
     final boolean computeCN = config.isComputeChangeNumber();
     if (computeCN != oldConfig.isComputeChangeNumber())
     {
@@ -1328,6 +1335,45 @@ public class ReplicationServer
     return dsrsShutdownSync;
   }
 
+  /**
+   * Returns whether this RS compresses the messages it sends to the servers
+   * supporting it.
+   * @return true if this RS compresses the messages it sends.
+   */
+  public boolean isCompressionEnabled()
+  {
+    return config.isCompressionEnabled();
+  }
+
+  /**
+   * Returns the maximum time during which the received updates are collected
+   * before being written to the changelog together.
+   * @return the changelog commit window in milliseconds.
+   */
+  public long getChangelogCommitWindow()
+  {
+    return config.getChangelogCommitWindow();
+  }
+
+  /**
+   * Returns the maximum number of updates written to the changelog together.
+   * @return the changelog commit batch size.
+   */
+  public int getChangelogCommitBatchSize()
+  {
+    return config.getChangelogCommitBatchSize();
+  }
+
+  /**
+   * Returns whether the changelog files are synchronized to disk after each
+   * batch of updates.
+   * @return true if the changelog files are synchronized after each batch.
+   */
+  public boolean isChangelogSyncOnCommit()
+  {
+    return config.isChangelogSyncOnCommit();
+  }
+
   /**
    * Returns whether change-log indexing is enabled for this RS.
    * @return true if change-log indexing is enabled for this RS.
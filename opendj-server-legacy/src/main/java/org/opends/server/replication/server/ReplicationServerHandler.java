@@ -208,6 +208,10 @@ public class ReplicationServerHandler extends ServerHandler
       {
         session.stopEncryption();
       }
+      if (replicationServer.isCompressionEnabled())
+      {
+        session.enableCompression();
+      }
 
       if (getProtocolVersion() > ProtocolVersion.REPLICATION_PROTOCOL_V1)
       {
@@ -310,6 +314,10 @@ public class ReplicationServerHandler extends ServerHandler
       {
         session.stopEncryption();
       }
+      if (replicationServer.isCompressionEnabled())
+      {
+        session.enableCompression();
+      }
 
       TopologyMsg inTopoMsg = null;
       if (getProtocolVersion() > ProtocolVersion.REPLICATION_PROTOCOL_V1)
@@ -45,6 +45,24 @@ public interface ChangelogDB
    */
   void setPurgeDelay(long delayInMillis);
 
+  /**
+   * Sets how the updates published to the replication database are grouped
+   * before being written. Can be called while the database is running.
+   * <p>
+   * The updates published concurrently are always written together. The
+   * commit window allows to wait for more updates before writing them.
+   *
+   * @param commitWindowInMillis
+   *          the maximum time to wait for more updates before writing them, in
+   *          milliseconds
+   * @param maxBatchSize
+   *          the maximum number of updates written together
+   * @param syncOnCommit
+   *          whether the updates written together are synchronized to the
+   *          file system before the publishers are released
+   */
+  void setGroupCommit(long commitWindowInMillis, int maxBatchSize, boolean syncOnCommit);
+
   /**
    * Sets whether the replication database must compute change numbers for
    * replicated changes. Change numbers are computed using a separate new
@@ -24,6 +24,7 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ByteStringBuilder;
@@ -44,6 +45,10 @@ import org.opends.server.util.StaticUtils;
  * <p>
  * The reader provides both sequential access, using the {@code readRecord()} method,
  * and reasonably fast random access, using the {@code seekToRecord(K, boolean)} method.
+ * <p>
+ * The reader either reads the log file through a {@code RandomAccessFile}, or from a
+ * buffer on which the log file is memory-mapped. The latter avoids a system call for
+ * each read, but is only suitable for log files which are not written anymore.
  *
  * @param <K>
  *          Type of the key of a record, which must be comparable.
@@ -69,8 +74,12 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
 
   private final RecordParser<K, V> parser;
 
+  /** The random access reader on the log file, or {@code null} if the log file is memory-mapped. */
   private final RandomAccessFile reader;
 
+  /** The buffer on which the log file is memory-mapped, or {@code null} if it is read with a random access reader. */
+  private final ByteBuffer mappedFile;
+
   private final File file;
 
   /**
@@ -91,7 +100,32 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   static <K extends Comparable<K>, V> BlockLogReader<K, V> newReader(
       final File file, final RandomAccessFile reader, final RecordParser<K, V> parser)
   {
-    return new BlockLogReader<>(file, reader, parser, BLOCK_SIZE);
+    return new BlockLogReader<>(file, reader, null, parser, BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a reader for the provided memory-mapped file and parser.
+   * <p>
+   * The reader owns the position of the provided buffer, hence the buffer must
+   * not be shared with other readers, but it may be a duplicate of a shared
+   * buffer.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param <V>
+   *          Type of the value of a record.
+   * @param file
+   *          The log file to read.
+   * @param mappedFile
+   *          The buffer on which the whole log file is memory-mapped.
+   * @param parser
+   *          The parser to decode the records read.
+   * @return a new log reader
+   */
+  static <K extends Comparable<K>, V> BlockLogReader<K, V> newMappedReader(
+      final File file, final ByteBuffer mappedFile, final RecordParser<K, V> parser)
+  {
+    return new BlockLogReader<>(file, null, mappedFile, parser, BLOCK_SIZE);
   }
 
   /**
@@ -117,14 +151,41 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   static <K extends Comparable<K>, V> BlockLogReader<K, V> newReaderForTests(
       final File file, final RandomAccessFile reader, final RecordParser<K, V> parser, int blockSize)
   {
-    return new BlockLogReader<>(file, reader, parser, blockSize);
+    return new BlockLogReader<>(file, reader, null, parser, blockSize);
+  }
+
+  /**
+   * Creates a reader for the provided memory-mapped file, parser and block size.
+   * <p>
+   * This method is intended for tests only, to allow tuning of the block size.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param <V>
+   *          Type of the value of a record.
+   * @param file
+   *          The log file to read.
+   * @param mappedFile
+   *          The buffer on which the whole log file is memory-mapped.
+   * @param parser
+   *          The parser to decode the records read.
+   * @param blockSize
+   *          The size of each block, or frequency at which the record offset is
+   *          present in the log file.
+   * @return a new log reader
+   */
+  static <K extends Comparable<K>, V> BlockLogReader<K, V> newMappedReaderForTests(
+      final File file, final ByteBuffer mappedFile, final RecordParser<K, V> parser, int blockSize)
+  {
+    return new BlockLogReader<>(file, null, mappedFile, parser, blockSize);
   }
 
-  private BlockLogReader(
-      final File file, final RandomAccessFile reader, final RecordParser<K, V> parser, final int blockSize)
+  private BlockLogReader(final File file, final RandomAccessFile reader, final ByteBuffer mappedFile,
+      final RecordParser<K, V> parser, final int blockSize)
   {
     this.file = file;
     this.reader = reader;
+    this.mappedFile = mappedFile;
     this.parser = parser;
     this.blockSize = blockSize;
   }
@@ -153,9 +214,39 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
       final KeyMatchingStrategy matchStrategy,
       final PositionStrategy positionStrategy)
           throws ChangelogException
+  {
+    return seekToRecord(key, matchStrategy, positionStrategy, null);
+  }
+
+  /**
+   * Position to provided key, starting from the beginning of the file, using
+   * the provided index, if any, to restrict the search to the blocks that can
+   * contain the key.
+   *
+   * @param key
+   *          Key to use as a start position. Key must not be {@code null}.
+   * @param matchStrategy
+   *          The key matching strategy.
+   * @param positionStrategy
+   *          The positioning strategy.
+   * @param index
+   *          The index of the log file, may be {@code null}.
+   * @return The pair (key_found, last_record_read), as for
+   *         {@link #seekToRecord(Comparable, KeyMatchingStrategy, PositionStrategy)}
+   * @throws ChangelogException
+   *           If an error occurs when seeking the key.
+   */
+  public Pair<Boolean, Record<K,V>> seekToRecord(
+      final K key,
+      final KeyMatchingStrategy matchStrategy,
+      final PositionStrategy positionStrategy,
+      final LogFileIndex<K> index)
+          throws ChangelogException
   {
     Reject.ifNull(key);
-    final long markerPosition = searchClosestBlockStartToKey(key);
+    final long markerPosition = index != null
+        ? searchClosestBlockStartToKey(key, index.getLowestBlockStartFor(key), index.getHighestBlockStartFor(key))
+        : searchClosestBlockStartToKey(key);
     if (markerPosition >= 0)
     {
       return positionToKey(markerPosition, key, matchStrategy, positionStrategy);
@@ -163,6 +254,31 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     return Pair.of(false, null);
   }
 
+  /**
+   * Reads the record found from the provided block start, i.e. the record
+   * crossing the block start or, if none, the record following it.
+   *
+   * @param blockStartPosition
+   *          Position of a block start in the file.
+   * @return the record, or {@code null} if the end of file is reached
+   * @throws ChangelogException
+   *           If an error occurs during read.
+   */
+  Record<K,V> readRecordFromBlockStart(final long blockStartPosition) throws ChangelogException
+  {
+    return readRecord(blockStartPosition);
+  }
+
+  /**
+   * Returns the size of the blocks of the log file.
+   *
+   * @return the size of blocks, in bytes
+   */
+  int getBlockSize()
+  {
+    return blockSize;
+  }
+
   /**
    * Position the reader to the provided file position.
    *
@@ -175,7 +291,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   {
     try
     {
-      reader.seek(filePosition);
+      seek(filePosition);
     }
     catch (IOException e)
     {
@@ -206,7 +322,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   {
     try
     {
-      return reader.getFilePointer();
+      return getFilePointer();
     }
     catch (IOException e)
     {
@@ -219,7 +335,84 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
   @Override
   public void close() throws IOException
   {
-    reader.close();
+    // A memory-mapped file is unmapped by the garbage collector once no
+    // reader references it anymore.
+    if (reader != null)
+    {
+      reader.close();
+    }
+  }
+
+  /** Moves the read position to the provided file position. */
+  private void seek(final long filePosition) throws IOException
+  {
+    if (mappedFile != null)
+    {
+      // As with a random access file, reads fail when positioned beyond the end of file
+      mappedFile.position((int) Math.min(filePosition, mappedFile.limit()));
+    }
+    else
+    {
+      reader.seek(filePosition);
+    }
+  }
+
+  /** Returns the current read position. */
+  private long getFilePointer() throws IOException
+  {
+    return mappedFile != null ? mappedFile.position() : reader.getFilePointer();
+  }
+
+  /** Returns the length of the log file. */
+  private long length() throws IOException
+  {
+    return mappedFile != null ? mappedFile.limit() : reader.length();
+  }
+
+  /** Reads a big-endian int from the current position. */
+  private int readInt() throws IOException
+  {
+    if (mappedFile != null)
+    {
+      checkAvailable(SIZE_OF_BLOCK_OFFSET);
+      return mappedFile.getInt();
+    }
+    return reader.readInt();
+  }
+
+  /** Skips the provided number of bytes, or up to the end of file. */
+  private void skipBytes(final int length) throws IOException
+  {
+    if (mappedFile != null)
+    {
+      mappedFile.position(Math.min(mappedFile.position() + length, mappedFile.limit()));
+    }
+    else
+    {
+      reader.skipBytes(length);
+    }
+  }
+
+  /** Appends the provided number of bytes read from the current position to the provided builder. */
+  private void readBytes(final ByteStringBuilder builder, final int length) throws IOException
+  {
+    if (mappedFile != null)
+    {
+      checkAvailable(length);
+      builder.appendBytes(mappedFile, length);
+    }
+    else
+    {
+      builder.appendBytes(reader, length);
+    }
+  }
+
+  private void checkAvailable(final int length) throws EOFException
+  {
+    if (mappedFile.remaining() < length)
+    {
+      throw new EOFException();
+    }
   }
 
   /**
@@ -246,7 +439,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     }
     catch (Exception io)
     {
-      throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_DECODE_RECORD.get(reader.toString()), io);
+      throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_DECODE_RECORD.get(file.getPath()), io);
     }
   }
 
@@ -262,15 +455,13 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
    */
   private void positionToRecordFromBlockStart(final long blockStartPosition) throws IOException
   {
-    reader.seek(blockStartPosition);
+    seek(blockStartPosition);
     if (blockStartPosition > 0)
     {
-      final byte[] offsetData = new byte[SIZE_OF_BLOCK_OFFSET];
-      reader.readFully(offsetData);
-      final int offsetToRecord = ByteString.wrap(offsetData).toInt();
+      final int offsetToRecord = readInt();
       if (offsetToRecord > 0)
       {
-        reader.seek(blockStartPosition - offsetToRecord);
+        seek(blockStartPosition - offsetToRecord);
       } // if offset is zero, reader is already well positioned
     }
   }
@@ -287,8 +478,8 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     try
     {
       // read length of record if not already at EOF
-      final long filePosition = reader.getFilePointer();
-      if (reader.length() == filePosition)
+      final long filePosition = getFilePointer();
+      if (length() == filePosition)
       {
         return null;
       }
@@ -296,7 +487,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
       final int recordLength = readRecordLength(distanceToBlockStart);
 
       // read the record
-      long currentPosition = reader.getFilePointer();
+      long currentPosition = getFilePointer();
       distanceToBlockStart = getDistanceToNextBlockStart(currentPosition, blockSize);
       final ByteStringBuilder recordBytes =
           new ByteStringBuilder(getLengthOfStoredRecord(recordLength, distanceToBlockStart));
@@ -305,10 +496,10 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
       {
         if (distanceToBlockStart != 0)
         {
-          recordBytes.appendBytes(reader, distanceToBlockStart);
+          readBytes(recordBytes, distanceToBlockStart);
         }
         // skip the offset
-        reader.skipBytes(SIZE_OF_BLOCK_OFFSET);
+        skipBytes(SIZE_OF_BLOCK_OFFSET);
 
         // next step
         currentPosition += distanceToBlockStart + SIZE_OF_BLOCK_OFFSET;
@@ -318,7 +509,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
       if (remainingBytesToRead > 0)
       {
         // last bytes of the record
-        recordBytes.appendBytes(reader, remainingBytesToRead);
+        readBytes(recordBytes, remainingBytesToRead);
       }
       return recordBytes.toByteString();
     }
@@ -357,19 +548,19 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     final ByteStringBuilder lengthBytes = new ByteStringBuilder(SIZE_OF_RECORD_SIZE);
     if (distanceToBlockStart > 0 && distanceToBlockStart < SIZE_OF_RECORD_SIZE)
     {
-      lengthBytes.appendBytes(reader, distanceToBlockStart);
+      readBytes(lengthBytes, distanceToBlockStart);
       // skip the offset
-      reader.skipBytes(SIZE_OF_BLOCK_OFFSET);
-      lengthBytes.appendBytes(reader, SIZE_OF_RECORD_SIZE - distanceToBlockStart);
+      skipBytes(SIZE_OF_BLOCK_OFFSET);
+      readBytes(lengthBytes, SIZE_OF_RECORD_SIZE - distanceToBlockStart);
     }
     else
     {
       if (distanceToBlockStart == 0)
       {
         // skip the offset
-        reader.skipBytes(SIZE_OF_BLOCK_OFFSET);
+        skipBytes(SIZE_OF_BLOCK_OFFSET);
       }
-      lengthBytes.appendBytes(reader, SIZE_OF_RECORD_SIZE);
+      readBytes(lengthBytes, SIZE_OF_RECORD_SIZE);
     }
     return lengthBytes.toByteString().toInt();
   }
@@ -387,10 +578,34 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
    *          if a problem occurs
    */
   long searchClosestBlockStartToKey(K key) throws ChangelogException
+  {
+    return searchClosestBlockStartToKey(key, 0L, -1L);
+  }
+
+  /**
+   * Search the closest block start to the provided key between the provided
+   * block starts, using binary search.
+   *
+   * @param key
+   *          The key to search
+   * @param lowestBlockStart
+   *          The lowest block start that can be returned.
+   * @param highestBlockStart
+   *          The highest block start that can be returned, or a negative
+   *          number to search up to the end of file.
+   * @return the file position of block start that must be used to find the given key,
+   *      or a negative number if no position could be found.
+   * @throws ChangelogException
+   *          if a problem occurs
+   */
+  private long searchClosestBlockStartToKey(K key, long lowestBlockStart, long highestBlockStart)
+      throws ChangelogException
   {
     final long maxPos = getFileLength() - 1;
-    long lowPos = 0L;
-    long highPos = getClosestBlockStartStrictlyAfterPosition(maxPos);
+    long lowPos = lowestBlockStart;
+    long highPos = highestBlockStart >= 0
+        ? Math.min(highestBlockStart, getClosestBlockStartStrictlyAfterPosition(maxPos))
+        : getClosestBlockStartStrictlyAfterPosition(maxPos);
 
     while (lowPos <= highPos)
     {
@@ -428,11 +643,18 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
     return -1;
   }
 
-  private long getFileLength() throws ChangelogException
+  /**
+   * Returns the length of the log file.
+   *
+   * @return the length of the log file, in bytes
+   * @throws ChangelogException
+   *           if the length cannot be retrieved
+   */
+  long getFileLength() throws ChangelogException
   {
     try
     {
-      return reader.length();
+      return length();
     }
     catch (IOException e)
     {
@@ -606,7 +828,7 @@ class BlockLogReader<K extends Comparable<K>, V> implements Closeable
      long lastValidPosition = lastBlockStart;
      for (ByteString recordData = readNextRecord(); recordData != null; recordData = readNextRecord()) {
        parser.decodeRecord(recordData);
-       lastValidPosition = reader.getFilePointer();
+       lastValidPosition = getFilePointer();
      }
 
      final boolean isFileValid = lastValidPosition == getFileLength();
@@ -21,6 +21,7 @@ import static org.opends.server.replication.server.changelog.file.BlockLogReader
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.SyncFailedException;
+import java.util.List;
 
 import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.ByteStringBuilder;
@@ -117,11 +118,38 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
    *            If a problem occurs during write.
    */
   public void write(final Record<K, V> record) throws ChangelogException
+  {
+    writeWithoutFlush(record);
+    flush(record);
+  }
+
+  /**
+   * Writes the provided records to the log file, flushing them to the file
+   * system only once.
+   *
+   * @param records
+   *            The records to write, in order.
+   * @throws ChangelogException
+   *            If a problem occurs during write.
+   */
+  public void writeAll(final List<Record<K, V>> records) throws ChangelogException
+  {
+    if (records.isEmpty())
+    {
+      return;
+    }
+    for (Record<K, V> record : records)
+    {
+      writeWithoutFlush(record);
+    }
+    flush(records.get(records.size() - 1));
+  }
+
+  private void writeWithoutFlush(final Record<K, V> record) throws ChangelogException
   {
     try
     {
       write(parser.encodeRecord(record));
-      writer.flush();
     }
     catch (Exception e)
     {
@@ -130,6 +158,19 @@ class BlockLogWriter<K extends Comparable<K>, V> implements Closeable
     }
   }
 
+  private void flush(final Record<K, V> lastRecord) throws ChangelogException
+  {
+    try
+    {
+      writer.flush();
+    }
+    catch (Exception e)
+    {
+      throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_ADD_RECORD.get(lastRecord.toString(),
+          writer.getFile().getPath()), e);
+    }
+  }
+
   /**
    * Returns the number of bytes written in the log file.
    *
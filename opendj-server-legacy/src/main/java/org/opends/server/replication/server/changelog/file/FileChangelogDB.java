@@ -42,6 +42,7 @@ import org.forgerock.util.Pair;
 import org.forgerock.util.time.TimeService;
 import org.opends.server.api.DirectoryThread;
 import org.opends.server.backends.ChangelogBackend;
+import org.opends.server.core.DirectoryServer;
 import org.opends.server.crypto.CryptoSuite;
 import org.opends.server.replication.common.CSN;
 import org.opends.server.replication.common.MultiDomainServerState;
@@ -118,6 +119,8 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
       new FileReplicaDBCursor(EMPTY_CURSOR, null, AFTER_MATCHING_KEY);
 
   private final CryptoSuite cryptoSuite;
+  /** Groups the updates published concurrently so they are written to the replica DBs together. */
+  private final GroupCommitter groupCommitter = new GroupCommitter();
   /**
    * Creates a new changelog DB.
    *
@@ -290,6 +293,10 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
         startIndexer();
       }
       setPurgeDelay(replicationServer.getPurgeDelay());
+      setGroupCommit(replicationServer.getChangelogCommitWindow(), replicationServer.getChangelogCommitBatchSize(),
+          replicationServer.isChangelogSyncOnCommit());
+      DirectoryServer.deregisterMonitorProvider(groupCommitter.getMonitorProvider());
+      DirectoryServer.registerMonitorProvider(groupCommitter.getMonitorProvider());
     }
     catch (ChangelogException e)
     {
@@ -334,6 +341,7 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
 
     shutdownCNIndexerAndPurger();
+    DirectoryServer.deregisterMonitorProvider(groupCommitter.getMonitorProvider());
 
     // Remember the first exception because :
     // - we want to try to remove everything we want to remove
@@ -579,6 +587,12 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     }
   }
 
+  @Override
+  public void setGroupCommit(final long commitWindowInMillis, final int maxBatchSize, final boolean syncOnCommit)
+  {
+    groupCommitter.setParameters(commitWindowInMillis, maxBatchSize, syncOnCommit);
+  }
+
   private void startCNPurger()
   {
     final ChangelogDBPurger newPurger = new ChangelogDBPurger();
@@ -808,7 +822,7 @@ public class FileChangelogDB implements ChangelogDB, ReplicationDomainDB
     final Pair<FileReplicaDB, Boolean> pair = getOrCreateReplicaDB(baseDN,
         csn.getServerId(), replicationServer);
     final FileReplicaDB replicaDB = pair.getFirst();
-    replicaDB.add(updateMsg);
+    groupCommitter.commit(replicaDB, updateMsg);
 
     ChangelogBackend.getInstance().notifyCookieEntryAdded(baseDN, updateMsg);
 
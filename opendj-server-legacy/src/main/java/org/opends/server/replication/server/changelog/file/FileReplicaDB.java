@@ -20,7 +20,9 @@ import static org.opends.server.replication.protocol.ProtocolVersion.REPLICATION
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.jcip.annotations.Immutable;
@@ -156,15 +158,61 @@ class FileReplicaDB
     }
 
     log.append(Record.from(updateMsg.getCSN(), updateMsg));
+    updateCSNLimits(updateMsg.getCSN(), updateMsg.getCSN());
+  }
 
+  /**
+   * Adds new messages, appending them to the log in one pass.
+   *
+   * @param updateMsgs
+   *          The update messages to add, in CSN order.
+   * @throws ChangelogException
+   *           If an error occurs when trying to add the messages.
+   */
+  void addAll(final List<UpdateMsg> updateMsgs) throws ChangelogException
+  {
+    if (updateMsgs.isEmpty())
+    {
+      return;
+    }
+    if (shutdown.get())
+    {
+      throw new ChangelogException(
+          ERR_COULD_NOT_ADD_CHANGE_TO_SHUTTING_DOWN_REPLICA_DB.get(updateMsgs.get(0)
+              .toString(), String.valueOf(baseDN), String.valueOf(serverId)));
+    }
+
+    final List<Record<CSN, UpdateMsg>> records = new ArrayList<>(updateMsgs.size());
+    for (UpdateMsg updateMsg : updateMsgs)
+    {
+      records.add(Record.from(updateMsg.getCSN(), updateMsg));
+    }
+    log.appendAll(records);
+    updateCSNLimits(updateMsgs.get(0).getCSN(), updateMsgs.get(updateMsgs.size() - 1).getCSN());
+  }
+
+  /**
+   * Synchronizes the messages added to this replicaDB with the file system,
+   * ensuring that they are effectively persisted.
+   *
+   * @throws ChangelogException
+   *           If the synchronization fails.
+   */
+  void syncToFileSystem() throws ChangelogException
+  {
+    log.syncToFileSystem();
+  }
+
+  private void updateCSNLimits(final CSN firstAddedCSN, final CSN lastAddedCSN)
+  {
     final CSNLimits limits = csnLimits;
-    final boolean updateNew = limits.newestCSN == null || limits.newestCSN.isOlderThan(updateMsg.getCSN());
+    final boolean updateNew = limits.newestCSN == null || limits.newestCSN.isOlderThan(lastAddedCSN);
     final boolean updateOld = limits.oldestCSN == null;
     if (updateOld || updateNew)
     {
       csnLimits = new CSNLimits(
-          updateOld ? updateMsg.getCSN() : limits.oldestCSN,
-          updateNew ? updateMsg.getCSN() : limits.newestCSN);
+          updateOld ? firstAddedCSN : limits.oldestCSN,
+          updateNew ? lastAddedCSN : limits.newestCSN);
     }
   }
 
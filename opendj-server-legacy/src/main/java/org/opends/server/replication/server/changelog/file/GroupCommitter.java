@@ -0,0 +1,349 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.jcip.annotations.GuardedBy;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.server.config.server.MonitorProviderCfg;
+import org.opends.server.api.MonitorData;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+import org.opends.server.types.InitializationException;
+
+/**
+ * Groups the updates published by the threads receiving them from the
+ * connected servers, so that they are written to the replica DBs in batches.
+ * <p>
+ * The first publishing thread finding no batch in progress becomes the leader:
+ * it optionally waits for the commit window to collect more updates, then
+ * writes all the queued updates, one pass and one flush per replica DB,
+ * followed by one synchronization to disk per replica DB if requested. The
+ * other publishing threads wait until their update has been written by the
+ * leader, and are then all released together, which lets them forward the
+ * updates and acknowledge the assured ones. Updates queued while a batch is
+ * being written make up the next batch.
+ */
+final class GroupCommitter
+{
+  /** An update waiting to be written. */
+  private static final class PendingUpdate
+  {
+    private final FileReplicaDB replicaDB;
+    private final UpdateMsg updateMsg;
+    @GuardedBy("lock")
+    private boolean committed;
+    @GuardedBy("lock")
+    private ChangelogException error;
+
+    private PendingUpdate(FileReplicaDB replicaDB, UpdateMsg updateMsg)
+    {
+      this.replicaDB = replicaDB;
+      this.updateMsg = updateMsg;
+    }
+  }
+
+  private final ReentrantLock lock = new ReentrantLock();
+  /** Signaled when a batch has been written. */
+  private final Condition batchCommitted = lock.newCondition();
+  /** Signaled when enough updates are queued to fill a batch. */
+  private final Condition batchFull = lock.newCondition();
+  @GuardedBy("lock")
+  private final Queue<PendingUpdate> pendingUpdates = new ArrayDeque<>();
+  @GuardedBy("lock")
+  private boolean batchInProgress;
+
+  private volatile long commitWindowInNanos;
+  private volatile int maxBatchSize = 1;
+  private volatile boolean syncOnCommit;
+
+  private final AtomicLong nbBatches = new AtomicLong();
+  private final AtomicLong nbUpdates = new AtomicLong();
+  private final AtomicLong totalCommitTimeInNanos = new AtomicLong();
+  private volatile int largestBatchSize;
+  private final GroupCommitMonitorProvider monitor = new GroupCommitMonitorProvider();
+
+  /**
+   * Sets how updates are grouped. Can be called while updates are published.
+   *
+   * @param commitWindowInMillis
+   *          the maximum time to wait for more updates before writing them, in
+   *          milliseconds
+   * @param maxBatchSize
+   *          the maximum number of updates written together
+   * @param syncOnCommit
+   *          whether the updates written together are synchronized to the file
+   *          system before the publishers are released
+   */
+  void setParameters(final long commitWindowInMillis, final int maxBatchSize, final boolean syncOnCommit)
+  {
+    this.commitWindowInNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, commitWindowInMillis));
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.syncOnCommit = syncOnCommit;
+  }
+
+  /**
+   * Returns the monitor provider publishing the group commit statistics.
+   *
+   * @return the monitor provider
+   */
+  MonitorProvider<MonitorProviderCfg> getMonitorProvider()
+  {
+    return monitor;
+  }
+
+  /**
+   * Writes the provided update to the provided replica DB, together with the
+   * updates published concurrently. Returns once the update has been written.
+   *
+   * @param replicaDB
+   *          the replica DB where to write the update
+   * @param updateMsg
+   *          the update to write
+   * @throws ChangelogException
+   *           If an error occurs when writing the update
+   */
+  void commit(final FileReplicaDB replicaDB, final UpdateMsg updateMsg) throws ChangelogException
+  {
+    final PendingUpdate update = new PendingUpdate(replicaDB, updateMsg);
+    lock.lock();
+    try
+    {
+      pendingUpdates.add(update);
+      if (pendingUpdates.size() >= maxBatchSize)
+      {
+        batchFull.signal();
+      }
+      while (batchInProgress && !update.committed)
+      {
+        batchCommitted.awaitUninterruptibly();
+      }
+      if (!update.committed)
+      {
+        batchInProgress = true;
+      }
+    }
+    finally
+    {
+      lock.unlock();
+    }
+
+    if (!isCommitted(update))
+    {
+      // this thread is the leader
+      try
+      {
+        do
+        {
+          commitBatch(nextBatch());
+        }
+        while (!isCommitted(update));
+      }
+      finally
+      {
+        lock.lock();
+        try
+        {
+          batchInProgress = false;
+          batchCommitted.signalAll();
+        }
+        finally
+        {
+          lock.unlock();
+        }
+      }
+    }
+    throwIfFailed(update);
+  }
+
+  private boolean isCommitted(final PendingUpdate update)
+  {
+    lock.lock();
+    try
+    {
+      return update.committed;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  private void throwIfFailed(final PendingUpdate update) throws ChangelogException
+  {
+    final ChangelogException error;
+    lock.lock();
+    try
+    {
+      error = update.error;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+    if (error != null)
+    {
+      throw error;
+    }
+  }
+
+  /** Takes the next batch of updates, after waiting for the commit window if any. */
+  private List<PendingUpdate> nextBatch()
+  {
+    lock.lock();
+    try
+    {
+      long remainingNanos = commitWindowInNanos;
+      while (remainingNanos > 0 && pendingUpdates.size() < maxBatchSize)
+      {
+        try
+        {
+          remainingNanos = batchFull.awaitNanos(remainingNanos);
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+
+      final int batchSize = Math.min(pendingUpdates.size(), maxBatchSize);
+      final List<PendingUpdate> batch = new ArrayList<>(batchSize);
+      for (int i = 0; i < batchSize; i++)
+      {
+        batch.add(pendingUpdates.remove());
+      }
+      return batch;
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Writes the batch to the replica DBs, then releases the threads waiting for it. */
+  private void commitBatch(final List<PendingUpdate> batch)
+  {
+    final long startTime = System.nanoTime();
+    // each replica DB receives its updates in the order they were published
+    final Map<FileReplicaDB, List<UpdateMsg>> updatesPerReplicaDB = new LinkedHashMap<>();
+    for (PendingUpdate update : batch)
+    {
+      List<UpdateMsg> updateMsgs = updatesPerReplicaDB.get(update.replicaDB);
+      if (updateMsgs == null)
+      {
+        updateMsgs = new ArrayList<>();
+        updatesPerReplicaDB.put(update.replicaDB, updateMsgs);
+      }
+      updateMsgs.add(update.updateMsg);
+    }
+
+    final boolean sync = syncOnCommit;
+    final Map<FileReplicaDB, ChangelogException> errors = new LinkedHashMap<>();
+    for (Map.Entry<FileReplicaDB, List<UpdateMsg>> entry : updatesPerReplicaDB.entrySet())
+    {
+      try
+      {
+        final FileReplicaDB replicaDB = entry.getKey();
+        replicaDB.addAll(entry.getValue());
+        if (sync)
+        {
+          replicaDB.syncToFileSystem();
+        }
+      }
+      catch (ChangelogException e)
+      {
+        errors.put(entry.getKey(), e);
+      }
+      catch (RuntimeException e)
+      {
+        // the publishing threads must be released whatever happens
+        errors.put(entry.getKey(), new ChangelogException(e));
+      }
+    }
+
+    totalCommitTimeInNanos.addAndGet(System.nanoTime() - startTime);
+    nbBatches.incrementAndGet();
+    nbUpdates.addAndGet(batch.size());
+    if (batch.size() > largestBatchSize)
+    {
+      // only written by the leader, there is one at a time
+      largestBatchSize = batch.size();
+    }
+
+    lock.lock();
+    try
+    {
+      for (PendingUpdate update : batch)
+      {
+        update.error = errors.get(update.replicaDB);
+        update.committed = true;
+      }
+      batchCommitted.signalAll();
+    }
+    finally
+    {
+      lock.unlock();
+    }
+  }
+
+  /** Publishes the group commit statistics. */
+  private class GroupCommitMonitorProvider extends MonitorProvider<MonitorProviderCfg>
+  {
+    @Override
+    public MonitorData getMonitorData()
+    {
+      final long batches = nbBatches.get();
+      final long updates = nbUpdates.get();
+      final MonitorData attributes = new MonitorData(8);
+      attributes.add("commit-window-millis", TimeUnit.NANOSECONDS.toMillis(commitWindowInNanos));
+      attributes.add("max-batch-size", maxBatchSize);
+      attributes.add("sync-on-commit", syncOnCommit);
+      attributes.add("committed-batches", batches);
+      attributes.add("committed-updates", updates);
+      attributes.add("average-batch-size", batches != 0 ? updates / batches : 0);
+      attributes.add("largest-batch-size", largestBatchSize);
+      attributes.add("average-commit-time-micros",
+          batches != 0 ? TimeUnit.NANOSECONDS.toMicros(totalCommitTimeInNanos.get() / batches) : 0);
+      return attributes;
+    }
+
+    @Override
+    public String getMonitorInstanceName()
+    {
+      return "Changelog Group Commit";
+    }
+
+    @Override
+    public void initializeMonitorProvider(MonitorProviderCfg configuration)
+        throws ConfigException, InitializationException
+    {
+      // Nothing to do for now
+    }
+  }
+}
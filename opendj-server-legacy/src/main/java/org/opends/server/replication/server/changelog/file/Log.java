@@ -465,6 +465,90 @@ final class Log<K extends Comparable<K>, V> implements Closeable
     }
   }
 
+  /**
+   * Add the provided records at the end of this log, in one pass.
+   * <p>
+   * Records that do not have a key strictly higher than the key of the last
+   * record added are not appended. The head log file is rotated, if needed,
+   * before appending the records, so the batch is never split across log
+   * files.
+   * <p>
+   * In order to ensure that records are written out of buffers and persisted
+   * to file system, it is necessary to explicitly call the
+   * {@code syncToFileSystem()} method.
+   *
+   * @param records
+   *          The records to add, in order.
+   * @throws ChangelogException
+   *           If an error occurs while adding the records to the log.
+   */
+  public void appendAll(final List<Record<K, V>> records) throws ChangelogException
+  {
+    if (records.isEmpty())
+    {
+      return;
+    }
+
+    // Fast-path - assume that no rotation is needed and use shared lock.
+    sharedLock.lock();
+    try
+    {
+      if (isClosed)
+      {
+        return;
+      }
+      final LogFile<K, V> headLogFile = getHeadLogFile();
+      if (!mustRotate(headLogFile))
+      {
+        headLogFile.appendAll(records);
+        return;
+      }
+    }
+    finally
+    {
+      sharedLock.unlock();
+    }
+
+    // Slow-path - rotation is needed so use exclusive lock.
+    exclusiveLock.lock();
+    try
+    {
+      if (isClosed)
+      {
+        return;
+      }
+      LogFile<K, V> headLogFile = getHeadLogFile();
+      // the new head log file could not detect the records breaking the key ordering
+      final List<Record<K, V>> orderedRecords = new ArrayList<>(records.size());
+      for (Record<K, V> record : records)
+      {
+        if (!headLogFile.appendWouldBreakKeyOrdering(record)
+            && (orderedRecords.isEmpty()
+                || record.getKey().compareTo(orderedRecords.get(orderedRecords.size() - 1).getKey()) > 0))
+        {
+          orderedRecords.add(record);
+        }
+      }
+      if (orderedRecords.isEmpty())
+      {
+        // abort rotation
+        return;
+      }
+      if (mustRotate(headLogFile))
+      {
+        logger.trace(INFO_CHANGELOG_LOG_FILE_ROTATION.get(logPath.getPath(), headLogFile.getSizeInBytes()));
+
+        rotateHeadLogFile();
+        headLogFile = getHeadLogFile();
+      }
+      headLogFile.appendAll(orderedRecords);
+    }
+    finally
+    {
+      exclusiveLock.unlock();
+    }
+  }
+
   private boolean mustRotate(LogFile<K, V> headLogFile)
   {
     if (headLogFile.getNewestRecord() == null)
@@ -965,7 +1049,7 @@ final class Log<K extends Comparable<K>, V> implements Closeable
     renameHeadLogFileTo(readOnlyLogFile);
 
     openHeadLogFile();
-    openReadOnlyLogFile(readOnlyLogFile);
+    openReadOnlyLogFile(readOnlyLogFile).createIndex();
 
     // Re-enable cursors previously opened on head, with the saved state
     updateOpenedCursorsOnHeadAfterRotation(cursorsOnHead);
@@ -1091,11 +1175,12 @@ final class Log<K extends Comparable<K>, V> implements Closeable
     logFiles.put(recordParser.getMaxKey(), head);
   }
 
-  private void openReadOnlyLogFile(final File logFilePath) throws ChangelogException
+  private LogFile<K, V> openReadOnlyLogFile(final File logFilePath) throws ChangelogException
   {
     final LogFile<K, V> logFile = LogFile.newReadOnlyLogFile(logFilePath, recordParser);
     final Pair<K, K> bounds = getKeyBounds(logFile);
     logFiles.put(bounds.getSecond(), logFile);
+    return logFile;
   }
 
   private void registerCursor(final AbortableLogCursor<K, V> cursor)
@@ -16,6 +16,7 @@
 package org.opends.server.replication.server.changelog.file;
 
 import static org.opends.messages.ReplicationMessages.*;
+import static org.opends.server.util.ServerConstants.*;
 
 import java.io.BufferedWriter;
 import java.io.Closeable;
@@ -23,6 +24,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -36,6 +39,8 @@ import org.opends.server.replication.server.changelog.api.DBCursor;
 import org.opends.server.replication.server.changelog.file.Log.RepositionableCursor;
 import org.opends.server.util.StaticUtils;
 
+import com.forgerock.opendj.util.OperatingSystem;
+
 /**
  * A log file, containing part of a {@code Log}. The log file may be:
  * <ul>
@@ -56,12 +61,32 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
 {
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /**
+   * Indicates whether read-only log files are read through memory mappings.
+   * Disabled by default on Windows, where a mapped file cannot be deleted until
+   * the mapping is garbage collected, which would delay purging of the log.
+   */
+  private static final boolean MEMORY_MAPPED_READS = Boolean.parseBoolean(System.getProperty(
+      PROPERTY_CHANGELOG_MEMORY_MAPPED_READS, String.valueOf(!OperatingSystem.isWindows())));
+
   /** The file containing the records. */
   private final File logfile;
 
+  /** The parser of records. */
+  private final RecordParser<K, V> parser;
+
   /** The pool to obtain a reader on the log. */
   private final LogReaderPool<K, V> readerPool;
 
+  /**
+   * The sparse index of this log file, only available for read-only log files.
+   * It is loaded from its file, or built if missing, on first use.
+   */
+  private volatile LogFileIndex<K> index;
+
+  /** Indicates if the index has been loaded or built, successfully or not. */
+  private volatile boolean isIndexLoaded;
+
   /**
    * The writer on the log file, which may be {@code null} if log file is not
    * write-enabled.
@@ -102,13 +127,14 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
   {
     Reject.ifNull(logFilePath, parser);
     this.logfile = logFilePath;
+    this.parser = parser;
     this.isWriteEnabled = isWriteEnabled;
     final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     exclusiveLock = rwLock.writeLock();
     sharedLock = rwLock.readLock();
     createLogFileIfNotExists();
 
-    readerPool = new LogReaderPool<>(logfile, parser);
+    readerPool = new LogReaderPool<>(logfile, parser, !isWriteEnabled && MEMORY_MAPPED_READS);
     if (isWriteEnabled)
     {
       ensureLogFileIsValid(parser);
@@ -176,6 +202,109 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     return logfile;
   }
 
+  /**
+   * Builds the index of this read-only log file and writes it next to the log
+   * file, replacing any existing index.
+   * <p>
+   * As the index only speeds up the positioning of cursors, failures are not
+   * reported to the caller: the log file is then searched without index.
+   */
+  void createIndex()
+  {
+    if (isWriteEnabled)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      index = buildIndex();
+      isIndexLoaded = true;
+    }
+  }
+
+  /**
+   * Returns the index of this log file, reading it from its file or building
+   * it if needed.
+   *
+   * @return the index, or {@code null} if this log file is write-enabled or its
+   *         index could not be built
+   */
+  LogFileIndex<K> getIndex()
+  {
+    if (isWriteEnabled || isIndexLoaded)
+    {
+      return index;
+    }
+    synchronized (this)
+    {
+      if (!isIndexLoaded)
+      {
+        index = LogFileIndex.read(LogFileIndex.getIndexFile(logfile), parser, logfile.length());
+        if (index == null)
+        {
+          // index missing (log file written by a previous version), or not matching the log file
+          index = buildIndex();
+        }
+        isIndexLoaded = true;
+      }
+      return index;
+    }
+  }
+
+  private LogFileIndex<K> buildIndex()
+  {
+    try
+    {
+      final LogFileIndex<K> newIndex;
+      final BlockLogReader<K, V> reader = getReader();
+      try
+      {
+        newIndex = LogFileIndex.build(reader);
+      }
+      finally
+      {
+        releaseReader(reader);
+      }
+      try
+      {
+        newIndex.write(LogFileIndex.getIndexFile(logfile), parser);
+      }
+      catch (IOException e)
+      {
+        // the index is kept in memory and will be rebuilt next time the log file is opened
+        logger.traceException(e);
+      }
+      return newIndex;
+    }
+    catch (ChangelogException e)
+    {
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /**
+   * Acquires the lock ensuring that the log file is in a consistent state when
+   * reading it. A read-only log file is never modified, hence its readers do
+   * not need to be synchronized with anything.
+   */
+  private void lockForReading()
+  {
+    if (isWriteEnabled)
+    {
+      sharedLock.lock();
+    }
+  }
+
+  /** Releases the lock acquired with {@link #lockForReading()}. */
+  private void unlockForReading()
+  {
+    if (isWriteEnabled)
+    {
+      sharedLock.unlock();
+    }
+  }
+
   private void checkLogIsEnabledForWrite() throws ChangelogException
   {
     if (!isWriteEnabled)
@@ -264,6 +393,49 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     }
   }
 
+  /**
+   * Add the provided records at the end of this log, in one pass.
+   * <p>
+   * Records that do not have a key strictly higher than the key of the last
+   * record added are not appended.
+   *
+   * @param records
+   *          The records to add, in order.
+   * @throws ChangelogException
+   *           If the records can't be added to the log.
+   */
+  void appendAll(final List<Record<K, V>> records) throws ChangelogException
+  {
+    checkLogIsEnabledForWrite();
+    exclusiveLock.lock();
+    try
+    {
+      final Record<K, V> previousNewestRecord = newestRecord;
+      final List<Record<K, V>> toWrite = new ArrayList<>(records.size());
+      for (Record<K, V> record : records)
+      {
+        if (!appendWouldBreakKeyOrdering(record))
+        {
+          toWrite.add(record);
+          newestRecord = record;
+        }
+      }
+      try
+      {
+        writer.writeAll(toWrite);
+      }
+      catch (ChangelogException e)
+      {
+        newestRecord = previousNewestRecord;
+        throw e;
+      }
+    }
+    finally
+    {
+      exclusiveLock.unlock();
+    }
+  }
+
   /** Indicates if the provided record has a key that would break the key ordering if appended in this file log. */
   boolean appendWouldBreakKeyOrdering(final Record<K, V> record)
   {
@@ -471,6 +643,8 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
       {
         throw new ChangelogException(ERR_CHANGELOG_UNABLE_TO_DELETE_LOG_FILE.get(getPath()));
       }
+      // a leftover index is harmless: it does not match a new log file with the same name
+      LogFileIndex.getIndexFile(logfile).delete();
     }
     finally
     {
@@ -582,14 +756,14 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
       this.logFile = logFile;
       this.reader = logFile.getReader();
       this.currentRecord = record;
-      logFile.sharedLock.lock();
+      logFile.lockForReading();
       try
       {
         reader.seekToPosition(filePosition);
       }
       finally
       {
-        logFile.sharedLock.unlock();
+        logFile.unlockForReading();
       }
     }
 
@@ -604,14 +778,14 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
         initialRecord = null;
         return true;
       }
-      logFile.sharedLock.lock();
+      logFile.lockForReading();
       try
       {
         currentRecord = reader.readRecord();
       }
       finally
       {
-        logFile.sharedLock.unlock();
+        logFile.unlockForReading();
       }
       return currentRecord != null;
     }
@@ -628,14 +802,14 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
     public boolean positionTo(final K key, final KeyMatchingStrategy match, final PositionStrategy pos)
         throws ChangelogException {
       final Pair<Boolean, Record<K, V>> result;
-      logFile.sharedLock.lock();
+      logFile.lockForReading();
       try
       {
-        result = reader.seekToRecord(key, match, pos);
+        result = reader.seekToRecord(key, match, pos, logFile.getIndex());
       }
       finally
       {
-        logFile.sharedLock.unlock();
+        logFile.unlockForReading();
       }
       final boolean found = result.getFirst();
       initialRecord = found ? result.getSecond() : null;
@@ -658,14 +832,14 @@ final class LogFile<K extends Comparable<K>, V> implements Closeable
      */
     long getFilePosition() throws ChangelogException
     {
-      logFile.sharedLock.lock();
+      logFile.lockForReading();
       try
       {
         return reader.getFilePosition();
       }
       finally
       {
-        logFile.sharedLock.unlock();
+        logFile.unlockForReading();
       }
     }
 
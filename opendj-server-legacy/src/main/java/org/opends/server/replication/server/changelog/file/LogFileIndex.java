@@ -0,0 +1,266 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+import org.opends.server.util.StaticUtils;
+
+/**
+ * A sparse index of a read-only log file, giving the key of the record found
+ * at regularly spaced block starts.
+ * <p>
+ * It allows to restrict the binary search of a key to the few blocks located
+ * between two consecutive index entries, instead of the whole log file, which
+ * saves most of the random reads when positioning a cursor on a large log file
+ * that is not in the file system cache.
+ * <p>
+ * The index is stored in a file next to the log file. Its format is:
+ * <pre>
+ * magic number (int) | version (int) | length of the log file (long) | number of entries (int)
+ * then, for each entry: key encoded as a string (UTF) | block start position (long)
+ * </pre>
+ *
+ * @param <K>
+ *          Type of the key of a record, which must be comparable.
+ */
+final class LogFileIndex<K extends Comparable<K>>
+{
+  /** Suffix appended to the name of a log file to get the name of its index file. */
+  static final String INDEX_FILE_SUFFIX = ".idx";
+
+  /** Number of blocks between two index entries. With the default block size, one entry every 16KB. */
+  static final int BLOCKS_PER_ENTRY = 64;
+
+  private static final int MAGIC_NUMBER = 0x4c494458;
+  private static final int FORMAT_VERSION = 1;
+
+  /** Length of the indexed log file, to detect an index that does not match its log file. */
+  private final long fileLength;
+  /** Keys of the records read from the indexed block starts, in ascending order. */
+  private final List<K> keys;
+  /** Indexed block starts, in ascending order. */
+  private final long[] blockStarts;
+
+  private LogFileIndex(final long fileLength, final List<K> keys, final long[] blockStarts)
+  {
+    this.fileLength = fileLength;
+    this.keys = keys;
+    this.blockStarts = blockStarts;
+  }
+
+  /**
+   * Returns the index file of the provided log file.
+   *
+   * @param logFile
+   *          the log file
+   * @return the index file
+   */
+  static File getIndexFile(final File logFile)
+  {
+    return new File(logFile.getParentFile(), logFile.getName() + INDEX_FILE_SUFFIX);
+  }
+
+  /**
+   * Builds the index of a log file by reading the records found at regularly
+   * spaced block starts.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param <V>
+   *          Type of the value of a record.
+   * @param reader
+   *          the reader on the log file to index
+   * @return the index of the log file
+   * @throws ChangelogException
+   *           If the log file cannot be read
+   */
+  static <K extends Comparable<K>, V> LogFileIndex<K> build(final BlockLogReader<K, V> reader)
+      throws ChangelogException
+  {
+    final long fileLength = reader.getFileLength();
+    final long interval = (long) BLOCKS_PER_ENTRY * reader.getBlockSize();
+    final List<K> keys = new ArrayList<>();
+    long[] blockStarts = new long[(int) Math.min(fileLength / interval + 1, Integer.MAX_VALUE)];
+    for (long blockStart = 0; blockStart < fileLength && keys.size() < blockStarts.length; blockStart += interval)
+    {
+      final Record<K, V> record = reader.readRecordFromBlockStart(blockStart);
+      if (record == null)
+      {
+        break;
+      }
+      // a record spanning several entries is only indexed once, at its first entry
+      if (keys.isEmpty() || record.getKey().compareTo(keys.get(keys.size() - 1)) > 0)
+      {
+        blockStarts[keys.size()] = blockStart;
+        keys.add(record.getKey());
+      }
+    }
+    return new LogFileIndex<>(fileLength, keys, Arrays.copyOf(blockStarts, keys.size()));
+  }
+
+  /**
+   * Reads the index from the provided file.
+   *
+   * @param <K>
+   *          Type of the key of a record, which must be comparable.
+   * @param indexFile
+   *          the index file
+   * @param parser
+   *          the parser decoding the keys
+   * @param expectedFileLength
+   *          the length of the indexed log file
+   * @return the index, or {@code null} if the file does not exist or is not a
+   *         valid index of the log file
+   */
+  static <K extends Comparable<K>> LogFileIndex<K> read(final File indexFile, final RecordParser<K, ?> parser,
+      final long expectedFileLength)
+  {
+    if (!indexFile.isFile())
+    {
+      return null;
+    }
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile))))
+    {
+      if (input.readInt() != MAGIC_NUMBER
+          || input.readInt() != FORMAT_VERSION
+          || input.readLong() != expectedFileLength)
+      {
+        return null;
+      }
+      final int nbEntries = input.readInt();
+      final List<K> keys = new ArrayList<>(nbEntries);
+      final long[] blockStarts = new long[nbEntries];
+      for (int i = 0; i < nbEntries; i++)
+      {
+        keys.add(parser.decodeKeyFromString(input.readUTF()));
+        blockStarts[i] = input.readLong();
+      }
+      return new LogFileIndex<>(expectedFileLength, keys, blockStarts);
+    }
+    catch (IOException | ChangelogException | RuntimeException e)
+    {
+      // the index is rebuilt from the log file
+      return null;
+    }
+  }
+
+  /**
+   * Writes this index to the provided file. The file is written under a
+   * temporary name and then renamed, so it is never seen partially written.
+   *
+   * @param indexFile
+   *          the index file
+   * @param parser
+   *          the parser encoding the keys
+   * @throws IOException
+   *           If the index file cannot be written
+   */
+  void write(final File indexFile, final RecordParser<K, ?> parser) throws IOException
+  {
+    final File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))
+    {
+      output.writeInt(MAGIC_NUMBER);
+      output.writeInt(FORMAT_VERSION);
+      output.writeLong(fileLength);
+      output.writeInt(keys.size());
+      for (int i = 0; i < keys.size(); i++)
+      {
+        output.writeUTF(parser.encodeKeyToString(keys.get(i)));
+        output.writeLong(blockStarts[i]);
+      }
+    }
+    StaticUtils.renameFile(tmpFile, indexFile);
+  }
+
+  /**
+   * Returns the lowest block start from which the provided key must be searched.
+   *
+   * @param key
+   *          the key to search
+   * @return the highest indexed block start whose record has a key strictly
+   *         lower than the provided key, or 0 if there is none
+   */
+  long getLowestBlockStartFor(final K key)
+  {
+    final int index = getFirstEntryNotLowerThan(key) - 1;
+    return index >= 0 ? blockStarts[index] : 0L;
+  }
+
+  /**
+   * Returns the highest block start where the provided key must be searched.
+   *
+   * @param key
+   *          the key to search
+   * @return the lowest indexed block start whose record has a key higher than
+   *         or equal to the provided key, or -1 if there is none
+   */
+  long getHighestBlockStartFor(final K key)
+  {
+    final int index = getFirstEntryNotLowerThan(key);
+    return index < blockStarts.length ? blockStarts[index] : -1L;
+  }
+
+  /** Returns the index of the first entry with a key higher than or equal to the provided key. */
+  private int getFirstEntryNotLowerThan(final K key)
+  {
+    int low = 0;
+    int high = keys.size();
+    while (low < high)
+    {
+      final int middle = (low + high) >>> 1;
+      if (keys.get(middle).compareTo(key) < 0)
+      {
+        low = middle + 1;
+      }
+      else
+      {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the number of entries of this index.
+   *
+   * @return the number of entries
+   */
+  int size()
+  {
+    return keys.size();
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "(" + keys.size() + " entries)";
+  }
+}
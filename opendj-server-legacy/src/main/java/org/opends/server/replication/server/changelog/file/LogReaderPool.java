@@ -16,7 +16,11 @@
 package org.opends.server.replication.server.changelog.file;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import org.opends.server.replication.server.changelog.api.ChangelogException;
 import org.opends.server.util.StaticUtils;
@@ -25,7 +29,11 @@ import static org.opends.messages.ReplicationMessages.*;
 
 /**
  * A Pool of readers to a log file.
-
+ * <p>
+ * When the log file is not written anymore, the pool may memory-map it once
+ * and give each reader its own view of the mapping: readers then parse records
+ * directly from the page cache, without a system call per read and without
+ * opening a file handle per reader.
  *
  * @param <K>
  *          Type of the key of a record, which must be comparable.
@@ -40,6 +48,15 @@ class LogReaderPool<K extends Comparable<K>, V>
 
   private final RecordParser<K, V> parser;
 
+  /** Indicates whether the file must be read through a memory mapping. */
+  private final boolean mapFile;
+
+  /**
+   * The memory mapping of the whole file, lazily created on first read, or
+   * {@code null} if the file is not mapped yet or cannot be mapped.
+   */
+  private ByteBuffer mappedFile;
+
   /**
    * Creates a pool of readers for provided file.
    *
@@ -47,11 +64,15 @@ class LogReaderPool<K extends Comparable<K>, V>
    *          The file to read.
    * @param parser
    *          The parser to decode the records read.
+   * @param mapFile
+   *          Indicates whether the file must be read through a memory mapping.
+   *          This must only be used for files which are not written anymore.
    */
-  LogReaderPool(File file, RecordParser<K, V> parser)
+  LogReaderPool(File file, RecordParser<K, V> parser, boolean mapFile)
   {
     this.file = file;
     this.parser = parser;
+    this.mapFile = mapFile;
   }
 
   /**
@@ -83,11 +104,17 @@ class LogReaderPool<K extends Comparable<K>, V>
     StaticUtils.close(reader);
   }
 
-  /** Returns a random access file to read this log. */
+  /** Returns a reader on the memory mapping of this log if enabled, or on a random access file otherwise. */
   private BlockLogReader<K, V> getReader(File file) throws ChangelogException
   {
     try
     {
+      final ByteBuffer mapping = mapFile ? getMappedFile() : null;
+      if (mapping != null)
+      {
+        // Each reader owns the position of its own view of the mapping
+        return BlockLogReader.newMappedReader(file, mapping.duplicate(), parser);
+      }
       return BlockLogReader.newReader(file, new RandomAccessFile(file, "r"), parser) ;
     }
     catch (Exception e)
@@ -100,9 +127,34 @@ class LogReaderPool<K extends Comparable<K>, V>
    * Shutdown this pool, releasing all files handles opened
    * on the file.
    */
-  void shutdown()
+  synchronized void shutdown()
+  {
+    // No file handle is kept opened: the memory mapping, if any, is released
+    // by the garbage collector once the last reader on it is gone.
+    mappedFile = null;
+  }
+
+  /**
+   * Returns the memory mapping of the file, mapping it on first call. Returns
+   * {@code null} if the file is too large to be mapped in a single buffer, in
+   * which case it is read with random access files.
+   */
+  private synchronized ByteBuffer getMappedFile() throws IOException
   {
-    // Nothing to do yet as no file handle is kept opened.
+    if (mappedFile == null)
+    {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+          FileChannel channel = raf.getChannel())
+      {
+        final long size = channel.size();
+        if (size <= Integer.MAX_VALUE)
+        {
+          // The mapping remains valid after the channel is closed
+          mappedFile = channel.map(MapMode.READ_ONLY, 0, size);
+        }
+      }
+    }
+    return mappedFile;
   }
 
 }
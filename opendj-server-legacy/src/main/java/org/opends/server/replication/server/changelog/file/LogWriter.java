@@ -15,6 +15,7 @@
  */
 package org.opends.server.replication.server.changelog.file;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
@@ -31,9 +32,15 @@ import static org.opends.messages.ReplicationMessages.*;
 
 /**
  * A writer on a log file.
+ * <p>
+ * Written data is buffered until the writer is flushed, so that a record, or
+ * a batch of records, reaches the file system in a single write.
  */
 class LogWriter extends OutputStream
 {
+  /** Size of the buffer holding written data until the writer is flushed. */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
   /** The file to write in. */
   private final File file;
 
@@ -57,7 +64,7 @@ class LogWriter extends OutputStream
     try
     {
       FileOutputStream fos = new FileOutputStream(file, true);
-      this.stream = new MeteredStream(fos, file.length());
+      this.stream = new MeteredStream(new BufferedOutputStream(fos, BUFFER_SIZE), file.length());
       this.fileDescriptor = fos.getFD();
     }
     catch (Exception e)
@@ -111,6 +118,13 @@ class LogWriter extends OutputStream
     bs.copyTo(stream);
   }
 
+  /** {@inheritDoc} */
+  @Override
+  public void flush() throws IOException
+  {
+    stream.flush();
+  }
+
   /**
    * Returns the number of bytes written in the underlying file.
    *
@@ -128,6 +142,16 @@ class LogWriter extends OutputStream
    *            If synchronization fails.
    */
   void sync() throws SyncFailedException {
+    try
+    {
+      stream.flush();
+    }
+    catch (IOException e)
+    {
+      final SyncFailedException ex = new SyncFailedException(e.getMessage());
+      ex.initCause(e);
+      throw ex;
+    }
     fileDescriptor.sync();
   }
 
@@ -0,0 +1,342 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.service;
+
+import static org.opends.server.util.StaticUtils.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.forgerock.i18n.slf4j.LocalizedLogger;
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.util.Base64;
+
+/**
+ * Stores on disk the partitions received during a partitioned total update,
+ * one LDIF file per partition.
+ * <p>
+ * The partitions are sent in parallel by the exporter, hence their bytes are
+ * interleaved in the stream of entry messages: the spool demultiplexes them.
+ * Once all the partitions have been received, the files are imported at once.
+ * If the initialization is interrupted, the completed partitions are kept so
+ * that a new attempt only requests the missing ones.
+ * <p>
+ * This class is not thread safe: it is only used by the thread running the
+ * import.
+ */
+final class PartitionSpool
+{
+  private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
+
+  private final File directory;
+  /** The bounds of the partitions of the export, empty if none. */
+  private long[] partitionBounds = new long[0];
+  private int nbPartitions;
+  private final Set<Integer> completedPartitions = new TreeSet<>();
+  private final Map<Integer, FileOutputStream> outputs = new HashMap<>();
+
+  /**
+   * Creates a spool storing the partitions in the provided directory.
+   *
+   * @param directory
+   *          the directory where to store the partitions
+   */
+  PartitionSpool(File directory)
+  {
+    this.directory = directory;
+  }
+
+  /**
+   * Prepares the spool for receiving the partitions of an export. The
+   * partitions skipped by the exporter are kept if the export is made of the
+   * same partitions as the previous one, all the others are discarded.
+   *
+   * @param partitionBounds
+   *          the bounds of the partitions of the export
+   * @param skippedPartitions
+   *          the partitions the exporter does not send again
+   * @throws IOException
+   *           If the spool cannot be prepared, or if it does not hold one of
+   *           the skipped partitions
+   */
+  void start(long[] partitionBounds, Set<Integer> skippedPartitions) throws IOException
+  {
+    closeOutputs();
+    if (!Arrays.equals(partitionBounds, this.partitionBounds)
+        || !completedPartitions.containsAll(skippedPartitions))
+    {
+      if (!skippedPartitions.isEmpty())
+      {
+        throw new IOException("The partitions " + skippedPartitions + " of " + Arrays.toString(partitionBounds)
+            + " are not held in " + directory + ", holding " + completedPartitions + " of "
+            + Arrays.toString(this.partitionBounds));
+      }
+      completedPartitions.clear();
+    }
+    completedPartitions.retainAll(skippedPartitions);
+    this.partitionBounds = partitionBounds.clone();
+    this.nbPartitions = Math.max(partitionBounds.length - 1, 0);
+
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IOException("Cannot create directory " + directory);
+    }
+    for (int partition = 0; partition < nbPartitions; partition++)
+    {
+      if (!completedPartitions.contains(partition))
+      {
+        final File file = getPartitionFile(partition);
+        if (file.exists() && !file.delete())
+        {
+          throw new IOException("Cannot delete file " + file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends bytes to a partition.
+   *
+   * @param partition
+   *          the partition
+   * @param bytes
+   *          the bytes of the partition, received in order
+   * @throws IOException
+   *           If the partition is not expected, or if the bytes cannot be
+   *           written
+   */
+  void write(int partition, byte[] bytes) throws IOException
+  {
+    getOutput(partition).write(bytes);
+  }
+
+  /**
+   * Marks a partition as completely received. Its file is synchronized to disk
+   * so that it can be kept for another attempt.
+   *
+   * @param partition
+   *          the partition
+   * @throws IOException
+   *           If the partition is not expected, or if its file cannot be
+   *           synchronized
+   */
+  void endPartition(int partition) throws IOException
+  {
+    final FileOutputStream output = getOutput(partition);
+    outputs.remove(partition);
+    try
+    {
+      output.getFD().sync();
+    }
+    finally
+    {
+      output.close();
+    }
+    completedPartitions.add(partition);
+  }
+
+  private FileOutputStream getOutput(int partition) throws IOException
+  {
+    FileOutputStream output = outputs.get(partition);
+    if (output == null)
+    {
+      if (partition < 0 || partition >= nbPartitions || completedPartitions.contains(partition))
+      {
+        throw new IOException("Unexpected partition " + partition + " of " + nbPartitions
+            + ", holding " + completedPartitions);
+      }
+      output = new FileOutputStream(getPartitionFile(partition), true);
+      outputs.put(partition, output);
+    }
+    return output;
+  }
+
+  /**
+   * Returns whether all the partitions have been received.
+   *
+   * @return {@code true} if all the partitions have been received
+   */
+  boolean isComplete()
+  {
+    return nbPartitions > 0 && completedPartitions.size() == nbPartitions;
+  }
+
+  /**
+   * Returns the number of partitions of the export.
+   *
+   * @return the number of partitions of the export
+   */
+  int getNbPartitions()
+  {
+    return nbPartitions;
+  }
+
+  /**
+   * Returns the bounds of the partitions of the export, which an exporter
+   * must use again for skipping the completed partitions.
+   *
+   * @return the bounds of the partitions of the export, empty if none
+   */
+  long[] getPartitionBounds()
+  {
+    return partitionBounds.clone();
+  }
+
+  /**
+   * Returns the files holding the partitions, in order.
+   *
+   * @return the files holding the partitions
+   */
+  List<File> getPartitionFiles()
+  {
+    final List<File> files = new ArrayList<>(nbPartitions);
+    for (int partition = 0; partition < nbPartitions; partition++)
+    {
+      files.add(getPartitionFile(partition));
+    }
+    return files;
+  }
+
+  /**
+   * Returns the completed partitions that can be kept for a new attempt.
+   * <p>
+   * The base entry holds the replication state the importer restarts from,
+   * which must not be more recent than any kept partition. So completed
+   * partitions can only be kept if the base entry is one of them: the
+   * partitions sent again are then necessarily more recent.
+   *
+   * @param baseDN
+   *          the base DN of the replication domain
+   * @return the partitions that can be kept, empty if none
+   */
+  Set<Integer> getResumablePartitions(DN baseDN)
+  {
+    closeOutputs();
+    for (int partition : completedPartitions)
+    {
+      try
+      {
+        if (containsEntry(getPartitionFile(partition), baseDN))
+        {
+          return Collections.unmodifiableSet(new TreeSet<>(completedPartitions));
+        }
+      }
+      catch (IOException e)
+      {
+        logger.traceException(e);
+        break;
+      }
+    }
+    return Collections.emptySet();
+  }
+
+  /** Returns whether the provided LDIF file contains the entry with the provided DN. */
+  static boolean containsEntry(File ldifFile, DN dn) throws IOException
+  {
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(new FileInputStream(ldifFile), StandardCharsets.UTF_8)))
+    {
+      boolean entryStart = true;
+      StringBuilder dnLine = null;
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        if (dnLine != null)
+        {
+          if (line.startsWith(" "))
+          {
+            // folded DN line
+            dnLine.append(line, 1, line.length());
+            continue;
+          }
+          if (dn.equals(decodeDN(dnLine.toString())))
+          {
+            return true;
+          }
+          dnLine = null;
+        }
+        if (entryStart && line.startsWith("dn:"))
+        {
+          dnLine = new StringBuilder(line);
+        }
+        entryStart = line.isEmpty();
+      }
+      return dnLine != null && dn.equals(decodeDN(dnLine.toString()));
+    }
+  }
+
+  private static DN decodeDN(String dnLine)
+  {
+    try
+    {
+      if (dnLine.startsWith("dn::"))
+      {
+        return DN.valueOf(new String(Base64.decode(dnLine.substring(4).trim()), StandardCharsets.UTF_8));
+      }
+      return DN.valueOf(dnLine.substring(3).trim());
+    }
+    catch (Exception e)
+    {
+      // not a valid DN, hence not the searched one
+      logger.traceException(e);
+      return null;
+    }
+  }
+
+  /** Deletes all the partitions held by this spool. */
+  void delete()
+  {
+    closeOutputs();
+    completedPartitions.clear();
+    partitionBounds = new long[0];
+    nbPartitions = 0;
+    recursiveDelete(directory);
+  }
+
+  private void closeOutputs()
+  {
+    for (FileOutputStream output : outputs.values())
+    {
+      close(output);
+    }
+    outputs.clear();
+  }
+
+  private File getPartitionFile(int partition)
+  {
+    return new File(directory, "partition-" + partition + ".ldif");
+  }
+
+  @Override
+  public String toString()
+  {
+    return getClass().getSimpleName() + "(directory=" + directory + ", completedPartitions=" + completedPartitions
+        + " of " + nbPartitions + ")";
+  }
+}
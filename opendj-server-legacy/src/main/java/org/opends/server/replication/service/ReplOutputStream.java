@@ -28,6 +28,9 @@ class ReplOutputStream extends OutputStream
   /** The synchronization domain on which the export is done. */
   private final ReplicationDomain domain;
 
+  /** The partition being exported, or -1 when the export is not partitioned. */
+  private final int partition;
+
   /** The current number of entries exported. */
   private final long numExportedEntries = 0;
 
@@ -38,8 +41,21 @@ class ReplOutputStream extends OutputStream
    * @param domain The replication domain
    */
   ReplOutputStream(ReplicationDomain domain)
+  {
+    this(domain, -1);
+  }
+
+  /**
+   * Creates a new ReplLDIFOutputStream exporting one partition of a
+   * replication domain.
+   *
+   * @param domain The replication domain
+   * @param partition The partition being exported
+   */
+  ReplOutputStream(ReplicationDomain domain, int partition)
   {
     this.domain = domain;
+    this.partition = partition;
   }
 
   /** {@inheritDoc} */
@@ -53,7 +69,14 @@ class ReplOutputStream extends OutputStream
   @Override
   public void write(byte b[], int off, int len) throws IOException
   {
-    domain.exportLDIFEntry(b, off, len);
+    if (partition < 0)
+    {
+      domain.exportLDIFEntry(b, off, len);
+    }
+    else if (len > 0)
+    {
+      domain.exportLDIFEntry(b, off, len, partition, false);
+    }
   }
 
   /**
@@ -1115,6 +1115,10 @@ public class ReplicationBroker
       {
         newSession.stopEncryption();
       }
+      if (config.isCompressionEnabled())
+      {
+        newSession.enableCompression();
+      }
 
       hasConnected = true;
 
@@ -2826,6 +2830,15 @@ public class ReplicationBroker
     return session != null ? session.isEncrypted() : false;
   }
 
+  /**
+   * Returns the session with the replication server.
+   * @return the session with the replication server, or null if not connected.
+   */
+  Session getSession()
+  {
+    return connectedRS.get().session;
+  }
+
   /**
    * Signals the RS we just entered a new status.
    * @param newStatus The status the local DS just entered
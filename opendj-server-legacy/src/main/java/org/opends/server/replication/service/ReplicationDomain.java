@@ -20,12 +20,18 @@ import static org.opends.messages.ReplicationMessages.*;
 import static org.opends.server.replication.common.AssuredMode.*;
 import static org.opends.server.replication.common.StatusMachine.*;
 import static org.opends.server.util.CollectionUtils.*;
+import static org.opends.server.util.StaticUtils.*;
 
 import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -35,7 +41,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -74,6 +86,7 @@ import org.opends.server.replication.protocol.ReplSessionSecurity;
 import org.opends.server.replication.protocol.ReplicationMsg;
 import org.opends.server.replication.protocol.ResetGenerationIdMsg;
 import org.opends.server.replication.protocol.RoutableMsg;
+import org.opends.server.replication.protocol.Session;
 import org.opends.server.replication.protocol.TopologyMsg;
 import org.opends.server.replication.protocol.UpdateMsg;
 import org.opends.server.tasks.InitializeTargetTask;
@@ -230,6 +243,13 @@ public abstract class ReplicationDomain
   private ServerStatus status = ServerStatus.NOT_CONNECTED_STATUS;
   private static final LocalizedLogger logger = LocalizedLogger.getLoggerForThisClass();
 
+  /** Number of entries per range of entries compared for a delta update. */
+  private static final int ENTRIES_PER_RANGE = 32;
+  /** Minimum number of ranges of entries compared for a delta update. */
+  private static final int MIN_NB_RANGES = 1 << 12;
+  /** Maximum number of ranges of entries compared for a delta update. */
+  private static final int MAX_NB_RANGES = 1 << 20;
+
   /** The configuration of the replication domain. */
   protected volatile ReplicationDomainCfg config;
   /**
@@ -882,8 +902,7 @@ public abstract class ReplicationDomain
       if (initReqMsg != null)
       {
         // Do this work in a thread to allow replay thread continue working
-        ExportThread exportThread = new ExportThread(
-            initReqMsg.getSenderID(), initReqMsg.getInitWindow());
+        ExportThread exportThread = new ExportThread(initReqMsg);
         exportThread.start();
       }
     }
@@ -1047,24 +1066,24 @@ public abstract class ReplicationDomain
     /** Id of server that will be initialized. */
     private final int serverIdToInitialize;
     private final int initWindow;
+    /** The request received from the server to initialize. */
+    private final InitializeRequestMsg initReqMsg;
 
 
 
     /**
      * Constructor for the ExportThread.
      *
-     * @param serverIdToInitialize
-     *          serverId of server that will receive entries
-     * @param initWindow
-     *          The value of the initialization window for flow control between
-     *          the importer and the exporter.
+     * @param initReqMsg
+     *          the request received from the server that will receive entries
      */
-    public ExportThread(int serverIdToInitialize, int initWindow)
+    public ExportThread(InitializeRequestMsg initReqMsg)
     {
       super("Export thread from serverId=" + getServerId() + " to serverId="
-          + serverIdToInitialize);
-      this.serverIdToInitialize = serverIdToInitialize;
-      this.initWindow = initWindow;
+          + initReqMsg.getSenderID());
+      this.serverIdToInitialize = initReqMsg.getSenderID();
+      this.initWindow = initReqMsg.getInitWindow();
+      this.initReqMsg = initReqMsg;
     }
 
 
@@ -1082,7 +1101,7 @@ public abstract class ReplicationDomain
       try
       {
         initializeRemote(serverIdToInitialize, serverIdToInitialize, null,
-            initWindow);
+            initWindow, initReqMsg);
       } catch (DirectoryException de)
       {
         /*
@@ -1168,6 +1187,9 @@ public abstract class ReplicationDomain
     /** Number of attempt already done for this initialization. */
     private short attemptCnt;
 
+    /** Partitions received during a partitioned import, kept between attempts. */
+    private PartitionSpool partitionSpool;
+
     /**
      * Creates a new IEContext.
      *
@@ -1320,7 +1342,7 @@ public abstract class ReplicationDomain
      */
     public void setExceptionIfNoneSet(DirectoryException exception)
     {
-      if (exception == null)
+      if (this.exception == null)
       {
         this.exception = exception;
       }
@@ -1450,6 +1472,35 @@ public abstract class ReplicationDomain
   protected void initializeRemote(int serverToInitialize,
       int serverRunningTheTask, Task initTask, int initWindow)
   throws DirectoryException
+  {
+    initializeRemote(serverToInitialize, serverRunningTheTask, initTask,
+        initWindow, null);
+  }
+
+  /**
+   * Process the initialization of some other server or servers in the topology
+   * specified by the target argument when this initialization specifying the
+   * server that requests the initialization, possibly resuming an interrupted
+   * partitioned initialization or only sending the entries that differ.
+   *
+   * @param serverToInitialize The target server that should be initialized.
+   * @param serverRunningTheTask The server that initiated the export. It can
+   * be the serverID of this server, or the serverID of a remote server.
+   * @param initTask The task in this server that triggers this initialization
+   * and that should be updated with its progress. Null when the export is done
+   * following a request coming from a remote server (task is remote).
+   * @param initWindow The value of the initialization window for flow control
+   * between the importer and the exporter.
+   * @param initReqMsg The request received from the target server, null
+   * when the initialization is not requested by the target server.
+   *
+   * @exception DirectoryException When an error occurs. No exception raised
+   * means success.
+   */
+  protected void initializeRemote(int serverToInitialize,
+      int serverRunningTheTask, Task initTask, int initWindow,
+      InitializeRequestMsg initReqMsg)
+  throws DirectoryException
   {
     final ImportExportContext ieCtx = acquireIEContext(false);
 
@@ -1494,6 +1545,26 @@ public abstract class ReplicationDomain
       }
     }
 
+    // Only the ranges of entries that differ are sent if the target server
+    // provided the checksums of its ranges
+    final long[] remoteChecksums = initReqMsg != null ? initReqMsg.getRangeChecksums() : new long[0];
+    final ServerState deltaState = getServerState().duplicate();
+    final Set<Integer> deltaRanges = getDeltaRanges(serverToInitialize, remoteChecksums);
+
+    // The bounds of the partitions are computed once for all the partitions,
+    // and partitions can only be skipped when resuming a partitioned
+    // initialization made of the same partitions
+    final long[] partitionBounds = deltaRanges == null
+        ? getPartitionBoundsToExport(serverToInitialize, initReqMsg) : new long[0];
+    Set<Integer> skippedPartitions = Collections.emptySet();
+    if (partitionBounds.length > 0 && initReqMsg != null
+        && Arrays.equals(partitionBounds, initReqMsg.getPartitionBounds()))
+    {
+      skippedPartitions = initReqMsg.getCompletedPartitions();
+      logger.info(NOTE_FULL_UPDATE_RESUMED, getBaseDN(), serverToInitialize,
+          skippedPartitions.size(), partitionBounds.length - 1);
+    }
+
     DirectoryException exportRootException = null;
 
     // loop for the case where the exporter is the initiator
@@ -1508,7 +1579,15 @@ public abstract class ReplicationDomain
         {
           ieCtx.initializeTask = initTask;
         }
-        ieCtx.initializeCounters(countEntries());
+        if (deltaRanges != null)
+        {
+          // Estimates the number of entries sent, for reporting
+          ieCtx.initializeCounters(countEntries() * deltaRanges.size() / remoteChecksums.length);
+        }
+        else
+        {
+          ieCtx.initializeCounters(countEntries());
+        }
         ieCtx.msgCnt = 0;
         ieCtx.initNumLostConnections = broker.getNumLostConnections();
         ieCtx.initWindow = initWindow;
@@ -1517,6 +1596,11 @@ public abstract class ReplicationDomain
         InitializeTargetMsg initTargetMsg = new InitializeTargetMsg(
             getBaseDN(), getServerId(), serverToInitialize,
             serverRunningTheTask, ieCtx.entryCount, initWindow);
+        initTargetMsg.setPartitions(partitionBounds, skippedPartitions);
+        if (deltaRanges != null)
+        {
+          initTargetMsg.setDeltaRanges(remoteChecksums.length, deltaRanges, deltaState);
+        }
 
         broker.publish(initTargetMsg);
 
@@ -1532,7 +1616,19 @@ public abstract class ReplicationDomain
               ERR_INIT_NO_SUCCESS_START_FROM_SERVERS.get(getBaseDN(), ieCtx.failureList));
         }
 
-        exportBackend(new BufferedOutputStream(new ReplOutputStream(this)));
+        if (deltaRanges != null)
+        {
+          exportRanges(new BufferedOutputStream(new ReplOutputStream(this)),
+              remoteChecksums.length, deltaRanges);
+        }
+        else if (partitionBounds.length > 0)
+        {
+          exportPartitions(ieCtx, partitionBounds, skippedPartitions);
+        }
+        else
+        {
+          exportBackend(new BufferedOutputStream(new ReplOutputStream(this)));
+        }
 
         // Notify the peer of the success
         broker.publish(
@@ -1653,6 +1749,238 @@ public abstract class ReplicationDomain
     }
   }
 
+  /**
+   * Compares the checksums of the ranges of entries of the server to
+   * initialize with the local ones.
+   * <p>
+   * The server state must be read before calling this method: the changes it
+   * covers are then reflected in the local checksums, and the importer takes
+   * this server state once the ranges that differ are updated.
+   *
+   * @return the ranges of entries that differ, or null if all the entries
+   *         must be sent
+   */
+  private Set<Integer> getDeltaRanges(int serverToInitialize, long[] remoteChecksums)
+  {
+    if (remoteChecksums.length == 0)
+    {
+      return null;
+    }
+    final DSInfo dsInfo = getReplicaInfos().get(serverToInitialize);
+    if (dsInfo == null || dsInfo.getGenerationId() != getGenerationID())
+    {
+      // Comparing entries only makes sense between replicas of the same data
+      logger.info(NOTE_FULL_UPDATE_DELTA_NOT_POSSIBLE, getBaseDN(), serverToInitialize);
+      return null;
+    }
+
+    final long[] localChecksums;
+    try
+    {
+      localChecksums = computeRangeChecksums(remoteChecksums.length);
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+      logger.info(NOTE_FULL_UPDATE_DELTA_NOT_POSSIBLE, getBaseDN(), serverToInitialize);
+      return null;
+    }
+    if (localChecksums == null)
+    {
+      logger.info(NOTE_FULL_UPDATE_DELTA_NOT_POSSIBLE, getBaseDN(), serverToInitialize);
+      return null;
+    }
+
+    final Set<Integer> deltaRanges = new TreeSet<>();
+    for (int range = 0; range < localChecksums.length; range++)
+    {
+      if (localChecksums[range] != remoteChecksums[range])
+      {
+        deltaRanges.add(range);
+      }
+    }
+    logger.info(NOTE_FULL_UPDATE_DELTA_RANGES, getBaseDN(), serverToInitialize,
+        deltaRanges.size(), localChecksums.length);
+    return deltaRanges;
+  }
+
+  /**
+   * Returns the bounds of the partitions to export in parallel to the
+   * provided server(s), or an empty array if the entries must be exported as
+   * a single LDIF stream. All the servers involved must support partitioned
+   * total updates.
+   * <p>
+   * When the server to initialize resumes an interrupted partitioned
+   * initialization, the bounds of its partitions are reused: they are only
+   * valid for the entries of this server, which the request is sent to.
+   */
+  private long[] getPartitionBoundsToExport(int serverToInitialize, InitializeRequestMsg initReqMsg)
+  {
+    final int nbPartitions = getExportPartitionCount();
+    if (nbPartitions <= 1
+        || broker.getProtocolVersion() < ProtocolVersion.REPLICATION_PROTOCOL_V10)
+    {
+      return new long[0];
+    }
+    for (DSInfo dsi : getReplicaInfos().values())
+    {
+      if ((serverToInitialize == RoutableMsg.ALL_SERVERS || dsi.getDsId() == serverToInitialize)
+          && dsi.getProtocolVersion() < ProtocolVersion.REPLICATION_PROTOCOL_V10)
+      {
+        return new long[0];
+      }
+    }
+
+    if (initReqMsg != null && initReqMsg.getNbPartitions() == nbPartitions
+        && isValidPartitioning(initReqMsg.getPartitionBounds()))
+    {
+      return initReqMsg.getPartitionBounds();
+    }
+    try
+    {
+      final long[] partitionBounds = getExportPartitionBounds(nbPartitions);
+      if (partitionBounds.length == nbPartitions + 1 && isValidPartitioning(partitionBounds))
+      {
+        return partitionBounds;
+      }
+    }
+    catch (DirectoryException e)
+    {
+      logger.traceException(e);
+    }
+    return new long[0];
+  }
+
+  /**
+   * Returns whether the provided bounds split all the entries into partitions:
+   * they must start at 0, end at {@link Long#MAX_VALUE} and be increasing.
+   */
+  private static boolean isValidPartitioning(long[] partitionBounds)
+  {
+    if (partitionBounds.length < 2
+        || partitionBounds[0] != 0
+        || partitionBounds[partitionBounds.length - 1] != Long.MAX_VALUE)
+    {
+      return false;
+    }
+    for (int i = 1; i < partitionBounds.length; i++)
+    {
+      if (partitionBounds[i - 1] >= partitionBounds[i])
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Exports the partitions not held yet by the importer(s), each one by its
+   * own thread. The bytes of each partition are sent in order, but they are
+   * interleaved with the bytes of the other partitions: the importers
+   * demultiplex them. The first failure makes all the partitions abandon the
+   * export.
+   */
+  private void exportPartitions(final ImportExportContext ieCtx,
+      final long[] partitionBounds, Set<Integer> skippedPartitions)
+      throws DirectoryException
+  {
+    final int nbPartitions = partitionBounds.length - 1;
+    final List<Integer> partitions = new ArrayList<>(nbPartitions);
+    for (int partition = 0; partition < nbPartitions; partition++)
+    {
+      if (!skippedPartitions.contains(partition))
+      {
+        partitions.add(partition);
+      }
+    }
+    if (partitions.isEmpty())
+    {
+      return;
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(partitions.size(),
+        new DirectoryThread.Factory("Export partition thread for domain " + getBaseDN()));
+    try
+    {
+      final List<Future<Void>> futures = new ArrayList<>(partitions.size());
+      for (final int partition : partitions)
+      {
+        futures.add(executor.submit(new Callable<Void>()
+        {
+          @Override
+          public Void call() throws DirectoryException
+          {
+            try
+            {
+              exportBackend(new BufferedOutputStream(
+                  new ReplOutputStream(ReplicationDomain.this, partition)),
+                  partitionBounds[partition], partitionBounds[partition + 1]);
+              exportLDIFEntry(new byte[0], 0, 0, partition, true);
+              return null;
+            }
+            catch (IOException e)
+            {
+              throw abandonExport(ieCtx, new DirectoryException(ResultCode.OTHER,
+                  LocalizableMessage.raw(e.getLocalizedMessage()), e));
+            }
+            catch (DirectoryException e)
+            {
+              throw abandonExport(ieCtx, e);
+            }
+            catch (RuntimeException e)
+            {
+              throw abandonExport(ieCtx, new DirectoryException(ResultCode.OTHER,
+                  LocalizableMessage.raw(e.getLocalizedMessage()), e));
+            }
+          }
+        }));
+      }
+
+      DirectoryException exportException = null;
+      for (Future<Void> future : futures)
+      {
+        try
+        {
+          future.get();
+        }
+        catch (ExecutionException e)
+        {
+          if (exportException == null)
+          {
+            exportException = (DirectoryException) e.getCause();
+          }
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw abandonExport(ieCtx, new DirectoryException(ResultCode.OTHER,
+              LocalizableMessage.raw(e.getLocalizedMessage()), e));
+        }
+      }
+      if (exportException != null)
+      {
+        throw exportException;
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Stores the first failure of an export, which makes the other partitions abandon it. */
+  private DirectoryException abandonExport(ImportExportContext ieCtx, DirectoryException e)
+  {
+    synchronized (ieCtx)
+    {
+      if (ieCtx.getException() == null)
+      {
+        ieCtx.setException(e);
+      }
+    }
+    return e;
+  }
+
   /**
    * For all remote servers in the start list:
    * - wait it has finished the import and present the expected generationID,
@@ -1878,6 +2206,18 @@ public abstract class ReplicationDomain
    * @return The bytes. Null when the Done or Err message has been received
    */
   protected byte[] receiveEntryBytes()
+  {
+    final EntryMsg entryMsg = receiveEntryMsg();
+    return entryMsg != null ? entryMsg.getEntryBytes() : null;
+  }
+
+  /**
+   * Receives the next message holding entries in the context of an import to
+   * initialize the domain.
+   *
+   * @return The message. Null when the Done or Err message has been received
+   */
+  private EntryMsg receiveEntryMsg()
   {
     ReplicationMsg msg;
     while (true)
@@ -1896,7 +2236,7 @@ public abstract class ReplicationDomain
         {
           logger.trace("[IE] In "
               + broker.getReplicationMonitorInstanceName()
-              + ", receiveEntryBytes " + msg);
+              + ", receiveEntryMsg " + msg);
         }
 
         if (msg == null)
@@ -1948,7 +2288,7 @@ public abstract class ReplicationDomain
               }
             }
           }
-          return entryBytes;
+          return entryMsg;
         }
         else if (msg instanceof DoneMsg)
         {
@@ -2046,114 +2386,167 @@ public abstract class ReplicationDomain
    */
   void exportLDIFEntry(byte[] lDIFEntry, int pos, int length)
       throws IOException
+  {
+    exportLDIFEntry(lDIFEntry, pos, length, -1, false);
+  }
+
+  /**
+   * Exports bytes of a partition in LDIF format.
+   *
+   * @param lDIFEntry      The entry to be exported in byte[] form.
+   * @param pos            The starting Position in the array.
+   * @param length         Number of array elements to be copied.
+   * @param partition      The partition the bytes belong to, or -1 when the
+   *                       export is not partitioned.
+   * @param endOfPartition Whether these are the last bytes of the partition.
+   *
+   * @throws IOException when an error occurred.
+   */
+  void exportLDIFEntry(byte[] lDIFEntry, int pos, int length, int partition,
+      boolean endOfPartition) throws IOException
   {
     if (logger.isTraceEnabled())
     {
       logger.trace("[IE] Entering exportLDIFEntry entry=" + Arrays.toString(lDIFEntry));
     }
 
-    // build the message
     ImportExportContext ieCtx = importExportContext.get();
-    EntryMsg entryMessage = new EntryMsg(
-        getServerId(), ieCtx.getExportTarget(), lDIFEntry, pos, length,
-        ++ieCtx.msgCnt);
-
-    // Waiting the slowest loop
-    while (!broker.shuttingDown())
+    // The partitions exported in parallel share the sequence of message ids
+    // and the flow control, so the messages are published one at a time
+    synchronized (ieCtx)
     {
-      /*
-      If an error was raised - like receiving an ErrorMsg from a remote
-      server that have been stored by the listener thread in the ieContext,
-      we just abandon the export by throwing an exception.
-      */
-      if (ieCtx.getException() != null)
-      {
-        throw new IOException(ieCtx.getException().getMessage());
-      }
+      // build the message
+      EntryMsg entryMessage = new EntryMsg(
+          getServerId(), ieCtx.getExportTarget(), lDIFEntry, pos, length,
+          ++ieCtx.msgCnt, partition, endOfPartition);
 
-      int slowestServerId = ieCtx.getSlowestServer();
-      if (getConnectedRemoteDS(slowestServerId) == null)
+      // Waiting the slowest loop
+      while (!broker.shuttingDown())
       {
-        ieCtx.setException(new DirectoryException(ResultCode.OTHER,
-            ERR_INIT_HEARTBEAT_LOST_DURING_EXPORT.get(ieCtx.getSlowestServer())));
+        /*
+        If an error was raised - like receiving an ErrorMsg from a remote
+        server that have been stored by the listener thread in the ieContext,
+        we just abandon the export by throwing an exception.
+        */
+        if (ieCtx.getException() != null)
+        {
+          throw new IOException(ieCtx.getException().getMessage());
+        }
 
-        throw new IOException("IOException with nested DirectoryException",
-            ieCtx.getException());
-      }
+        int slowestServerId = ieCtx.getSlowestServer();
+        if (getConnectedRemoteDS(slowestServerId) == null)
+        {
+          ieCtx.setException(new DirectoryException(ResultCode.OTHER,
+              ERR_INIT_HEARTBEAT_LOST_DURING_EXPORT.get(ieCtx.getSlowestServer())));
 
-      int ourLastExportedCnt = ieCtx.msgCnt;
-      int slowestCnt = ieCtx.ackVals.get(slowestServerId);
+          throw new IOException("IOException with nested DirectoryException",
+              ieCtx.getException());
+        }
 
-      if (logger.isTraceEnabled())
-      {
-        logger.trace("[IE] Entering exportLDIFEntry waiting " +
-            " our=" + ourLastExportedCnt + " slowest=" + slowestCnt);
-      }
+        int ourLastExportedCnt = ieCtx.msgCnt;
+        int slowestCnt = ieCtx.ackVals.get(slowestServerId);
 
-      if (ourLastExportedCnt - slowestCnt > ieCtx.initWindow)
-      {
         if (logger.isTraceEnabled())
         {
-          logger.trace("[IE] Entering exportLDIFEntry waiting");
+          logger.trace("[IE] Entering exportLDIFEntry waiting " +
+              " our=" + ourLastExportedCnt + " slowest=" + slowestCnt);
         }
 
-        // our export is too far beyond the slowest importer - let's wait
-        try { Thread.sleep(100); }
-        catch(Exception e) { /* do nothing */ }
-
-        // process any connection error
-        if (broker.hasConnectionError()
-          || broker.getNumLostConnections() != ieCtx.initNumLostConnections)
+        if (ourLastExportedCnt - slowestCnt > ieCtx.initWindow)
         {
-          // publish failed - store the error in the ieContext ...
-          DirectoryException de = new DirectoryException(ResultCode.OTHER,
-              ERR_INIT_RS_DISCONNECTION_DURING_EXPORT.get(broker.getRsServerId()));
-          ieCtx.setExceptionIfNoneSet(de);
-          // .. and abandon the export by throwing an exception.
-          throw new IOException(de.getMessage());
+          if (logger.isTraceEnabled())
+          {
+            logger.trace("[IE] Entering exportLDIFEntry waiting");
+          }
+
+          // our export is too far beyond the slowest importer - let's wait
+          try { Thread.sleep(100); }
+          catch(Exception e) { /* do nothing */ }
+
+          // process any connection error
+          if (broker.hasConnectionError()
+            || broker.getNumLostConnections() != ieCtx.initNumLostConnections)
+          {
+            // publish failed - store the error in the ieContext ...
+            DirectoryException de = new DirectoryException(ResultCode.OTHER,
+                ERR_INIT_RS_DISCONNECTION_DURING_EXPORT.get(broker.getRsServerId()));
+            ieCtx.setExceptionIfNoneSet(de);
+            // .. and abandon the export by throwing an exception.
+            throw new IOException(de.getMessage());
+          }
         }
-      }
-      else
-      {
-        if (logger.isTraceEnabled())
+        else
         {
-          logger.trace("[IE] slowest got to us => stop waiting");
+          if (logger.isTraceEnabled())
+          {
+            logger.trace("[IE] slowest got to us => stop waiting");
+          }
+          break;
         }
-        break;
+      } // Waiting the slowest loop
+
+      if (logger.isTraceEnabled())
+      {
+        logger.trace("[IE] Entering exportLDIFEntry pub entry=" + Arrays.toString(lDIFEntry));
       }
-    } // Waiting the slowest loop
 
-    if (logger.isTraceEnabled())
-    {
-      logger.trace("[IE] Entering exportLDIFEntry pub entry=" + Arrays.toString(lDIFEntry));
-    }
+      boolean sent = broker.publish(entryMessage, false);
 
-    boolean sent = broker.publish(entryMessage, false);
+      // process any publish error
+      if (!sent
+          || broker.hasConnectionError()
+          || broker.getNumLostConnections() != ieCtx.initNumLostConnections)
+      {
+        // publish failed - store the error in the ieContext ...
+        DirectoryException de = new DirectoryException(ResultCode.OTHER,
+            ERR_INIT_RS_DISCONNECTION_DURING_EXPORT.get(broker.getRsServerId()));
+        ieCtx.setExceptionIfNoneSet(de);
+        // .. and abandon the export by throwing an exception.
+        throw new IOException(de.getMessage());
+      }
 
-    // process any publish error
-    if (!sent
-        || broker.hasConnectionError()
-        || broker.getNumLostConnections() != ieCtx.initNumLostConnections)
-    {
-      // publish failed - store the error in the ieContext ...
-      DirectoryException de = new DirectoryException(ResultCode.OTHER,
-          ERR_INIT_RS_DISCONNECTION_DURING_EXPORT.get(broker.getRsServerId()));
-      ieCtx.setExceptionIfNoneSet(de);
-      // .. and abandon the export by throwing an exception.
-      throw new IOException(de.getMessage());
+      // publish succeeded
+      try
+      {
+        ieCtx.updateCounters(countEntryLimits(lDIFEntry, pos, length));
+      }
+      catch (DirectoryException de)
+      {
+        ieCtx.setExceptionIfNoneSet(de);
+        // .. and abandon the export by throwing an exception.
+        throw new IOException(de.getMessage());
+      }
     }
+  }
 
-    // publish succeeded
-    try
-    {
-      ieCtx.updateCounters(countEntryLimits(lDIFEntry, pos, length));
-    }
-    catch (DirectoryException de)
+  /**
+   * Returns the checksums of the ranges of local entries, to be compared by
+   * the provided source server, or null if it cannot compare them.
+   */
+  private long[] getRangeChecksumsForDelta(int source) throws DirectoryException
+  {
+    if (broker.getProtocolVersion() < ProtocolVersion.REPLICATION_PROTOCOL_V11
+        || getProtocolVersion(source) < ProtocolVersion.REPLICATION_PROTOCOL_V11)
     {
-      ieCtx.setExceptionIfNoneSet(de);
-      // .. and abandon the export by throwing an exception.
-      throw new IOException(de.getMessage());
+      return null;
     }
+    return computeRangeChecksums(getNbRanges(countEntries()));
+  }
+
+  /**
+   * Returns the number of ranges the entries are split into for a delta
+   * update: about {@value #ENTRIES_PER_RANGE} entries per range, rounded to a
+   * power of two between {@value #MIN_NB_RANGES} and {@value #MAX_NB_RANGES}.
+   * More ranges transfer fewer entries per range that differ, but make the
+   * request for initialization bigger: 8 bytes per range.
+   *
+   * @param nbEntries the number of entries of the domain
+   * @return the number of ranges
+   */
+  static int getNbRanges(long nbEntries)
+  {
+    final long nbRanges = Long.highestOneBit(Math.max(nbEntries / ENTRIES_PER_RANGE, 1));
+    return (int) Math.max(MIN_NB_RANGES, Math.min(nbRanges, MAX_NB_RANGES));
   }
 
   /**
@@ -2180,6 +2573,37 @@ public abstract class ReplicationDomain
    */
   public void initializeFromRemote(int source, Task initTask)
   throws DirectoryException
+  {
+    initializeFromRemote(source, initTask, false);
+  }
+
+  /**
+   * Initializes asynchronously this domain from a remote source server,
+   * possibly only transferring the entries that differ.
+   * <p>
+   * When {@code delta} is true, the checksums of the ranges of local entries
+   * are sent with the request for initialization, and the remote source
+   * server only sends the entries of the ranges that differ. This requires
+   * both servers to hold replicas of the same data, for example when this
+   * server missed changes already purged from the changelog. All the entries
+   * are transferred when the remote source server cannot compare ranges.
+   *
+   * @param source   The server-id of the source from which to initialize.
+   *                 The source can be discovered using the
+   *                 {@link #getReplicaInfos()} method.
+   *
+   * @param initTask The task that launched the initialization
+   *                 and should be updated of its progress.
+   *
+   * @param delta    Whether only the ranges of entries that differ should be
+   *                 transferred.
+   *
+   * @throws DirectoryException If it was not possible to publish the
+   *                            Initialization message to the Topology.
+   *                            The task state is updated.
+   */
+  public void initializeFromRemote(int source, Task initTask, boolean delta)
+  throws DirectoryException
   {
     if (logger.isTraceEnabled())
     {
@@ -2212,6 +2636,18 @@ public abstract class ReplicationDomain
       ieCtx.attemptCnt = 0;
       ieCtx.initReqMsgSent = new InitializeRequestMsg(
           getBaseDN(), getServerId(), source, getInitWindow());
+      if (delta)
+      {
+        final long[] rangeChecksums = getRangeChecksumsForDelta(source);
+        if (rangeChecksums != null)
+        {
+          ieCtx.initReqMsgSent.setRangeChecksums(rangeChecksums);
+        }
+        else
+        {
+          logger.info(NOTE_FULL_UPDATE_DELTA_NOT_POSSIBLE, getBaseDN(), source);
+        }
+      }
       broker.publish(ieCtx.initReqMsgSent);
 
       /*
@@ -2292,7 +2728,19 @@ public abstract class ReplicationDomain
       initFromTask = (InitializeTask) ieCtx.initializeTask;
 
       // Launch the import
-      importBackend(new ReplInputStream(this));
+      if (initTargetMsgReceived.getNbRanges() > 0)
+      {
+        importRanges(new ReplInputStream(this), initTargetMsgReceived.getNbRanges(),
+            initTargetMsgReceived.getDeltaRanges(), initTargetMsgReceived.getDeltaState());
+      }
+      else if (initTargetMsgReceived.getNbPartitions() > 0)
+      {
+        importPartitions(ieCtx, initTargetMsgReceived);
+      }
+      else
+      {
+        importBackend(new ReplInputStream(this));
+      }
     }
     catch (DirectoryException e)
     {
@@ -2345,6 +2793,12 @@ public abstract class ReplicationDomain
             logger.info(NOTE_RESENDING_INIT_FROM_REMOTE_REQUEST,
                 ieCtx.getException().getLocalizedMessage());
 
+            if (ieCtx.partitionSpool != null)
+            {
+              // Only request the partitions not received yet
+              ieCtx.initReqMsgSent.setCompletedPartitions(ieCtx.partitionSpool.getPartitionBounds(),
+                  ieCtx.partitionSpool.getResumablePartitions(getBaseDN()));
+            }
             broker.publish(ieCtx.initReqMsgSent);
 
             ieCtx.initializeCounters(0);
@@ -2403,11 +2857,60 @@ public abstract class ReplicationDomain
         String errorMsg = ieCtx.getException() != null ? ieCtx.getException().getLocalizedMessage() : "";
         logger.info(NOTE_FULL_UPDATE_ENGAGED_FROM_REMOTE_END,
             getBaseDN(), initTargetMsgReceived.getSenderID(), getServerId(), errorMsg);
+        if (ieCtx.partitionSpool != null)
+        {
+          ieCtx.partitionSpool.delete();
+        }
         releaseIEContext();
       } // finally
     } // finally
   }
 
+  /**
+   * Receives the partitions sent in parallel by the exporter into the
+   * partition spool, then imports them all at once. The partitions already
+   * received by a previous attempt, and skipped by the exporter, are kept.
+   */
+  private void importPartitions(ImportExportContext ieCtx,
+      InitializeTargetMsg initTargetMsgReceived) throws DirectoryException
+  {
+    if (ieCtx.partitionSpool == null)
+    {
+      ieCtx.partitionSpool = new PartitionSpool(getFileForPath(
+          "import-tmp" + File.separator + "replication-" + getBaseDN().toNormalizedUrlSafeString()));
+    }
+    final PartitionSpool spool = ieCtx.partitionSpool;
+    try
+    {
+      spool.start(initTargetMsgReceived.getPartitionBounds(), initTargetMsgReceived.getSkippedPartitions());
+      EntryMsg entryMsg;
+      while ((entryMsg = receiveEntryMsg()) != null)
+      {
+        if (entryMsg.getEntryBytes().length > 0)
+        {
+          spool.write(entryMsg.getPartition(), entryMsg.getEntryBytes());
+        }
+        if (entryMsg.isEndOfPartition())
+        {
+          spool.endPartition(entryMsg.getPartition());
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      logger.traceException(e);
+      throw new DirectoryException(ResultCode.OTHER,
+          ERR_INIT_PARTITION_SPOOL_FAILURE.get(spool, e.getLocalizedMessage()), e);
+    }
+
+    if (ieCtx.getException() == null && spool.isComplete())
+    {
+      logger.info(NOTE_FULL_UPDATE_PARTITIONS_RECEIVED, spool.getNbPartitions(), getBaseDN(),
+          initTargetMsgReceived.getSenderID(), spool);
+      importBackend(spool.getPartitionFiles());
+    }
+  }
+
   /**
    * Return the protocol version of the DS related to the provided serverId.
    * Returns -1 when the protocol version is not known.
@@ -2690,6 +3193,16 @@ public abstract class ReplicationDomain
     return broker != null && broker.isSessionEncrypted();
   }
 
+  /**
+   * Returns the session with the replication server.
+   *
+   * @return the session with the replication server, or null if not connected.
+   */
+  Session getSession()
+  {
+    return broker != null ? broker.getSession() : null;
+  }
+
   /**
    * Check if the domain is connected to a ReplicationServer.
    *
@@ -3150,6 +3663,159 @@ public abstract class ReplicationDomain
   protected abstract void importBackend(InputStream input)
            throws DirectoryException;
 
+  /**
+   * Returns the number of partitions the replicated data can be split into,
+   * for exporting them in parallel to the servers being initialized.
+   * <p>
+   * The default implementation returns 1: the replicated data are exported as
+   * a single stream by {@link #exportBackend(OutputStream)}.
+   *
+   * @return the number of partitions, 1 if the replicated data cannot be
+   *         exported in parallel
+   */
+  protected int getExportPartitionCount()
+  {
+    return 1;
+  }
+
+  /**
+   * Splits the replicated data into partitions of similar sizes, for
+   * exporting them in parallel. It is called once per total update, before
+   * exporting the partitions, only if {@link #getExportPartitionCount()}
+   * returns more than 1. The bounds must start at 0, end at
+   * {@link Long#MAX_VALUE} and be increasing, otherwise the replicated data
+   * are exported as a single stream.
+   *
+   * @param nbPartitions         The number of partitions.
+   * @return The {@code nbPartitions + 1} bounds of the partitions.
+   * @throws DirectoryException  When the replicated data cannot be split.
+   */
+  protected long[] getExportPartitionBounds(int nbPartitions) throws DirectoryException
+  {
+    throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+        ERR_PARTITIONED_EXPORT_NOT_SUPPORTED.get(getBaseDN()));
+  }
+
+  /**
+   * This method should trigger an export of one partition of the replicated
+   * data to the provided outputStream. It is called in parallel for the
+   * different partitions, with the bounds returned by
+   * {@link #getExportPartitionBounds(int)}.
+   * When finished the outputStream should be flushed and closed.
+   *
+   * @param output               The OutputStream where the export should
+   *                             be produced.
+   * @param lowerBound           The lower bound of the partition, included.
+   * @param upperBound           The upper bound of the partition, excluded.
+   * @throws DirectoryException  When needed.
+   */
+  protected void exportBackend(OutputStream output, long lowerBound, long upperBound)
+      throws DirectoryException
+  {
+    throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+        ERR_PARTITIONED_EXPORT_NOT_SUPPORTED.get(getBaseDN()));
+  }
+
+  /**
+   * This method should trigger an import of the replicated data from the
+   * provided LDIF files, holding the partitions received during a partitioned
+   * total update.
+   * <p>
+   * The default implementation imports the files one after the other through
+   * {@link #importBackend(InputStream)}.
+   *
+   * @param ldifFiles            The LDIF files to import.
+   *
+   * @throws DirectoryException  When needed.
+   */
+  protected void importBackend(List<File> ldifFiles) throws DirectoryException
+  {
+    final List<InputStream> inputs = new ArrayList<>(ldifFiles.size());
+    try
+    {
+      for (File ldifFile : ldifFiles)
+      {
+        inputs.add(new FileInputStream(ldifFile));
+      }
+      importBackend(new SequenceInputStream(Collections.enumeration(inputs)));
+    }
+    catch (FileNotFoundException e)
+    {
+      throw new DirectoryException(ResultCode.OTHER,
+          ERR_INIT_IMPORT_FAILURE.get(e.getLocalizedMessage()), e);
+    }
+    finally
+    {
+      close(inputs);
+    }
+  }
+
+  /**
+   * Computes the checksums of the replicated data, split into the provided
+   * number of ranges. Two replicas holding the same data in a range must
+   * compute the same checksum for this range, whatever the order in which
+   * the data were written.
+   * <p>
+   * The default implementation returns null: the replicated data are always
+   * transferred as a whole.
+   *
+   * @param nbRanges             The number of ranges.
+   * @return the checksum of each range, or null if the replicated data
+   *         cannot be compared by ranges
+   * @throws DirectoryException  When needed.
+   */
+  protected long[] computeRangeChecksums(int nbRanges) throws DirectoryException
+  {
+    return null;
+  }
+
+  /**
+   * This method should trigger an export of the replicated data of the
+   * provided ranges to the provided outputStream. It is only called if
+   * {@link #computeRangeChecksums(int)} returned checksums, so the default
+   * implementation fails.
+   * When finished the outputStream should be flushed and closed.
+   *
+   * @param output               The OutputStream where the export should
+   *                             be produced.
+   * @param nbRanges             The number of ranges the replicated data are
+   *                             split into.
+   * @param ranges               The ranges to export.
+   * @throws DirectoryException  When needed, or when the replicated data
+   *                             cannot be compared by ranges.
+   */
+  protected void exportRanges(OutputStream output, int nbRanges, Set<Integer> ranges)
+      throws DirectoryException
+  {
+    // Only called once computeRangeChecksums() returned checksums
+    throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+        ERR_RANGE_UPDATE_NOT_SUPPORTED.get(getBaseDN()));
+  }
+
+  /**
+   * This method should replace the replicated data of the provided ranges by
+   * the data read from the provided input, then take the provided server
+   * state. The replicated data of the other ranges must be kept.
+   * It is only called if {@link #computeRangeChecksums(int)} returned
+   * checksums, so the default implementation fails.
+   *
+   * @param input                The InputStream from which the data are read.
+   * @param nbRanges             The number of ranges the replicated data are
+   *                             split into.
+   * @param ranges               The ranges to replace.
+   * @param state                The server state of the exporter when the
+   *                             ranges were compared.
+   * @throws DirectoryException  When needed, or when the replicated data
+   *                             cannot be compared by ranges.
+   */
+  protected void importRanges(InputStream input, int nbRanges, Set<Integer> ranges, ServerState state)
+      throws DirectoryException
+  {
+    // Only called once computeRangeChecksums() returned checksums
+    throw new DirectoryException(ResultCode.UNWILLING_TO_PERFORM,
+        ERR_RANGE_UPDATE_NOT_SUPPORTED.get(getBaseDN()));
+  }
+
   /**
    * This method should return the total number of objects in the
    * replicated domain.
@@ -24,6 +24,7 @@ import java.util.Map.Entry;
 import org.opends.server.api.MonitorData;
 import org.forgerock.opendj.server.config.server.MonitorProviderCfg;
 import org.opends.server.api.MonitorProvider;
+import org.opends.server.replication.protocol.Session;
 import org.opends.server.replication.service.ReplicationDomain.ImportExportContext;
 
 /**
@@ -86,6 +87,11 @@ public class ReplicationMonitor extends MonitorProvider<MonitorProviderCfg>
 
     attributes.add("server-state", domain.getServerState().toStringSet());
     attributes.add("ssl-encryption", domain.isSessionEncrypted());
+    final Session session = domain.getSession();
+    if (session != null)
+    {
+      session.addCompressionMonitorData(attributes);
+    }
     attributes.add("generation-id", domain.getGenerationID());
 
     // Add import/export monitoring attributes
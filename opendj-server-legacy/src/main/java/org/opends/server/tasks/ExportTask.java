@@ -76,11 +76,15 @@ public class ExportTask extends Task
     argDisplayMap.put(ATTR_TASK_EXPORT_INCLUDE_BRANCH, INFO_EXPORT_ARG_INCL_BRANCH.get());
     argDisplayMap.put(ATTR_TASK_EXPORT_EXCLUDE_BRANCH, INFO_EXPORT_ARG_EXCL_BRANCH.get());
     argDisplayMap.put(ATTR_TASK_EXPORT_WRAP_COLUMN, INFO_EXPORT_ARG_WRAP_COLUMN.get());
+    argDisplayMap.put(ATTR_TASK_EXPORT_THREAD_COUNT, INFO_EXPORT_ARG_THREAD_COUNT.get());
+    argDisplayMap.put(ATTR_TASK_EXPORT_PART_FILES, INFO_EXPORT_ARG_PART_FILES.get());
   }
 
   private String  ldifFile;
   private String  backendID;
   private int     wrapColumn;
+  private int     threadCount;
+  private boolean writePartFiles;
   private boolean appendToLDIF;
   private boolean compressLDIF;
   private boolean encryptLDIF;
@@ -154,6 +158,9 @@ public class ExportTask extends Task
 
     List<Attribute> attrList = taskEntry.getAttribute(typeWrapColumn);
     wrapColumn = TaskUtils.getSingleValueInteger(attrList, 0);
+    threadCount = TaskUtils.getSingleValueInteger(
+        taskEntry.getAttribute(getSchema().getAttributeType(ATTR_TASK_EXPORT_THREAD_COUNT)), 1);
+    writePartFiles = toBoolean(taskEntry, false, ATTR_TASK_EXPORT_PART_FILES);
 
     includeOperationalAttributes = toBoolean(taskEntry, true, ATTR_TASK_EXPORT_INCLUDE_OPERATIONAL_ATTRIBUTES);
   }
@@ -353,6 +360,8 @@ public class ExportTask extends Task
     exportConfig.setIncludeFilters(includeFilters);
     exportConfig.setSignHash(signHash);
     exportConfig.setWrapColumn(wrapColumn);
+    exportConfig.setThreadCount(threadCount);
+    exportConfig.setWritePartFiles(writePartFiles);
     exportConfig.setIncludeOperationalAttributes(includeOperationalAttributes);
 
     // FIXME -- Should this be conditional?
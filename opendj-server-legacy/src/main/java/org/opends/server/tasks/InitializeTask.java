@@ -46,6 +46,7 @@ public class InitializeTask extends Task
 
   private String domainString;
   private int  source;
+  private boolean delta;
   private LDAPReplicationDomain domain;
   private TaskState initState;
 
@@ -97,6 +98,9 @@ public class InitializeTask extends Task
     String sourceString = TaskUtils.getSingleValueString(attrList);
     source = domain.decodeSource(sourceString);
 
+    AttributeType typeDelta = getSchema().getAttributeType(ATTR_TASK_INITIALIZE_DELTA);
+    delta = TaskUtils.getBoolean(taskEntry.getAttribute(typeDelta), false);
+
     replaceAttributeValue(ATTR_TASK_INITIALIZE_LEFT, String.valueOf(0));
     replaceAttributeValue(ATTR_TASK_INITIALIZE_DONE, String.valueOf(0));
   }
@@ -113,7 +117,7 @@ public class InitializeTask extends Task
     try
     {
       // launch the import
-      domain.initializeFromRemote(source, this);
+      domain.initializeFromRemote(source, this, delta);
 
       synchronized(initState)
       {
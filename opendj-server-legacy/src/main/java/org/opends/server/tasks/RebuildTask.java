@@ -61,6 +61,7 @@ public class RebuildTask extends Task
   private String tmpDirectory;
   private RebuildMode rebuildMode = RebuildMode.USER_DEFINED;
   private boolean isClearDegradedState;
+  private boolean isOnline;
 
   /** {@inheritDoc} */
   @Override
@@ -94,6 +95,7 @@ public class RebuildTask extends Task
     tmpDirectory = asString(taskEntry, ATTR_REBUILD_TMP_DIRECTORY);
     final String val = asString(taskEntry, ATTR_REBUILD_INDEX_CLEARDEGRADEDSTATE);
     isClearDegradedState = Boolean.parseBoolean(val);
+    isOnline = Boolean.parseBoolean(asString(taskEntry, ATTR_REBUILD_INDEX_ONLINE));
 
     AttributeType typeIndex = getSchema().getAttributeType(ATTR_REBUILD_INDEX);
     List<Attribute> attrList = taskEntry.getAttribute(typeIndex);
@@ -157,6 +159,9 @@ public class RebuildTask extends Task
     // The degraded state is set(if present in args)
     // during the initialization.
     rebuildConfig.isClearDegradedState(isClearDegradedState);
+    rebuildConfig.setOnline(isOnline);
+    // Online rebuilds and clearing the degraded state keep the backend enabled.
+    final boolean keepBackendEnabled = isClearDegradedState || isOnline;
     boolean isBackendNeedToBeEnabled = false;
 
     if (tmpDirectory == null)
@@ -179,13 +184,13 @@ public class RebuildTask extends Task
     }
 
     // If we are rebuilding one or more system indexes, we have
-    // to acquire exclusive lock. Shared lock in 'cleardegradedstate' mode.
+    // to acquire exclusive lock. Shared lock in 'cleardegradedstate' and online modes.
     String lockFile = LockFileManager.getBackendLockFileName(backend);
     StringBuilder failureReason = new StringBuilder();
 
     // Disable the backend
-    // Except in 'cleardegradedstate' mode we don't need to disable it.
-    if (!isClearDegradedState)
+    // Except in 'cleardegradedstate' and online modes we don't need to disable it.
+    if (!keepBackendEnabled)
     {
       try
       {
@@ -282,7 +287,7 @@ public class RebuildTask extends Task
     // The backend must be enabled only if the task is successful
     // for prevent potential risks of database corruption.
     if ((returnCode == TaskState.COMPLETED_SUCCESSFULLY || isBackendNeedToBeEnabled)
-        && !isClearDegradedState)
+        && !keepBackendEnabled)
     {
       // Enable the backend.
       try
@@ -113,6 +113,8 @@ public class ExportLDIF extends TaskTool {
   private BooleanArgument excludeOperationalAttrs;
   private BooleanArgument signHash;
   private IntegerArgument wrapColumn;
+  private IntegerArgument threadCount;
+  private BooleanArgument partFiles;
   private StringArgument  backendID;
   private StringArgument  configFile;
   private StringArgument  excludeAttributeStrings;
@@ -221,6 +223,17 @@ public class ExportLDIF extends TaskTool {
                       .defaultValue(0)
                       .valuePlaceholder(INFO_WRAP_COLUMN_PLACEHOLDER.get())
                       .buildAndAddToParser(argParser);
+      threadCount =
+              IntegerArgument.builder("threadCount")
+                      .description(INFO_LDIFEXPORT_DESCRIPTION_THREAD_COUNT.get())
+                      .lowerBound(1)
+                      .defaultValue(1)
+                      .valuePlaceholder(INFO_LDIFEXPORT_THREAD_COUNT_PLACEHOLDER.get())
+                      .buildAndAddToParser(argParser);
+      partFiles =
+              BooleanArgument.builder("partFiles")
+                      .description(INFO_LDIFEXPORT_DESCRIPTION_PART_FILES.get())
+                      .buildAndAddToParser(argParser);
       compressLDIF =
               BooleanArgument.builder(OPTION_LONG_COMPRESS)
                       .shortIdentifier(OPTION_SHORT_COMPRESS)
@@ -312,6 +325,8 @@ public class ExportLDIF extends TaskTool {
     addAttribute(attributes, ATTR_TASK_EXPORT_INCLUDE_BRANCH, includeBranchStrings.getValues());
     addAttribute(attributes, ATTR_TASK_EXPORT_EXCLUDE_BRANCH, excludeBranchStrings.getValues());
     addAttribute(attributes, ATTR_TASK_EXPORT_WRAP_COLUMN, wrapColumn);
+    addAttribute(attributes, ATTR_TASK_EXPORT_THREAD_COUNT, threadCount);
+    addAttribute(attributes, ATTR_TASK_EXPORT_PART_FILES, partFiles);
 
     if (excludeOperationalAttrs.isPresent())
     {
@@ -554,6 +569,7 @@ public class ExportLDIF extends TaskTool {
     exportConfig.setSignHash(signHash.isPresent());
     exportConfig.setIncludeOperationalAttributes(
                       !excludeOperationalAttrs.isPresent());
+    exportConfig.setWritePartFiles(partFiles.isPresent());
 
     // FIXME -- Should this be conditional?
     exportConfig.setInvokeExportPlugins(true);
@@ -568,6 +584,16 @@ public class ExportLDIF extends TaskTool {
       return 1;
     }
 
+    try
+    {
+      exportConfig.setThreadCount(threadCount.getIntValue());
+    }
+    catch (ArgumentException ae)
+    {
+      logger.error(ERR_LDIFEXPORT_CANNOT_DECODE_THREAD_COUNT_AS_INTEGER, threadCount.getValue());
+      return 1;
+    }
+
 
     // Get the set of base DNs for the backend as an array.
     DN[] baseDNs = new DN[baseDNList.size()];
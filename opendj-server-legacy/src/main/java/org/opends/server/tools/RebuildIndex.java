@@ -71,6 +71,7 @@ public class RebuildIndex extends TaskTool
   private BooleanArgument rebuildAll;
   private BooleanArgument rebuildDegraded;
   private BooleanArgument clearDegradedState;
+  private BooleanArgument online;
 
   private final LDAPConnectionArgumentParser argParser = createArgParser(
       "org.opends.server.tools.RebuildIndex",
@@ -195,6 +196,18 @@ public class RebuildIndex extends TaskTool
       return 1;
     }
 
+    if (rebuildAll.isPresent() && online.isPresent())
+    {
+      argParser.displayMessageAndUsageReference(err, ERR_REBUILDINDEX_REBUILD_ALL_DEGRADED_ERROR.get("online"));
+      return 1;
+    }
+
+    if (online.isPresent() && clearDegradedState.isPresent())
+    {
+      argParser.displayMessageAndUsageReference(err, ERR_REBUILDINDEX_ONLINE_ERROR.get("clearDegradedState"));
+      return 1;
+    }
+
     // Checks the version - if upgrade required, the tool is unusable
     try
     {
@@ -260,6 +273,10 @@ public class RebuildIndex extends TaskTool
             BooleanArgument.builder("clearDegradedState")
                     .description(INFO_REBUILDINDEX_DESCRIPTION_CLEAR_DEGRADED_STATE.get())
                     .buildAndAddToParser(argParser);
+    online =
+            BooleanArgument.builder("online")
+                    .description(INFO_REBUILDINDEX_DESCRIPTION_ONLINE.get())
+                    .buildAndAddToParser(argParser);
     tmpDirectory =
             StringArgument.builder("tmpdirectory")
                     .description(INFO_REBUILDINDEX_DESCRIPTION_TEMP_DIRECTORY.get())
@@ -396,6 +413,7 @@ public class RebuildIndex extends TaskTool
       config.setRebuildMode(RebuildMode.USER_DEFINED);
     }
 
+    config.setOnline(online.isPresent());
     config.setTmpDirectory(tmpDirectory.getValue());
     return config;
   }
@@ -623,6 +641,11 @@ public class RebuildIndex extends TaskTool
     {
       addLdapAttribute(attributes, ATTR_REBUILD_INDEX_CLEARDEGRADEDSTATE, "true");
     }
+
+    if (hasNonDefaultValue(online))
+    {
+      addLdapAttribute(attributes, ATTR_REBUILD_INDEX_ONLINE, "true");
+    }
   }
 
   private void addLdapAttribute(List<RawAttribute> attributes, String attrType, String attrValue)
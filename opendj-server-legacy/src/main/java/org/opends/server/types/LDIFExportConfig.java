@@ -22,8 +22,10 @@ import static org.opends.server.util.StaticUtils.*;
 import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
@@ -35,6 +37,7 @@ import java.util.zip.GZIPOutputStream;
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.opendj.ldap.schema.AttributeType;
+import org.forgerock.util.Reject;
 import org.opends.server.util.StaticUtils;
 
 /**
@@ -103,6 +106,15 @@ public final class LDIFExportConfig extends OperationConfig
   /** The set of attribute types that should be included in the export. */
   private Set<AttributeType> includeAttributes;
 
+  /** The lower bound of the partition of the backend to export, included. */
+  private long partitionLowerBound;
+  /** The upper bound of the partition of the backend to export, excluded. */
+  private long partitionUpperBound = Long.MAX_VALUE;
+  /** The number of threads exporting ranges of entries in parallel, 1 when the entries are exported sequentially. */
+  private int threadCount = 1;
+  /** Indicates whether each range of entries is left in its own part file rather than merged into the LDIF file. */
+  private boolean writePartFiles;
+
   /**
    * Creates a new LDIF export configuration that will write to the
    * specified LDIF file.
@@ -187,59 +199,7 @@ public final class LDIFExportConfig extends OperationConfig
     {
       if (ldifOutputStream == null)
       {
-        File f = new File(ldifFile);
-        boolean mustSetPermissions = false;
-
-        switch (existingFileBehavior)
-        {
-        case APPEND:
-          // Create new file if it doesn't exist ensuring that we can
-          // set its permissions.
-          if (!f.exists())
-          {
-            f.createNewFile();
-            mustSetPermissions = true;
-          }
-          ldifOutputStream = new FileOutputStream(ldifFile, true);
-          break;
-        case OVERWRITE:
-          // Create new file if it doesn't exist ensuring that we can
-          // set its permissions.
-          if (!f.exists())
-          {
-            f.createNewFile();
-            mustSetPermissions = true;
-          }
-          ldifOutputStream = new FileOutputStream(ldifFile, false);
-          break;
-        case FAIL:
-          if (f.exists())
-          {
-            LocalizableMessage message = ERR_LDIF_FILE_EXISTS.get(ldifFile);
-            throw new IOException(message.toString());
-          }
-          // Create new file ensuring that we can set its permissions.
-          f.createNewFile();
-          mustSetPermissions = true;
-          ldifOutputStream = new FileOutputStream(ldifFile);
-          break;
-        }
-
-        if (mustSetPermissions)
-        {
-          try
-          {
-            // Ignore
-            FilePermission.setSafePermissions(f, 0600);
-          }
-          catch (Exception e)
-          {
-            // The file could not be created with the correct permissions.
-            LocalizableMessage message = WARN_EXPORT_LDIF_SET_PERMISSION_FAILED
-                .get(f, stackTraceToSingleLineString(e));
-            throw new IOException(message.toString());
-          }
-        }
+        ldifOutputStream = openLDIFFile();
       }
 
       // See if we should compress the output.
@@ -268,6 +228,68 @@ public final class LDIFExportConfig extends OperationConfig
     return writer;
   }
 
+  /** Opens the LDIF file according to the behavior specified for an existing file. */
+  private OutputStream openLDIFFile() throws IOException
+  {
+    final OutputStream outputStream;
+    File f = new File(ldifFile);
+    boolean mustSetPermissions = false;
+
+    switch (existingFileBehavior)
+    {
+    case APPEND:
+      // Create new file if it doesn't exist ensuring that we can
+      // set its permissions.
+      if (!f.exists())
+      {
+        f.createNewFile();
+        mustSetPermissions = true;
+      }
+      outputStream = new FileOutputStream(ldifFile, true);
+      break;
+    case OVERWRITE:
+      // Create new file if it doesn't exist ensuring that we can
+      // set its permissions.
+      if (!f.exists())
+      {
+        f.createNewFile();
+        mustSetPermissions = true;
+      }
+      outputStream = new FileOutputStream(ldifFile, false);
+      break;
+    case FAIL:
+      if (f.exists())
+      {
+        LocalizableMessage message = ERR_LDIF_FILE_EXISTS.get(ldifFile);
+        throw new IOException(message.toString());
+      }
+      // Create new file ensuring that we can set its permissions.
+      f.createNewFile();
+      mustSetPermissions = true;
+      outputStream = new FileOutputStream(ldifFile);
+      break;
+    default:
+      throw new IllegalStateException("Unexpected behavior " + existingFileBehavior);
+    }
+
+    if (mustSetPermissions)
+    {
+      try
+      {
+        // Ignore
+        FilePermission.setSafePermissions(f, 0600);
+      }
+      catch (Exception e)
+      {
+        // The file could not be created with the correct permissions.
+        LocalizableMessage message = WARN_EXPORT_LDIF_SET_PERMISSION_FAILED
+            .get(f, stackTraceToSingleLineString(e));
+        throw new IOException(message.toString());
+      }
+    }
+    return outputStream;
+  }
+
   /**
    * Indicates whether the LDIF export plugins should be invoked for
    * entries as they are exported.
@@ -816,11 +838,257 @@ public final class LDIFExportConfig extends OperationConfig
     return true;
   }
 
+  /**
+   * Indicates whether only one partition of the backend should be
+   * exported.
+   *
+   * @return  <CODE>true</CODE> if only one partition of the backend
+   *          should be exported, or <CODE>false</CODE> if the whole
+   *          backend should be exported.
+   */
+  public boolean isPartitioned()
+  {
+    return partitionLowerBound != 0 || partitionUpperBound != Long.MAX_VALUE;
+  }
+
+  /**
+   * Retrieves the lower bound of the partition of the backend to
+   * export.
+   *
+   * @return  The lower bound of the partition to export, included.
+   */
+  public long getPartitionLowerBound()
+  {
+    return partitionLowerBound;
+  }
+
+  /**
+   * Retrieves the upper bound of the partition of the backend to
+   * export.
+   *
+   * @return  The upper bound of the partition to export, excluded.
+   */
+  public long getPartitionUpperBound()
+  {
+    return partitionUpperBound;
+  }
+
+  /**
+   * Specifies that only one partition of the backend should be
+   * exported, so that the partitions can be exported in parallel. The
+   * bounds must come from
+   * {@link org.opends.server.api.Backend#getLDIFExportPartitionBounds(
+   * org.forgerock.opendj.ldap.DN, int)}, which is called once for all
+   * the partitions of an export: bounds computed separately for each
+   * partition could overlap or leave gaps while the backend is
+   * updated.
+   *
+   * @param  lowerBound  The lower bound of the partition to export,
+   *                     included.
+   * @param  upperBound  The upper bound of the partition to export,
+   *                     excluded.
+   */
+  public void setPartitionBounds(long lowerBound, long upperBound)
+  {
+    Reject.ifFalse(0 <= lowerBound && lowerBound < upperBound, "Invalid partition bounds");
+    this.partitionLowerBound = lowerBound;
+    this.partitionUpperBound = upperBound;
+  }
+
+  /**
+   * Retrieves the number of threads exporting ranges of entries in
+   * parallel.
+   *
+   * @return  The number of threads exporting ranges of entries in
+   *          parallel, 1 if the entries are exported sequentially.
+   */
+  public int getThreadCount()
+  {
+    return threadCount;
+  }
+
+  /**
+   * Specifies the number of threads exporting ranges of entries in
+   * parallel. Each thread writes its range of entries to its own part
+   * file, see {@link #getPartFile(int)}. The part files are then
+   * merged into the LDIF file, unless they should be kept as is. This
+   * is ignored when writing to an output stream, when exporting a
+   * partition of the backend, and by the backends which do not
+   * support it.
+   *
+   * @param  threadCount  The number of threads exporting ranges of
+   *                      entries in parallel.
+   */
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Indicates whether the part files written by the threads exporting
+   * in parallel are kept as is rather than merged into the LDIF file.
+   *
+   * @return  <CODE>true</CODE> if the part files are kept as is, or
+   *          <CODE>false</CODE> if they are merged into the LDIF file.
+   */
+  public boolean writePartFiles()
+  {
+    return writePartFiles;
+  }
+
+  /**
+   * Specifies whether the part files written by the threads exporting
+   * in parallel are kept as is rather than merged into the LDIF file.
+   * When compressed, the part files can be imported in parallel.
+   *
+   * @param  writePartFiles  Indicates whether the part files are kept
+   *                         as is.
+   */
+  public void setWritePartFiles(boolean writePartFiles)
+  {
+    this.writePartFiles = writePartFiles;
+  }
+
+  /**
+   * Retrieves the number of parts exported in parallel.
+   *
+   * @return  The number of parts exported in parallel, 1 if the
+   *          entries are exported sequentially.
+   */
+  public int getNbParts()
+  {
+    return threadCount > 1 && ldifFile != null && !isPartitioned() ? threadCount : 1;
+  }
+
+  /**
+   * Retrieves the path to the file to which a part of the entries is
+   * exported, when exporting in parallel.
+   *
+   * @param  part  The part, between 0 and {@link #getNbParts()}
+   *               excluded.
+   *
+   * @return  The path to the file to which the part is exported.
+   */
+  public String getPartFile(int part)
+  {
+    return String.format("%s.part%03d", ldifFile, part);
+  }
+
+  /**
+   * Creates the configuration for exporting a part of the entries to
+   * its part file, with the same settings as this configuration.
+   *
+   * @param  part  The part, between 0 and {@link #getNbParts()}
+   *               excluded.
+   *
+   * @return  The configuration for exporting the part.
+   */
+  public LDIFExportConfig newPartConfig(int part)
+  {
+    final LDIFExportConfig partConfig = new LDIFExportConfig(
+        getPartFile(part), writePartFiles ? existingFileBehavior : ExistingFileBehavior.OVERWRITE);
+    partConfig.compressData = compressData;
+    partConfig.encryptData = encryptData;
+    partConfig.includeObjectClasses = includeObjectClasses;
+    partConfig.includeOperationalAttributes = includeOperationalAttributes;
+    partConfig.includeVirtualAttributes = includeVirtualAttributes;
+    partConfig.invokeExportPlugins = invokeExportPlugins;
+    partConfig.typesOnly = typesOnly;
+    partConfig.wrapColumn = wrapColumn;
+    partConfig.excludeBranches = excludeBranches;
+    partConfig.includeBranches = includeBranches;
+    partConfig.excludeFilters = excludeFilters;
+    partConfig.includeFilters = includeFilters;
+    partConfig.excludeAttributes = excludeAttributes;
+    partConfig.includeAttributes = includeAttributes;
+    return partConfig;
+  }
+
+  /**
+   * Prepares the files written by the threads exporting in parallel,
+   * before the threads are started, so that the export fails before
+   * any entry is written when the files cannot be written. The LDIF
+   * file into which the part files are merged is opened, according to
+   * the behavior specified for an existing file. When the part files
+   * are kept as is, none of them may already exist if the export
+   * should fail when a file exists.
+   *
+   * @throws  IOException  If the LDIF file cannot be opened, or if a
+   *                       part file already exists while it should
+   *                       not.
+   */
+  public void prepareParallelExport() throws IOException
+  {
+    if (!writePartFiles)
+    {
+      if (ldifOutputStream == null)
+      {
+        ldifOutputStream = openLDIFFile();
+      }
+    }
+    else if (existingFileBehavior == ExistingFileBehavior.FAIL)
+    {
+      for (int part = 0; part < getNbParts(); part++)
+      {
+        if (new File(getPartFile(part)).exists())
+        {
+          throw new IOException(ERR_LDIF_FILE_EXISTS.get(getPartFile(part)).toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Merges the part files written by the threads exporting in parallel
+   * into the LDIF file, in order, and then deletes them, even if the
+   * merge fails. Compressed part files are merged as is, a sequence of
+   * compressed members being valid compressed data.
+   *
+   * @throws  IOException  If a problem occurs while merging the part
+   *                       files.
+   */
+  public void mergePartFiles() throws IOException
+  {
+    try
+    {
+      prepareParallelExport();
+      final byte[] buffer = new byte[64 * 1024];
+      for (int part = 0; part < getNbParts(); part++)
+      {
+        try (InputStream inputStream = new FileInputStream(getPartFile(part)))
+        {
+          int length;
+          while ((length = inputStream.read(buffer)) > 0)
+          {
+            ldifOutputStream.write(buffer, 0, length);
+          }
+        }
+      }
+      ldifOutputStream.flush();
+    }
+    finally
+    {
+      deletePartFiles();
+    }
+  }
+
+  /**
+   * Deletes the part files written by the threads exporting in
+   * parallel, for instance after the export failed.
+   */
+  public void deletePartFiles()
+  {
+    for (int part = 0; part < getNbParts(); part++)
+    {
+      new File(getPartFile(part)).delete();
+    }
+  }
+
   /** Closes any resources that this export config might have open. */
   @Override
   public void close()
   {
     // FIXME -- Need to add code to generate a signed hash of the LDIF content.
-    StaticUtils.close(writer);
+    StaticUtils.close(writer, ldifOutputStream);
   }
 }
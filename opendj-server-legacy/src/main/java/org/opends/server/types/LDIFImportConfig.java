@@ -24,12 +24,15 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -61,6 +64,8 @@ public final class LDIFImportConfig extends OperationConfig
 
   /** The default buffer size that will be used when reading LDIF data. */
   private static final int DEFAULT_BUFFER_SIZE = 8192;
+  /** The minimum size of the parts of an LDIF file read in parallel. */
+  private static final long MIN_PART_SIZE = 4 * 1024 * 1024;
 
   /**
    * Indicates whether to include the objectclasses in the entries
@@ -296,6 +301,288 @@ public final class LDIFImportConfig extends OperationConfig
 
 
 
+  /**
+   * Retrieves readers over parts of the LDIF files, so that the parts
+   * can be read in parallel. The LDIF files are split into parts of
+   * similar sizes, each part starting at the beginning of an entry.
+   * Reading all the parts in the returned order reads the same
+   * entries in the same order as {@link #getReader()} and
+   * {@link #nextReader()} do.
+   * <p>
+   * LDIF data which is not read from files, or which is encrypted,
+   * cannot be split. Compressed LDIF files cannot be split either, but
+   * each one of several compressed LDIF files, such as the part files
+   * written by a parallel export, is read as a part.
+   * <p>
+   * Each reader tells the number of the first line of its part, as
+   * numbered when reading the LDIF files sequentially, except for
+   * compressed files whose lines are numbered from the first file of
+   * each part.
+   *
+   * @param  maxNbParts  The maximum number of parts to split the LDIF
+   *                     files into.
+   *
+   * @return  The readers over the parts of the LDIF files, or
+   *          <CODE>null</CODE> if the LDIF data cannot be split into
+   *          several parts.
+   *
+   * @throws  IOException  If a problem occurs while opening the LDIF
+   *                       files.
+   */
+  public List<PartReader> getPartReaders(int maxNbParts)
+         throws IOException
+  {
+    if (ldifFiles.isEmpty() || isEncrypted || maxNbParts <= 1)
+    {
+      return null;
+    }
+    if (isCompressed)
+    {
+      return getCompressedFileReaders(maxNbParts);
+    }
+
+    long totalSize = 0;
+    for (String ldifFile : ldifFiles)
+    {
+      totalSize += new File(ldifFile).length();
+    }
+    final List<PartReader> partReaders = new ArrayList<>();
+    try
+    {
+      // The number of lines before the current file, as counted when reading sequentially
+      long fileLineNumber = 0;
+      for (Iterator<String> it = ldifFiles.iterator(); it.hasNext();)
+      {
+        final String ldifFile = it.next();
+        try (RandomAccessFile file = new RandomAccessFile(ldifFile, "r"))
+        {
+          final long size = file.length();
+          final long nbParts = Math.max(1, Math.min(maxNbParts * size / Math.max(totalSize, 1), size / MIN_PART_SIZE));
+          // The newlines of the file before the current part
+          final long[] nbLines = { 0 };
+          long start = 0;
+          for (long i = 1; i <= nbParts && start < size; i++)
+          {
+            final long firstLineNumber = fileLineNumber + nbLines[0] + 1;
+            final long end =
+                i < nbParts ? findEntryStart(file, start, Math.max(start, size * i / nbParts), nbLines) : size;
+            partReaders.add(newPartReader(ldifFile, start, end, firstLineNumber));
+            start = end;
+          }
+          if (it.hasNext())
+          {
+            findEntryStart(file, start, size, nbLines);
+            // The last line may not end with a newline, and the end of each file is counted as a line
+            fileLineNumber += nbLines[0] + (size > 0 && !endsWithNewline(file) ? 1 : 0) + 1;
+          }
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      StaticUtils.close(partReaders);
+      throw e;
+    }
+
+    if (partReaders.size() <= 1)
+    {
+      StaticUtils.close(partReaders);
+      return null;
+    }
+    return partReaders;
+  }
+
+  /** Each part reads consecutive compressed files, as they cannot be split. */
+  private List<PartReader> getCompressedFileReaders(int maxNbParts) throws IOException
+  {
+    final int nbParts = Math.min(ldifFiles.size(), maxNbParts);
+    if (nbParts <= 1)
+    {
+      return null;
+    }
+    final List<PartReader> partReaders = new ArrayList<>(nbParts);
+    final List<InputStream> inputStreams = new ArrayList<>();
+    try
+    {
+      for (int i = 0; i < nbParts; i++)
+      {
+        inputStreams.clear();
+        final int end = ldifFiles.size() * (i + 1) / nbParts;
+        for (int j = ldifFiles.size() * i / nbParts; j < end; j++)
+        {
+          final FileInputStream fileStream = new FileInputStream(ldifFiles.get(j));
+          try
+          {
+            inputStreams.add(new GZIPInputStream(fileStream));
+          }
+          catch (IOException e)
+          {
+            StaticUtils.close(fileStream);
+            throw e;
+          }
+        }
+        final InputStream inputStream = new SequenceInputStream(Collections.enumeration(inputStreams));
+        // Counting the lines of the previous parts would need decompressing them
+        partReaders.add(new PartReader(new InputStreamReader(inputStream), bufferSize, 1));
+      }
+    }
+    catch (IOException e)
+    {
+      StaticUtils.close(inputStreams);
+      StaticUtils.close(partReaders);
+      throw e;
+    }
+    return partReaders;
+  }
+
+  /**
+   * Returns the position of the first entry starting at or after the
+   * provided position: a blank line ends an entry. The file is read from
+   * the provided start, so that the newlines between the start and the
+   * returned position are added to the provided number of lines.
+   */
+  private static long findEntryStart(RandomAccessFile file, long start, long position, long[] nbLines)
+      throws IOException
+  {
+    final byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+    long offset = start;
+    file.seek(offset);
+    // 0: in a line, 1: after '\n', 2: after "\n\r", only past the provided position
+    int state = 0;
+    int length;
+    while ((length = file.read(buffer)) > 0)
+    {
+      for (int i = 0; i < length; i++)
+      {
+        final byte b = buffer[i];
+        if (b == '\n')
+        {
+          nbLines[0]++;
+          if (state != 0)
+          {
+            return offset + i + 1;
+          }
+          state = offset + i >= position - 1 ? 1 : 0;
+        }
+        else
+        {
+          state = b == '\r' && state == 1 ? 2 : 0;
+        }
+      }
+      offset += length;
+    }
+    return file.length();
+  }
+
+  private static boolean endsWithNewline(RandomAccessFile file) throws IOException
+  {
+    file.seek(file.length() - 1);
+    return file.read() == '\n';
+  }
+
+  private PartReader newPartReader(String ldifFile, long start, long end, long firstLineNumber) throws IOException
+  {
+    final FileInputStream inputStream = new FileInputStream(ldifFile);
+    try
+    {
+      inputStream.getChannel().position(start);
+    }
+    catch (IOException e)
+    {
+      StaticUtils.close(inputStream);
+      throw e;
+    }
+    return new PartReader(new InputStreamReader(new PartInputStream(inputStream, end - start)), bufferSize,
+        firstLineNumber);
+  }
+
+  /** A reader over a part of the LDIF files, as returned by {@link #getPartReaders(int)}. */
+  public static final class PartReader extends BufferedReader
+  {
+    private final long firstLineNumber;
+
+    private PartReader(Reader in, int bufferSize, long firstLineNumber)
+    {
+      super(in, bufferSize);
+      this.firstLineNumber = firstLineNumber;
+    }
+
+    /**
+     * Returns the number of the first line of this part in the LDIF
+     * files, starting with 1.
+     *
+     * @return  The number of the first line of this part.
+     */
+    public long getFirstLineNumber()
+    {
+      return firstLineNumber;
+    }
+  }
+
+  /** An input stream reading a limited number of bytes. */
+  private static final class PartInputStream extends FilterInputStream
+  {
+    private long remaining;
+
+    private PartInputStream(InputStream in, long length)
+    {
+      super(in);
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      if (remaining <= 0)
+      {
+        return -1;
+      }
+      final int b = super.read();
+      if (b >= 0)
+      {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      if (remaining <= 0)
+      {
+        return -1;
+      }
+      final int read = super.read(b, off, (int) Math.min(len, remaining));
+      if (read > 0)
+      {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+      final long skipped = super.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+      return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+      return false;
+    }
+  }
+
+
+
   /**
    * Retrieves the writer that should be used to write entries that
    * are rejected rather than imported for some reason.
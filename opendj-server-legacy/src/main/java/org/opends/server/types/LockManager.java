@@ -15,10 +15,13 @@
  */
 package org.opends.server.types;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -98,17 +101,141 @@ import org.forgerock.util.Reject;
  * Locks are dereferenced when they are unlocked, when they are evicted from a thread local cache,
  * and when a child lock's reference count reaches zero. A lock is completely removed from the lock
  * table once its reference count reaches zero.
+ * <p>
+ * Alternatively, a lock manager created with {@link #newStripedLockManager(long, TimeUnit, int)}
+ * uses a fixed number of pre-allocated lock stripes instead of a lock per DN. A DN is mapped to a
+ * stripe using its hash code, each stripe providing a "subtree" and an "entry" read-write lock. The
+ * same locking protocol applies, except that the subtree locks of the parent stripes and of the
+ * target stripe are acquired in ascending stripe order in order to avoid deadlocks between DNs
+ * sharing stripes. This avoids the lock table, its bucket synchronization and the reference counting
+ * of locks, at the cost of false contention between unrelated DNs mapped to the same stripe. Each
+ * lock attempt still allocates the returned {@code DNLock} and the array of its stripe locks.
+ * <p>
+ * Since the locks cannot be upgraded, a thread holding a read lock must not try to acquire a write
+ * lock on the same DN. With lock stripes, this extends to any DN which may share a stripe with a read
+ * locked DN or one of its parents: such an attempt waits for the thread's own read lock and can only
+ * end by timing out. Two subtrees must therefore be write locked at once using
+ * {@link #tryWriteLockSubtrees(DN, DN)}, which acquires all their stripes in a single pass.
+ * <p>
+ * In both cases the lock manager records, for each type of lock, how long lock attempts had to wait
+ * for locks held by other threads and how many of them timed out. Lock attempts which do not need
+ * to wait are not recorded.
  */
 @org.opends.server.types.PublicAPI(stability = org.opends.server.types.StabilityLevel.UNCOMMITTED,
     mayInstantiate = false, mayExtend = false, mayInvoke = true)
 public final class LockManager
 {
+  /** The types of lock which can be acquired. */
+  public enum LockType
+  {
+    /** An entry read lock, see {@link LockManager#tryReadLockEntry(DN)}. */
+    READ_ENTRY,
+    /** An entry write lock, see {@link LockManager#tryWriteLockEntry(DN)}. */
+    WRITE_ENTRY,
+    /** A subtree write lock, see {@link LockManager#tryWriteLockSubtree(DN)}. */
+    WRITE_SUBTREE
+  }
+
+  /**
+   * Statistics about the lock attempts of a given type which had to wait for other threads. The
+   * wait times are recorded in a histogram whose buckets are bounded by 100us, 1ms, 10ms, 100ms and
+   * 1s, the last bucket holding the wait times of 1s or more.
+   */
+  public static final class LockStatistics
+  {
+    private static final long[] BUCKET_UPPER_BOUNDS_NANOS = {
+      TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(10),
+      TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(1) };
+
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitTimeNanos = new AtomicLong();
+    private final AtomicLongArray waitTimeHistogram = new AtomicLongArray(BUCKET_UPPER_BOUNDS_NANOS.length + 1);
+
+    private LockStatistics()
+    {
+      // Only created by the lock manager.
+    }
+
+    private void recordWait(final long waitTimeNanos, final boolean timedOut)
+    {
+      waitCount.incrementAndGet();
+      if (timedOut)
+      {
+        timeoutCount.incrementAndGet();
+      }
+      totalWaitTimeNanos.addAndGet(waitTimeNanos);
+      int bucket = 0;
+      while (bucket < BUCKET_UPPER_BOUNDS_NANOS.length && waitTimeNanos >= BUCKET_UPPER_BOUNDS_NANOS[bucket])
+      {
+        bucket++;
+      }
+      waitTimeHistogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns the number of lock attempts which had to wait for other threads.
+     *
+     * @return the number of lock attempts which had to wait for other threads
+     */
+    public long getWaitCount()
+    {
+      return waitCount.get();
+    }
+
+    /**
+     * Returns the number of lock attempts which timed out.
+     *
+     * @return the number of lock attempts which timed out
+     */
+    public long getTimeoutCount()
+    {
+      return timeoutCount.get();
+    }
+
+    /**
+     * Returns the total time spent waiting for locks held by other threads.
+     *
+     * @param unit
+     *          the unit of the returned time
+     * @return the total time spent waiting for locks held by other threads
+     */
+    public long getTotalWaitTime(final TimeUnit unit)
+    {
+      return unit.convert(totalWaitTimeNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the wait time histogram, the number of waits in each bucket being returned in
+     * ascending order of wait times.
+     *
+     * @return the wait time histogram
+     */
+    public long[] getWaitTimeHistogram()
+    {
+      final long[] histogram = new long[waitTimeHistogram.length()];
+      for (int i = 0; i < histogram.length; i++)
+      {
+        histogram[i] = waitTimeHistogram.get(i);
+      }
+      return histogram;
+    }
+  }
+
   /** A lock on an entry or subtree. A lock can only be unlocked once. */
   public final class DNLock
   {
+    /** The lock of the locked DN, or {@code null} if this lock is striped or combines other locks. */
     private final DNLockHolder lock;
     private final Lock subtreeLock;
     private final Lock entryLock;
+    /** The locked DNs for striped locks. */
+    private final DN[] dns;
+    /** The stripe locks held for striped locks, in acquisition order. */
+    private final Lock[] stripeLocks;
+    private final int nbStripeLocks;
+    /** The locks combined by this lock, in acquisition order. */
+    private final DNLock[] combinedLocks;
     private boolean isLocked = true;
 
     private DNLock(final DNLockHolder lock, final Lock subtreeLock, final Lock entryLock)
@@ -116,12 +243,52 @@ public final class LockManager
       this.lock = lock;
       this.subtreeLock = subtreeLock;
       this.entryLock = entryLock;
+      this.dns = null;
+      this.stripeLocks = null;
+      this.nbStripeLocks = 0;
+      this.combinedLocks = null;
+    }
+
+    private DNLock(final DN[] dns, final Lock[] stripeLocks, final int nbStripeLocks)
+    {
+      this.lock = null;
+      this.subtreeLock = null;
+      this.entryLock = null;
+      this.dns = dns;
+      this.stripeLocks = stripeLocks;
+      this.nbStripeLocks = nbStripeLocks;
+      this.combinedLocks = null;
+    }
+
+    private DNLock(final DNLock... combinedLocks)
+    {
+      this.lock = null;
+      this.subtreeLock = null;
+      this.entryLock = null;
+      this.dns = null;
+      this.stripeLocks = null;
+      this.nbStripeLocks = 0;
+      this.combinedLocks = combinedLocks;
     }
 
     @Override
     public String toString()
     {
-      return lock.toString();
+      if (lock != null)
+      {
+        return lock.toString();
+      }
+      final StringBuilder builder = new StringBuilder();
+      final Object[] lockedObjects = combinedLocks != null ? combinedLocks : dns;
+      for (final Object lockedObject : lockedObjects)
+      {
+        if (builder.length() > 0)
+        {
+          builder.append(", ");
+        }
+        builder.append(combinedLocks != null ? lockedObject : "\"" + lockedObject + "\"");
+      }
+      return builder.toString();
     }
 
     /**
@@ -136,17 +303,31 @@ public final class LockManager
       {
         throw new IllegalStateException("Already unlocked");
       }
-      lock.releaseParentSubtreeReadLock();
-      subtreeLock.unlock();
-      entryLock.unlock();
-      dereference(lock);
+      if (lock != null)
+      {
+        lock.releaseParentSubtreeReadLock();
+        subtreeLock.unlock();
+        entryLock.unlock();
+        dereference(lock);
+      }
+      else if (combinedLocks != null)
+      {
+        for (int i = combinedLocks.length - 1; i >= 0; i--)
+        {
+          combinedLocks[i].unlock();
+        }
+      }
+      else
+      {
+        releaseLocks(stripeLocks, nbStripeLocks);
+      }
       isLocked = false;
     }
 
     /** For unit testing. */
     int refCount()
     {
-      return lock.refCount.get();
+      return lock != null ? lock.refCount.get() : 0;
     }
   }
 
@@ -184,21 +365,21 @@ public final class LockManager
 
     DNLock tryReadLockEntry()
     {
-      return tryLock(subtreeLock.readLock(), entryLock.readLock());
+      return tryLock(subtreeLock.readLock(), entryLock.readLock(), LockType.READ_ENTRY);
     }
 
     DNLock tryWriteLockEntry()
     {
-      return tryLock(subtreeLock.readLock(), entryLock.writeLock());
+      return tryLock(subtreeLock.readLock(), entryLock.writeLock(), LockType.WRITE_ENTRY);
     }
 
     DNLock tryWriteLockSubtree()
     {
-      return tryLock(subtreeLock.writeLock(), entryLock.writeLock());
+      return tryLock(subtreeLock.writeLock(), entryLock.writeLock(), LockType.WRITE_SUBTREE);
     }
 
     /** Locks the subtree read lock from the root down to the parent of this lock. */
-    private boolean tryAcquireParentSubtreeReadLock()
+    private boolean tryAcquireParentSubtreeReadLock(final LockType lockType)
     {
       // First lock the parents of the parent.
       if (parent == null)
@@ -206,13 +387,13 @@ public final class LockManager
         return true;
       }
 
-      if (!parent.tryAcquireParentSubtreeReadLock())
+      if (!parent.tryAcquireParentSubtreeReadLock(lockType))
       {
         return false;
       }
 
       // Then lock the parent of this lock
-      if (tryLockWithTimeout(parent.subtreeLock.readLock()))
+      if (tryLockWithTimeout(parent.subtreeLock.readLock(), lockType))
       {
         return true;
       }
@@ -222,13 +403,13 @@ public final class LockManager
       return false;
     }
 
-    private DNLock tryLock(final Lock subtreeLock, final Lock entryLock)
+    private DNLock tryLock(final Lock subtreeLock, final Lock entryLock, final LockType lockType)
     {
-      if (tryAcquireParentSubtreeReadLock())
+      if (tryAcquireParentSubtreeReadLock(lockType))
       {
-        if (tryLockWithTimeout(subtreeLock))
+        if (tryLockWithTimeout(subtreeLock, lockType))
         {
-          if (tryLockWithTimeout(entryLock))
+          if (tryLockWithTimeout(entryLock, lockType))
           {
             return new DNLock(this, subtreeLock, entryLock);
           }
@@ -240,20 +421,13 @@ public final class LockManager
       dereference(this);
       return null;
     }
+  }
 
-    private boolean tryLockWithTimeout(final Lock lock)
-    {
-      try
-      {
-        return lock.tryLock(lockTimeout, lockTimeoutUnits);
-      }
-      catch (final InterruptedException e)
-      {
-        // Unable to handle interrupts here.
-        Thread.currentThread().interrupt();
-        return false;
-      }
-    }
+  /** A pre-allocated pair of locks shared by all the DNs mapped to the same stripe. */
+  private static final class LockStripe
+  {
+    private final ReentrantReadWriteLock subtreeLock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock entryLock = new ReentrantReadWriteLock();
   }
 
   private static final long DEFAULT_LOCK_TIMEOUT = 9;
@@ -263,8 +437,11 @@ public final class LockManager
 
   private final int numberOfBuckets;
   private final LinkedList<DNLockHolder>[] lockTable;
+  /** The lock stripes, or {@code null} if this lock manager uses a lock per DN. */
+  private final LockStripe[] lockStripes;
   private final long lockTimeout;
   private final TimeUnit lockTimeoutUnits;
+  private final LockStatistics[] lockStatistics = new LockStatistics[LockType.values().length];
 
   /** Avoid sub-classing in order to workaround class leaks in app servers. */
   private final ThreadLocal<LinkedList<DNLockHolder>> threadLocalCache = new ThreadLocal<>();
@@ -289,7 +466,39 @@ public final class LockManager
    */
   public LockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit)
   {
-    this(lockTimeout, lockTimeoutUnit, Runtime.getRuntime().availableProcessors() * 8);
+    this(lockTimeout, lockTimeoutUnit, Runtime.getRuntime().availableProcessors() * 8, 0);
+  }
+
+  /**
+   * Creates a new lock manager using a fixed number of pre-allocated lock stripes rather than a lock
+   * per DN, and a lock timeout of 9 seconds.
+   *
+   * @param numberOfStripes
+   *          The number of lock stripes, which will be rounded up to a power of 2.
+   * @return The new lock manager.
+   */
+  public static LockManager newStripedLockManager(final int numberOfStripes)
+  {
+    return newStripedLockManager(DEFAULT_LOCK_TIMEOUT, DEFAULT_LOCK_TIMEOUT_UNITS, numberOfStripes);
+  }
+
+  /**
+   * Creates a new lock manager using a fixed number of pre-allocated lock stripes rather than a lock
+   * per DN.
+   *
+   * @param lockTimeout
+   *          The lock timeout.
+   * @param lockTimeoutUnit
+   *          The lock timeout units.
+   * @param numberOfStripes
+   *          The number of lock stripes, which will be rounded up to a power of 2.
+   * @return The new lock manager.
+   */
+  public static LockManager newStripedLockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit,
+      final int numberOfStripes)
+  {
+    Reject.ifFalse(numberOfStripes > 0, "numberOfStripes must be a positive integer");
+    return new LockManager(lockTimeout, lockTimeoutUnit, 0, numberOfStripes);
   }
 
   /**
@@ -301,21 +510,42 @@ public final class LockManager
    *          The lock timeout units.
    * @param numberOfBuckets
    *          The number of buckets to use in the lock table. The minimum number of buckets is 64.
+   * @param numberOfStripes
+   *          The number of lock stripes, or 0 in order to use a lock per DN.
    */
   @SuppressWarnings("unchecked")
-  private LockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit, final int numberOfBuckets)
+  private LockManager(final long lockTimeout, final TimeUnit lockTimeoutUnit, final int numberOfBuckets,
+      final int numberOfStripes)
   {
     Reject.ifFalse(lockTimeout >= 0, "lockTimeout must be a non-negative integer");
     Reject.ifNull(lockTimeoutUnit, "lockTimeoutUnit must be non-null");
-    Reject.ifFalse(numberOfBuckets > 0, "numberOfBuckets must be a positive integer");
+    Reject.ifFalse(numberOfBuckets > 0 || numberOfStripes > 0, "numberOfBuckets must be a positive integer");
 
     this.lockTimeout = lockTimeout;
     this.lockTimeoutUnits = lockTimeoutUnit;
-    this.numberOfBuckets = getNumberOfBuckets(numberOfBuckets);
-    this.lockTable = new LinkedList[this.numberOfBuckets];
-    for (int i = 0; i < this.numberOfBuckets; i++)
+    if (numberOfStripes > 0)
     {
-      this.lockTable[i] = new LinkedList<>();
+      this.numberOfBuckets = 0;
+      this.lockTable = new LinkedList[0];
+      this.lockStripes = new LockStripe[roundUpToPowerOf2(numberOfStripes)];
+      for (int i = 0; i < lockStripes.length; i++)
+      {
+        this.lockStripes[i] = new LockStripe();
+      }
+    }
+    else
+    {
+      this.numberOfBuckets = getNumberOfBuckets(numberOfBuckets);
+      this.lockTable = new LinkedList[this.numberOfBuckets];
+      for (int i = 0; i < this.numberOfBuckets; i++)
+      {
+        this.lockTable[i] = new LinkedList<>();
+      }
+      this.lockStripes = null;
+    }
+    for (int i = 0; i < lockStatistics.length; i++)
+    {
+      lockStatistics[i] = new LockStatistics();
     }
   }
 
@@ -348,6 +578,10 @@ public final class LockManager
    */
   public DNLock tryReadLockEntry(final DN entry)
   {
+    if (lockStripes != null)
+    {
+      return tryLockStripes(LockType.READ_ENTRY, entry);
+    }
     return acquireLockFromCache(entry).tryReadLockEntry();
   }
 
@@ -361,6 +595,10 @@ public final class LockManager
    */
   public DNLock tryWriteLockEntry(final DN entry)
   {
+    if (lockStripes != null)
+    {
+      return tryLockStripes(LockType.WRITE_ENTRY, entry);
+    }
     return acquireLockFromCache(entry).tryWriteLockEntry();
   }
 
@@ -375,9 +613,72 @@ public final class LockManager
    */
   public DNLock tryWriteLockSubtree(final DN subtree)
   {
+    if (lockStripes != null)
+    {
+      return tryLockStripes(LockType.WRITE_SUBTREE, subtree);
+    }
     return acquireLockFromCache(subtree).tryWriteLockSubtree();
   }
 
+  /**
+   * Acquires the write locks for two subtrees at once, for instance the current and new DNs of an
+   * entry being renamed. This method must be used rather than two calls to
+   * {@link #tryWriteLockSubtree(DN)} since, with lock stripes, the second call could wait for a
+   * stripe read locked by the first one. The returned lock releases both subtrees when unlocked.
+   *
+   * @param subtree1
+   *          The first subtree whose write lock is required.
+   * @param subtree2
+   *          The second subtree whose write lock is required.
+   * @return The lock, or {@code null} if the lock attempt timed out.
+   */
+  public DNLock tryWriteLockSubtrees(final DN subtree1, final DN subtree2)
+  {
+    if (lockStripes != null)
+    {
+      return tryLockStripes(LockType.WRITE_SUBTREE, subtree1, subtree2);
+    }
+
+    // Take the locks in a well defined order in order to avoid deadlocks.
+    final DN first = subtree1.compareTo(subtree2) <= 0 ? subtree1 : subtree2;
+    final DN second = first == subtree1 ? subtree2 : subtree1;
+    final DNLock firstLock = tryWriteLockSubtree(first);
+    if (firstLock == null)
+    {
+      return null;
+    }
+    final DNLock secondLock = tryWriteLockSubtree(second);
+    if (secondLock == null)
+    {
+      firstLock.unlock();
+      return null;
+    }
+    return new DNLock(firstLock, secondLock);
+  }
+
+  /**
+   * Returns the statistics of the lock attempts of the provided type which had to wait for other
+   * threads.
+   *
+   * @param lockType
+   *          The type of lock.
+   * @return The statistics of the lock attempts of the provided type.
+   */
+  public LockStatistics getLockStatistics(final LockType lockType)
+  {
+    return lockStatistics[lockType.ordinal()];
+  }
+
+  /**
+   * Returns the number of lock stripes used by this lock manager.
+   *
+   * @return The number of lock stripes, or 0 if this lock manager uses a lock per DN.
+   */
+  public int getNumberOfStripes()
+  {
+    return lockStripes != null ? lockStripes.length : 0;
+  }
+
   /** For unit testing. */
   int getLockTableRefCountFor(final DN dn)
   {
@@ -482,6 +783,129 @@ public final class LockManager
     }
   }
 
+  private DNLock tryLockStripes(final LockType lockType, final DN... dns)
+  {
+    int maxNbParentStripes = 0;
+    final int[] targetStripes = new int[dns.length];
+    for (int i = 0; i < dns.length; i++)
+    {
+      targetStripes[i] = getStripe(dns[i]);
+      for (DN parent = dns[i].parent(); parent != null; parent = parent.parent())
+      {
+        maxNbParentStripes++;
+      }
+    }
+    Arrays.sort(targetStripes);
+    final int nbTargetStripes = removeDuplicates(targetStripes, targetStripes.length);
+
+    // A target stripe is only locked once, in the target lock mode, since read locks cannot be upgraded.
+    final int[] parentStripes = new int[maxNbParentStripes];
+    int nbParentStripes = 0;
+    for (final DN dn : dns)
+    {
+      for (DN parent = dn.parent(); parent != null; parent = parent.parent())
+      {
+        final int stripe = getStripe(parent);
+        if (Arrays.binarySearch(targetStripes, 0, nbTargetStripes, stripe) < 0)
+        {
+          parentStripes[nbParentStripes++] = stripe;
+        }
+      }
+    }
+    Arrays.sort(parentStripes, 0, nbParentStripes);
+    nbParentStripes = removeDuplicates(parentStripes, nbParentStripes);
+
+    // The subtree locks are acquired in ascending stripe order, and then the entry locks, in order to avoid deadlocks.
+    final Lock[] locks = new Lock[nbParentStripes + 2 * nbTargetStripes];
+    int nbLocks = 0;
+    int nbLockedTargetStripes = 0;
+    int nbLockedParentStripes = 0;
+    while (nbLockedTargetStripes < nbTargetStripes || nbLockedParentStripes < nbParentStripes)
+    {
+      final Lock lock;
+      if (nbLockedParentStripes == nbParentStripes
+          || (nbLockedTargetStripes < nbTargetStripes
+              && targetStripes[nbLockedTargetStripes] < parentStripes[nbLockedParentStripes]))
+      {
+        final ReentrantReadWriteLock subtreeLock = lockStripes[targetStripes[nbLockedTargetStripes++]].subtreeLock;
+        lock = lockType == LockType.WRITE_SUBTREE ? subtreeLock.writeLock() : subtreeLock.readLock();
+      }
+      else
+      {
+        lock = lockStripes[parentStripes[nbLockedParentStripes++]].subtreeLock.readLock();
+      }
+      if (!tryLockWithTimeout(lock, lockType))
+      {
+        // Failed to acquire all the necessary locks within the time out.
+        releaseLocks(locks, nbLocks);
+        return null;
+      }
+      locks[nbLocks++] = lock;
+    }
+    for (int i = 0; i < nbTargetStripes; i++)
+    {
+      final ReentrantReadWriteLock entryLock = lockStripes[targetStripes[i]].entryLock;
+      final Lock lock = lockType == LockType.READ_ENTRY ? entryLock.readLock() : entryLock.writeLock();
+      if (!tryLockWithTimeout(lock, lockType))
+      {
+        releaseLocks(locks, nbLocks);
+        return null;
+      }
+      locks[nbLocks++] = lock;
+    }
+    return new DNLock(dns, locks, nbLocks);
+  }
+
+  private static void releaseLocks(final Lock[] locks, final int nbLocks)
+  {
+    for (int i = nbLocks - 1; i >= 0; i--)
+    {
+      locks[i].unlock();
+    }
+  }
+
+  private int getStripe(final DN dn)
+  {
+    // Spread the hash code bits since DN hash codes are not well distributed over the lower bits.
+    final int h = dn.hashCode();
+    return (h ^ (h >>> 16)) & (lockStripes.length - 1);
+  }
+
+  private static int removeDuplicates(final int[] sortedValues, final int nbValues)
+  {
+    int nbUniqueValues = 0;
+    for (int i = 0; i < nbValues; i++)
+    {
+      if (nbUniqueValues == 0 || sortedValues[nbUniqueValues - 1] != sortedValues[i])
+      {
+        sortedValues[nbUniqueValues++] = sortedValues[i];
+      }
+    }
+    return nbUniqueValues;
+  }
+
+  private boolean tryLockWithTimeout(final Lock lock, final LockType lockType)
+  {
+    try
+    {
+      // Only record contention: most lock attempts should not have to wait.
+      if (lock.tryLock(0, TimeUnit.NANOSECONDS))
+      {
+        return true;
+      }
+      final long startTime = System.nanoTime();
+      final boolean isLocked = lock.tryLock(lockTimeout, lockTimeoutUnits);
+      lockStatistics[lockType.ordinal()].recordWait(System.nanoTime() - startTime, !isLocked);
+      return isLocked;
+    }
+    catch (final InterruptedException e)
+    {
+      // Unable to handle interrupts here.
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
   private void dereference(final DNLockHolder lock)
   {
     if (lock.refCount.decrementAndGet() <= 0)
@@ -520,9 +944,13 @@ public final class LockManager
    */
   private int getNumberOfBuckets(final int buckets)
   {
-    final int roundedNumberOfBuckets = Math.min(buckets, MINIMUM_NUMBER_OF_BUCKETS);
+    return roundUpToPowerOf2(Math.min(buckets, MINIMUM_NUMBER_OF_BUCKETS));
+  }
+
+  private static int roundUpToPowerOf2(final int value)
+  {
     int powerOf2 = 1;
-    while (powerOf2 < roundedNumberOfBuckets)
+    while (powerOf2 < value)
     {
       powerOf2 <<= 1;
     }
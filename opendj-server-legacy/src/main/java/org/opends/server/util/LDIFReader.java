@@ -76,6 +76,8 @@ public class LDIFReader implements Closeable
 
   /** The reader that will be used to read the data. */
   private BufferedReader reader;
+  /** Indicates whether this LDIF reader only reads a part of the LDIF data of the import. */
+  private final boolean readsPart;
   /** The import configuration that specifies what should be imported. */
   protected final LDIFImportConfig importConfig;
 
@@ -126,6 +128,7 @@ public class LDIFReader implements Closeable
     this.importConfig = importConfig;
 
     reader               = importConfig.getReader();
+    readsPart            = false;
     lastEntryBodyLines   = new LinkedList<>();
     lastEntryHeaderLines = new LinkedList<>();
     pluginConfigManager  = DirectoryServer.getPluginConfigManager();
@@ -137,6 +140,31 @@ public class LDIFReader implements Closeable
     }
   }
 
+  /**
+   * Creates a new LDIF reader that will read a part of the LDIF data of an
+   * import, so that several parts are read in parallel. The import session is
+   * begun and ended by the LDIF reader of the whole import, and closing this
+   * LDIF reader only closes the provided reader.
+   *
+   * @param  importConfig  The import configuration for this LDIF reader.  It
+   *                       must not be <CODE>null</CODE>.
+   * @param  partReader    The reader of the part of the LDIF data, as
+   *                       returned by {@link LDIFImportConfig#getPartReaders(int)}.
+   *                       The lines are numbered from its first line number.
+   */
+  protected LDIFReader(LDIFImportConfig importConfig, LDIFImportConfig.PartReader partReader)
+  {
+    ifNull(importConfig, partReader);
+    this.importConfig = importConfig;
+
+    reader               = partReader;
+    readsPart            = true;
+    lineNumber           = partReader.getFirstLineNumber() - 1;
+    lastEntryBodyLines   = new LinkedList<>();
+    lastEntryHeaderLines = new LinkedList<>();
+    pluginConfigManager  = DirectoryServer.getPluginConfigManager();
+  }
+
 
   /**
    * Reads the next entry from the LDIF source.
@@ -451,6 +479,11 @@ public class LDIFReader implements Closeable
         {
           break;
         }
+        if (readsPart)
+        {
+          close();
+          return null;
+        }
         reader = importConfig.nextReader();
         return reader != null ? readEntryLines() : null;
       }
@@ -1000,6 +1033,12 @@ public class LDIFReader implements Closeable
   @Override
   public void close()
   {
+    if (readsPart)
+    {
+      StaticUtils.close(reader);
+      reader = null;
+      return;
+    }
     // If we should invoke import plugins, then do so.
     if (importConfig.invokeImportPlugins())
     {
@@ -1522,22 +1561,26 @@ public class LDIFReader implements Closeable
   {
     if (writer != null)
     {
-      try
+      // Entries may be logged by several threads
+      synchronized (writer)
       {
-        writer.write("# ");
-        writer.write(String.valueOf(message));
-        writer.newLine();
-        for (StringBuilder sb : lines)
+        try
         {
-          writer.write(sb.toString());
+          writer.write("# ");
+          writer.write(String.valueOf(message));
           writer.newLine();
-        }
+          for (StringBuilder sb : lines)
+          {
+            writer.write(sb.toString());
+            writer.newLine();
+          }
 
-        writer.newLine();
-      }
-      catch (Exception e)
-      {
-        logger.traceException(e);
+          writer.newLine();
+        }
+        catch (Exception e)
+        {
+          logger.traceException(e);
+        }
       }
     }
   }
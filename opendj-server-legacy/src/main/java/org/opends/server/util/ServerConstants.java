@@ -2885,6 +2885,27 @@ public final class ServerConstants
 
 
 
+  /**
+   * The name of the system property that can be used to specify the number of
+   * lock stripes used by the server lock manager.  When set to a positive
+   * value, DNs are mapped to a fixed number of pre-allocated locks rather than
+   * to a lock per DN.
+   */
+  public static final String PROPERTY_LOCK_MANAGER_STRIPES =
+       "org.opends.server.LockManagerStripes";
+
+
+
+  /**
+   * The name of the system property that can be used to indicate whether the
+   * file based changelog reads its rotated log files through memory mappings.
+   * It is enabled by default, except on Windows.
+   */
+  public static final String PROPERTY_CHANGELOG_MEMORY_MAPPED_READS =
+       "org.opends.server.ChangelogMemoryMappedReads";
+
+
+
   /**
    * The name of the system property that can be used to determine whether the
    * server should maintain an archive of previous configurations.  If this is
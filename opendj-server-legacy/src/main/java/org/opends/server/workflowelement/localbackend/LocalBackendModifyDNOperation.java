@@ -288,35 +288,17 @@ public class LocalBackendModifyDNOperation
     checkIfCanceled(false);
 
     /*
-     * Acquire subtree write locks for the current and new DN. Be careful to avoid deadlocks by
-     * taking the locks in a well defined order.
+     * Acquire subtree write locks for the current and new DN at once: with lock stripes, locking them
+     * one after the other could wait for a stripe read locked by the first lock.
      */
-    DNLock currentLock = null;
-    DNLock newLock = null;
+    DNLock subtreeLocks = null;
     try
     {
-      if (entryDN.compareTo(newDN) < 0)
-      {
-        currentLock = DirectoryServer.getLockManager().tryWriteLockSubtree(entryDN);
-        newLock = DirectoryServer.getLockManager().tryWriteLockSubtree(newDN);
-      }
-      else
-      {
-        newLock = DirectoryServer.getLockManager().tryWriteLockSubtree(newDN);
-        currentLock = DirectoryServer.getLockManager().tryWriteLockSubtree(entryDN);
-      }
-
-      if (currentLock == null)
+      subtreeLocks = DirectoryServer.getLockManager().tryWriteLockSubtrees(entryDN, newDN);
+      if (subtreeLocks == null)
       {
         setResultCode(ResultCode.BUSY);
-        appendErrorMessage(ERR_MODDN_CANNOT_LOCK_CURRENT_DN.get(entryDN));
-        return;
-      }
-
-      if (newLock == null)
-      {
-        setResultCode(ResultCode.BUSY);
-        appendErrorMessage(ERR_MODDN_CANNOT_LOCK_NEW_DN.get(entryDN, newDN));
+        appendErrorMessage(ERR_MODDN_CANNOT_LOCK_DNS.get(entryDN, newDN));
         return;
       }
 
@@ -458,13 +440,9 @@ public class LocalBackendModifyDNOperation
     }
     finally
     {
-      if (currentLock != null)
-      {
-        currentLock.unlock();
-      }
-      if (newLock != null)
+      if (subtreeLocks != null)
       {
-        newLock.unlock();
+        subtreeLocks.unlock();
       }
       processSynchPostOperationPlugins();
     }
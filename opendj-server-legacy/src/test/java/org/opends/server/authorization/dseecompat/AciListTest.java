@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.authorization.dseecompat;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.TreeSet;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class AciListTest extends DirectoryServerTestCase
+{
+  private static final DN SUFFIX = DN.valueOf("dc=example,dc=com");
+  private static final DN PEOPLE = DN.valueOf("ou=people,dc=example,dc=com");
+  private static final DN USER = DN.valueOf("uid=user.0,ou=people,dc=example,dc=com");
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startFakeServer();
+  }
+
+  @AfterClass
+  public void tearDown()
+  {
+    TestCaseUtils.shutdownFakeServer();
+  }
+
+  @Test
+  public void testCandidateAcisAreInherited() throws Exception
+  {
+    AciList aciList = new AciList(DN.valueOf("cn=Access Control Handler,cn=config"));
+    Aci suffixAci = addAci(aciList, SUFFIX, "suffix");
+    Aci peopleAci = addAci(aciList, PEOPLE, "people");
+    Aci globalAci = addAci(aciList, DN.rootDN(), "(target=\"ldap:///" + PEOPLE + "\")", "global");
+
+    assertThat(aciList.getCandidateAcis(USER)).containsExactly(peopleAci, suffixAci, globalAci);
+    assertThat(aciList.getCandidateAcis(PEOPLE)).containsExactly(peopleAci, suffixAci, globalAci);
+    assertThat(aciList.getCandidateAcis(SUFFIX)).containsExactly(suffixAci);
+    assertThat(aciList.getCandidateAcis(DN.rootDN())).isEmpty();
+    // served from the cache
+    assertThat(aciList.getCandidateAcis(USER)).containsExactly(peopleAci, suffixAci, globalAci);
+  }
+
+  @Test
+  public void testCandidateAcisReflectChanges() throws Exception
+  {
+    AciList aciList = new AciList(DN.valueOf("cn=Access Control Handler,cn=config"));
+    Aci suffixAci = addAci(aciList, SUFFIX, "suffix");
+    assertThat(aciList.getCandidateAcis(USER)).containsExactly(suffixAci);
+
+    Aci peopleAci = addAci(aciList, PEOPLE, "people");
+    assertThat(aciList.getCandidateAcis(USER)).containsExactly(peopleAci, suffixAci);
+
+    aciList.removeAci(TestCaseUtils.makeEntry("dn: " + PEOPLE, "objectClass: organizationalUnit", "ou: people"),
+        true, false);
+    assertThat(aciList.getCandidateAcis(USER)).containsExactly(suffixAci);
+
+    aciList.renameAci(SUFFIX, DN.valueOf("dc=example,dc=org"));
+    assertThat(aciList.getCandidateAcis(USER)).isEmpty();
+    assertThat(aciList.getCandidateAcis(DN.valueOf("uid=user.0,ou=people,dc=example,dc=org"))).hasSize(1);
+  }
+
+  private static Aci addAci(AciList aciList, DN dn, String name) throws Exception
+  {
+    return addAci(aciList, dn, "", name);
+  }
+
+  private static Aci addAci(AciList aciList, DN dn, String target, String name) throws Exception
+  {
+    Aci aci = Aci.decode(ByteString.valueOfUtf8(
+        target + "(version 3.0; acl \"" + name + "\"; allow(read) userdn=\"ldap:///anyone\";)"), dn);
+    TreeSet<Aci> acis = new TreeSet<>();
+    acis.add(aci);
+    aciList.addAci(dn, acis);
+    return aci;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.authorization.dseecompat;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.protocols.internal.InternalClientConnection.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.forgerock.opendj.ldap.DN;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.Group;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.ModifyOperationBasis;
+import org.opends.server.types.AuthenticationInfo;
+import org.opends.server.types.Entry;
+import org.opends.server.types.Modification;
+import org.opends.server.types.Operation;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+public class BindRuleResultCacheTest extends DirectoryServerTestCase
+{
+  private static final DN GROUP = DN.valueOf("cn=group,o=test");
+  private static final DN USER_0 = DN.valueOf("uid=user.0,o=test");
+  private static final DN USER_1 = DN.valueOf("uid=user.1,o=test");
+
+  @BeforeClass
+  public void setUp() throws Exception
+  {
+    TestCaseUtils.startServer();
+    TestCaseUtils.initializeTestBackend(true);
+    TestCaseUtils.addEntries(
+        "dn: " + GROUP,
+        "objectClass: top",
+        "objectClass: groupOfNames",
+        "cn: group",
+        "member: " + USER_0);
+  }
+
+  @Test
+  public void testGroupDNResultIsDiscardedAfterMembershipChange() throws Exception
+  {
+    BindRule groupRule = BindRule.decode("groupdn=\"ldap:///" + GROUP + "\"");
+    AciEvalContext evalCtx = newEvalContext(newOperation(), USER_0, new AuthenticationInfo());
+    when(evalCtx.isMemberOf(any(Group.class))).thenReturn(true, false);
+
+    assertThat(groupRule.evaluate(evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    // served from the cache
+    assertThat(groupRule.evaluate(evalCtx)).isEqualTo(EnumEvalResult.TRUE);
+    verify(evalCtx, times(1)).isMemberOf(any(Group.class));
+
+    DirectoryServer.getGroupManager().membershipChanged();
+    assertThat(groupRule.evaluate(evalCtx)).isEqualTo(EnumEvalResult.FALSE);
+    verify(evalCtx, times(2)).isMemberOf(any(Group.class));
+  }
+
+  /** The proxied authorization and geteffectiverights evaluations use other identities than the client's. */
+  @Test
+  public void testResultsAreKeptPerAuthorizationIdentity() throws Exception
+  {
+    BindRule groupRule = BindRule.decode("groupdn=\"ldap:///" + GROUP + "\"");
+    Operation operation = newOperation();
+    AuthenticationInfo authInfo = new AuthenticationInfo();
+    AciEvalContext clientCtx = newEvalContext(operation, USER_0, authInfo);
+    when(clientCtx.isMemberOf(any(Group.class))).thenReturn(true);
+    AciEvalContext proxiedCtx = newEvalContext(operation, USER_1, authInfo);
+    when(proxiedCtx.isMemberOf(any(Group.class))).thenReturn(false);
+    AciEvalContext otherAuthInfoCtx = newEvalContext(operation, USER_0, new AuthenticationInfo());
+    when(otherAuthInfoCtx.isMemberOf(any(Group.class))).thenReturn(false);
+
+    for (int i = 0; i < 2; i++)
+    {
+      assertThat(groupRule.evaluate(clientCtx)).isEqualTo(EnumEvalResult.TRUE);
+      assertThat(groupRule.evaluate(proxiedCtx)).isEqualTo(EnumEvalResult.FALSE);
+      assertThat(groupRule.evaluate(otherAuthInfoCtx)).isEqualTo(EnumEvalResult.FALSE);
+    }
+    // each identity evaluated the bind rule once
+    verify(clientCtx, times(1)).isMemberOf(any(Group.class));
+    verify(proxiedCtx, times(1)).isMemberOf(any(Group.class));
+    verify(otherAuthInfoCtx, times(1)).isMemberOf(any(Group.class));
+  }
+
+  @DataProvider
+  public Object[][] targetDependentBindRules()
+  {
+    return new Object[][] {
+      { "timeofday>=\"0000\"" },
+      { "userattr=\"manager#USERDN\"" },
+      { "userdn=\"ldap:///self\"" },
+      { "userdn=\"ldap:///parent\"" },
+      { "userdn=\"ldap:///" + USER_0 + " || ldap:///self\"" },
+      { "(groupdn=\"ldap:///" + GROUP + "\" and userdn=\"ldap:///self\")" },
+    };
+  }
+
+  @Test(dataProvider = "targetDependentBindRules")
+  public void testTargetDependentBindRulesAreNotCached(String bindRule) throws Exception
+  {
+    BindRule rule = BindRule.decode(bindRule);
+    Entry resourceEntry = TestCaseUtils.makeEntry(
+        "dn: " + USER_1,
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.1",
+        "cn: User 1",
+        "sn: 1",
+        "manager: " + USER_0);
+    AuthenticationInfo authInfo = new AuthenticationInfo();
+    Operation operation = newOperation();
+    AciEvalContext evalCtx = newEvalContext(operation, USER_0, authInfo);
+    when(evalCtx.getResourceDN()).thenReturn(resourceEntry.getName());
+    when(evalCtx.getResourceEntry()).thenReturn(resourceEntry);
+
+    rule.evaluate(evalCtx);
+    rule.evaluate(evalCtx);
+
+    Map<BindRule, EnumEvalResult> results =
+        BindRuleResultCache.getInstance(operation).getResults(USER_0, null, authInfo);
+    assertThat(results).doesNotContainKey(rule);
+  }
+
+  private Operation newOperation()
+  {
+    return new ModifyOperationBasis(getRootConnection(), nextOperationID(), nextMessageID(), null,
+        USER_0, Collections.<Modification> emptyList());
+  }
+
+  private AciEvalContext newEvalContext(final Operation operation, final DN clientDN,
+      final AuthenticationInfo authInfo)
+  {
+    AciEvalContext evalCtx = mock(AciEvalContext.class);
+    when(evalCtx.getClientDN()).thenReturn(clientDN);
+    when(evalCtx.getBindRuleResults()).thenAnswer(new Answer<Map<BindRule, EnumEvalResult>>()
+    {
+      @Override
+      public Map<BindRule, EnumEvalResult> answer(InvocationOnMock invocation) throws Throwable
+      {
+        return BindRuleResultCache.getInstance(operation).getResults(clientDN, null, authInfo);
+      }
+    });
+    return evalCtx;
+  }
+}
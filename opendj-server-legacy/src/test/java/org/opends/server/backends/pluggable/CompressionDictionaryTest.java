@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.DirectoryServerTestCase;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class CompressionDictionaryTest extends DirectoryServerTestCase
+{
+  @Test
+  public void testTrainedDictionaryImprovesCompression() throws Exception
+  {
+    final List<ByteString> samples = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+    {
+      samples.add(newEntry(i));
+    }
+    final byte[] dictionary = CompressionDictionary.train(samples, 4096);
+    assertThat(dictionary.length).isGreaterThan(0).isLessThanOrEqualTo(4096);
+
+    final byte[] entry = newEntry(1000).toByteArray();
+    final byte[] withDictionary = deflate(entry, dictionary);
+    assertThat(withDictionary.length).isLessThan(deflate(entry, null).length);
+    assertThat(inflate(withDictionary, entry.length, dictionary)).isEqualTo(entry);
+  }
+
+  @Test
+  public void testNothingSharedGivesEmptyDictionary()
+  {
+    final List<ByteString> samples = Arrays.asList(
+        ByteString.valueOfUtf8("abcdefghijklmnop"), ByteString.valueOfUtf8("qrstuvwxyz012345"));
+    assertThat(CompressionDictionary.train(samples, 4096)).isEmpty();
+  }
+
+  private static ByteString newEntry(int i)
+  {
+    return ByteString.valueOfUtf8("dn: uid=user." + i + ",ou=People,dc=example,dc=com\n"
+        + "objectClass: top\nobjectClass: person\nobjectClass: organizationalPerson\n"
+        + "objectClass: inetOrgPerson\nuid: user." + i + "\ncn: User " + i + "\nsn: " + i + "\n"
+        + "mail: user." + i + "@example.com\ntelephoneNumber: +1 555 0100 " + i + "\n"
+        + "description: This is the description for user " + i + ".\n");
+  }
+
+  private static byte[] deflate(byte[] data, byte[] dictionary)
+  {
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    if (dictionary != null)
+    {
+      deflater.setDictionary(dictionary);
+    }
+    deflater.setInput(data);
+    deflater.finish();
+    final byte[] buffer = new byte[data.length * 2 + 64];
+    final int length = deflater.deflate(buffer);
+    deflater.end();
+    return Arrays.copyOf(buffer, length);
+  }
+
+  private static byte[] inflate(byte[] data, int length, byte[] dictionary) throws Exception
+  {
+    final Inflater inflater = new Inflater();
+    inflater.setInput(data);
+    final byte[] result = new byte[length];
+    int position = inflater.inflate(result);
+    if (inflater.needsDictionary())
+    {
+      inflater.setDictionary(dictionary);
+      position += inflater.inflate(result, position, length - position);
+    }
+    inflater.end();
+    assertThat(position).isEqualTo(length);
+    return result;
+  }
+}
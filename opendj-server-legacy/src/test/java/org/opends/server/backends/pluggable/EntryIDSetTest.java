@@ -290,9 +290,91 @@ public class EntryIDSetTest extends DirectoryServerTestCase
     assertIdsEquals(retained, 1, 3, 5, 7, 9);
   }
 
+  @Test
+  public void testBitmapAddRemoveContain()
+  {
+    final EntryIDSet set = newBitmapSet(4, 6, 65540, 65542);
+
+    assertThat(set.add(id(5))).isTrue();
+    assertThat(set.add(id(5))).isFalse();
+    assertThat(set.add(id(131072))).isTrue();
+    assertIdsEquals(set, 4, 5, 6, 65540, 65542, 131072);
+    assertThat(set.size()).isEqualTo(6);
+
+    assertThat(set.remove(id(65540))).isTrue();
+    assertThat(set.remove(id(65540))).isFalse();
+    assertThat(set.remove(id(131072))).isTrue();
+    assertIdsEquals(set, 4, 5, 6, 65542);
+
+    assertThat(set.contains(id(5))).isTrue();
+    assertThat(set.contains(id(65540))).isFalse();
+    assertThat(set.contains(id(65542))).isTrue();
+  }
+
+  @Test
+  public void testBitmapSetOperationsMatchDefinedSet()
+  {
+    final long[] dense = range(1, 20000, 1);
+    final long[] sparse = range(15000, 300000, 7);
+
+    final EntryIDSet bitmap = newBitmapSet(dense);
+    bitmap.retainAll(newBitmapSet(sparse));
+    final EntryIDSet defined = newDefinedSet(dense);
+    defined.retainAll(newDefinedSet(sparse));
+    assertThat(bitmap.toLongArray()).isEqualTo(defined.toLongArray());
+
+    bitmap.addAll(newBitmapSet(sparse));
+    defined.addAll(newDefinedSet(sparse));
+    assertThat(bitmap.toLongArray()).isEqualTo(defined.toLongArray());
+
+    bitmap.removeAll(newDefinedSet(dense));
+    defined.removeAll(newDefinedSet(dense));
+    assertThat(bitmap.toLongArray()).isEqualTo(defined.toLongArray());
+
+    final EntryIDSet mixed = newDefinedSet(dense);
+    mixed.retainAll(newBitmapSet(sparse));
+    assertIdsEquals(mixed, range(15000, 20000, 7));
+  }
+
+  @Test
+  public void testUnionOfLargeSets()
+  {
+    final EntryIDSet union = newSetFromUnion(
+        Arrays.asList(newDefinedSet(range(1, 10000, 2)), newBitmapSet(range(2, 10000, 2)), newDefinedSet(10000)));
+    assertThat(union.size()).isEqualTo(10000);
+    assertThat(union.toLongArray()).isEqualTo(range(1, 10000, 1));
+  }
+
+  @Test
+  public void testCodecV4EncodesDenseSetsAsBitmap()
+  {
+    final long[] ids = range(1, 100000, 1);
+    final ByteString bitmap = CODEC_V4.encode(newDefinedSet(ids));
+    assertThat(bitmap.length()).isLessThan(CODEC_V2.encode(newDefinedSet(ids)).length());
+    assertThat(CODEC_V4.decode(KEY, bitmap).toLongArray()).isEqualTo(ids);
+  }
+
+  @Test
+  public void testCodecV4DecodesCodecV2()
+  {
+    final long[] ids = range(1, 100000, 3);
+    assertThat(CODEC_V4.decode(KEY, CODEC_V2.encode(newDefinedSet(ids))).toLongArray()).isEqualTo(ids);
+    assertThat(CODEC_V4.decode(KEY, CODEC_V2.encode(newUndefinedSet())).isDefined()).isFalse();
+  }
+
+  private static long[] range(long from, long to, int step)
+  {
+    final long[] ids = new long[(int) ((to - from) / step) + 1];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = from + i * step;
+    }
+    return ids;
+  }
+
   @DataProvider(name = "codecs")
   public static Object[][] codecs() {
-     return new Object[][] { { CODEC_V1 }, { CODEC_V2 } };
+     return new Object[][] { { CODEC_V1 }, { CODEC_V2 }, { CODEC_V4 } };
   }
 
 }
@@ -0,0 +1,217 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.backends.pluggable.VLVIndex.*;
+import static org.opends.server.protocols.ldap.LDAPResultCode.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.opendj.ldap.SortKey;
+import org.mockito.ArgumentCaptor;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.controls.VLVRequestControl;
+import org.opends.server.controls.VLVResponseControl;
+import org.opends.server.core.SearchOperation;
+import org.opends.server.types.Control;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend", "unit" }, sequential=true)
+public class EntryIDSorterTest extends DirectoryServerTestCase
+{
+  private static final List<SortKey> SORT_KEYS = Arrays.asList(new SortKey("sn", false));
+  private static final int NB_KEYS = 100;
+
+  private File tempDir;
+
+  @BeforeMethod
+  public void setUp() throws Exception
+  {
+    tempDir = TestCaseUtils.createTemporaryDirectory("entryidsorter");
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception
+  {
+    TestCaseUtils.deleteDirectory(tempDir);
+  }
+
+  @Test
+  public void testSmallestKeysSelectsPageByOffset() throws Exception
+  {
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    try (EntryIDSorter sorter = newSorter(searchOperation, new VLVRequestControl(2, 3, 10, 0)))
+    {
+      assertThat(sorter.getClass().getSimpleName()).isEqualTo("SmallestKeys");
+      assertThat(sorter.sort(searchOperation)).containsExactly(7, 8, 9, 10, 11, 12);
+    }
+    assertResponseControl(searchOperation, 10, NB_KEYS);
+  }
+
+  @Test
+  public void testSmallestKeysSelectsLastPageWhenOffsetIsBeyondTheEnd() throws Exception
+  {
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    try (EntryIDSorter sorter = newSorter(searchOperation, new VLVRequestControl(2, 3, NB_KEYS * 2, 0)))
+    {
+      assertThat(sorter.getClass().getSimpleName()).isEqualTo("SmallestKeys");
+      assertThat(sorter.sort(searchOperation)).containsExactly(98, 99);
+    }
+    assertResponseControl(searchOperation, NB_KEYS + 1, NB_KEYS);
+  }
+
+  @Test
+  public void testKeysAroundAssertionSelectsPageByAssertion() throws Exception
+  {
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    final VLVRequestControl vlvRequest = new VLVRequestControl(2, 3, ByteString.valueOfUtf8(value(50, 0)));
+    try (EntryIDSorter sorter = newSorter(searchOperation, vlvRequest))
+    {
+      assertThat(sorter.getClass().getSimpleName()).isEqualTo("KeysAroundAssertion");
+      assertThat(sorter.sort(searchOperation)).containsExactly(48, 49, 50, 51, 52, 53);
+    }
+    assertResponseControl(searchOperation, 51, NB_KEYS);
+  }
+
+  @Test
+  public void testKeysAroundAssertionAfterTheLastKey() throws Exception
+  {
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    final VLVRequestControl vlvRequest = new VLVRequestControl(2, 3, ByteString.valueOfUtf8("999999"));
+    try (EntryIDSorter sorter = newSorter(searchOperation, vlvRequest))
+    {
+      assertThat(sorter.getClass().getSimpleName()).isEqualTo("KeysAroundAssertion");
+      assertThat(sorter.sort(searchOperation)).isEmpty();
+    }
+    assertResponseControl(searchOperation, NB_KEYS + 1, NB_KEYS);
+  }
+
+  @Test
+  public void testAllKeysSpilledToDisk() throws Exception
+  {
+    final int nbKeys = 60000;
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    final long[] sortedIDs;
+    try (EntryIDSorter sorter = EntryIDSorter.newInstance(searchOperation, SORT_KEYS, null, nbKeys, tempDir))
+    {
+      assertThat(sorter.getClass().getSimpleName()).isEqualTo("AllKeys");
+      addKeys(sorter, nbKeys, 150);
+      assertThat(tempDir.list()).as("the keys must have been spilled").hasSize(1);
+      sortedIDs = sorter.sort(searchOperation);
+    }
+    assertThat(tempDir.list()).as("the spilled keys must have been deleted").isEmpty();
+    assertThat(sortedIDs).hasSize(nbKeys);
+    for (int i = 0; i < nbKeys; i++)
+    {
+      assertThat(sortedIDs[i]).isEqualTo(i);
+    }
+    verify(searchOperation, never()).addResponseControl(any(Control.class));
+  }
+
+  @Test
+  public void testAllKeysSpilledToDiskSelectsPageByOffset() throws Exception
+  {
+    final int nbKeys = 60000;
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    final VLVRequestControl vlvRequest = new VLVRequestControl(1, 1, 20000, 0);
+    try (EntryIDSorter sorter = EntryIDSorter.newInstance(searchOperation, SORT_KEYS, vlvRequest, nbKeys, tempDir))
+    {
+      assertThat(sorter.getClass().getSimpleName()).isEqualTo("AllKeys");
+      addKeys(sorter, nbKeys, 150);
+      assertThat(tempDir.list()).as("the keys must have been spilled").hasSize(1);
+      assertThat(sorter.sort(searchOperation)).containsExactly(19998, 19999, 20000);
+    }
+    assertThat(tempDir.list()).as("the spilled keys must have been deleted").isEmpty();
+    assertResponseControl(searchOperation, 20000, nbKeys);
+  }
+
+  @Test
+  public void testAllKeysSpilledToDiskAreDeletedWhenNotSorted() throws Exception
+  {
+    final int nbKeys = 60000;
+    final SearchOperation searchOperation = mock(SearchOperation.class);
+    try (EntryIDSorter sorter = EntryIDSorter.newInstance(searchOperation, SORT_KEYS, null, nbKeys, tempDir))
+    {
+      addKeys(sorter, nbKeys, 150);
+      assertThat(tempDir.list()).as("the keys must have been spilled").hasSize(1);
+    }
+    assertThat(tempDir.list()).as("the spilled keys must have been deleted").isEmpty();
+  }
+
+  private EntryIDSorter newSorter(SearchOperation searchOperation, VLVRequestControl vlvRequest) throws Exception
+  {
+    final EntryIDSorter sorter = EntryIDSorter.newInstance(searchOperation, SORT_KEYS, vlvRequest, NB_KEYS, tempDir);
+    addKeys(sorter, NB_KEYS, 0);
+    return sorter;
+  }
+
+  /** Adds keys in random order, the ID of each entry being its rank in the sort order. */
+  private static void addKeys(EntryIDSorter sorter, int nbKeys, int padding) throws Exception
+  {
+    final List<Integer> ranks = new ArrayList<>(nbKeys);
+    for (int i = 0; i < nbKeys; i++)
+    {
+      ranks.add(i);
+    }
+    Collections.shuffle(ranks, new Random(0));
+    for (int rank : ranks)
+    {
+      sorter.add(encodeKey(value(rank, padding), rank));
+    }
+  }
+
+  private static String value(int rank, int padding)
+  {
+    final StringBuilder value = new StringBuilder(String.format("%06d", rank));
+    for (int i = 0; i < padding; i++)
+    {
+      value.append('x');
+    }
+    return value.toString();
+  }
+
+  /** Encodes a VLV key like the VLV index does for an entry having the provided sn. */
+  private static ByteString encodeKey(String sn, long entryID)
+  {
+    final ByteStringBuilder builder = new ByteStringBuilder();
+    encodeVLVKeyValue(ByteString.valueOfUtf8(sn), builder, false);
+    builder.appendLong(entryID);
+    return builder.toByteString();
+  }
+
+  private static void assertResponseControl(SearchOperation searchOperation, int targetPosition, int contentCount)
+  {
+    final ArgumentCaptor<Control> control = ArgumentCaptor.forClass(Control.class);
+    verify(searchOperation).addResponseControl(control.capture());
+    final VLVResponseControl vlvResponse = (VLVResponseControl) control.getValue();
+    assertThat(vlvResponse.getTargetPosition()).isEqualTo(targetPosition);
+    assertThat(vlvResponse.getContentCount()).isEqualTo(contentCount);
+    assertThat(vlvResponse.getVLVResultCode()).isEqualTo(SUCCESS);
+  }
+}
@@ -0,0 +1,340 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.backends.pluggable;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.forgerock.opendj.config.ConfigurationMock.*;
+import static org.mockito.Mockito.*;
+import static org.opends.server.util.CollectionUtils.*;
+
+import java.util.List;
+
+import org.forgerock.opendj.io.ASN1;
+import org.forgerock.opendj.io.ASN1Writer;
+import org.forgerock.opendj.ldap.ByteString;
+import org.forgerock.opendj.ldap.ByteStringBuilder;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.schema.AttributeType;
+import org.forgerock.opendj.server.config.server.PDBBackendCfg;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.backends.pdb.PDBStorage;
+import org.opends.server.backends.pluggable.spi.AccessMode;
+import org.opends.server.backends.pluggable.spi.ReadOperation;
+import org.opends.server.backends.pluggable.spi.ReadableTransaction;
+import org.opends.server.backends.pluggable.spi.TreeName;
+import org.opends.server.backends.pluggable.spi.WriteOperation;
+import org.opends.server.backends.pluggable.spi.WriteableTransaction;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.core.MemoryQuota;
+import org.opends.server.core.ServerContext;
+import org.opends.server.extensions.DiskSpaceMonitor;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Entry;
+import org.opends.server.types.EntryEncodeConfig;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit", "pluggablebackend" }, sequential = true)
+public class ID2EntryTest extends DirectoryServerTestCase
+{
+  private static final String BACKEND_ID = "id2entryTest";
+  /** Enough entries for sampling the content a dictionary is trained from. */
+  private static final int NB_SAMPLED_ENTRIES = 8000;
+
+  private final TreeName id2EntryTreeName = new TreeName("base-dn", "id2entry");
+  private PDBStorage storage;
+  private CompressionDictionaries dictionaries;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void setUp() throws Exception
+  {
+    ServerContext serverContext = mock(ServerContext.class);
+    when(serverContext.getMemoryQuota()).thenReturn(new MemoryQuota());
+    when(serverContext.getDiskSpaceMonitor()).thenReturn(mock(DiskSpaceMonitor.class));
+
+    storage = new PDBStorage(createBackendCfg(), serverContext);
+    storage.open(AccessMode.READ_WRITE);
+    dictionaries = openDictionaries();
+  }
+
+  @AfterMethod
+  public void tearDown()
+  {
+    dictionaries.close();
+    storage.close();
+    storage.removeStorageFiles();
+  }
+
+  @Test
+  public void testDictionaryCompressedEntryRoundTrip() throws Exception
+  {
+    testDictionaryCompressedEntryRoundTrip(false);
+  }
+
+  @Test
+  public void testEncryptedDictionaryCompressedEntryRoundTrip() throws Exception
+  {
+    testDictionaryCompressedEntryRoundTrip(true);
+  }
+
+  private void testDictionaryCompressedEntryRoundTrip(boolean encrypted) throws Exception
+  {
+    final ID2Entry id2Entry = openID2Entry(newDictionaryDataConfig(dictionaries, encrypted));
+    trainDictionary(id2Entry);
+
+    final Entry entry = newEntry(1);
+    put(id2Entry, 1, id2Entry.encode(entry));
+
+    final ByteString record = readRecord(1);
+    assertThat(record.byteAt(0)).isEqualTo((byte) 0x03);
+    // the flags tell the entry is compressed with a dictionary, and whether it is encrypted
+    assertThat(record.byteAt(1)).isEqualTo((byte) (encrypted ? 0x06 : 0x04));
+    assertSameEntry(get(id2Entry, 1), entry);
+  }
+
+  @Test
+  public void testAllFormatsAreReadFromTheSameTree() throws Exception
+  {
+    final ID2Entry id2Entry = openID2Entry(newDictionaryDataConfig(dictionaries, false));
+    final ID2Entry v2Entries = new ID2Entry(id2EntryTreeName, new DataConfig.Builder().compress(true).build());
+    final Entry v1Entry = newEntry(1);
+    final Entry v2Entry = newEntry(2);
+    final Entry v2PlainEntry = newEntry(3);
+    put(id2Entry, 1, encodeV1(v1Entry));
+    put(id2Entry, 2, v2Entries.encode(v2Entry));
+    put(id2Entry, 3, new ID2Entry(id2EntryTreeName, new DataConfig.Builder().build()).encode(v2PlainEntry));
+
+    trainDictionary(id2Entry);
+    final Entry v3Entry = newEntry(4);
+    put(id2Entry, 4, id2Entry.encode(v3Entry));
+
+    assertThat(readRecord(1).byteAt(0)).isEqualTo((byte) 0x01);
+    assertThat(readRecord(2).byteAt(0)).isEqualTo((byte) 0x02);
+    assertThat(readRecord(3).byteAt(0)).isEqualTo((byte) 0x02);
+    assertThat(readRecord(4).byteAt(0)).isEqualTo((byte) 0x03);
+    assertSameEntry(get(id2Entry, 1), v1Entry);
+    assertSameEntry(get(id2Entry, 2), v2Entry);
+    assertSameEntry(get(id2Entry, 3), v2PlainEntry);
+    assertSameEntry(get(id2Entry, 4), v3Entry);
+    // once the tree is reopened, the dictionary is loaded from the storage
+    dictionaries.close();
+    dictionaries = openDictionaries();
+    assertSameEntry(get(new ID2Entry(id2EntryTreeName, newDictionaryDataConfig(dictionaries, false)), 4), v3Entry);
+  }
+
+  @Test
+  public void testDictionaryIsStoredWhenTheSampledEntriesAreRolledBack() throws Exception
+  {
+    final ID2Entry id2Entry = openID2Entry(newDictionaryDataConfig(dictionaries, false));
+    try
+    {
+      storage.write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          for (int i = 1; i <= NB_SAMPLED_ENTRIES; i++)
+          {
+            id2Entry.put(txn, new EntryID(i), newEntry(i));
+          }
+          throw new Exception("rollback");
+        }
+      });
+      fail("The write operation should have been rolled back");
+    }
+    catch (Exception e)
+    {
+      assertThat(e).hasMessageContaining("rollback");
+    }
+    waitForDictionary();
+
+    final Entry entry = newEntry(1);
+    put(id2Entry, 1, id2Entry.encode(entry));
+    assertThat(readRecord(1).byteAt(0)).isEqualTo((byte) 0x03);
+
+    // the entries compressed with the dictionary can be read once the backend is restarted
+    dictionaries.close();
+    dictionaries = openDictionaries();
+    assertThat(dictionaries.get(1)).isNotNull();
+    assertSameEntry(get(new ID2Entry(id2EntryTreeName, newDictionaryDataConfig(dictionaries, false)), 1), entry);
+  }
+
+  private CompressionDictionaries openDictionaries() throws Exception
+  {
+    final CompressionDictionaries[] result = new CompressionDictionaries[1];
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        result[0] = new CompressionDictionaries(BACKEND_ID, storage, txn, AccessMode.READ_WRITE);
+      }
+    });
+    return result[0];
+  }
+
+  private ID2Entry openID2Entry(DataConfig dataConfig) throws Exception
+  {
+    final ID2Entry id2Entry = new ID2Entry(id2EntryTreeName, dataConfig);
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        id2Entry.open(txn, true);
+      }
+    });
+    return id2Entry;
+  }
+
+  private static DataConfig newDictionaryDataConfig(CompressionDictionaries dictionaries, boolean encrypted)
+  {
+    return new DataConfig.Builder()
+        .compress(true)
+        .compressWithDictionary(true)
+        .compressionDictionaries(dictionaries)
+        .encrypt(encrypted)
+        .cryptoSuite(DirectoryServer.getCryptoManager().newCryptoSuite("AES/CBC/PKCS5Padding", 128, encrypted))
+        .build();
+  }
+
+  /** Samples enough entries for training a dictionary, then waits for the dictionary to be stored. */
+  private void trainDictionary(ID2Entry id2Entry) throws Exception
+  {
+    for (int i = 0; i < NB_SAMPLED_ENTRIES && dictionaries.get(1) == null; i++)
+    {
+      id2Entry.encode(newEntry(i));
+    }
+    waitForDictionary();
+  }
+
+  private void waitForDictionary() throws InterruptedException
+  {
+    for (int i = 0; i < 1000 && dictionaries.get(1) == null; i++)
+    {
+      Thread.sleep(10);
+    }
+    assertThat(dictionaries.get(1)).as("the dictionary must have been trained").isNotNull();
+  }
+
+  private void put(final ID2Entry id2Entry, final long id, final ByteString record) throws Exception
+  {
+    storage.write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        id2Entry.put(txn, new EntryID(id), record);
+      }
+    });
+  }
+
+  private Entry get(final ID2Entry id2Entry, final long id) throws Exception
+  {
+    return storage.read(new ReadOperation<Entry>()
+    {
+      @Override
+      public Entry run(ReadableTransaction txn) throws Exception
+      {
+        return id2Entry.get(txn, new EntryID(id));
+      }
+    });
+  }
+
+  private ByteString readRecord(final long id) throws Exception
+  {
+    return storage.read(new ReadOperation<ByteString>()
+    {
+      @Override
+      public ByteString run(ReadableTransaction txn) throws Exception
+      {
+        return txn.read(id2EntryTreeName, new EntryID(id).toByteString());
+      }
+    });
+  }
+
+  /** Encodes an entry in the format written by the first versions of the pluggable backends. */
+  private static ByteString encodeV1(Entry entry) throws Exception
+  {
+    final ByteStringBuilder encodedEntry = new ByteStringBuilder();
+    entry.encode(encodedEntry, new EntryEncodeConfig());
+    final ByteStringBuilder builder = new ByteStringBuilder();
+    builder.appendByte(0x01);
+    final ASN1Writer writer = ASN1.getWriter(builder);
+    writer.writeStartSequence((byte) 0x60);
+    writer.writeInteger(0);
+    writer.writeOctetString(encodedEntry);
+    writer.writeEndSequence();
+    return builder.toByteString();
+  }
+
+  private static Entry newEntry(int i) throws Exception
+  {
+    return TestCaseUtils.makeEntry(
+        "dn: uid=user." + i + ",ou=People,dc=test,dc=com",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user." + i,
+        "cn: User " + i,
+        "sn: " + i,
+        "givenName: User",
+        "mail: user." + i + "@test.com",
+        "telephoneNumber: +1 555 0100 " + i,
+        "description: This is the description for user " + i + ".");
+  }
+
+  private static void assertSameEntry(Entry actual, Entry expected)
+  {
+    assertThat(actual).isNotNull();
+    assertThat(actual.getName()).isEqualTo(expected.getName());
+    assertThat(actual.getObjectClasses().keySet()).isEqualTo(expected.getObjectClasses().keySet());
+    for (List<Attribute> attributes : expected.getUserAttributes().values())
+    {
+      final AttributeType attributeType = attributes.get(0).getAttributeDescription().getAttributeType();
+      assertThat(actual.getAttribute(attributeType)).isEqualTo(attributes);
+    }
+  }
+
+  private PDBBackendCfg createBackendCfg() throws Exception
+  {
+    String homeDirName = "pdb_id2entry_test";
+    PDBBackendCfg backendCfg = mockCfg(PDBBackendCfg.class);
+
+    when(backendCfg.getBackendId()).thenReturn(BACKEND_ID);
+    when(backendCfg.getDBDirectory()).thenReturn(homeDirName);
+    when(backendCfg.getDBDirectoryPermissions()).thenReturn("755");
+    when(backendCfg.getDBCacheSize()).thenReturn(0L);
+    when(backendCfg.getDBCachePercent()).thenReturn(20);
+    when(backendCfg.getBaseDN()).thenReturn(newTreeSet(DN.valueOf("dc=test,dc=com")));
+    when(backendCfg.dn()).thenReturn(DN.valueOf("dc=test,dc=com"));
+    when(backendCfg.listBackendIndexes()).thenReturn(new String[0]);
+    when(backendCfg.listBackendVLVIndexes()).thenReturn(new String[0]);
+
+    return backendCfg;
+  }
+}
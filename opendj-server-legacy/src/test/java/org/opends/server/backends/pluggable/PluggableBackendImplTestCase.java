@@ -21,12 +21,16 @@ import static org.mockito.Mockito.*;
 import static org.opends.server.protocols.internal.InternalClientConnection.getRootConnection;
 import static org.opends.server.protocols.internal.Requests.newSearchRequest;
 import static org.opends.server.types.Attributes.create;
+import static org.opends.server.types.ExistingFileBehavior.*;
 import static org.opends.server.types.IndexType.*;
 import static org.opends.server.util.CollectionUtils.*;
 import static org.testng.Assert.*;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -57,6 +61,7 @@ import org.opends.server.api.ClientConnection;
 import org.opends.server.backends.RebuildConfig;
 import org.opends.server.backends.RebuildConfig.RebuildMode;
 import org.opends.server.backends.VerifyConfig;
+import org.opends.server.backends.pluggable.AttributeIndex.MatchingRuleIndex;
 import org.opends.server.backends.pluggable.spi.AccessMode;
 import org.opends.server.backends.pluggable.spi.ReadOnlyStorageException;
 import org.opends.server.backends.pluggable.spi.ReadOperation;
@@ -80,6 +85,7 @@ import org.opends.server.types.BackupDirectory;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
+import org.opends.server.types.InitializationException;
 import org.opends.server.types.LDIFExportConfig;
 import org.opends.server.types.LDIFImportConfig;
 import org.opends.server.types.Modification;
@@ -101,6 +107,7 @@ import org.testng.annotations.Test;
 public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg> extends DirectoryServerTestCase
 {
   private BackendImpl<C> backend;
+  private C backendConfig;
   private List<Entry> topEntries;
   private List<Entry> entries;
   private List<Entry> workEntries;
@@ -151,6 +158,7 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     testBaseDN = DN.valueOf("dc=test,dc=com");
 
     C backendCfg = createBackendCfg();
+    backendConfig = backendCfg;
     when(backendCfg.dn()).thenReturn(testBaseDN);
     when(backendCfg.getBaseDN()).thenReturn(newTreeSet(testBaseDN));
     when(backendCfg.listBackendIndexes()).thenReturn(backendIndexes.keySet().toArray(new String[0]));
@@ -706,7 +714,7 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
       public Object answer(InvocationOnMock invocation) throws Throwable
       {
         returnedEntries.add(invocation.getArgumentAt(0, Entry.class));
-        return null;
+        return true;
       }
     }).when(searchOp).returnEntry(any(Entry.class), any(List.class));
     return searchOp;
@@ -816,6 +824,57 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     subTreeSearch(true);
   }
 
+  @Test
+  public void testIndexedSearchInParallel() throws Exception
+  {
+    final DN peopleDN = DN.valueOf("ou=People," + testBaseDN);
+    final List<Entry> parallelEntries = new ArrayList<>();
+    for (int i = 0; i < 1100; i++)
+    {
+      parallelEntries.add(TestCaseUtils.makeEntry(
+          "dn: uid=parallel." + i + "," + peopleDN,
+          "objectClass: top",
+          "objectClass: person",
+          "objectClass: organizationalPerson",
+          "objectClass: inetOrgPerson",
+          "uid: parallel." + i,
+          "cn: Parallel " + i,
+          "sn: Parallel"));
+    }
+    addEntriesToBackend(parallelEntries);
+    when(backendConfig.getSearchParallelism()).thenReturn(4);
+    backend.getRootContainer().applyConfigurationChange(backendConfig);
+    try
+    {
+      assertThat(backend.getRootContainer().getSearchPool()).isNotNull();
+
+      final List<Entry> returnedEntries = new ArrayList<>();
+      backend.search(createSearchOperation(peopleDN, SearchScope.WHOLE_SUBTREE, "(sn=Parallel)", returnedEntries));
+      // Returned in candidate order, which is the order the entries were added in
+      assertThat(getNames(returnedEntries)).isEqualTo(getNames(parallelEntries));
+    }
+    finally
+    {
+      when(backendConfig.getSearchParallelism()).thenReturn(1);
+      backend.getRootContainer().applyConfigurationChange(backendConfig);
+      DeleteOperation op = mock(DeleteOperation.class);
+      for (Entry entry : parallelEntries)
+      {
+        backend.deleteEntry(entry.getName(), op);
+      }
+    }
+  }
+
+  private static List<DN> getNames(List<Entry> entries)
+  {
+    final List<DN> names = new ArrayList<>();
+    for (Entry entry : entries)
+    {
+      names.add(entry.getName());
+    }
+    return names;
+  }
+
   @Test
   public void testSubTreeSearchAgainstAnIndexWithUnrecognizedMatchingRule() throws Exception
   {
@@ -925,6 +984,101 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     }
   }
 
+  @Test
+  public void testParallelExportLDIF() throws Exception
+  {
+    ByteArrayOutputStream sequentialContent = new ByteArrayOutputStream();
+    try (final LDIFExportConfig exportConfig = new LDIFExportConfig(sequentialContent))
+    {
+      backend.exportLDIF(exportConfig);
+    }
+
+    File ldifFile = File.createTempFile("parallel-export", ".ldif");
+    try
+    {
+      try (final LDIFExportConfig exportConfig = new LDIFExportConfig(ldifFile.getPath(), OVERWRITE))
+      {
+        exportConfig.setThreadCount(4);
+        backend.exportLDIF(exportConfig);
+      }
+      // The ranges of entries are merged in order
+      assertEquals(new String(Files.readAllBytes(ldifFile.toPath())), sequentialContent.toString());
+
+      List<String> partFiles = new ArrayList<>();
+      try (final LDIFExportConfig exportConfig = new LDIFExportConfig(ldifFile.getPath(), OVERWRITE))
+      {
+        exportConfig.setThreadCount(4);
+        exportConfig.setWritePartFiles(true);
+        exportConfig.setCompressData(true);
+        backend.exportLDIF(exportConfig);
+        for (int part = 0; part < exportConfig.getNbParts(); part++)
+        {
+          partFiles.add(exportConfig.getPartFile(part));
+        }
+      }
+      try (final LDIFImportConfig importConfig = new LDIFImportConfig(partFiles))
+      {
+        importConfig.setCompressed(true);
+        List<LDIFImportConfig.PartReader> partReaders = importConfig.getPartReaders(4);
+        assertEquals(partReaders.size(), 4);
+        StringBuilder partsContent = new StringBuilder();
+        for (BufferedReader partReader : partReaders)
+        {
+          try (BufferedReader reader = partReader)
+          {
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+              partsContent.append(line).append(System.lineSeparator());
+            }
+          }
+        }
+        assertEquals(partsContent.toString(), sequentialContent.toString());
+      }
+      finally
+      {
+        for (String partFile : partFiles)
+        {
+          new File(partFile).delete();
+        }
+      }
+    }
+    finally
+    {
+      ldifFile.delete();
+    }
+  }
+
+  @Test
+  public void testParallelExportLDIFToExistingFile() throws Exception
+  {
+    File ldifFile = File.createTempFile("parallel-export", ".ldif");
+    try
+    {
+      try (final LDIFExportConfig exportConfig = new LDIFExportConfig(ldifFile.getPath(), FAIL))
+      {
+        exportConfig.setThreadCount(4);
+        try
+        {
+          backend.exportLDIF(exportConfig);
+          fail("The export should fail as the LDIF file exists");
+        }
+        catch (DirectoryException expected)
+        {
+          // No part file is left behind
+          for (int part = 0; part < exportConfig.getNbParts(); part++)
+          {
+            assertFalse(new File(exportConfig.getPartFile(part)).exists());
+          }
+        }
+      }
+      assertEquals(ldifFile.length(), 0);
+    }
+    finally
+    {
+      ldifFile.delete();
+    }
+  }
+
   @Test
   public void testExportLDIFAndImportLDIF() throws Exception
   {
@@ -1102,6 +1256,148 @@ public abstract class PluggableBackendImplTestCase<C extends PluggableBackendCfg
     assertThat(backend.verifyBackend(config)).isEqualTo(0);
   }
 
+  @Test
+  public void testRebuildIndexOnline() throws Exception
+  {
+    final EntryContainer entryContainer = backend.getRootContainer().getEntryContainers().iterator().next();
+
+    final Set<String> dirtyIndexes = new HashSet<>(Arrays.asList("sn", "telephoneNumber"));
+    assertThat(backendIndexes.keySet()).containsAll(dirtyIndexes);
+
+    // Empty the indexes
+    backend.getRootContainer().getStorage().write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        for (AttributeIndex attribute : entryContainer.getAttributeIndexes())
+        {
+          if (dirtyIndexes.contains(attribute.getAttributeType().getNameOrOID()))
+          {
+            for (Index idx : attribute.getNameToIndexes().values())
+            {
+              idx.setTrusted(txn, false);
+              idx.delete(txn);
+              idx.open(txn, true);
+            }
+          }
+        }
+      }
+    });
+
+    RebuildConfig rebuildConf = new RebuildConfig();
+    rebuildConf.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    for (String indexName : dirtyIndexes)
+    {
+      rebuildConf.addRebuildIndex(indexName);
+    }
+    rebuildConf.setOnline(true);
+
+    // The backend remains open
+    backend.rebuildBackend(rebuildConf, DirectoryServer.getInstance().getServerContext());
+
+    for (AttributeIndex attribute : entryContainer.getAttributeIndexes())
+    {
+      for (MatchingRuleIndex idx : attribute.getNameToIndexes().values())
+      {
+        assertThat(idx.isTrusted()).isTrue();
+        assertThat(idx.isRebuilding()).isFalse();
+      }
+    }
+
+    VerifyConfig config = new VerifyConfig();
+    config.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    for (String indexName : dirtyIndexes)
+    {
+      config.addCompleteIndex(indexName);
+    }
+    assertThat(backend.verifyBackend(config)).isEqualTo(0);
+
+    config = new VerifyConfig();
+    config.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    for (String indexName : dirtyIndexes)
+    {
+      config.addCleanIndex(indexName);
+    }
+    assertThat(backend.verifyBackend(config)).isEqualTo(0);
+  }
+
+  @Test
+  public void testUpdatesIndexedWhileRebuildingOnline() throws Exception
+  {
+    final EntryContainer entryContainer = backend.getRootContainer().getEntryContainers().iterator().next();
+    final MatchingRuleIndex snIndex = getAnyIndex(entryContainer, "sn");
+    final ByteString key = snIndex.indexEntry(entries.get(0)).iterator().next();
+
+    backend.getRootContainer().getStorage().write(new WriteOperation()
+    {
+      @Override
+      public void run(WriteableTransaction txn) throws Exception
+      {
+        snIndex.setTrusted(txn, false);
+        snIndex.delete(txn);
+        snIndex.open(txn, true);
+      }
+    });
+    snIndex.setRebuilding(true);
+    try
+    {
+      // An untrusted index being rebuilt adds the entryIDs to the non-existing keys
+      final EntryID entryID = new EntryID(42);
+      backend.getRootContainer().getStorage().write(new WriteOperation()
+      {
+        @Override
+        public void run(WriteableTransaction txn) throws Exception
+        {
+          snIndex.update(txn, key, null, EntryIDSet.newDefinedSet(entryID.longValue()));
+        }
+      });
+      final EntryIDSet entryIDs = backend.getRootContainer().getStorage().read(new ReadOperation<EntryIDSet>()
+      {
+        @Override
+        public EntryIDSet run(ReadableTransaction txn) throws Exception
+        {
+          return snIndex.get(txn, key);
+        }
+      });
+      assertThat(entryIDs.isDefined()).isTrue();
+      assertThat(entryIDs.contains(entryID)).isTrue();
+    }
+    finally
+    {
+      snIndex.setRebuilding(false);
+    }
+
+    RebuildConfig rebuildConf = new RebuildConfig();
+    rebuildConf.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    rebuildConf.addRebuildIndex("sn");
+    rebuildConf.setOnline(true);
+    backend.rebuildBackend(rebuildConf, DirectoryServer.getInstance().getServerContext());
+    assertThat(snIndex.isTrusted()).isTrue();
+  }
+
+  @Test(expectedExceptions = InitializationException.class)
+  public void testRebuildVLVIndexOnlineIsRejected() throws Exception
+  {
+    RebuildConfig rebuildConf = new RebuildConfig();
+    rebuildConf.setBaseDN(DN.valueOf("dc=test,dc=com"));
+    rebuildConf.addRebuildIndex("vlv." + backendVlvIndexes[0]);
+    rebuildConf.setOnline(true);
+    backend.rebuildBackend(rebuildConf, DirectoryServer.getInstance().getServerContext());
+  }
+
+  private static MatchingRuleIndex getAnyIndex(EntryContainer entryContainer, String attributeName)
+  {
+    for (AttributeIndex attribute : entryContainer.getAttributeIndexes())
+    {
+      if (attribute.getAttributeType().hasNameOrOID(attributeName))
+      {
+        return attribute.getNameToIndexes().values().iterator().next();
+      }
+    }
+    throw new IllegalArgumentException("No index for " + attributeName);
+  }
+
   @Test
   public void testVerifyID2ChildrenCount() throws Exception
   {
@@ -49,6 +49,7 @@ import static org.forgerock.opendj.ldap.ModificationType.*;
 import static org.forgerock.opendj.ldap.requests.Requests.*;
 import static org.opends.server.protocols.internal.InternalClientConnection.*;
 import static org.opends.server.protocols.internal.Requests.*;
+import static org.opends.server.util.CollectionUtils.*;
 import static org.opends.server.util.ServerConstants.*;
 import static org.testng.Assert.*;
 
@@ -199,6 +200,53 @@ public class GroupManagerTestCase
     assertTrue(group1Instance.isMember(user5DN));
   }
 
+  /**
+   * Tests that the groups of a user are found through the member index,
+   * following the nested static and dynamic groups.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testGetGroupInstancesOfMember() throws Exception {
+    TestCaseUtils.initializeTestBackend(true);
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+    addNestedGroupTestEntries();
+    DN group1DN = DN.valueOf("cn=group 1,ou=Groups,o=test");
+    DN group2DN = DN.valueOf("cn=group 2,ou=Groups,o=test");
+    DN group3DN = DN.valueOf("cn=group 3,ou=Groups,o=test");
+    DN group4DN = DN.valueOf("cn=group 4,ou=Groups,o=test");
+    Entry user1Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.1,ou=People,o=test"));
+    Entry user3Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.3,ou=People,o=test"));
+    Entry user5Entry = DirectoryServer.getEntry(DN.valueOf("uid=user.5,ou=People,o=test"));
+    Group<?> group1Instance = groupManager.getGroupInstance(group1DN);
+    Group<?> group2Instance = groupManager.getGroupInstance(group2DN);
+    Group<?> group3Instance = groupManager.getGroupInstance(group3DN);
+    //Group 4 is a dynamic group.
+    Group<?> group4Instance = groupManager.getGroupInstance(group4DN);
+    group1Instance.addNestedGroup(group2DN);
+    group2Instance.addNestedGroup(group3DN);
+    group3Instance.addNestedGroup(group4DN);
+    group1Instance.addMember(user1Entry);
+    group3Instance.addMember(user3Entry);
+
+    assertEquals(groupManager.getGroupInstances(user1Entry), newHashSet(group1Instance));
+    assertEquals(groupManager.getGroupInstances(user3Entry),
+        newHashSet(group1Instance, group2Instance, group3Instance));
+    //User 5 matches the URL of the dynamic group "group 4".
+    assertEquals(groupManager.getGroupInstances(user5Entry),
+        newHashSet(group1Instance, group2Instance, group3Instance, group4Instance));
+
+    group2Instance.removeNestedGroup(group3DN);
+    group3Instance.removeMember(user3Entry.getName());
+    assertTrue(groupManager.getGroupInstances(user3Entry).isEmpty());
+    assertEquals(groupManager.getGroupInstances(user5Entry), newHashSet(group3Instance, group4Instance));
+
+    DeleteOperation deleteOperation = getRootConnection().processDelete(group1DN);
+    assertEquals(deleteOperation.getResultCode(), ResultCode.SUCCESS);
+    assertTrue(groupManager.getGroupInstances(user1Entry).isEmpty());
+  }
+
   /**
    * Invokes membership and nested group APIs using a group instance that has
    * been changed by the group manager via ldap modify.
@@ -1768,6 +1816,195 @@ public class GroupManagerTestCase
 
 
 
+  /**
+   * Tests that the members of a dynamic group kept in memory are updated when
+   * entries are added, modified, renamed and deleted.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testMaterializedDynamicGroupMembership()
+         throws Exception
+  {
+    TestCaseUtils.initializeTestBackend(true);
+
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+
+    TestCaseUtils.dsconfig(
+      "set-group-implementation-prop",
+      "--implementation-name", "Dynamic",
+      "--set", "materialized-membership:true");
+    try
+    {
+      TestCaseUtils.addEntries(
+        "dn: ou=People,o=test",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: People",
+        "",
+        "dn: ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: Groups",
+        "",
+        "dn: uid=user.1,ou=People,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.1",
+        "givenName: User",
+        "sn: 1",
+        "cn: User 1",
+        "userPassword: password",
+        "",
+        "dn: cn=Test Group of URLs,ou=Groups,o=test",
+        "objectClass: top",
+        "objectClass: groupOfURLs",
+        "cn: Test Group of URLs",
+        "memberURL: ldap:///ou=People,o=test??sub?(sn<=2)");
+
+      DN groupDN = DN.valueOf("cn=Test Group of URLs,ou=Groups,o=test");
+      DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+      DN user2DN = DN.valueOf("uid=user.2,ou=People,o=test");
+      DN renamedUser2DN = DN.valueOf("uid=user.2b,ou=People,o=test");
+
+      Group<?> groupInstance = groupManager.getGroupInstance(groupDN);
+      assertNotNull(groupInstance);
+      assertTrue(groupInstance.isMember(user1DN));
+      assertFalse(groupInstance.isMember(user2DN));
+
+      TestCaseUtils.addEntry(
+        "dn: uid=user.2,ou=People,o=test",
+        "objectClass: top",
+        "objectClass: person",
+        "objectClass: organizationalPerson",
+        "objectClass: inetOrgPerson",
+        "uid: user.2",
+        "givenName: User",
+        "sn: 2",
+        "cn: User 2",
+        "userPassword: password");
+      assertTrue(groupInstance.isMember(user2DN));
+
+      ModifyOperation modifyOperation = getRootConnection().processModify(
+          newModifyRequest(user1DN).addModification(REPLACE, "sn", "3"));
+      assertEquals(modifyOperation.getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(user1DN));
+
+      ModifyDNOperation modifyDNOperation =
+          getRootConnection().processModifyDN(user2DN, RDN.valueOf("uid=user.2b"), true);
+      assertEquals(modifyDNOperation.getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(user2DN));
+      assertTrue(groupInstance.isMember(renamedUser2DN));
+
+      DeleteOperation deleteOperation = getRootConnection().processDelete(renamedUser2DN);
+      assertEquals(deleteOperation.getResultCode(), ResultCode.SUCCESS);
+      assertFalse(groupInstance.isMember(renamedUser2DN));
+
+      MemberList memberList = groupInstance.getMembers();
+      assertFalse(memberList.hasMoreMembers());
+      memberList.close();
+    }
+    finally
+    {
+      TestCaseUtils.dsconfig(
+        "set-group-implementation-prop",
+        "--implementation-name", "Dynamic",
+        "--set", "materialized-membership:false");
+    }
+  }
+
+
+
+  /**
+   * Tests that a dynamic group only depends on the member entries while the
+   * materialized membership is enabled, and that the members kept in memory
+   * before it was disabled are not used once it is enabled again.
+   *
+   * @throws  Exception  If an unexpected problem occurs.
+   */
+  @Test
+  public void testMaterializedDynamicGroupMembershipDisabled()
+         throws Exception
+  {
+    TestCaseUtils.initializeTestBackend(true);
+
+    GroupManager groupManager = DirectoryServer.getGroupManager();
+    groupManager.deregisterAllGroups();
+
+    TestCaseUtils.addEntries(
+      "dn: ou=People,o=test",
+      "objectClass: top",
+      "objectClass: organizationalUnit",
+      "ou: People",
+      "",
+      "dn: ou=Groups,o=test",
+      "objectClass: top",
+      "objectClass: organizationalUnit",
+      "ou: Groups",
+      "",
+      "dn: uid=user.1,ou=People,o=test",
+      "objectClass: top",
+      "objectClass: person",
+      "objectClass: organizationalPerson",
+      "objectClass: inetOrgPerson",
+      "uid: user.1",
+      "givenName: User",
+      "sn: 1",
+      "cn: User 1",
+      "userPassword: password",
+      "",
+      "dn: cn=Test Group of URLs,ou=Groups,o=test",
+      "objectClass: top",
+      "objectClass: groupOfURLs",
+      "cn: Test Group of URLs",
+      "memberURL: ldap:///ou=People,o=test??sub?(sn<=2)");
+
+    DN groupDN = DN.valueOf("cn=Test Group of URLs,ou=Groups,o=test");
+    DN user1DN = DN.valueOf("uid=user.1,ou=People,o=test");
+    Group<?> groupInstance = groupManager.getGroupInstance(groupDN);
+    assertNotNull(groupInstance);
+    assertFalse(groupInstance.dependsOnMemberEntries());
+
+    TestCaseUtils.dsconfig(
+      "set-group-implementation-prop",
+      "--implementation-name", "Dynamic",
+      "--set", "materialized-membership:true");
+    try
+    {
+      assertTrue(groupInstance.dependsOnMemberEntries());
+      assertTrue(groupInstance.isMember(user1DN));
+
+      TestCaseUtils.dsconfig(
+        "set-group-implementation-prop",
+        "--implementation-name", "Dynamic",
+        "--set", "materialized-membership:false");
+      assertFalse(groupInstance.dependsOnMemberEntries());
+
+      // Not notified to the group
+      ModifyOperation modifyOperation = getRootConnection().processModify(
+          newModifyRequest(user1DN).addModification(REPLACE, "sn", "3"));
+      assertEquals(modifyOperation.getResultCode(), ResultCode.SUCCESS);
+
+      TestCaseUtils.dsconfig(
+        "set-group-implementation-prop",
+        "--implementation-name", "Dynamic",
+        "--set", "materialized-membership:true");
+      assertFalse(groupInstance.isMember(user1DN));
+    }
+    finally
+    {
+      TestCaseUtils.dsconfig(
+        "set-group-implementation-prop",
+        "--implementation-name", "Dynamic",
+        "--set", "materialized-membership:false");
+    }
+  }
+
+
+
   /**
    * Tests the {@code getMembers()} method for a dynamic group, using the
    * variant that doesn't take any arguments.
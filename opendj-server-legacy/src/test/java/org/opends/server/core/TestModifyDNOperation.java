@@ -27,6 +27,7 @@ import static org.testng.Assert.*;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.i18n.LocalizableMessage;
 import org.forgerock.opendj.ldap.AVA;
@@ -55,6 +56,7 @@ import org.opends.server.types.CancelResult;
 import org.opends.server.types.Control;
 import org.opends.server.types.DirectoryException;
 import org.opends.server.types.Entry;
+import org.opends.server.types.LockManager;
 import org.opends.server.types.LockManager.DNLock;
 import org.opends.server.types.Operation;
 import org.testng.annotations.BeforeClass;
@@ -536,6 +538,28 @@ public class TestModifyDNOperation extends OperationTestCase
     examineCompletedOPNoExtraPluginCounts(modifyDNOperation);
   }
 
+  /** With a single lock stripe, the current and new DNs and their parents all share the same stripe. */
+  @Test
+  public void testNewSuperiorModifyWithSharedLockStripe() throws Exception
+  {
+    String oldEntryDN = "uid=user.0,ou=People,dc=example,dc=com";
+    String newEntryDN = "uid=user.test0,dc=example,dc=com";
+
+    LockManager lockManager = DirectoryServer.setLockManager(LockManager.newStripedLockManager(1, TimeUnit.SECONDS, 1));
+    try
+    {
+      ModifyDNOperation modifyDNOperation = runModifyDNOp(oldEntryDN, "uid=user.test0", true, "dc=example,dc=com");
+      assertSuccessAndEntryExists(modifyDNOperation, newEntryDN, false, true);
+
+      modifyDNOperation = runModifyDNOp(newEntryDN, "uid=user.0", true, "ou=People,dc=example,dc=com");
+      assertSuccessAndEntryExists(modifyDNOperation, oldEntryDN, true, false);
+    }
+    finally
+    {
+      DirectoryServer.setLockManager(lockManager);
+    }
+  }
+
   @Test
   public void testRawRDNModify() throws Exception
   {
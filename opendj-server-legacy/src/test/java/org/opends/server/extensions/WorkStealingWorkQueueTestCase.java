@@ -0,0 +1,204 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.extensions;
+
+import static org.mockito.Mockito.*;
+import static org.opends.messages.CoreMessages.*;
+import static org.testng.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.opendj.server.config.server.MonitorProviderCfg;
+import org.forgerock.opendj.server.config.server.WorkStealingWorkQueueCfg;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.api.MonitorProvider;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.types.Operation;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * A set of test cases for the work stealing work queue.
+ */
+@SuppressWarnings("javadoc")
+@Test(sequential = true, timeOut = 30000)
+public class WorkStealingWorkQueueTestCase
+       extends ExtensionsTestCase
+{
+  private static final int NUM_WORKER_THREADS = 4;
+
+  private WorkStealingWorkQueue workQueue;
+  private MonitorProvider<? extends MonitorProviderCfg> serverWorkQueueMonitor;
+
+  @BeforeClass
+  public void startServer() throws Exception
+  {
+    TestCaseUtils.startServer();
+  }
+
+  @BeforeMethod
+  public void initializeWorkQueue() throws Exception
+  {
+    // The work queue registers its own "Work Queue" monitor: restore the server's one afterwards.
+    serverWorkQueueMonitor = DirectoryServer.getMonitorProviders().get("work queue");
+    workQueue = new WorkStealingWorkQueue();
+    workQueue.initializeWorkQueue(newConfiguration(NUM_WORKER_THREADS, 8));
+  }
+
+  @AfterMethod
+  public void finalizeWorkQueue() throws Exception
+  {
+    workQueue.finalizeWorkQueue(INFO_CANCELED_BY_SHUTDOWN.get());
+    if (serverWorkQueueMonitor != null)
+    {
+      DirectoryServer.registerMonitorProvider(serverWorkQueueMonitor);
+    }
+  }
+
+  @Test
+  public void testAllOperationsAreProcessed() throws Exception
+  {
+    final int numOperations = 1000;
+    final CountDownLatch processed = new CountDownLatch(numOperations);
+    for (int i = 0; i < numOperations; i++)
+    {
+      workQueue.submitOperation(newOperation(i % 10, processed, null));
+    }
+
+    assertTrue(processed.await(10, TimeUnit.SECONDS));
+    assertEquals(workQueue.getOpsSubmitted(), numOperations);
+    assertTrue(workQueue.waitUntilIdle(10000));
+    assertEquals(workQueue.size(), 0);
+  }
+
+  @Test
+  public void testOperationsOfABusyWorkerThreadAreStolen() throws Exception
+  {
+    final CountDownLatch blockedOperationStarted = new CountDownLatch(1);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    workQueue.submitOperation(newOperation(0, blockedOperationStarted, unblock));
+    assertTrue(blockedOperationStarted.await(10, TimeUnit.SECONDS));
+
+    // These operations only complete once they are all running: they must be
+    // processed concurrently by the other worker threads.
+    final int numOperations = NUM_WORKER_THREADS - 1;
+    final CountDownLatch allRunning = new CountDownLatch(numOperations);
+    final CountDownLatch processed = new CountDownLatch(numOperations);
+    for (int i = 0; i < numOperations; i++)
+    {
+      workQueue.submitOperation(newOperation(0, allRunning, allRunning, processed));
+    }
+
+    assertTrue(processed.await(10, TimeUnit.SECONDS));
+    assertTrue(workQueue.getOpsStolen() >= numOperations - 1);
+    assertFalse(workQueue.isIdle());
+    unblock.countDown();
+    assertTrue(workQueue.waitUntilIdle(10000));
+  }
+
+  @Test
+  public void testTrySubmitOperationWhenFull() throws Exception
+  {
+    // Keep all the worker threads busy so that the queue fills up: 8 operations over 4 threads.
+    final CountDownLatch started = new CountDownLatch(NUM_WORKER_THREADS);
+    final CountDownLatch unblock = new CountDownLatch(1);
+    for (int i = 0; i < NUM_WORKER_THREADS; i++)
+    {
+      workQueue.submitOperation(newOperation(i, started, unblock));
+    }
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+
+    final CountDownLatch processed = new CountDownLatch(2);
+    assertTrue(workQueue.trySubmitOperation(newOperation(0, processed, null)));
+    assertTrue(workQueue.trySubmitOperation(newOperation(0, processed, null)));
+    assertFalse(workQueue.trySubmitOperation(newOperation(0, processed, null)));
+    assertEquals(workQueue.getOpsRejectedDueToQueueFull(), 1);
+    assertEquals(workQueue.maxWorkerThreadQueueSize(), 2);
+
+    unblock.countDown();
+    assertTrue(processed.await(10, TimeUnit.SECONDS));
+    assertTrue(workQueue.waitUntilIdle(10000));
+  }
+
+  @Test
+  public void testChangingNumWorkerThreads() throws Exception
+  {
+    workQueue.applyConfigurationChange(newConfiguration(8, 16));
+    assertEquals(workQueue.getNumWorkerThreads(), 8);
+    submitAndAwait(100);
+
+    workQueue.applyConfigurationChange(newConfiguration(2, 16));
+    assertEquals(workQueue.getNumWorkerThreads(), 2);
+    submitAndAwait(100);
+  }
+
+  private void submitAndAwait(int numOperations) throws Exception
+  {
+    final CountDownLatch processed = new CountDownLatch(numOperations);
+    for (int i = 0; i < numOperations; i++)
+    {
+      workQueue.submitOperation(newOperation(i, processed, null));
+    }
+    assertTrue(processed.await(10, TimeUnit.SECONDS));
+  }
+
+  private WorkStealingWorkQueueCfg newConfiguration(int numWorkerThreads, int maxWorkQueueCapacity)
+  {
+    WorkStealingWorkQueueCfg configuration = mock(WorkStealingWorkQueueCfg.class);
+    when(configuration.getNumWorkerThreads()).thenReturn(numWorkerThreads);
+    when(configuration.getMaxWorkQueueCapacity()).thenReturn(maxWorkQueueCapacity);
+    return configuration;
+  }
+
+  private Operation newOperation(long connectionID, CountDownLatch started, CountDownLatch unblock)
+  {
+    return newOperation(connectionID, started, unblock, null);
+  }
+
+  /**
+   * Returns an operation which counts down the started latch when it runs, then waits for the
+   * unblock latch to be released and counts down the completed latch, if any.
+   */
+  private Operation newOperation(long connectionID, final CountDownLatch started, final CountDownLatch unblock,
+      final CountDownLatch completed)
+  {
+    Operation operation = mock(Operation.class);
+    when(operation.getConnectionID()).thenReturn(connectionID);
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        started.countDown();
+        if (unblock != null)
+        {
+          unblock.await();
+        }
+        if (completed != null)
+        {
+          completed.countDown();
+        }
+        return null;
+      }
+    }).when(operation).run();
+    return operation;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.protocols.ldap;
+
+import static org.testng.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import org.forgerock.opendj.io.ASN1Reader;
+import org.testng.annotations.Test;
+
+/** Test class for ASN1ByteChannelReader reading with buffers borrowed from a pool. */
+@SuppressWarnings("javadoc")
+public class PooledASN1ByteChannelReaderTestCase extends ASN1ByteChannelReaderTestCase
+{
+  /** The encoding of the "hello" octet string, followed by the start of another element. */
+  private static final byte[] HELLO_AND_PARTIAL_ELEMENT = { 0x04, 0x05, 'h', 'e', 'l', 'l', 'o', 0x04, 0x05 };
+
+  @Override
+  ASN1Reader getReader(byte[] b, int maxElementSize) throws IOException
+  {
+    ASN1ByteChannelReader reader = newReader(b, new ReadBufferPool("test", b.length), maxElementSize);
+    reader.processChannelData();
+    return reader;
+  }
+
+  private ASN1ByteChannelReader newReader(byte[] b, ReadBufferPool pool, int maxElementSize)
+  {
+    return new ASN1ByteChannelReader(Channels.newChannel(new ByteArrayInputStream(b)), pool, maxElementSize);
+  }
+
+  @Test
+  public void testBufferIsOnlyBorrowedWhileReading() throws Exception
+  {
+    ReadBufferPool pool = new ReadBufferPool("test", 3);
+    ASN1ByteChannelReader reader = newReader(HELLO_AND_PARTIAL_ELEMENT, pool, 0);
+
+    assertEquals(reader.processChannelData(), 3);
+    assertEquals(pool.getNumBuffersInUse(), 1);
+    assertFalse(reader.elementAvailable());
+    assertEquals(reader.processChannelData(), 3);
+    assertEquals(reader.processChannelData(), 3);
+    assertTrue(reader.elementAvailable());
+    assertEquals(reader.readOctetStringAsString(), "hello");
+
+    // The unread data must be kept when the buffer is returned.
+    assertEquals(reader.processChannelData(), -1);
+    assertEquals(pool.getNumBuffersInUse(), 0);
+    assertEquals(pool.getNumBuffers(), 1);
+    assertTrue(reader.hasRemainingData());
+    assertFalse(reader.elementAvailable());
+  }
+
+  @Test
+  public void testBufferIsReused() throws Exception
+  {
+    ReadBufferPool pool = new ReadBufferPool("test", 16);
+    for (int i = 0; i < 3; i++)
+    {
+      ASN1ByteChannelReader reader = newReader(HELLO_AND_PARTIAL_ELEMENT, pool, 0);
+      assertEquals(reader.processChannelData(), HELLO_AND_PARTIAL_ELEMENT.length);
+      assertEquals(reader.readOctetStringAsString(), "hello");
+      assertEquals(reader.processChannelData(), -1);
+    }
+    assertEquals(pool.getNumBuffers(), 1);
+    assertEquals(pool.getNumBuffersInUse(), 0);
+  }
+
+  @Test
+  public void testBufferIsDiscardedOnClose() throws Exception
+  {
+    ReadBufferPool pool = new ReadBufferPool("test", 16);
+    ASN1ByteChannelReader reader = newReader(HELLO_AND_PARTIAL_ELEMENT, pool, 0);
+    reader.processChannelData();
+    reader.close();
+    assertEquals(pool.getNumBuffers(), 0);
+    assertEquals(pool.getNumBuffersInUse(), 0);
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import static java.util.concurrent.TimeUnit.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.forgerock.i18n.LocalizableMessage.*;
+import static org.opends.server.TestCaseUtils.*;
+import static org.opends.server.util.CollectionUtils.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import org.forgerock.opendj.config.server.ConfigException;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.opends.server.TestCaseUtils;
+import org.opends.server.core.DirectoryServer;
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.server.ReplServerFakeConfiguration;
+import org.opends.server.replication.server.ReplicationServer;
+import org.opends.server.replication.service.FakeReplicationDomain;
+import org.opends.server.types.Attributes;
+import org.opends.server.types.DirectoryException;
+import org.opends.server.types.Entry;
+import org.opends.server.types.LDIFExportConfig;
+import org.opends.server.util.LDIFException;
+import org.opends.server.util.LDIFWriter;
+import org.opends.server.util.TestTimer;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the delta initialization of an LDAP replication domain: only the
+ * ranges of entries that differ from the source server are updated.
+ */
+@SuppressWarnings("javadoc")
+public class DeltaInitializationTest extends ReplicationTestCase
+{
+  private static final int DS1_ID = 1; // LDAP domain, initialized
+  private static final int DS2_ID = 2; // fake domain, source of the entries
+  private static final int RS_ID = 91;
+
+  private static final DN USER_1_DN = DN.valueOf("uid=user.1," + TEST_ROOT_DN_STRING);
+  private static final DN USER_2_DN = DN.valueOf("uid=user.2," + TEST_ROOT_DN_STRING);
+  private static final DN USER_3_DN = DN.valueOf("uid=user.3," + TEST_ROOT_DN_STRING);
+  private static final DN USER_4_DN = DN.valueOf("uid=user.4," + TEST_ROOT_DN_STRING);
+
+  /** Fake domain sending the ranges of the provided entries that differ. */
+  private static class SourceDomain extends FakeReplicationDomain
+  {
+    private final List<Entry> entries;
+
+    private SourceDomain(DN baseDN, int serverID, int replServerPort, long generationId, List<Entry> entries)
+        throws ConfigException
+    {
+      super(baseDN, serverID, newTreeSet("localhost:" + replServerPort), 100000, generationId);
+      this.entries = entries;
+    }
+
+    @Override
+    public long countEntries()
+    {
+      return entries.size();
+    }
+
+    @Override
+    protected long[] computeRangeChecksums(int nbRanges)
+    {
+      final EntryRangeChecksums checksums = new EntryRangeChecksums(nbRanges);
+      for (Entry entry : entries)
+      {
+        checksums.add(entry);
+      }
+      return checksums.getChecksums();
+    }
+
+    @Override
+    protected void exportRanges(OutputStream output, int nbRanges, Set<Integer> ranges) throws DirectoryException
+    {
+      try (LDIFWriter writer = new LDIFWriter(new LDIFExportConfig(output)))
+      {
+        for (Entry entry : entries)
+        {
+          if (ranges.contains(EntryRangeChecksums.getRange(entry.getName(), nbRanges)))
+          {
+            writer.writeEntry(entry);
+          }
+        }
+      }
+      catch (IOException | LDIFException e)
+      {
+        throw new DirectoryException(ResultCode.OPERATIONS_ERROR, raw("Exception during exportRanges"), e);
+      }
+    }
+  }
+
+  @Test
+  public void testDeltaInitializationRepairsEntries() throws Exception
+  {
+    final DN baseDN = DN.valueOf(TEST_ROOT_DN_STRING);
+    ReplicationServer replicationServer = null;
+    LDAPReplicationDomain domain = null;
+    FakeReplicationDomain sourceDomain = null;
+    try
+    {
+      TestCaseUtils.addEntries(
+          "dn: " + USER_1_DN,
+          "objectClass: top",
+          "objectClass: person",
+          "cn: User 1",
+          "sn: 1",
+          "description: initial",
+          "",
+          "dn: " + USER_2_DN,
+          "objectClass: top",
+          "objectClass: person",
+          "cn: User 2",
+          "sn: 2",
+          "",
+          "dn: " + USER_3_DN,
+          "objectClass: top",
+          "objectClass: person",
+          "cn: User 3",
+          "sn: 3");
+
+      final int replServerPort = TestCaseUtils.findFreePort();
+      replicationServer = new ReplicationServer(new ReplServerFakeConfiguration(
+          replServerPort, getClass().getSimpleName() + RS_ID + "Db", 0, RS_ID, 0, 100, new TreeSet<String>()));
+      domain = MultimasterReplication.createNewDomain(newFakeCfg(baseDN, DS1_ID, replServerPort));
+      domain.start();
+      waitConnected(DS1_ID, RS_ID, replServerPort, domain, "delta initialization");
+
+      // The source server lacks user.2, modified user.1 and has a new user.4
+      final List<Entry> sourceEntries = new ArrayList<>();
+      sourceEntries.add(DirectoryServer.getEntry(baseDN).duplicate(false));
+      final Entry user1 = DirectoryServer.getEntry(USER_1_DN).duplicate(false);
+      user1.replaceAttribute(Attributes.create("description", "repaired"));
+      sourceEntries.add(user1);
+      sourceEntries.add(DirectoryServer.getEntry(USER_3_DN).duplicate(false));
+      sourceEntries.add(makeEntry(
+          "dn: " + USER_4_DN,
+          "objectClass: top",
+          "objectClass: person",
+          "cn: User 4",
+          "sn: 4",
+          "entryUUID: 44444444-4444-4444-4444-444444444444"));
+
+      sourceDomain = new SourceDomain(baseDN, DS2_ID, replServerPort, domain.getGenerationID(), sourceEntries);
+      waitForReplica(domain, DS2_ID);
+
+      domain.initializeFromRemote(DS2_ID, null, true);
+
+      getEntry(USER_4_DN, 10000, true);
+      getEntry(USER_2_DN, 10000, false);
+      checkEntryHasAttributeValue(USER_1_DN, "description", "repaired", 10, "user.1 was not modified");
+      assertThat(getEntryUUID(USER_4_DN)).isEqualTo("44444444-4444-4444-4444-444444444444");
+      assertThat(DirectoryServer.entryExists(USER_3_DN)).isTrue();
+    }
+    finally
+    {
+      if (sourceDomain != null)
+      {
+        sourceDomain.disableService();
+      }
+      if (domain != null)
+      {
+        MultimasterReplication.deleteDomain(baseDN);
+      }
+      remove(replicationServer);
+    }
+  }
+
+  /** Waits for the provided domain to see the provided replica in the topology. */
+  private void waitForReplica(final LDAPReplicationDomain domain, final int serverId) throws Exception
+  {
+    TestTimer timer = new TestTimer.Builder()
+      .maxSleep(10, SECONDS)
+      .sleepTimes(100, MILLISECONDS)
+      .toTimer();
+    timer.repeatUntilSuccess(new Callable<Void>()
+    {
+      @Override
+      public Void call() throws Exception
+      {
+        assertThat(domain.getReplicaInfos()).containsKey(serverId);
+        return null;
+      }
+    });
+  }
+}
@@ -269,12 +269,24 @@ public class DomainFakeCfg implements ReplicationDomainCfg
     return true;
   }
 
+  @Override
+  public boolean isCompressionEnabled()
+  {
+    return false;
+  }
+
   @Override
   public int getInitializationWindowSize()
   {
     return 100;
   }
 
+  @Override
+  public int getInitializationPartitionCount()
+  {
+    return 1;
+  }
+
   /**
    * Gets the ECL Domain if it is present.
    *
@@ -320,6 +332,12 @@ public class DomainFakeCfg implements ReplicationDomainCfg
     return 1440;
   }
 
+  @Override
+  public boolean isConflictsHistoricalBinaryEncoding()
+  {
+    return false;
+  }
+
   @Override
   public String toString()
   {
@@ -0,0 +1,153 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.TestCaseUtils.*;
+
+import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Entry;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/** Tests the checksums of the ranges of entries compared by a delta initialization. */
+@SuppressWarnings("javadoc")
+public class EntryRangeChecksumsTest extends ReplicationTestCase
+{
+  private static final int NB_RANGES = 16;
+
+  private static final String[] USER_1 = {
+    "dn: uid=user.1," + TEST_ROOT_DN_STRING,
+    "objectClass: top",
+    "objectClass: person",
+    "objectClass: organizationalPerson",
+    "objectClass: inetOrgPerson",
+    "uid: user.1",
+    "cn: User 1",
+    "sn: 1",
+    "description: first",
+    "description: second",
+    "entryUUID: 11111111-1111-1111-1111-111111111111",
+  };
+
+  private static final String[] USER_1_REORDERED = {
+    "dn: uid=user.1," + TEST_ROOT_DN_STRING,
+    "objectClass: inetOrgPerson",
+    "objectClass: organizationalPerson",
+    "objectClass: person",
+    "objectClass: top",
+    "entryUUID: 11111111-1111-1111-1111-111111111111",
+    "description: second",
+    "description: first",
+    "sn: 1",
+    "cn: User 1",
+    "uid: user.1",
+  };
+
+  private static final String[] USER_2 = {
+    "dn: uid=user.2," + TEST_ROOT_DN_STRING,
+    "objectClass: top",
+    "objectClass: person",
+    "cn: User 2",
+    "sn: 2",
+    "entryUUID: 22222222-2222-2222-2222-222222222222",
+  };
+
+  @Test
+  public void testChecksumsDoNotDependOnOrder() throws Exception
+  {
+    final long[] checksums = getChecksums(makeEntry(USER_1), makeEntry(USER_2));
+    assertThat(checksums).isEqualTo(getChecksums(makeEntry(USER_2), makeEntry(USER_1)));
+    // nor on the order of the object classes, attributes and values
+    assertThat(checksums).isEqualTo(getChecksums(makeEntry(USER_2), makeEntry(USER_1_REORDERED)));
+    // only the range of the entries is not empty
+    int nbNonEmptyRanges = 0;
+    for (long checksum : checksums)
+    {
+      if (checksum != 0)
+      {
+        nbNonEmptyRanges++;
+      }
+    }
+    assertThat(nbNonEmptyRanges).isBetween(1, 2);
+  }
+
+  @DataProvider
+  public Object[][] detectedDifferences()
+  {
+    return new Object[][] {
+      // user attributes
+      { "description: third" },
+      { "telephoneNumber: 123" },
+      // replicated operational attributes
+      { "entryUUID: 33333333-3333-3333-3333-333333333333" },
+      { "aci: (targetattr=\"*\")(version 3.0; acl \"test\"; allow(all) userdn=\"ldap:///self\";)" },
+      { "ds-privilege-name: bypass-acl" },
+      { "pwdAccountLockedTime: 20160101000000Z" },
+      { "pwdFailureTime: 20160101000000.000Z" },
+    };
+  }
+
+  @Test(dataProvider = "detectedDifferences")
+  public void testDifferenceIsDetected(String attrLine) throws Exception
+  {
+    final Entry entry = makeEntry(USER_1);
+    final Entry otherEntry = makeEntry(USER_1);
+    final Entry change = makeEntry("dn: " + entry.getName(), attrLine);
+    for (Attribute attr : change.getAttributes())
+    {
+      otherEntry.replaceAttribute(attr);
+    }
+
+    final int range = EntryRangeChecksums.getRange(entry.getName(), NB_RANGES);
+    assertThat(getChecksums(otherEntry)[range]).isNotEqualTo(getChecksums(entry)[range]);
+  }
+
+  @DataProvider
+  public Object[][] ignoredDifferences()
+  {
+    return new Object[][] {
+      { "ds-sync-hist: description:00000108b3a6cbb800000001:add:first" },
+      { "ds-sync-state: 00000108b3a6cbb800000001" },
+      { "ds-sync-generation-id: 42" },
+    };
+  }
+
+  @Test(dataProvider = "ignoredDifferences")
+  public void testReplicaSpecificDifferenceIsIgnored(String attrLine) throws Exception
+  {
+    final Entry entry = makeEntry(USER_1);
+    final Entry otherEntry = makeEntry(USER_1);
+    final Entry change = makeEntry("dn: " + entry.getName(), attrLine);
+    for (Attribute attr : change.getAttributes())
+    {
+      otherEntry.replaceAttribute(attr);
+    }
+
+    assertThat(getChecksums(otherEntry)).isEqualTo(getChecksums(entry));
+  }
+
+  private static long[] getChecksums(Entry... entries)
+  {
+    final EntryRangeChecksums checksums = new EntryRangeChecksums(NB_RANGES);
+    for (Entry entry : entries)
+    {
+      checksums.add(entry);
+    }
+    return checksums.getChecksums();
+  }
+}
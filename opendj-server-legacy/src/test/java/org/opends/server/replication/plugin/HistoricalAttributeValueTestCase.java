@@ -11,12 +11,24 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions Copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package org.opends.server.replication.plugin;
 
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.replication.plugin.EntryHistorical.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.assertj.core.api.Assertions;
+import org.forgerock.opendj.ldap.ByteString;
+import org.opends.server.TestCaseUtils;
 import org.opends.server.replication.ReplicationTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.types.Attribute;
+import org.opends.server.types.Entry;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -47,4 +59,117 @@ public class HistoricalAttributeValueTestCase extends ReplicationTestCase
     HistoricalAttributeValue val = new HistoricalAttributeValue(strVal);
     Assertions.assertThat(strVal).isEqualTo(val.toString());
   }
+
+  @Test(dataProvider = "values")
+  public void testBinaryEncodeDecode(String strVal)
+  {
+    HistoricalAttributeValue val = new HistoricalAttributeValue(strVal);
+    String attrDesc = strVal.substring(0, strVal.indexOf(':'));
+    ByteString encoded = BinaryHistoricalValue.encode(attrDesc, Arrays.asList(val));
+
+    assertThat(BinaryHistoricalValue.isBinary(encoded)).isTrue();
+    assertThat(BinaryHistoricalValue.isBinary(ByteString.valueOfUtf8(strVal))).isFalse();
+    List<HistoricalAttributeValue> decoded = HistoricalAttributeValue.decode(encoded);
+    assertThat(decoded).hasSize(1);
+    assertThat(decoded.get(0).toString()).isEqualTo(strVal);
+  }
+
+  @Test
+  public void testBinaryEncodeSeveralChanges()
+  {
+    List<HistoricalAttributeValue> changes = new ArrayList<>();
+    changes.add(new HistoricalAttributeValue("description:0000014f2d0c9f53000200000003:add:value3"));
+    changes.add(new HistoricalAttributeValue("description:0000014f2d0c9f53000100000001:del:value1"));
+    changes.add(new HistoricalAttributeValue("description:0000014f2d0d0000000100000002:attrDel"));
+    ByteString encoded = BinaryHistoricalValue.encode("description", changes);
+
+    BinaryHistoricalValue binaryVal = BinaryHistoricalValue.valueOf(encoded);
+    assertThat(binaryVal.getAttributeDescription()).isEqualTo("description");
+    assertThat(binaryVal.getNbChanges()).isEqualTo(3);
+    assertThat(binaryVal.getOldestCSN()).isEqualTo(new CSN("0000014f2d0c9f53000100000001"));
+    assertThat(binaryVal.getNewestTime()).isEqualTo(new CSN("0000014f2d0d0000000100000002").getTime());
+    assertThat(BinaryHistoricalValue.decodeCSNs(encoded)).containsExactly(
+        new CSN("0000014f2d0c9f53000100000001"),
+        new CSN("0000014f2d0c9f53000200000003"),
+        new CSN("0000014f2d0d0000000100000002"));
+    assertThat(toStrings(binaryVal.decode())).containsExactly(
+        "description:0000014f2d0c9f53000100000001:del:value1",
+        "description:0000014f2d0c9f53000200000003:add:value3",
+        "description:0000014f2d0d0000000100000002:attrDel");
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testBinaryDecodeTruncatedValue()
+  {
+    HistoricalAttributeValue val = new HistoricalAttributeValue("description:0000014f2d0c9f53000100000001:add:value");
+    ByteString encoded = BinaryHistoricalValue.encode("description", Arrays.asList(val));
+    BinaryHistoricalValue.valueOf(encoded.subSequence(0, encoded.length() - 2)).decode();
+  }
+
+  @Test
+  public void testEntryHistoricalBinaryEncoding() throws Exception
+  {
+    Entry entry = TestCaseUtils.makeEntry(
+        "dn: o=test",
+        "objectClass: top",
+        "objectClass: organization",
+        "o: test",
+        "ds-sync-hist: description:0000014f2d0c9f53000100000001:add:value1",
+        "ds-sync-hist: description:0000014f2d0c9f53000100000002:del:value2",
+        "ds-sync-hist: telephoneNumber:0000014f2d0c9f53000100000003:repl:123",
+        "ds-sync-hist: dn:0000014f2d0c9f53000100000000:add");
+    Attribute textAttr = getHistoricalAttr(entry).get(0);
+
+    // one binary value per attribute description
+    EntryHistorical hist = EntryHistorical.newInstanceFromEntry(entry);
+    hist.setCompactEncoding(true);
+    Attribute binaryAttr = hist.encodeAndPurge();
+    assertThat(binaryAttr).hasSize(3);
+    for (ByteString value : binaryAttr)
+    {
+      assertThat(BinaryHistoricalValue.isBinary(value)).isTrue();
+    }
+
+    // the values of the attributes which are not decoded are kept as is
+    entry.replaceAttribute(binaryAttr);
+    EntryHistorical binaryHist = EntryHistorical.newInstanceFromEntry(entry);
+    assertThat(binaryHist.getOldestCSN()).isEqualTo(new CSN("0000014f2d0c9f53000100000000"));
+    assertThat(binaryHist.encodeAndPurge()).isEqualTo(binaryAttr);
+
+    // and converted back to the text format
+    binaryHist.setCompactEncoding(false);
+    assertThat(binaryHist.encodeAndPurge()).isEqualTo(textAttr);
+  }
+
+  @Test
+  public void testEntryHistoricalBinaryEncodingPurge() throws Exception
+  {
+    Entry entry = TestCaseUtils.makeEntry(
+        "dn: o=test",
+        "objectClass: top",
+        "objectClass: organization",
+        "o: test",
+        "ds-sync-hist: description:0000014f2d0c9f53000100000001:add:value1",
+        "ds-sync-hist: description:0000014f2d0c9f53000100000002:del:value2",
+        "ds-sync-hist: telephoneNumber:0000014f2d0c9f53000100000003:repl:123");
+    EntryHistorical hist = EntryHistorical.newInstanceFromEntry(entry);
+    hist.setCompactEncoding(true);
+    entry.replaceAttribute(hist.encodeAndPurge());
+
+    // all the changes are older than the purge delay
+    EntryHistorical binaryHist = EntryHistorical.newInstanceFromEntry(entry);
+    binaryHist.setPurgeDelay(1);
+    assertThat(binaryHist.encodeAndPurge()).isEmpty();
+    assertThat(binaryHist.getLastPurgedValuesCount()).isEqualTo(3);
+  }
+
+  private static List<String> toStrings(List<HistoricalAttributeValue> values)
+  {
+    List<String> results = new ArrayList<>();
+    for (HistoricalAttributeValue value : values)
+    {
+      results.add(value.toString());
+    }
+    return results;
+  }
 }
@@ -16,6 +16,8 @@
  */
 package org.opends.server.replication.plugin;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.SortedSet;
@@ -121,6 +123,43 @@ public class HistoricalCsnOrderingTest extends ReplicationTestCase
 
   }
 
+  /**
+   * Check the comparator on values in the binary format, holding several CSNs.
+   */
+  @Test
+  public void binaryValueRuleTest() throws Exception
+  {
+    MatchingRule rule = getRule();
+
+    CSN csn1 = new CSN(1, 0, 1);
+    CSN csn2 = new CSN(2, 0, 1);
+    CSN csn3 = new CSN(3, 0, 1);
+    ByteString binaryValue = BinaryHistoricalValue.encode("description", Arrays.asList(
+        new HistoricalAttributeValue("description:" + csn3 + ":add:value3"),
+        new HistoricalAttributeValue("description:" + csn2 + ":add:value2")));
+    ByteString normalizedValue = rule.normalizeAttributeValue(binaryValue);
+
+    assertEquals(rule.getAssertion(ByteString.valueOfUtf8("a:" + csn2)).matches(normalizedValue),
+        ConditionResult.FALSE);
+    assertEquals(rule.getAssertion(ByteString.valueOfUtf8("a:" + csn3)).matches(normalizedValue),
+        ConditionResult.TRUE);
+    assertEquals(rule.getLessOrEqualAssertion(ByteString.valueOfUtf8("a:" + csn1)).matches(normalizedValue),
+        ConditionResult.FALSE);
+    assertEquals(rule.getLessOrEqualAssertion(ByteString.valueOfUtf8("a:" + csn2)).matches(normalizedValue),
+        ConditionResult.TRUE);
+    assertEquals(rule.getGreaterOrEqualAssertion(ByteString.valueOfUtf8("a:" + csn3)).matches(normalizedValue),
+        ConditionResult.TRUE);
+    assertEquals(rule.getGreaterOrEqualAssertion(ByteString.valueOfUtf8("a:" + new CSN(4, 0, 1)))
+        .matches(normalizedValue), ConditionResult.FALSE);
+
+    // one index key per CSN, equal to the key of the same CSN in the text format
+    List<ByteString> keys = new ArrayList<>();
+    rule.createIndexers(null).iterator().next().createKeys(null, binaryValue, keys);
+    assertEquals(keys, Arrays.asList(
+        rule.normalizeAttributeValue(ByteString.valueOfUtf8("a:" + csn2)),
+        rule.normalizeAttributeValue(ByteString.valueOfUtf8("a:" + csn3))));
+  }
+
   /**
    * Test that we can retrieve the entries that were missed by
    * a replication server and can  re-build operations from the historical
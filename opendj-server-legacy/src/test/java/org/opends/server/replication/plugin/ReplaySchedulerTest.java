@@ -0,0 +1,102 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.plugin;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.testng.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.protocol.DeleteMsg;
+import org.opends.server.replication.protocol.LDAPUpdateMsg;
+import org.testng.annotations.Test;
+
+/** Tests the partitioning of the updates to replay by {@link ReplayScheduler}. */
+@SuppressWarnings("javadoc")
+public class ReplaySchedulerTest extends DirectoryServerTestCase
+{
+  private static final int NB_ENTRIES = 20;
+
+  private UpdateToReplay newUpdate(int entry, int seqNum) throws Exception
+  {
+    DN dn = DN.valueOf("uid=user." + entry + ",dc=example,dc=com");
+    LDAPUpdateMsg msg = new DeleteMsg(dn, new CSN(1000, seqNum, 1), "uuid-" + entry);
+    return new UpdateToReplay(msg, null);
+  }
+
+  @Test
+  public void testUpdatesOfTheSameEntryShareALane() throws Exception
+  {
+    ReplayScheduler scheduler = new ReplayScheduler();
+    ReplayScheduler.Lane[] lanes = scheduler.setNumberOfLanes(4);
+    assertEquals(lanes.length, 4);
+
+    UpdateToReplay first = newUpdate(7, 1);
+    UpdateToReplay second = newUpdate(7, 2);
+    assertTrue(scheduler.offer(first, 1, SECONDS));
+    assertTrue(scheduler.offer(second, 1, SECONDS));
+
+    ReplayScheduler.Lane lane = lanes[ReplayScheduler.laneIndex(first.getUpdateMessage(), lanes.length)];
+    assertSame(lane.poll(1, SECONDS), first);
+    assertSame(lane.poll(1, SECONDS), second);
+  }
+
+  @Test
+  public void testResizeKeepsTheOrderOfEachEntry() throws Exception
+  {
+    ReplayScheduler scheduler = new ReplayScheduler();
+    scheduler.setNumberOfLanes(3);
+
+    List<UpdateToReplay> updates = new ArrayList<>();
+    int seqNum = 0;
+    for (int round = 0; round < 5; round++)
+    {
+      for (int entry = 0; entry < NB_ENTRIES; entry++)
+      {
+        UpdateToReplay update = newUpdate(entry, seqNum++);
+        updates.add(update);
+        assertTrue(scheduler.offer(update, 1, SECONDS));
+      }
+    }
+
+    ReplayScheduler.Lane[] lanes = scheduler.setNumberOfLanes(5);
+    List<CSN> lastCSNs = new ArrayList<>();
+    for (int entry = 0; entry < NB_ENTRIES; entry++)
+    {
+      lastCSNs.add(null);
+    }
+    int nbPolled = 0;
+    for (int i = 0; i < lanes.length; i++)
+    {
+      UpdateToReplay update;
+      while ((update = lanes[i].poll(0, SECONDS)) != null)
+      {
+        LDAPUpdateMsg msg = update.getUpdateMessage();
+        assertEquals(ReplayScheduler.laneIndex(msg, lanes.length), i);
+        int entry = updates.indexOf(update) % NB_ENTRIES;
+        CSN last = lastCSNs.get(entry);
+        assertTrue(last == null || msg.getCSN().isNewerThan(last));
+        lastCSNs.set(entry, msg.getCSN());
+        nbPolled++;
+      }
+    }
+    assertEquals(nbPolled, updates.size());
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.protocol;
+
+import static org.mockito.Mockito.*;
+import static org.opends.server.replication.protocol.ProtocolVersion.*;
+import static org.testng.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.util.StaticUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Tests the compression of the messages sent on a {@link Session}. */
+@SuppressWarnings("javadoc")
+public class SessionCompressionTest extends DirectoryServerTestCase
+{
+  private Socket clientSocket;
+  private Socket serverSocket;
+  private Session sender;
+  private Session receiver;
+
+  @BeforeMethod
+  public void openSessions() throws Exception
+  {
+    try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+    {
+      clientSocket = new Socket(listener.getInetAddress(), listener.getLocalPort());
+      serverSocket = listener.accept();
+    }
+    sender = newSession(clientSocket);
+    receiver = newSession(serverSocket);
+  }
+
+  @AfterMethod
+  public void closeSessions()
+  {
+    StaticUtils.close(sender, receiver);
+  }
+
+  /** Sessions are tested without SSL: the secure socket simply exposes the plain socket streams. */
+  private Session newSession(Socket socket) throws IOException
+  {
+    SSLSocket secureSocket = mock(SSLSocket.class);
+    when(secureSocket.getInputStream()).thenReturn(socket.getInputStream());
+    when(secureSocket.getOutputStream()).thenReturn(socket.getOutputStream());
+    return new Session(socket, secureSocket);
+  }
+
+  @Test
+  public void testCompressedMessagesAreReceived() throws Exception
+  {
+    sender.enableCompression();
+    assertTrue(sender.isCompressionEnabled());
+
+    for (int i = 0; i < 100; i++)
+    {
+      // alternate messages too small to be compressed with compressible ones
+      String details = i % 2 == 0 ? "small " + i : repeat("cn=user." + i + ",ou=people,dc=example,dc=com ", 50);
+      sender.publish(new ErrorMsg(1, 2, LocalizableMessage.raw(details)));
+
+      ErrorMsg received = (ErrorMsg) receiver.receive();
+      assertEquals(received.getDetails().toString(), details);
+    }
+  }
+
+  @Test
+  public void testCompressionIsNotEnabledWithOlderProtocolVersions() throws Exception
+  {
+    sender.setProtocolVersion(REPLICATION_PROTOCOL_V8);
+    receiver.setProtocolVersion(REPLICATION_PROTOCOL_V8);
+    sender.enableCompression();
+    assertFalse(sender.isCompressionEnabled());
+
+    String details = repeat("cn=user,ou=people,dc=example,dc=com ", 50);
+    sender.publish(new ErrorMsg(1, 2, LocalizableMessage.raw(details)));
+    ErrorMsg received = (ErrorMsg) receiver.receive();
+    assertEquals(received.getDetails().toString(), details);
+  }
+
+  private String repeat(String s, int times)
+  {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < times; i++)
+    {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+}
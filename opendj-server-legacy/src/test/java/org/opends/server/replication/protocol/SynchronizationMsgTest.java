@@ -1086,6 +1086,30 @@ public class SynchronizationMsgTest extends ReplicationTestCase
     assertEquals(msg.getSenderID(), newMsg.getSenderID());
     assertEquals(msg.getDestination(), newMsg.getDestination());
     assertEquals(msg.getEntryBytes(), newMsg.getEntryBytes());
+    assertEquals(newMsg.getPartition(), -1);
+    assertFalse(newMsg.isEndOfPartition());
+  }
+
+  /**
+   * Test that EntryMsg encoding and decoding works for partitioned total
+   * updates, and that the partition is ignored by older protocol versions.
+   */
+  @Test
+  public void entryMsgWithPartitionTest() throws Exception
+  {
+    byte[] entry = "dn: o=test\nobjectclass: top\n\n".getBytes();
+    EntryMsg msg = new EntryMsg(1, 45678, entry, 0, entry.length, 12, 3, true);
+    EntryMsg newMsg = new EntryMsg(msg.getBytes(getCurrentVersion()), getCurrentVersion());
+    assertEquals(newMsg.getMsgId(), 12);
+    assertEquals(newMsg.getEntryBytes(), entry);
+    assertEquals(newMsg.getPartition(), 3);
+    assertTrue(newMsg.isEndOfPartition());
+
+    EntryMsg v9Msg = new EntryMsg(msg.getBytes(REPLICATION_PROTOCOL_V9), REPLICATION_PROTOCOL_V9);
+    assertEquals(v9Msg.getMsgId(), 12);
+    assertEquals(v9Msg.getEntryBytes(), entry);
+    assertEquals(v9Msg.getPartition(), -1);
+    assertFalse(v9Msg.isEndOfPartition());
   }
 
   /**
@@ -1102,6 +1126,33 @@ public class SynchronizationMsgTest extends ReplicationTestCase
     assertEquals(msg.getSenderID(), newMsg.getSenderID());
     assertEquals(msg.getDestination(), newMsg.getDestination());
     assertEquals(msg.getBaseDN(), newMsg.getBaseDN());
+    assertEquals(newMsg.getNbPartitions(), 0);
+    Assertions.assertThat(newMsg.getCompletedPartitions()).isEmpty();
+
+    msg.setCompletedPartitions(new long[] { 0, 1000, 2000, Long.MAX_VALUE }, newHashSet(0, 2));
+    newMsg = new InitializeRequestMsg(msg.getBytes(getCurrentVersion()), getCurrentVersion());
+    assertEquals(newMsg.getNbPartitions(), 3);
+    Assertions.assertThat(newMsg.getPartitionBounds()).containsExactly(0, 1000, 2000, Long.MAX_VALUE);
+    Assertions.assertThat(newMsg.getCompletedPartitions()).containsOnly(0, 2);
+
+    newMsg = new InitializeRequestMsg(msg.getBytes(REPLICATION_PROTOCOL_V9), REPLICATION_PROTOCOL_V9);
+    assertEquals(newMsg.getNbPartitions(), 0);
+    Assertions.assertThat(newMsg.getCompletedPartitions()).isEmpty();
+  }
+
+  @Test
+  public void initializeRequestMsgWithRangeChecksumsTest() throws Exception
+  {
+    InitializeRequestMsg msg = new InitializeRequestMsg(TEST_ROOT_DN, 1, 2, 100);
+    Assertions.assertThat(msg.getRangeChecksums()).isEmpty();
+
+    msg.setRangeChecksums(new long[] { 0L, -1L, Long.MAX_VALUE, 42L });
+    InitializeRequestMsg newMsg = new InitializeRequestMsg(msg.getBytes(getCurrentVersion()), getCurrentVersion());
+    Assertions.assertThat(newMsg.getRangeChecksums()).containsExactly(0L, -1L, Long.MAX_VALUE, 42L);
+    assertEquals(newMsg.getInitWindow(), 100);
+
+    newMsg = new InitializeRequestMsg(msg.getBytes(REPLICATION_PROTOCOL_V10), REPLICATION_PROTOCOL_V10);
+    Assertions.assertThat(newMsg.getRangeChecksums()).isEmpty();
   }
 
   /**
@@ -1130,6 +1181,38 @@ public class SynchronizationMsgTest extends ReplicationTestCase
     assertEquals(requestorID, newMsg.getInitiatorID());
     assertEquals(entryCount, newMsg.getEntryCount());
     assertEquals(TEST_ROOT_DN, newMsg.getBaseDN());
+    assertEquals(newMsg.getNbPartitions(), 0);
+
+    msg.setPartitions(new long[] { 0, 10, 20, 30, Long.MAX_VALUE }, newHashSet(1, 2));
+    newMsg = new InitializeTargetMsg(msg.getBytes(getCurrentVersion()), getCurrentVersion());
+    assertEquals(newMsg.getNbPartitions(), 4);
+    Assertions.assertThat(newMsg.getPartitionBounds()).containsExactly(0, 10, 20, 30, Long.MAX_VALUE);
+    Assertions.assertThat(newMsg.getSkippedPartitions()).containsOnly(1, 2);
+    assertEquals(newMsg.getEntryCount(), entryCount);
+  }
+
+  @Test
+  public void initializeTargetMsgWithDeltaRangesTest() throws Exception
+  {
+    InitializeTargetMsg msg = new InitializeTargetMsg(TEST_ROOT_DN, 1, 2, 1, 10, 100);
+    assertEquals(msg.getNbRanges(), 0);
+    Assertions.assertThat(msg.getDeltaRanges()).isEmpty();
+
+    ServerState state = new ServerState();
+    state.update(new CSN(1, 0, 1));
+    state.update(new CSN(TimeThread.getTime(), 123, 45));
+    msg.setDeltaRanges(4096, newHashSet(0, 17, 4095), state);
+    InitializeTargetMsg newMsg = new InitializeTargetMsg(msg.getBytes(getCurrentVersion()), getCurrentVersion());
+    assertEquals(newMsg.getNbRanges(), 4096);
+    Assertions.assertThat(newMsg.getDeltaRanges()).containsOnly(0, 17, 4095);
+    assertTrue(newMsg.getDeltaState().cover(state));
+    assertTrue(state.cover(newMsg.getDeltaState()));
+    assertEquals(newMsg.getEntryCount(), 10);
+
+    newMsg = new InitializeTargetMsg(msg.getBytes(REPLICATION_PROTOCOL_V10), REPLICATION_PROTOCOL_V10);
+    assertEquals(newMsg.getNbRanges(), 0);
+    Assertions.assertThat(newMsg.getDeltaRanges()).isEmpty();
+    assertNull(newMsg.getDeltaState());
   }
 
   /**
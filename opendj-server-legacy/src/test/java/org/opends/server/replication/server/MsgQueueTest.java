@@ -0,0 +1,166 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.replication.common.CSN;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit" })
+public class MsgQueueTest extends DirectoryServerTestCase
+{
+  @Test
+  public void testOrderAndCounts() throws Exception
+  {
+    MsgQueue queue = new MsgQueue();
+    UpdateMsg msg1 = newUpdateMsg(1, 1, 10);
+    UpdateMsg msg2 = newUpdateMsg(2, 1, 20);
+    UpdateMsg msg3 = newUpdateMsg(3, 2, 30);
+    queue.add(msg3);
+    queue.add(msg1);
+    queue.add(msg2);
+    queue.add(msg2);
+
+    assertThat(queue.count()).isEqualTo(3);
+    assertThat(queue.bytesCount()).isEqualTo(msg1.size() + msg2.size() + msg3.size());
+    assertThat(queue.first()).isSameAs(msg1);
+    assertThat(queue.contains(msg2)).isTrue();
+
+    assertThat(queue.removeFirst()).isSameAs(msg1);
+    assertThat(queue.removeFirst()).isSameAs(msg2);
+    assertThat(queue.removeFirst()).isSameAs(msg3);
+    assertThat(queue.removeFirst()).isNull();
+    assertThat(queue.first()).isNull();
+    assertThat(queue.isEmpty()).isTrue();
+    assertThat(queue.count()).isEqualTo(0);
+    assertThat(queue.bytesCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testConsumeUpTo() throws Exception
+  {
+    MsgQueue queue = new MsgQueue();
+    UpdateMsg msg2 = newUpdateMsg(2, 1, 20);
+    UpdateMsg msg3 = newUpdateMsg(3, 1, 30);
+    queue.add(newUpdateMsg(1, 1, 10));
+    queue.add(msg2);
+    queue.add(msg3);
+
+    queue.consumeUpTo(msg2);
+    assertThat(queue.first()).isSameAs(msg3);
+    assertThat(queue.bytesCount()).isEqualTo(msg3.size());
+
+    queue.consumeUpTo(newUpdateMsg(4, 1, 40));
+    assertThat(queue.isEmpty()).isTrue();
+    assertThat(queue.count()).isEqualTo(0);
+  }
+
+  @Test
+  public void testAwaitNotEmpty() throws Exception
+  {
+    final MsgQueue queue = new MsgQueue();
+    assertThat(queue.awaitNotEmpty(10, TimeUnit.MILLISECONDS)).isFalse();
+
+    Thread producer = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        queue.add(newUpdateMsg(1, 1, 10));
+      }
+    };
+    producer.start();
+    // woken up by the producer rather than by the timeout
+    assertThat(queue.awaitNotEmpty(1, TimeUnit.MINUTES)).isTrue();
+    producer.join();
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception
+  {
+    final int nbProducers = 4;
+    final int nbMsgsPerProducer = 1000;
+    final MsgQueue queue = new MsgQueue();
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<>();
+    for (int i = 1; i <= nbProducers; i++)
+    {
+      final int serverId = i;
+      Thread producer = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            start.await();
+          }
+          catch (InterruptedException e)
+          {
+            return;
+          }
+          for (int j = 1; j <= nbMsgsPerProducer; j++)
+          {
+            queue.add(newUpdateMsg(j, serverId, 10));
+          }
+        }
+      };
+      producer.start();
+      producers.add(producer);
+    }
+
+    start.countDown();
+    int nbReceived = 0;
+    CSN lastCSN = null;
+    while (nbReceived < nbProducers * nbMsgsPerProducer)
+    {
+      if (queue.awaitNotEmpty(10, TimeUnit.SECONDS))
+      {
+        UpdateMsg msg = queue.removeFirst();
+        if (msg != null)
+        {
+          nbReceived++;
+          lastCSN = msg.getCSN();
+        }
+      }
+      else
+      {
+        fail("Only received " + nbReceived + " messages, last one was " + lastCSN);
+      }
+    }
+    for (Thread producer : producers)
+    {
+      producer.join();
+    }
+    assertThat(queue.isEmpty()).isTrue();
+    assertThat(queue.count()).isEqualTo(0);
+    assertThat(queue.bytesCount()).isEqualTo(0);
+  }
+
+  private static UpdateMsg newUpdateMsg(long time, int serverId, int payloadLength)
+  {
+    return new UpdateMsg(new CSN(time, 0, serverId), new byte[payloadLength]);
+  }
+}
@@ -209,6 +209,30 @@ public class ReplServerFakeConfiguration implements ReplicationServerCfg
     return confidentialityEnabled;
   }
 
+  @Override
+  public boolean isCompressionEnabled()
+  {
+    return false;
+  }
+
+  @Override
+  public long getChangelogCommitWindow()
+  {
+    return 0;
+  }
+
+  @Override
+  public int getChangelogCommitBatchSize()
+  {
+    return 1000;
+  }
+
+  @Override
+  public boolean isChangelogSyncOnCommit()
+  {
+    return false;
+  }
+
   @Override
   public long getAssuredTimeout()
   {
@@ -25,6 +25,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -114,6 +117,27 @@ public class BlockLogReaderWriterTest extends DirectoryServerTestCase
     }
   }
 
+  /**
+   * Tests that records can be read correctly from a memory-mapped file for different block sizes.
+   */
+  @Test(dataProvider="recordsData")
+  public void testWriteThenReadMappedFile(int blockSize, int expectedSizeOfFile,
+      List<Record<Integer, Integer>> records) throws Exception
+  {
+    writeRecords(blockSize, records);
+
+    try (BlockLogReader<Integer, Integer> reader = newMappedReader(blockSize))
+    {
+      for (int i = 0; i < records.size(); i++)
+      {
+         Record<Integer, Integer> record = reader.readRecord();
+         assertThat(record).isEqualTo(records.get(i));
+      }
+      assertThat(reader.readRecord()).isNull();
+      assertThat(reader.getFilePosition()).isEqualTo(expectedSizeOfFile);
+    }
+  }
+
   @DataProvider(name = "recordsForSeek")
   Object[][] recordsForSeek()
   {
@@ -251,6 +275,74 @@ public class BlockLogReaderWriterTest extends DirectoryServerTestCase
     }
   }
 
+  @Test(dataProvider = "recordsForSeek")
+  public void testSeekToRecordInMappedFile(int blockSize, List<Record<Integer, Integer>> records, int key,
+      KeyMatchingStrategy matchingStrategy, PositionStrategy positionStrategy, Record<Integer, Integer> expectedRecord,
+      boolean shouldBeFound) throws Exception
+  {
+    writeRecords(blockSize, records);
+
+    try (BlockLogReader<Integer, Integer> reader = newMappedReader(blockSize))
+    {
+      Pair<Boolean, Record<Integer, Integer>> result = reader.seekToRecord(key, matchingStrategy, positionStrategy);
+
+      final SoftAssertions softly = new SoftAssertions();
+      softly.assertThat(result.getFirst()).isEqualTo(shouldBeFound);
+      softly.assertThat(result.getSecond()).isEqualTo(expectedRecord);
+      softly.assertAll();
+    }
+  }
+
+  @Test(dataProvider = "recordsForSeek")
+  public void testSeekToRecordWithIndex(int blockSize, List<Record<Integer, Integer>> records, int key,
+      KeyMatchingStrategy matchingStrategy, PositionStrategy positionStrategy, Record<Integer, Integer> expectedRecord,
+      boolean shouldBeFound) throws Exception
+  {
+    writeRecords(blockSize, records);
+
+    try (BlockLogReader<Integer, Integer> reader = newReader(blockSize))
+    {
+      LogFileIndex<Integer> index = LogFileIndex.build(reader);
+      Pair<Boolean, Record<Integer, Integer>> result =
+          reader.seekToRecord(key, matchingStrategy, positionStrategy, index);
+
+      final SoftAssertions softly = new SoftAssertions();
+      softly.assertThat(result.getFirst()).isEqualTo(shouldBeFound);
+      softly.assertThat(result.getSecond()).isEqualTo(expectedRecord);
+      softly.assertAll();
+    }
+  }
+
+  @Test
+  public void testSeekToRecordWithIndexOnLargeFile() throws Exception
+  {
+    final int blockSize = 16;
+    final long fileSizeInBytes = 60000;
+    writeRecordsToReachFileSize(blockSize, fileSizeInBytes);
+    final File indexFile = LogFileIndex.getIndexFile(TEST_FILE);
+
+    try (BlockLogReader<Integer, Integer> reader = newReader(blockSize))
+    {
+      LogFileIndex.build(reader).write(indexFile, RECORD_PARSER);
+      LogFileIndex<Integer> index = LogFileIndex.read(indexFile, RECORD_PARSER, TEST_FILE.length());
+      assertThat(index).isNotNull();
+      assertThat(index.size()).isGreaterThan(1);
+      assertThat(LogFileIndex.read(indexFile, RECORD_PARSER, TEST_FILE.length() + 1)).isNull();
+
+      for (int key : getShuffledKeys(fileSizeInBytes, 200))
+      {
+        Pair<Boolean, Record<Integer, Integer>> result =
+            reader.seekToRecord(key, GREATER_THAN_OR_EQUAL_TO_KEY, ON_MATCHING_KEY, index);
+        assertThat(result.getFirst()).isTrue();
+        assertThat(result.getSecond()).isEqualTo(record(key));
+      }
+    }
+    finally
+    {
+      StaticUtils.recursiveDelete(indexFile);
+    }
+  }
+
   @Test
   public void testGetClosestBlockStartBeforeOrAtPosition() throws Exception
   {
@@ -296,6 +388,18 @@ public class BlockLogReaderWriterTest extends DirectoryServerTestCase
     }
   }
 
+  @Test(dataProvider="recordsForNewest")
+  public void testGetNewestRecordInMappedFile(int blockSize, List<Record<Integer, Integer>> records)
+      throws Exception
+  {
+    writeRecords(blockSize, records);
+
+    try(BlockLogReader<Integer, Integer> reader = newMappedReader(blockSize))
+    {
+      assertThat(reader.getNewestRecord()).isEqualTo(records.get(records.size()-1));
+    }
+  }
+
   @DataProvider
   Object[][] recordsForEndOfFile()
   {
@@ -518,6 +622,16 @@ public class BlockLogReaderWriterTest extends DirectoryServerTestCase
         RECORD_PARSER, blockSize);
   }
 
+  private BlockLogReader<Integer, Integer> newMappedReader(int blockSize) throws IOException
+  {
+    try (RandomAccessFile file = new RandomAccessFile(TEST_FILE, "r");
+        FileChannel channel = file.getChannel())
+    {
+      ByteBuffer mappedFile = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      return BlockLogReader.newMappedReaderForTests(TEST_FILE, mappedFile, RECORD_PARSER, blockSize);
+    }
+  }
+
   private BlockLogReader<Integer, Integer> newReaderWithNullFile(int blockSize) throws FileNotFoundException
   {
     return BlockLogReader.newReaderForTests(null, null, RECORD_PARSER, blockSize);
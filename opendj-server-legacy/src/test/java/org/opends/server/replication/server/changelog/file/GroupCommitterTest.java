@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.server.changelog.file;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.forgerock.i18n.LocalizableMessage;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.replication.protocol.UpdateMsg;
+import org.opends.server.replication.server.changelog.api.ChangelogException;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(sequential=true)
+public class GroupCommitterTest extends DirectoryServerTestCase
+{
+  private static final int NB_WRITERS = 10;
+
+  /** Publishes an update from its own thread, recording the error if any. */
+  private static final class Writer extends Thread
+  {
+    private final GroupCommitter committer;
+    private final FileReplicaDB replicaDB;
+    private final UpdateMsg updateMsg;
+    private volatile ChangelogException error;
+
+    private Writer(GroupCommitter committer, FileReplicaDB replicaDB, int i)
+    {
+      super("Writer " + i);
+      this.committer = committer;
+      this.replicaDB = replicaDB;
+      this.updateMsg = new FakeUpdateMsg(i);
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        committer.commit(replicaDB, updateMsg);
+      }
+      catch (ChangelogException e)
+      {
+        error = e;
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentWritersAreBatchedInOneFlush() throws Exception
+  {
+    final GroupCommitter committer = new GroupCommitter();
+    // the commit window ends as soon as every writer is queued
+    committer.setParameters(TimeUnit.MINUTES.toMillis(1), NB_WRITERS, true);
+    final FileReplicaDB replicaDB = mock(FileReplicaDB.class);
+    final List<UpdateMsg> written = recordWrites(replicaDB);
+
+    final List<Writer> writers = startWriters(committer, replicaDB);
+    joinWriters(writers);
+
+    for (Writer writer : writers)
+    {
+      assertThat(writer.error).isNull();
+      assertThat(written).contains(writer.updateMsg);
+    }
+    assertThat(written).hasSize(NB_WRITERS);
+    verify(replicaDB, times(1)).addAll(anyListOf(UpdateMsg.class));
+    verify(replicaDB, times(1)).syncToFileSystem();
+  }
+
+  @Test
+  public void testFlushFailureReachesEveryWaitingWriter() throws Exception
+  {
+    final GroupCommitter committer = new GroupCommitter();
+    committer.setParameters(TimeUnit.MINUTES.toMillis(1), NB_WRITERS, true);
+    final FileReplicaDB replicaDB = mock(FileReplicaDB.class);
+    final ChangelogException flushFailure = new ChangelogException(LocalizableMessage.raw("flush failed"));
+    doThrow(flushFailure).when(replicaDB).syncToFileSystem();
+
+    final List<Writer> writers = startWriters(committer, replicaDB);
+    joinWriters(writers);
+
+    for (Writer writer : writers)
+    {
+      assertThat(writer.error).isSameAs(flushFailure);
+    }
+    verify(replicaDB, times(1)).syncToFileSystem();
+  }
+
+  @Test
+  public void testFailureOfOneReplicaDBOnlyReachesItsWriters() throws Exception
+  {
+    final GroupCommitter committer = new GroupCommitter();
+    committer.setParameters(TimeUnit.MINUTES.toMillis(1), 2, false);
+    final FileReplicaDB failingDB = mock(FileReplicaDB.class);
+    final ChangelogException writeFailure = new ChangelogException(LocalizableMessage.raw("write failed"));
+    doThrow(writeFailure).when(failingDB).addAll(anyListOf(UpdateMsg.class));
+    final FileReplicaDB replicaDB = mock(FileReplicaDB.class);
+    final List<UpdateMsg> written = recordWrites(replicaDB);
+
+    final Writer failingWriter = new Writer(committer, failingDB, 1);
+    final Writer writer = new Writer(committer, replicaDB, 2);
+    failingWriter.start();
+    writer.start();
+    joinWriters(Arrays.asList(failingWriter, writer));
+
+    assertThat(failingWriter.error).isSameAs(writeFailure);
+    assertThat(writer.error).isNull();
+    assertThat(written).containsExactly(writer.updateMsg);
+  }
+
+  @Test
+  public void testShutdownDoesNotLoseQueuedRecords() throws Exception
+  {
+    final GroupCommitter committer = new GroupCommitter();
+    // one update per batch, so that the updates queue up behind the blocked one
+    committer.setParameters(0, 1, false);
+    final FileReplicaDB replicaDB = mock(FileReplicaDB.class);
+    final List<UpdateMsg> written = Collections.synchronizedList(new ArrayList<UpdateMsg>());
+    final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    final CountDownLatch shutdownDone = new CountDownLatch(1);
+    final AtomicBoolean shutdown = new AtomicBoolean();
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        if (firstWriteStarted.getCount() > 0)
+        {
+          // the write in progress when the replica DB is shut down completes
+          firstWriteStarted.countDown();
+          shutdownDone.await();
+        }
+        else if (shutdown.get())
+        {
+          // like FileReplicaDB.addAll() once the replica DB is shut down
+          throw new ChangelogException(LocalizableMessage.raw("shutting down"));
+        }
+        written.addAll(getUpdateMsgs(invocation));
+        return null;
+      }
+    }).when(replicaDB).addAll(anyListOf(UpdateMsg.class));
+
+    final Writer firstWriter = new Writer(committer, replicaDB, 0);
+    firstWriter.start();
+    assertThat(firstWriteStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    final List<Writer> queuedWriters = startWriters(committer, replicaDB);
+    waitUntilWaiting(queuedWriters);
+
+    shutdown.set(true);
+    shutdownDone.countDown();
+    joinWriters(Collections.singletonList(firstWriter));
+    joinWriters(queuedWriters);
+
+    assertThat(firstWriter.error).isNull();
+    assertThat(written).containsExactly(firstWriter.updateMsg);
+    // every queued update is handed to the replica DB, which reports the shutdown to its writer
+    for (Writer writer : queuedWriters)
+    {
+      assertThat(writer.error).as("the update of " + writer.getName() + " was lost").isNotNull();
+    }
+    verify(replicaDB, times(NB_WRITERS + 1)).addAll(anyListOf(UpdateMsg.class));
+  }
+
+  private static List<UpdateMsg> recordWrites(FileReplicaDB replicaDB) throws ChangelogException
+  {
+    final List<UpdateMsg> written = Collections.synchronizedList(new ArrayList<UpdateMsg>());
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation)
+      {
+        written.addAll(getUpdateMsgs(invocation));
+        return null;
+      }
+    }).when(replicaDB).addAll(anyListOf(UpdateMsg.class));
+    return written;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<UpdateMsg> getUpdateMsgs(InvocationOnMock invocation)
+  {
+    return (List<UpdateMsg>) invocation.getArguments()[0];
+  }
+
+  private static List<Writer> startWriters(GroupCommitter committer, FileReplicaDB replicaDB)
+  {
+    final List<Writer> writers = new ArrayList<>();
+    for (int i = 1; i <= NB_WRITERS; i++)
+    {
+      final Writer writer = new Writer(committer, replicaDB, i);
+      writer.start();
+      writers.add(writer);
+    }
+    return writers;
+  }
+
+  private static void waitUntilWaiting(List<Writer> writers) throws InterruptedException
+  {
+    for (Writer writer : writers)
+    {
+      final long deadline = System.currentTimeMillis() + 10000;
+      while (writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline)
+      {
+        Thread.sleep(10);
+      }
+      assertThat(writer.getState()).isEqualTo(Thread.State.WAITING);
+    }
+  }
+
+  private static void joinWriters(List<Writer> writers) throws InterruptedException
+  {
+    for (Writer writer : writers)
+    {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+      assertThat(writer.isAlive()).as(writer.getName() + " is still waiting").isFalse();
+    }
+  }
+}
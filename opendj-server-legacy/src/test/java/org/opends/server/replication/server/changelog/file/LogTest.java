@@ -22,6 +22,8 @@ import static org.opends.server.replication.server.changelog.api.DBCursor.Positi
 import static org.opends.server.replication.server.changelog.file.LogFileTest.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.opends.server.DirectoryServerTestCase;
@@ -267,6 +269,30 @@ public class LogTest extends DirectoryServerTestCase
     }
   }
 
+  /** Test that a batch of records is appended in order, skipping the records breaking the key ordering. */
+  @Test
+  public void testAppendAll() throws Exception
+  {
+    try (Log<String, String> writeLog = openLog(LogFileTest.RECORD_PARSER);
+        Log<String, String> readLog = openLog(LogFileTest.RECORD_PARSER))
+    {
+      final List<Record<String, String>> records = new ArrayList<>();
+      for (int i = 11; i <= 20; i++)
+      {
+        records.add(Record.from(String.format("key%03d", i), "value" + i));
+      }
+      // already in the log
+      records.add(5, Record.from("key002", "value2"));
+      writeLog.appendAll(records);
+
+      assertThat(readLog.getNewestRecord()).isEqualTo(Record.from("key020", "value20"));
+      try (DBCursor<Record<String, String>> cursor = readLog.getCursor())
+      {
+        assertThatCursorCanBeFullyReadFromStart(cursor, 1, 20);
+      }
+    }
+  }
+
   /**
    *  This test should be disabled.
    *  Enable it locally when you need to have an rough idea of write performance.
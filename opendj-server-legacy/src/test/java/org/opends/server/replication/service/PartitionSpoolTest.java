@@ -0,0 +1,169 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.opends.server.replication.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.opends.server.util.CollectionUtils.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.DN;
+import org.opends.server.DirectoryServerTestCase;
+import org.opends.server.TestCaseUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@SuppressWarnings("javadoc")
+@Test(groups = { "precommit" }, sequential = true)
+public class PartitionSpoolTest extends DirectoryServerTestCase
+{
+  private static final DN BASE_DN = DN.valueOf("dc=example,dc=com");
+  private static final Set<Integer> NONE = Collections.emptySet();
+  private static final long[] ONE_PARTITION = { 0, Long.MAX_VALUE };
+  private static final long[] TWO_PARTITIONS = { 0, 100, Long.MAX_VALUE };
+  private static final long[] THREE_PARTITIONS = { 0, 50, 100, Long.MAX_VALUE };
+
+  private File directory;
+  private PartitionSpool spool;
+
+  @BeforeMethod
+  public void createSpool() throws Exception
+  {
+    directory = TestCaseUtils.createTemporaryDirectory("partitionspool");
+    spool = new PartitionSpool(new File(directory, "spool"));
+  }
+
+  @AfterMethod
+  public void deleteSpool() throws Exception
+  {
+    spool.delete();
+    TestCaseUtils.deleteDirectory(directory);
+  }
+
+  @Test
+  public void testReceiveInterleavedPartitions() throws Exception
+  {
+    spool.start(TWO_PARTITIONS, NONE);
+    spool.write(1, bytes("dn: ou=people,dc=example,dc=com\n"));
+    spool.write(0, bytes("dn: dc=example,dc=com\n"));
+    spool.write(1, bytes("objectClass: top\n\n"));
+    spool.endPartition(1);
+    assertThat(spool.isComplete()).isFalse();
+    spool.write(0, bytes("objectClass: top\n\n"));
+    spool.endPartition(0);
+
+    assertThat(spool.isComplete()).isTrue();
+    assertThat(spool.getPartitionFiles()).hasSize(2);
+    assertThat(PartitionSpool.containsEntry(spool.getPartitionFiles().get(0), BASE_DN)).isTrue();
+    assertThat(PartitionSpool.containsEntry(spool.getPartitionFiles().get(1), BASE_DN)).isFalse();
+  }
+
+  @Test
+  public void testResumeKeepsPartitionsHoldingBaseEntry() throws Exception
+  {
+    spool.start(THREE_PARTITIONS, NONE);
+    spool.write(0, bytes("dn: dc=example,dc=com\nobjectClass: top\n\n"));
+    spool.endPartition(0);
+    spool.write(2, bytes("dn: ou=people,dc=example,dc=com\nobjectClass: top\n\n"));
+    spool.endPartition(2);
+    spool.write(1, bytes("dn: ou=groups,dc=example,dc=com\n"));
+
+    final Set<Integer> resumable = spool.getResumablePartitions(BASE_DN);
+    assertThat(resumable).containsOnly(0, 2);
+
+    spool.start(THREE_PARTITIONS, resumable);
+    assertThat(spool.isComplete()).isFalse();
+    spool.write(1, bytes("dn: ou=groups,dc=example,dc=com\nobjectClass: top\n\n"));
+    spool.endPartition(1);
+    assertThat(spool.isComplete()).isTrue();
+  }
+
+  @Test
+  public void testResumeDiscardsPartitionsWithoutBaseEntry() throws Exception
+  {
+    spool.start(TWO_PARTITIONS, NONE);
+    spool.write(1, bytes("dn: ou=people,dc=example,dc=com\nobjectClass: top\n\n"));
+    spool.endPartition(1);
+
+    assertThat(spool.getResumablePartitions(BASE_DN)).isEmpty();
+  }
+
+  @Test
+  public void testBase64EncodedDN() throws Exception
+  {
+    spool.start(ONE_PARTITION, NONE);
+    spool.write(0, bytes("dn:: ZGM9ZXhhbXBsZSxkYz1jb20=\nobjectClass: top\n\n"));
+    spool.endPartition(0);
+
+    assertThat(spool.getResumablePartitions(BASE_DN)).containsOnly(0);
+  }
+
+  @Test
+  public void testResumeWithOtherBoundsDiscardsPartitions() throws Exception
+  {
+    spool.start(TWO_PARTITIONS, NONE);
+    spool.write(0, bytes("dn: dc=example,dc=com\nobjectClass: top\n\n"));
+    spool.endPartition(0);
+    assertThat(spool.getPartitionBounds()).isEqualTo(TWO_PARTITIONS);
+
+    final long[] otherBounds = { 0, 150, Long.MAX_VALUE };
+    try
+    {
+      spool.start(otherBounds, spool.getResumablePartitions(BASE_DN));
+      failBecauseExceptionWasNotThrown(IOException.class);
+    }
+    catch (IOException expected)
+    {
+      // the completed partition holds other entries than the skipped one
+    }
+
+    spool.start(otherBounds, NONE);
+    assertThat(spool.getPartitionBounds()).isEqualTo(otherBounds);
+    assertThat(spool.getResumablePartitions(BASE_DN)).isEmpty();
+    spool.write(0, bytes("dn: dc=example,dc=com\nobjectClass: top\n\n"));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testStartWithMissingSkippedPartitions() throws Exception
+  {
+    spool.start(TWO_PARTITIONS, newHashSet(1));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testWriteUnexpectedPartition() throws Exception
+  {
+    spool.start(TWO_PARTITIONS, NONE);
+    spool.write(2, bytes("dn: dc=example,dc=com\n"));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testWriteCompletedPartition() throws Exception
+  {
+    spool.start(TWO_PARTITIONS, NONE);
+    spool.endPartition(0);
+    spool.write(0, bytes("dn: dc=example,dc=com\n"));
+  }
+
+  private static byte[] bytes(String s)
+  {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -429,6 +429,15 @@ public class ReplicationDomainTest extends ReplicationTestCase
     }
   }
 
+  @Test
+  public void testGetNbRangesForDelta()
+  {
+    assertEquals(ReplicationDomain.getNbRanges(0), 1 << 12);
+    assertEquals(ReplicationDomain.getNbRanges(1000), 1 << 12);
+    assertEquals(ReplicationDomain.getNbRanges(1000000), 1 << 14);
+    assertEquals(ReplicationDomain.getNbRanges(Long.MAX_VALUE), 1 << 20);
+  }
+
   private String buildExportedData(final int ENTRYCOUNT)
   {
     final StringBuilder sb = new StringBuilder();
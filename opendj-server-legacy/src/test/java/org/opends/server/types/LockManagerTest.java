@@ -17,7 +17,9 @@ package org.opends.server.types;
 
 import static org.assertj.core.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -29,6 +31,7 @@ import java.util.concurrent.TimeoutException;
 import org.forgerock.opendj.ldap.DN;
 import org.opends.server.TestCaseUtils;
 import org.opends.server.types.LockManager.DNLock;
+import org.opends.server.types.LockManager.LockStatistics;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -65,6 +68,11 @@ public class LockManagerTest extends TypesTestCase
     };
 
     abstract DNLock lock(LockManager lockManager, DN dn);
+
+    LockManager.LockType getLockManagerLockType()
+    {
+      return LockManager.LockType.valueOf(name());
+    }
   }
 
   private DN dnA;
@@ -95,6 +103,70 @@ public class LockManagerTest extends TypesTestCase
     unlockUsingThread(thread1, lock1);
   }
 
+  @Test
+  public void testLockTimeoutIsRecordedInLockStatistics() throws Exception
+  {
+    final LockManager lockManager = new LockManager(100, TimeUnit.MILLISECONDS);
+    final LockStatistics stats = lockManager.getLockStatistics(LockManager.LockType.WRITE_SUBTREE);
+    DNLock lock1 = lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dnABC).get();
+    assertThat(stats.getWaitCount()).isEqualTo(0);
+
+    DNLock lock2 = lockUsingThread(thread2, lockManager, LockType.WRITE_SUBTREE, dnA).get();
+    assertThat(lock2).isNull(); // Timed out.
+    assertThat(stats.getWaitCount()).isEqualTo(1);
+    assertThat(stats.getTimeoutCount()).isEqualTo(1);
+    assertThat(stats.getTotalWaitTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(100);
+    assertThat(stats.getWaitTimeHistogram()).containsExactly(0, 0, 0, 0, 1, 0);
+    assertThat(lockManager.getLockStatistics(LockManager.LockType.READ_ENTRY).getWaitCount()).isEqualTo(0);
+    unlockUsingThread(thread1, lock1);
+  }
+
+  @Test
+  public void testStripedLockTimeout() throws Exception
+  {
+    final LockManager lockManager = LockManager.newStripedLockManager(100, TimeUnit.MILLISECONDS, 100);
+    assertThat(lockManager.getNumberOfStripes()).isEqualTo(128);
+    DNLock lock1 = lockUsingThread(thread1, lockManager, LockType.WRITE_ENTRY, dnABC).get();
+    DNLock lock2 = lockUsingThread(thread2, lockManager, LockType.WRITE_ENTRY, dnABC).get();
+    assertThat(lock1).isNotNull();
+    assertThat(lock2).isNull(); // Timed out.
+    assertThat(lockManager.getLockStatistics(LockManager.LockType.WRITE_ENTRY).getTimeoutCount()).isEqualTo(1);
+    unlockUsingThread(thread1, lock1);
+  }
+
+  @DataProvider
+  private Object[][] lockManagers()
+  {
+    return new Object[][] {
+      { new LockManager(100, TimeUnit.MILLISECONDS) },
+      // A single stripe shared by all the DNs
+      { LockManager.newStripedLockManager(100, TimeUnit.MILLISECONDS, 1) },
+    };
+  }
+
+  @Test(dataProvider = "lockManagers")
+  public void testWriteLockSubtrees(final LockManager lockManager) throws Exception
+  {
+    // A rename locks a subtree and its sibling, whose parents are read locked
+    final DNLock lock = lockManager.tryWriteLockSubtrees(dnABC, dnABD);
+    assertThat(lock).isNotNull();
+    assertThat(lock.toString()).contains(dnABC.toString()).contains(dnABD.toString());
+    assertThat(lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dnABC).get()).isNull();
+    assertThat(lockUsingThread(thread1, lockManager, LockType.READ_ENTRY, dnABD).get()).isNull();
+    assertThat(lockUsingThread(thread1, lockManager, LockType.WRITE_SUBTREE, dnAB).get()).isNull();
+    lock.unlock();
+
+    // Both subtrees and their parents must have been released.
+    final DNLock lock2 = lockUsingThread(thread1, lockManager, LockType.WRITE_SUBTREE, dnA).get();
+    assertThat(lock2).isNotNull();
+    unlockUsingThread(thread1, lock2);
+
+    // A move locks subtrees with different parents
+    final DNLock lock3 = lockManager.tryWriteLockSubtrees(dnABC, DN.valueOf("dc=c,dc=a"));
+    assertThat(lock3).isNotNull();
+    lock3.unlock();
+  }
+
   @DataProvider
   private Object[][] multiThreadedLockCombinationsWhichShouldBlock()
   {
@@ -147,6 +219,30 @@ public class LockManagerTest extends TypesTestCase
     assertThat(lockManager.getLockTableRefCountFor(dn2)).isGreaterThan(0);
   }
 
+  @Test(dataProvider = "multiThreadedLockCombinationsWhichShouldBlock")
+  public void testStripedMultiThreadedLockCombinationsWhichShouldBlock(final LockType lock1Type, final DN dn1,
+      final LockType lock2Type, final DN dn2) throws Exception
+  {
+    final LockManager lockManager = LockManager.newStripedLockManager(1024);
+    final DNLock lock1 = lockUsingThread(thread1, lockManager, lock1Type, dn1).get();
+    final Future<DNLock> lock2Future = lockUsingThread(thread2, lockManager, lock2Type, dn2);
+
+    try
+    {
+      lock2Future.get(10, TimeUnit.MILLISECONDS);
+    }
+    catch (final TimeoutException e)
+    {
+      // Ignore: we'll check the state of the future instead.
+    }
+    assertThat(lock2Future.isDone()).isFalse();
+    unlockUsingThread(thread1, lock1);
+    final DNLock lock2 = lock2Future.get();
+    assertThat(lock2).isNotNull();
+    unlockUsingThread(thread2, lock2);
+    assertThat(lockManager.getLockStatistics(lock2Type.getLockManagerLockType()).getWaitCount()).isGreaterThan(0);
+  }
+
   @DataProvider
   private Object[][] multiThreadedLockCombinationsWhichShouldNotBlock()
   {
@@ -228,6 +324,25 @@ public class LockManagerTest extends TypesTestCase
     assertThat(lockManager.getLockTableRefCountFor(dnA)).isGreaterThan(0);
   }
 
+  @Test(dataProvider = "reentrantLockCombinationsWhichShouldNotBlock")
+  public void testStripedReentrantLockCombinationsWhichShouldNotBlock(final LockType lock1Type,
+      final LockType lock2Type)
+  {
+    final LockManager lockManager = LockManager.newStripedLockManager(1024);
+    final DNLock lock1 = lock1Type.lock(lockManager, dnAB);
+    final DNLock lock2 = lock2Type.lock(lockManager, dnAB);
+
+    assertThat(lock1).isNotNull();
+    assertThat(lock2).isNotNull().isNotSameAs(lock1);
+    lock1.unlock();
+    lock2.unlock();
+
+    // All the stripes must have been released.
+    final DNLock lock3 = lockUsingThread(thread1, lockManager, LockType.WRITE_SUBTREE, dnA).get();
+    assertThat(lock3).isNotNull();
+    unlockUsingThread(thread1, lock3);
+  }
+
   @Test
   public void testThreadLocalCacheEviction() throws Exception
   {
@@ -299,6 +414,42 @@ public class LockManagerTest extends TypesTestCase
     assertThat(threadPool.awaitTermination(60, TimeUnit.SECONDS)).as("Deadlock detected during stress test").isTrue();
   }
 
+  @Test
+  public void stressTestStripedLockManagerForDeadlocks() throws Exception
+  {
+    // Few stripes in order to have many collisions between the DNs and their parents.
+    final LockManager lockManager = LockManager.newStripedLockManager(16);
+    final int threadCount = Runtime.getRuntime().availableProcessors();
+    final ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threadCount; i++)
+    {
+      futures.add(threadPool.submit(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          final Random rng = new Random();
+          for (int j = 0; j < 10000; j++)
+          {
+            final DN dn = DN.valueOf("uid=" + rng.nextInt(100) + ",ou=" + rng.nextInt(10) + ",dc=example,dc=com");
+            final LockType lockType = LockType.values()[rng.nextInt(LockType.values().length)];
+            final DNLock lock = lockType.lock(lockManager, dn);
+            assertThat(lock).isNotNull();
+            lock.unlock();
+          }
+        }
+      }));
+    }
+
+    threadPool.shutdown();
+    assertThat(threadPool.awaitTermination(60, TimeUnit.SECONDS)).as("Deadlock detected during stress test").isTrue();
+    for (Future<?> future : futures)
+    {
+      future.get();
+    }
+  }
+
   private DN dn(final int i) throws DirectoryException
   {
     return DN.valueOf(String.format("uid=user.%d,ou=people,dc=example,dc=com", i));
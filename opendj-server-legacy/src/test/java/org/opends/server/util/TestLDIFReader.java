@@ -864,6 +864,59 @@ public final class TestLDIFReader extends UtilTestCase {
         + change.getChangeOperationType() + " - " + change.getDN());
   }
 
+  /**
+   * Tests that an LDIF file is split into parts starting with an entry, and
+   * holding all the entries in order.
+   *
+   * @throws Exception
+   *           If the test failed unexpectedly.
+   */
+  @Test
+  public void testGetPartReaders() throws Exception {
+    File ldifFile = File.createTempFile("parts", ".ldif");
+    try {
+      int nbEntries = 100000;
+      try (OutputStream out = new FileOutputStream(ldifFile)) {
+        out.write(StaticUtils.getBytes("version: 1\n\n"));
+        for (int i = 0; i < nbEntries; i++) {
+          out.write(StaticUtils.getBytes("dn: uid=user." + i + ",dc=example,dc=com\n"
+              + "objectClass: top\nobjectClass: person\n"
+              + "description: a folded\n value for user " + i + "\n"
+              + "cn: User " + i + "\nsn: " + i + "\n\n"));
+        }
+      }
+
+      LDIFImportConfig importConfig = new LDIFImportConfig(ldifFile.getAbsolutePath());
+      List<LDIFImportConfig.PartReader> partReaders = importConfig.getPartReaders(4);
+      Assert.assertNotNull(partReaders);
+      Assert.assertTrue(partReaders.size() > 1);
+
+      int nextEntry = 0;
+      long nextLineNumber = 1;
+      for (int part = 0; part < partReaders.size(); part++) {
+        try (LDIFImportConfig.PartReader reader = partReaders.get(part)) {
+          // The lines are numbered like when reading the file sequentially
+          Assert.assertEquals(reader.getFirstLineNumber(), nextLineNumber);
+          String line = reader.readLine();
+          if (part > 0) {
+            Assert.assertTrue(line.startsWith("dn: "), line);
+          }
+          for (; line != null; line = reader.readLine()) {
+            nextLineNumber++;
+            if (line.startsWith("dn: ")) {
+              Assert.assertEquals(line, "dn: uid=user." + nextEntry + ",dc=example,dc=com");
+              nextEntry++;
+            }
+          }
+        }
+      }
+      Assert.assertEquals(nextEntry, nbEntries);
+      importConfig.close();
+    } finally {
+      ldifFile.delete();
+    }
+  }
+
   /**
    * Create an LDIF reader from a string of LDIF.
    *